@@ -0,0 +1,65 @@
+package com.cloudstorage.config;
+
+import com.cloudstorage.repository.FileRepository;
+import com.cloudstorage.repository.FolderRepository;
+import com.cloudstorage.search.NameSearchEngine;
+import com.cloudstorage.search.NgramSearchEngine;
+import com.cloudstorage.search.TrigramSearchEngine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Clock;
+import java.time.Duration;
+
+@Configuration
+@Slf4j
+public class SearchConfig {
+
+    // auto | trigram | ngram; auto uses pg_trgm on Postgres when it can be installed
+    @Value("${search.engine:auto}")
+    private String engine;
+
+    @Value("${search.ngram.max-age-seconds:300}")
+    private long maxAgeSeconds;
+
+    @Value("${search.ngram.max-users:1000}")
+    private int maxUsers;
+
+    @Bean
+    public NameSearchEngine nameSearchEngine(JdbcTemplate jdbc, FileRepository fileRepository,
+            FolderRepository folderRepository) {
+        switch (engine.toLowerCase()) {
+            case "auto":
+                if (isPostgres(jdbc) && TrigramSearchEngine.install(jdbc)) {
+                    log.info("Name search: pg_trgm");
+                    return new TrigramSearchEngine(jdbc);
+                }
+                // fall through
+            case "ngram":
+                log.info("Name search: in-process n-gram index");
+                return new NgramSearchEngine(fileRepository, folderRepository, Duration.ofSeconds(maxAgeSeconds),
+                        maxUsers, Clock.systemUTC());
+            case "trigram":
+                if (!TrigramSearchEngine.install(jdbc)) {
+                    throw new IllegalStateException("search.engine=trigram but pg_trgm could not be installed");
+                }
+                log.info("Name search: pg_trgm");
+                return new TrigramSearchEngine(jdbc);
+            default:
+                throw new IllegalStateException("Unknown search.engine: " + engine);
+        }
+    }
+
+    private static boolean isPostgres(JdbcTemplate jdbc) {
+        try (Connection connection = jdbc.getDataSource().getConnection()) {
+            return "PostgreSQL".equals(connection.getMetaData().getDatabaseProductName());
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.cloudstorage.config;
 
 import com.cloudstorage.security.JwtAuthenticationFilter;
 import com.cloudstorage.service.UserDetailsServiceImpl;
+import jakarta.servlet.DispatcherType;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -37,6 +38,9 @@ public class SecurityConfig {
                 .cors(cors -> cors.configurationSource(corsConfigurationSource()))
                 .csrf(AbstractHttpConfigurer::disable)
                 .authorizeHttpRequests(auth -> auth
+                        // Async results (futures, streamed downloads) re-dispatch a request that was
+                        // already authorized; the stateless JWT context isn't reloaded for that dispatch
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
                         .requestMatchers(
                                 "/",
                                 "/api/auth/**",
@@ -44,6 +48,8 @@ public class SecurityConfig {
                                 "/h2-console/**",
                                 "/error")
                         .permitAll()
+                        // Cache stats cover every user's downloads, not just the caller's
+                        .requestMatchers("/api/storage/url-cache", "/api/storage/hot-cache").hasRole("ADMIN")
                         .anyRequest().authenticated())
                 .sessionManagement(session -> session
                         .sessionCreationPolicy(SessionCreationPolicy.STATELESS))
@@ -0,0 +1,94 @@
+package com.cloudstorage.config;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.cloudstorage.storage.InMemoryStorageBackend;
+import com.cloudstorage.storage.LocalStorageBackend;
+import com.cloudstorage.storage.S3AsyncStorageBackend;
+import com.cloudstorage.storage.S3StorageBackend;
+import com.cloudstorage.storage.StorageBackend;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.net.URI;
+import java.nio.file.Paths;
+import java.time.Duration;
+
+@Configuration
+@Slf4j
+public class StorageConfig {
+
+    // s3 | s3-async | local | memory
+    @Value("${storage.backend:s3}")
+    private String backend;
+
+    @Value("${file.upload-dir:uploads}")
+    private String uploadDir;
+
+    @Value("${aws.s3.bucket:}")
+    private String bucketName;
+
+    @Value("${aws.region:us-east-1}")
+    private String region;
+
+    @Value("${aws.access-key:}")
+    private String accessKey;
+
+    @Value("${aws.secret-key:}")
+    private String secretKey;
+
+    // Optional, for S3-compatible services
+    @Value("${aws.s3.endpoint:}")
+    private String endpoint;
+
+    @Value("${storage.s3.async.max-concurrency:128}")
+    private int maxConcurrency;
+
+    @Value("${storage.s3.async.max-pending-acquires:1024}")
+    private int maxPendingAcquires;
+
+    @Value("${storage.s3.async.connection-timeout-ms:2000}")
+    private long connectionTimeoutMs;
+
+    @Value("${storage.s3.async.acquire-timeout-ms:10000}")
+    private long acquireTimeoutMs;
+
+    @Value("${storage.s3.async.read-timeout-ms:30000}")
+    private long readTimeoutMs;
+
+    @Value("${storage.s3.async.api-call-timeout-ms:300000}")
+    private long apiCallTimeoutMs;
+
+    @Value("${storage.s3.async.completion-threads:16}")
+    private int completionThreads;
+
+    @Value("${storage.s3.async.body-threads:32}")
+    private int bodyThreads;
+
+    @Bean
+    public StorageBackend storageBackend(ObjectProvider<AmazonS3> s3Client) {
+        switch (backend.toLowerCase()) {
+            case "s3":
+                log.info("Object storage: S3 bucket {}", bucketName);
+                return new S3StorageBackend(s3Client.getObject(), bucketName);
+            case "s3-async":
+                log.info("Object storage: S3 bucket {} (async client)", bucketName);
+                return new S3AsyncStorageBackend(bucketName, region, accessKey, secretKey,
+                        endpoint.isBlank() ? null : URI.create(endpoint),
+                        new S3AsyncStorageBackend.Settings(maxConcurrency, maxPendingAcquires,
+                                Duration.ofMillis(connectionTimeoutMs), Duration.ofMillis(acquireTimeoutMs),
+                                Duration.ofMillis(readTimeoutMs), Duration.ofMillis(apiCallTimeoutMs),
+                                completionThreads, bodyThreads));
+            case "local":
+                log.info("Object storage: local directory {}", Paths.get(uploadDir).toAbsolutePath());
+                return new LocalStorageBackend(Paths.get(uploadDir));
+            case "memory":
+                log.warn("Object storage: in-memory, content is lost on restart");
+                return new InMemoryStorageBackend();
+            default:
+                throw new IllegalStateException("Unknown storage.backend: " + backend);
+        }
+    }
+}
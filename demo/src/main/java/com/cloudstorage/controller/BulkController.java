@@ -0,0 +1,37 @@
+package com.cloudstorage.controller;
+
+import com.cloudstorage.dto.BulkRequest;
+import com.cloudstorage.model.User;
+import com.cloudstorage.repository.UserRepository;
+import com.cloudstorage.service.BulkOperationService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/api/bulk")
+@RequiredArgsConstructor
+public class BulkController {
+
+    private final BulkOperationService bulkOperationService;
+    private final UserRepository userRepository;
+
+    // Helper method to get current user from SecurityContext
+    private User getCurrentUser() {
+        String email = SecurityContextHolder.getContext().getAuthentication().getName();
+        return userRepository.findByEmail(email)
+                .orElseThrow(() -> new RuntimeException("User not found"));
+    }
+
+    // Move, star, unstar, trash, restore or rename many files and folders at once; the body has a
+    // result per item
+    @PostMapping
+    public ResponseEntity<?> apply(@RequestBody BulkRequest request) {
+        try {
+            return ResponseEntity.ok(bulkOperationService.apply(getCurrentUser(), request));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+}
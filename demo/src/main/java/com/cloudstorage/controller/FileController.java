@@ -1,20 +1,35 @@
 package com.cloudstorage.controller;
 
+import com.cloudstorage.dto.FileDto;
+import com.cloudstorage.dto.FileFilter;
+import com.cloudstorage.dto.PageParams;
+import com.cloudstorage.dto.ShareDto;
 import com.cloudstorage.model.File;
+import com.cloudstorage.model.Share;
 import com.cloudstorage.model.User;
 import com.cloudstorage.repository.UserRepository;
+import com.cloudstorage.service.ContentProxyService;
 import com.cloudstorage.service.FileService;
+import com.cloudstorage.service.SearchService;
+import com.cloudstorage.service.ZipDownloadService;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/api/files")
@@ -23,6 +38,9 @@ import java.util.UUID;
 public class FileController {
 
     private final FileService fileService;
+    private final ContentProxyService contentProxy;
+    private final ZipDownloadService zipDownloadService;
+    private final SearchService searchService;
     private final UserRepository userRepository;
     private final com.cloudstorage.security.JwtUtils jwtUtils;
 
@@ -53,8 +71,9 @@ public class FileController {
         return getCurrentUser(null);
     }
 
+    // Returns a future: the request thread is released while the object is being stored
     @PostMapping("/upload")
-    public ResponseEntity<?> uploadFile(@RequestParam("file") MultipartFile file,
+    public CompletableFuture<ResponseEntity<?>> uploadFile(@RequestParam("file") MultipartFile file,
             @RequestParam(value = "folderId", required = false) String folderIdStr) {
         try {
             User user = getCurrentUser();
@@ -63,36 +82,81 @@ public class FileController {
                             ? UUID.fromString(folderIdStr)
                             : null;
 
-            File savedFile = fileService.uploadFile(file, user, folderId);
+            return fileService.uploadFileAsync(file, user, folderId)
+                    .<ResponseEntity<?>>thenApply(savedFile -> ResponseEntity.ok(new FileResponse(savedFile.getId(),
+                            savedFile.getFileName(), savedFile.getFileType(), savedFile.getFileSize(),
+                            "File uploaded successfully!")))
+                    .exceptionally(e -> {
+                        log.error("Upload error in controller: {}", FileService.unwrap(e).getMessage());
+                        return ResponseEntity.badRequest().body("Upload failed: " + FileService.unwrap(e).getMessage());
+                    });
+        } catch (Exception e) {
+            log.error("Upload error in controller: {}", e.getMessage());
+            return CompletableFuture.completedFuture(
+                    ResponseEntity.badRequest().body("Upload failed: " + e.getMessage()));
+        }
+    }
+
+    // Raw-body upload: the request body is streamed straight to S3 without multipart spooling
+    @PostMapping("/upload-stream")
+    public ResponseEntity<?> uploadStream(HttpServletRequest request,
+            @RequestParam("fileName") String fileName,
+            @RequestParam(value = "folderId", required = false) String folderIdStr,
+            @RequestHeader(value = "X-Content-SHA256", required = false) String sha256) {
+        try {
+            User user = getCurrentUser();
+            UUID folderId = (folderIdStr != null && !folderIdStr.isBlank() && !folderIdStr.equals("null")
+                    && !folderIdStr.equals("undefined"))
+                            ? UUID.fromString(folderIdStr)
+                            : null;
+            String contentType = request.getContentType() != null ? request.getContentType()
+                    : "application/octet-stream";
+
+            File savedFile = fileService.uploadStream(request.getInputStream(), fileName, contentType, sha256, user,
+                    folderId);
             return ResponseEntity.ok(new FileResponse(savedFile.getId(), savedFile.getFileName(),
                     savedFile.getFileType(), savedFile.getFileSize(), "File uploaded successfully!"));
+        } catch (org.springframework.web.server.ResponseStatusException e) {
+            throw e;
         } catch (Exception e) {
-            log.error("Upload error in controller: {}", e.getMessage());
+            log.error("Streaming upload error in controller: {}", e.getMessage());
             return ResponseEntity.badRequest().body("Upload failed: " + e.getMessage());
         }
     }
 
+    // sort/direction/limit/cursor switch the response to cursor pages, see PageParams
     @GetMapping({ "/list", "/list/{folderId}" })
-    public ResponseEntity<List<File>> getFilesInFolder(@PathVariable(required = false) UUID folderId) {
+    public ResponseEntity<?> getFilesInFolder(@PathVariable(required = false) UUID folderId, PageParams page) {
         try {
-            return ResponseEntity.ok(fileService.getFilesInFolder(getCurrentUser(), folderId));
+            User user = getCurrentUser();
+            return ResponseEntity.ok(page.isRequested() ? fileService.getFilesInFolder(user, folderId, page)
+                    : fileService.getFilesInFolder(user, folderId));
         } catch (Exception e) {
-            return ResponseEntity.badRequest().build();
+            return ResponseEntity.badRequest().body(e.getMessage());
         }
     }
 
     @GetMapping("/{fileId}/download")
     public ResponseEntity<?> downloadFile(@PathVariable UUID fileId,
-            @RequestParam(value = "token", required = false) String token) {
+            @RequestParam(value = "token", required = false) String token,
+            @RequestHeader HttpHeaders headers) {
         try {
             User user = getCurrentUser(token);
             File file = fileService.getFile(fileId, user);
 
-            // Mark as recently opened
-            fileService.reportFileOpen(fileId, user);
+            // Mark as recently opened; players seeking through a video send many ranged requests
+            if (!isSeek(headers)) {
+                fileService.reportFileOpen(fileId, user);
+            }
 
+            if (contentProxy.isEnabled()) {
+                return contentProxy.serve(file, headers);
+            }
             // Redirect to a secure signed URL for high-performance streaming
             String signedUrl = fileService.generateSignedUrl(file);
+            if (signedUrl == null) {
+                return contentProxy.serve(file, headers);
+            }
             return ResponseEntity.status(302).location(URI.create(signedUrl)).build();
         } catch (org.springframework.web.server.ResponseStatusException e) {
             throw e;
@@ -102,6 +166,45 @@ public class FileController {
         }
     }
 
+    private static boolean isSeek(HttpHeaders headers) {
+        String range = headers.getFirst(HttpHeaders.RANGE);
+        return range != null && !range.startsWith("bytes=0-");
+    }
+
+    // Whole folder subtree as one ZIP, streamed while it is being built
+    @GetMapping("/zip/folder/{folderId}")
+    public ResponseEntity<?> downloadFolderZip(@PathVariable UUID folderId,
+            @RequestParam(value = "token", required = false) String token) {
+        try {
+            return zip(zipDownloadService.planFolder(folderId, getCurrentUser(token)));
+        } catch (org.springframework.web.server.ResponseStatusException e) {
+            throw e;
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    @PostMapping("/zip")
+    public ResponseEntity<?> downloadFilesZip(@RequestBody Map<String, List<UUID>> request) {
+        try {
+            return zip(zipDownloadService.planFiles(request.get("fileIds"), getCurrentUser()));
+        } catch (org.springframework.web.server.ResponseStatusException e) {
+            throw e;
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    // Planned up front so access errors are still a proper response; only the bytes are streamed
+    private ResponseEntity<StreamingResponseBody> zip(ZipDownloadService.ZipPlan plan) {
+        StreamingResponseBody body = out -> zipDownloadService.write(plan.items(), out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/zip"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename(plan.archiveName(), StandardCharsets.UTF_8).build().toString())
+                .body(body);
+    }
+
     @DeleteMapping("/{fileId}")
     public ResponseEntity<?> deleteFile(@PathVariable UUID fileId) {
         try {
@@ -113,16 +216,16 @@ public class FileController {
     }
 
     @GetMapping("/search")
-    public ResponseEntity<List<File>> searchFiles(@RequestParam("query") String query) {
+    public ResponseEntity<List<FileDto>> searchFiles(@RequestParam("query") String query) {
         try {
-            return ResponseEntity.ok(fileService.searchFiles(getCurrentUser(), query));
+            return ResponseEntity.ok(searchService.searchFiles(getCurrentUser(), query));
         } catch (Exception e) {
             return ResponseEntity.badRequest().build();
         }
     }
 
     @GetMapping("/recent")
-    public ResponseEntity<List<File>> getRecentFiles() {
+    public ResponseEntity<List<FileDto>> getRecentFiles() {
         try {
             return ResponseEntity.ok(fileService.getRecentFiles(getCurrentUser()));
         } catch (Exception e) {
@@ -130,28 +233,44 @@ public class FileController {
         }
     }
 
+    // Any mix of FileFilter's criteria, always answered in cursor pages; see PageParams
+    @GetMapping("/filter")
+    public ResponseEntity<?> filterFiles(FileFilter filter, PageParams page) {
+        try {
+            return ResponseEntity.ok(fileService.filterFiles(getCurrentUser(), filter, page));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
     @GetMapping("/starred")
-    public ResponseEntity<List<File>> getStarredFiles() {
+    public ResponseEntity<?> getStarredFiles(PageParams page) {
         try {
-            return ResponseEntity.ok(fileService.getStarredFiles(getCurrentUser()));
+            User user = getCurrentUser();
+            return ResponseEntity.ok(page.isRequested() ? fileService.getStarredFiles(user, page)
+                    : fileService.getStarredFiles(user));
         } catch (Exception e) {
-            return ResponseEntity.badRequest().build();
+            return ResponseEntity.badRequest().body(e.getMessage());
         }
     }
 
     @GetMapping("/trash-items")
-    public ResponseEntity<List<File>> getTrashedFiles() {
+    public ResponseEntity<?> getTrashedFiles(PageParams page) {
         try {
-            return ResponseEntity.ok(fileService.getTrashedFiles(getCurrentUser()));
+            User user = getCurrentUser();
+            return ResponseEntity.ok(page.isRequested() ? fileService.getTrashedFiles(user, page)
+                    : fileService.getTrashedFiles(user));
         } catch (Exception e) {
-            return ResponseEntity.badRequest().build();
+            return ResponseEntity.badRequest().body(e.getMessage());
         }
     }
 
     @PostMapping("/{fileId}/star")
     public ResponseEntity<?> toggleStar(@PathVariable UUID fileId) {
         try {
-            return ResponseEntity.ok(fileService.toggleStar(fileId, getCurrentUser()));
+            // The owner stars the file itself, a recipient stars their share of it
+            Object starred = fileService.toggleStar(fileId, getCurrentUser());
+            return ResponseEntity.ok(starred instanceof Share share ? ShareDto.of(share) : FileDto.of((File) starred));
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(e.getMessage());
         }
@@ -168,19 +287,20 @@ public class FileController {
     }
 
     @DeleteMapping("/{fileId}/permanent")
-    public ResponseEntity<?> permanentDeleteFile(@PathVariable UUID fileId) {
+    public CompletableFuture<ResponseEntity<?>> permanentDeleteFile(@PathVariable UUID fileId) {
         try {
-            fileService.permanentDeleteFile(fileId, getCurrentUser());
-            return ResponseEntity.ok("File deleted permanently");
+            return fileService.permanentDeleteFileAsync(fileId, getCurrentUser())
+                    .<ResponseEntity<?>>thenApply(done -> ResponseEntity.ok("File deleted permanently"))
+                    .exceptionally(e -> ResponseEntity.badRequest().body(FileService.unwrap(e).getMessage()));
         } catch (Exception e) {
-            return ResponseEntity.badRequest().body(e.getMessage());
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(e.getMessage()));
         }
     }
 
     @PutMapping("/{fileId}/rename")
     public ResponseEntity<?> renameFile(@PathVariable UUID fileId, @RequestParam String newName) {
         try {
-            return ResponseEntity.ok(fileService.renameFile(fileId, newName, getCurrentUser()));
+            return ResponseEntity.ok(FileDto.of(fileService.renameFile(fileId, newName, getCurrentUser())));
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(e.getMessage());
         }
@@ -189,7 +309,7 @@ public class FileController {
     @PutMapping("/{fileId}/move")
     public ResponseEntity<?> moveFile(@PathVariable UUID fileId, @RequestParam(required = false) UUID folderId) {
         try {
-            return ResponseEntity.ok(fileService.moveFile(fileId, folderId, getCurrentUser()));
+            return ResponseEntity.ok(FileDto.of(fileService.moveFile(fileId, folderId, getCurrentUser())));
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(e.getMessage());
         }
@@ -208,17 +328,23 @@ public class FileController {
     @GetMapping("/public/{token}")
     public ResponseEntity<?> getPublicFile(@PathVariable String token) {
         try {
-            return ResponseEntity.ok(fileService.getFileByPublicToken(token));
+            return ResponseEntity.ok(FileDto.of(fileService.getFileByPublicToken(token)));
         } catch (Exception e) {
             return ResponseEntity.status(404).body(e.getMessage());
         }
     }
 
     @GetMapping("/public/download/{token}")
-    public ResponseEntity<?> getPublicFileDownload(@PathVariable String token) {
+    public ResponseEntity<?> getPublicFileDownload(@PathVariable String token, @RequestHeader HttpHeaders headers) {
         try {
             File file = fileService.getFileByPublicToken(token);
+            if (contentProxy.isEnabled()) {
+                return contentProxy.serve(file, headers);
+            }
             String signedUrl = fileService.generateSignedUrl(file);
+            if (signedUrl == null) {
+                return contentProxy.serve(file, headers);
+            }
             return ResponseEntity.status(302).location(URI.create(signedUrl)).build();
         } catch (Exception e) {
             throw new RuntimeException("Error generating direct link: " + e.getMessage());
@@ -231,21 +357,26 @@ public class FileController {
             User user = getCurrentUser();
             String fileName = request.get("fileName");
             String contentType = request.get("fileType");
-            return ResponseEntity.ok(fileService.generatePresignedUploadUrl(fileName, contentType, user));
+            return ResponseEntity.ok(fileService.generatePresignedUploadUrl(fileName, contentType,
+                    request.get("sha256"), user));
         } catch (Exception e) {
             return ResponseEntity.badRequest().body("Init failed: " + e.getMessage());
         }
     }
 
     @PostMapping("/complete-upload")
-    public ResponseEntity<?> completeUpload(@RequestBody Map<String, Object> metadata) {
+    public CompletableFuture<ResponseEntity<?>> completeUpload(@RequestBody Map<String, Object> metadata) {
         try {
             User user = getCurrentUser();
-            File savedFile = fileService.completeUpload(metadata, user);
-            return ResponseEntity.ok(new FileResponse(savedFile.getId(), savedFile.getFileName(),
-                    savedFile.getFileType(), savedFile.getFileSize(), "File metadata saved successfully!"));
+            return fileService.completeUploadAsync(metadata, user)
+                    .<ResponseEntity<?>>thenApply(savedFile -> ResponseEntity.ok(new FileResponse(savedFile.getId(),
+                            savedFile.getFileName(), savedFile.getFileType(), savedFile.getFileSize(),
+                            "File metadata saved successfully!")))
+                    .exceptionally(e -> ResponseEntity.badRequest()
+                            .body("Completion failed: " + FileService.unwrap(e).getMessage()));
         } catch (Exception e) {
-            return ResponseEntity.badRequest().body("Completion failed: " + e.getMessage());
+            return CompletableFuture.completedFuture(
+                    ResponseEntity.badRequest().body("Completion failed: " + e.getMessage()));
         }
     }
 }
@@ -1,14 +1,20 @@
 package com.cloudstorage.controller;
 
+import com.cloudstorage.dto.FolderDto;
+import com.cloudstorage.dto.FolderTree;
+import com.cloudstorage.dto.PageParams;
 import com.cloudstorage.model.Folder;
 import com.cloudstorage.model.User;
 import com.cloudstorage.repository.UserRepository;
 import com.cloudstorage.service.FolderService;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.List;
 import java.util.UUID;
@@ -38,7 +44,7 @@ public class FolderController {
                     request.getName(),
                     user,
                     request.getParentFolderId());
-            return ResponseEntity.ok(folder);
+            return ResponseEntity.ok(FolderDto.of(folder));
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(e.getMessage());
         }
@@ -46,41 +52,80 @@ public class FolderController {
 
     // Get user's folders
     @GetMapping
-    public ResponseEntity<List<Folder>> getMyFolders() {
+    public ResponseEntity<?> getMyFolders(PageParams page) {
         try {
             User user = getCurrentUser();
-            List<Folder> folders = folderService.getUserFolders(user);
+            if (page.isRequested()) {
+                return ResponseEntity.ok(folderService.getUserFolders(user, page));
+            }
+            List<FolderDto> folders = folderService.getUserFolders(user);
             return ResponseEntity.ok(folders);
         } catch (Exception e) {
-            return ResponseEntity.badRequest().build();
+            return ResponseEntity.badRequest().body(e.getMessage());
         }
     }
 
     // Get root folders
     @GetMapping("/root")
-    public ResponseEntity<List<Folder>> getRootFolders() {
+    public ResponseEntity<List<FolderDto>> getRootFolders() {
         try {
             User user = getCurrentUser();
-            List<Folder> folders = folderService.getRootFolders(user);
+            List<FolderDto> folders = folderService.getRootFolders(user);
             return ResponseEntity.ok(folders);
         } catch (Exception e) {
             return ResponseEntity.badRequest().build();
         }
     }
 
+    // Whole tree in one response; an unchanged tree answers If-None-Match with 304 and no body
+    @GetMapping("/tree")
+    public ResponseEntity<?> getTree(WebRequest request) {
+        try {
+            FolderTree tree = folderService.getTree(getCurrentUser());
+            if (request.checkNotModified(tree.version())) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(tree.version())
+                        .cacheControl(CacheControl.noCache().cachePrivate()).build();
+            }
+            return ResponseEntity.ok().eTag(tree.version()).cacheControl(CacheControl.noCache().cachePrivate())
+                    .body(tree);
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
     // Get subfolders
     @GetMapping("/{folderId}/subfolders")
-    public ResponseEntity<List<Folder>> getSubfolders(@PathVariable UUID folderId) {
+    public ResponseEntity<List<FolderDto>> getSubfolders(@PathVariable UUID folderId) {
 
         try {
             User user = getCurrentUser();
-            List<Folder> folders = folderService.getSubfolders(user, folderId);
+            List<FolderDto> folders = folderService.getSubfolders(user, folderId);
             return ResponseEntity.ok(folders);
         } catch (Exception e) {
             return ResponseEntity.badRequest().build();
         }
     }
 
+    // Path from the root down to the folder, for breadcrumbs
+    @GetMapping("/{folderId}/breadcrumbs")
+    public ResponseEntity<?> getBreadcrumbs(@PathVariable UUID folderId) {
+        try {
+            return ResponseEntity.ok(folderService.getBreadcrumbs(getCurrentUser(), folderId));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    // All folders below this one, at any depth
+    @GetMapping("/{folderId}/descendants")
+    public ResponseEntity<?> getDescendants(@PathVariable UUID folderId) {
+        try {
+            return ResponseEntity.ok(folderService.getDescendants(getCurrentUser(), folderId));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
     // Get specific folder
     @GetMapping("/{folderId}")
     public ResponseEntity<?> getFolder(@PathVariable UUID folderId) {
@@ -88,7 +133,7 @@ public class FolderController {
         try {
             User user = getCurrentUser();
             Folder folder = folderService.getFolder(folderId, user);
-            return ResponseEntity.ok(folder);
+            return ResponseEntity.ok(FolderDto.of(folder));
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(e.getMessage());
         }
@@ -116,7 +161,7 @@ public class FolderController {
         try {
             User user = getCurrentUser();
             Folder folder = folderService.renameFolder(folderId, newName, user);
-            return ResponseEntity.ok(folder);
+            return ResponseEntity.ok(FolderDto.of(folder));
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(e.getMessage());
         }
@@ -131,7 +176,7 @@ public class FolderController {
         try {
             User user = getCurrentUser();
             Folder folder = folderService.moveFolder(folderId, targetFolderId, user);
-            return ResponseEntity.ok(folder);
+            return ResponseEntity.ok(FolderDto.of(folder));
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(e.getMessage());
         }
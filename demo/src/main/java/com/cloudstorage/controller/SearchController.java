@@ -0,0 +1,53 @@
+package com.cloudstorage.controller;
+
+import com.cloudstorage.dto.PageParams;
+import com.cloudstorage.model.User;
+import com.cloudstorage.repository.UserRepository;
+import com.cloudstorage.search.SearchHit;
+import com.cloudstorage.service.SearchService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+@RestController
+@RequestMapping("/api/search")
+@RequiredArgsConstructor
+public class SearchController {
+
+    private final SearchService searchService;
+    private final UserRepository userRepository;
+
+    private User getCurrentUser() {
+        String email = SecurityContextHolder.getContext().getAuthentication().getName();
+        return userRepository.findByEmail(email)
+                .orElseThrow(() -> new RuntimeException("User not found"));
+    }
+
+    // Files and folders whose names match q, best match first; type narrows it to files or folders
+    @GetMapping
+    public ResponseEntity<?> search(@RequestParam("q") String query,
+            @RequestParam(defaultValue = "all") String type, PageParams page) {
+        try {
+            return ResponseEntity.ok(searchService.search(getCurrentUser(), query, kinds(type), page));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    private static Set<SearchHit.Kind> kinds(String type) {
+        switch (type.toLowerCase()) {
+            case "all":
+                return EnumSet.allOf(SearchHit.Kind.class);
+            case "files":
+                return EnumSet.of(SearchHit.Kind.FILE);
+            case "folders":
+                return EnumSet.of(SearchHit.Kind.FOLDER);
+            default:
+                throw new IllegalArgumentException("type must be all, files or folders");
+        }
+    }
+}
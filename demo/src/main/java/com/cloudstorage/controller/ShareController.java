@@ -1,5 +1,7 @@
 package com.cloudstorage.controller;
 
+import com.cloudstorage.dto.PageParams;
+import com.cloudstorage.dto.ShareDto;
 import com.cloudstorage.model.Share;
 import com.cloudstorage.model.User;
 import com.cloudstorage.repository.UserRepository;
@@ -53,7 +55,7 @@ public class ShareController {
             if (result instanceof java.util.Map) {
                 return ResponseEntity.ok(result);
             }
-            return ResponseEntity.ok(result);
+            return ResponseEntity.ok(ShareDto.of((Share) result));
         } catch (org.springframework.web.server.ResponseStatusException e) {
             throw e;
         } catch (Exception e) {
@@ -63,10 +65,13 @@ public class ShareController {
     }
 
     @GetMapping("/shared-with-me")
-    public ResponseEntity<?> getSharedWithMe() {
+    public ResponseEntity<?> getSharedWithMe(PageParams page) {
         try {
             User user = getCurrentUser();
-            List<Share> shares = shareService.getSharedWithMe(user);
+            if (page.isRequested()) {
+                return ResponseEntity.ok(shareService.getSharedWithMe(user, page));
+            }
+            List<ShareDto> shares = shareService.getSharedWithMe(user);
             return ResponseEntity.ok(shares);
         } catch (org.springframework.web.server.ResponseStatusException e) {
             throw e;
@@ -79,7 +84,7 @@ public class ShareController {
     public ResponseEntity<?> getSharedByMe() {
         try {
             User user = getCurrentUser();
-            List<Share> shares = shareService.getSharedByMe(user);
+            List<ShareDto> shares = shareService.getSharedByMe(user);
             return ResponseEntity.ok(shares);
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(e.getMessage());
@@ -90,7 +95,7 @@ public class ShareController {
     public ResponseEntity<?> getFileShares(@PathVariable UUID fileId) {
         try {
             User user = getCurrentUser();
-            List<Share> shares = shareService.getFileShares(fileId, user);
+            List<ShareDto> shares = shareService.getFileShares(fileId, user);
             return ResponseEntity.ok(shares);
         } catch (org.springframework.web.server.ResponseStatusException e) {
             throw e;
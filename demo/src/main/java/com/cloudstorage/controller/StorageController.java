@@ -1,13 +1,21 @@
 package com.cloudstorage.controller;
 
+import com.cloudstorage.model.StorageUsage;
 import com.cloudstorage.model.User;
 import com.cloudstorage.repository.UserRepository;
-import com.cloudstorage.service.FileService;
+import com.cloudstorage.service.JobService;
+import com.cloudstorage.service.OrphanReconcileService;
+import com.cloudstorage.service.StorageBreakdownService;
+import com.cloudstorage.service.StorageUsageService;
+import com.cloudstorage.storage.HotObjectCache;
+import com.cloudstorage.storage.PresignedUrlCache;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.util.HashMap;
@@ -18,8 +26,12 @@ import java.util.Map;
 @RequiredArgsConstructor
 public class StorageController {
 
-    private final FileService fileService;
     private final UserRepository userRepository;
+    private final PresignedUrlCache urlCache;
+    private final HotObjectCache hotCache;
+    private final JobService jobService;
+    private final StorageUsageService usageService;
+    private final StorageBreakdownService breakdownService;
 
     private User getCurrentUser() {
         String email = SecurityContextHolder.getContext().getAuthentication().getName();
@@ -31,7 +43,8 @@ public class StorageController {
     public ResponseEntity<?> getStorageUsage() {
         try {
             User user = getCurrentUser();
-            long totalBytes = fileService.calculateUserStorage(user);
+            StorageUsage usage = usageService.getUsage(user);
+            long totalBytes = usage.getActiveBytes();
             long limitBytes = 10L * 1024 * 1024 * 1024; // 10 GB limit
 
             Map<String, Object> response = new HashMap<>();
@@ -42,6 +55,9 @@ public class StorageController {
             response.put("percentageUsed", Math.min(100, (int) ((totalBytes * 100) / limitBytes)));
             response.put("readableUsed", formatSize(totalBytes));
             response.put("readableTotal", "10 GB");
+            response.put("fileCount", usage.getActiveFiles());
+            response.put("trashedBytes", usage.getTrashedBytes());
+            response.put("trashedFileCount", usage.getTrashedFiles());
 
             return ResponseEntity.ok(response);
         } catch (Exception e) {
@@ -49,11 +65,51 @@ public class StorageController {
         }
     }
 
+    // Bytes and counts by MIME family, top-level folder and age, plus the largest files
     @GetMapping("/breakdown")
-    public ResponseEntity<?> getStorageBreakdown() {
+    public ResponseEntity<?> getStorageBreakdown(@RequestParam(defaultValue = "10") int top) {
         try {
             User user = getCurrentUser();
-            return ResponseEntity.ok(fileService.getUserFiles(user));
+            return ResponseEntity.ok(breakdownService.breakdown(user, top));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    // Download URL cache effectiveness, across all users; admins only, see SecurityConfig
+    @GetMapping("/url-cache")
+    public ResponseEntity<?> getUrlCacheStats() {
+        PresignedUrlCache.Stats stats = urlCache.stats();
+        Map<String, Object> response = new HashMap<>();
+        response.put("hits", stats.hits());
+        response.put("misses", stats.misses());
+        response.put("evictions", stats.evictions());
+        response.put("size", stats.size());
+        response.put("hitRate", stats.hitRate());
+        return ResponseEntity.ok(response);
+    }
+
+    // On-disk cache of proxied downloads, across all users; admins only
+    @GetMapping("/hot-cache")
+    public ResponseEntity<?> getHotCacheStats() {
+        HotObjectCache.Stats stats = hotCache.stats();
+        Map<String, Object> response = new HashMap<>();
+        response.put("hits", stats.hits());
+        response.put("misses", stats.misses());
+        response.put("entries", stats.entries());
+        response.put("bytes", stats.bytes());
+        response.put("readableBytes", formatSize(stats.bytes()));
+        return ResponseEntity.ok(response);
+    }
+
+    // Look for objects under the user's prefix that no file points at; mode=delete also removes them
+    @PostMapping("/reconcile")
+    public ResponseEntity<?> reconcile(@RequestParam(defaultValue = "report") String mode) {
+        try {
+            User user = getCurrentUser();
+            OrphanReconcileService.Mode parsed = OrphanReconcileService.parseMode(mode);
+            return ResponseEntity.accepted().body(JobService.JobStatus.of(
+                    jobService.enqueue(user, OrphanReconcileService.TYPE, parsed.name())));
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(e.getMessage());
         }
@@ -2,6 +2,8 @@ package com.cloudstorage.controller;
 
 import com.cloudstorage.model.User;
 import com.cloudstorage.repository.UserRepository;
+import com.cloudstorage.service.FileService;
+import com.cloudstorage.service.JobService;
 import com.cloudstorage.service.TrashService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
@@ -9,6 +11,7 @@ import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/api/trash")
@@ -64,14 +67,15 @@ public class TrashController {
 
     // Permanently delete file
     @DeleteMapping("/file/{fileId}")
-    public ResponseEntity<?> permanentDeleteFile(@PathVariable UUID fileId) {
+    public CompletableFuture<ResponseEntity<?>> permanentDeleteFile(@PathVariable UUID fileId) {
 
         try {
             User user = getCurrentUser();
-            trashService.permanentDeleteFile(fileId, user);
-            return ResponseEntity.ok("File permanently deleted");
+            return trashService.permanentDeleteFileAsync(fileId, user)
+                    .<ResponseEntity<?>>thenApply(done -> ResponseEntity.ok("File permanently deleted"))
+                    .exceptionally(e -> ResponseEntity.badRequest().body(FileService.unwrap(e).getMessage()));
         } catch (Exception e) {
-            return ResponseEntity.badRequest().body(e.getMessage());
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(e.getMessage()));
         }
     }
 
@@ -88,13 +92,12 @@ public class TrashController {
         }
     }
 
-    // Empty trash
+    // Empty trash: queues a background job, follow it at /api/jobs/{id}
     @DeleteMapping("/empty")
     public ResponseEntity<?> emptyTrash() {
         try {
             User user = getCurrentUser();
-            trashService.emptyTrash(user);
-            return ResponseEntity.ok("Trash emptied successfully");
+            return ResponseEntity.accepted().body(JobService.JobStatus.of(trashService.emptyTrash(user)));
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(e.getMessage());
         }
@@ -0,0 +1,135 @@
+package com.cloudstorage.controller;
+
+import com.cloudstorage.model.File;
+import com.cloudstorage.model.UploadPart;
+import com.cloudstorage.model.UploadSession;
+import com.cloudstorage.model.User;
+import com.cloudstorage.repository.UserRepository;
+import com.cloudstorage.service.UploadSessionService;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+import java.util.UUID;
+
+@RestController
+@RequestMapping("/api/uploads")
+@RequiredArgsConstructor
+@Slf4j
+public class UploadSessionController {
+
+    private final UploadSessionService uploadSessionService;
+    private final UserRepository userRepository;
+
+    @Value("${storage.upload.direct.url-batch-size:50}")
+    private int urlBatchSize;
+
+    private User getCurrentUser() {
+        String email = SecurityContextHolder.getContext().getAuthentication().getName();
+        return userRepository.findByEmail(email)
+                .orElseThrow(() -> new RuntimeException("User not found"));
+    }
+
+    // Create a resumable upload session
+    @PostMapping
+    public ResponseEntity<?> createSession(@RequestBody CreateUploadSessionRequest request) {
+        try {
+            UploadSession session = uploadSessionService.createSession(request.getFileName(),
+                    request.getFileType(), request.getFileSize(), request.getFolderId(), getCurrentUser());
+            return ResponseEntity.ok(Map.of(
+                    "sessionId", session.getId(),
+                    "partSize", session.getPartSize(),
+                    "expiresAt", session.getExpiresAt()));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body("Could not create upload session: " + e.getMessage());
+        }
+    }
+
+    // Start a browser-direct multipart upload and hand out the first batch of presigned part URLs
+    @PostMapping("/direct")
+    public ResponseEntity<?> createDirectSession(@RequestBody CreateUploadSessionRequest request) {
+        try {
+            User user = getCurrentUser();
+            UploadSession session = uploadSessionService.createSession(request.getFileName(),
+                    request.getFileType(), request.getFileSize(), request.getFolderId(), UploadSession.Mode.DIRECT,
+                    user);
+            return ResponseEntity.ok(uploadSessionService.generatePartUrls(session.getId(), 1, urlBatchSize, user));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body("Could not create upload session: " + e.getMessage());
+        }
+    }
+
+    // Refill presigned part URLs for a direct upload
+    @PostMapping("/{sessionId}/part-urls")
+    public ResponseEntity<?> getPartUrls(@PathVariable UUID sessionId,
+            @RequestParam("from") int fromPart,
+            @RequestParam(value = "count", required = false) Integer count) {
+        try {
+            return ResponseEntity.ok(uploadSessionService.generatePartUrls(sessionId, fromPart,
+                    count != null ? count : urlBatchSize, getCurrentUser()));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    // Upload chunk N (raw body, 1-based part number)
+    @PutMapping("/{sessionId}/parts/{partNumber}")
+    public ResponseEntity<?> uploadPart(@PathVariable UUID sessionId, @PathVariable int partNumber,
+            HttpServletRequest request) {
+        try {
+            UploadPart part = uploadSessionService.uploadPart(sessionId, partNumber, request.getInputStream(),
+                    request.getContentLengthLong(), getCurrentUser());
+            return ResponseEntity.ok(Map.of("partNumber", part.getPartNumber(), "size", part.getSize()));
+        } catch (Exception e) {
+            log.error("Chunk {} upload failed for session {}: {}", partNumber, sessionId, e.getMessage());
+            return ResponseEntity.badRequest().body("Chunk upload failed: " + e.getMessage());
+        }
+    }
+
+    // Query which parts and byte ranges have been received so far
+    @GetMapping("/{sessionId}")
+    public ResponseEntity<?> getStatus(@PathVariable UUID sessionId) {
+        try {
+            return ResponseEntity.ok(uploadSessionService.getStatus(sessionId, getCurrentUser()));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    // Assemble the received parts and create the file (works for both proxied and direct sessions)
+    @PostMapping("/{sessionId}/complete")
+    public ResponseEntity<?> completeSession(@PathVariable UUID sessionId) {
+        try {
+            File savedFile = uploadSessionService.completeSession(sessionId, getCurrentUser());
+            return ResponseEntity.ok(new FileResponse(savedFile.getId(), savedFile.getFileName(),
+                    savedFile.getFileType(), savedFile.getFileSize(), "File uploaded successfully!"));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body("Completion failed: " + e.getMessage());
+        }
+    }
+
+    // Cancel an upload and discard its parts
+    @DeleteMapping("/{sessionId}")
+    public ResponseEntity<?> abortSession(@PathVariable UUID sessionId) {
+        try {
+            uploadSessionService.abortSession(sessionId, getCurrentUser());
+            return ResponseEntity.ok("Upload session aborted");
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+}
+
+@Data
+class CreateUploadSessionRequest {
+    private String fileName;
+    private String fileType;
+    private Long fileSize; // Optional, verified at completion
+    private UUID folderId;
+}
@@ -0,0 +1,21 @@
+package com.cloudstorage.dto;
+
+import lombok.Data;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+// One multi-select action over files and folders; ids the caller doesn't own only fail their own entry
+@Data
+public class BulkRequest {
+    private Action action;
+    private List<UUID> fileIds;
+    private List<UUID> folderIds;
+    private UUID targetFolderId; // MOVE; null moves to the root
+    private Map<UUID, String> names; // RENAME: new name per file or folder id
+
+    public enum Action {
+        MOVE, STAR, UNSTAR, DELETE, RESTORE, RENAME
+    }
+}
@@ -0,0 +1,15 @@
+package com.cloudstorage.dto;
+
+import java.util.Map;
+import java.util.UUID;
+
+// Per item, in request order: "OK" or why that item was left unchanged
+public record BulkResult(int succeeded, int failed, Map<UUID, String> results) {
+
+    public static final String OK = "OK";
+
+    public static BulkResult of(Map<UUID, String> results) {
+        int succeeded = (int) results.values().stream().filter(OK::equals).count();
+        return new BulkResult(succeeded, results.size() - succeeded, results);
+    }
+}
@@ -0,0 +1,12 @@
+package com.cloudstorage.dto;
+
+import java.util.List;
+import java.util.function.Function;
+
+// One page of a listing; nextCursor is null on the last page
+public record CursorPage<T>(List<T> items, String nextCursor) {
+
+    public <R> CursorPage<R> map(Function<? super T, ? extends R> mapper) {
+        return new CursorPage<>(items.stream().<R>map(mapper).toList(), nextCursor);
+    }
+}
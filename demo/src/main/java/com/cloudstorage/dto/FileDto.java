@@ -0,0 +1,33 @@
+package com.cloudstorage.dto;
+
+import com.cloudstorage.model.File;
+import com.cloudstorage.model.Folder;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+// A file as listings return it: no storage location or content hash, owner and folder reduced to references
+public record FileDto(UUID id, String fileName, String fileType, Long fileSize, UserSummary user, FolderRef folder,
+        LocalDateTime createdAt, LocalDateTime updatedAt, LocalDateTime lastOpenedAt, Boolean isTrashed,
+        Boolean isStarred, String publicShareToken) {
+
+    public record FolderRef(UUID id, String name) {
+    }
+
+    // Flat form for JPQL constructor expressions, see FileRepository.FILE_VIEW
+    public FileDto(UUID id, String fileName, String fileType, Long fileSize, UUID userId, String userName,
+            String userEmail, UUID folderId, String folderName, LocalDateTime createdAt, LocalDateTime updatedAt,
+            LocalDateTime lastOpenedAt, Boolean isTrashed, Boolean isStarred, String publicShareToken) {
+        this(id, fileName, fileType, fileSize, new UserSummary(userId, userName, userEmail),
+                folderId == null ? null : new FolderRef(folderId, folderName), createdAt, updatedAt, lastOpenedAt,
+                isTrashed, isStarred, publicShareToken);
+    }
+
+    public static FileDto of(File file) {
+        Folder folder = file.getFolder();
+        return new FileDto(file.getId(), file.getFileName(), file.getFileType(), file.getFileSize(),
+                UserSummary.of(file.getUser()), folder == null ? null : new FolderRef(folder.getId(), folder.getName()),
+                file.getCreatedAt(), file.getUpdatedAt(), file.getLastOpenedAt(), file.getIsTrashed(),
+                file.getIsStarred(), file.getPublicShareToken());
+    }
+}
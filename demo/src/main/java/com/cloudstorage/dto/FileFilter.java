@@ -0,0 +1,25 @@
+package com.cloudstorage.dto;
+
+import lombok.Data;
+import org.springframework.format.annotation.DateTimeFormat;
+
+import java.time.LocalDate;
+import java.util.UUID;
+
+// Query parameters of the filtered file search; all optional and combined with AND
+@Data
+public class FileFilter {
+    private String name; // Part of the file name
+    private String type; // Full MIME type (image/png) or just its family (image)
+    private Long minSize; // Bytes, inclusive
+    private Long maxSize; // Bytes, inclusive
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+    private LocalDate createdFrom; // Inclusive
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+    private LocalDate createdTo; // Inclusive
+    private UUID folderId; // Only files in this folder
+    private Boolean recursive; // With folderId: also files in its subfolders, at any depth
+    private Boolean root; // Only files outside any folder
+    private Boolean starred;
+    private Boolean shared; // Shared with someone or by public link
+}
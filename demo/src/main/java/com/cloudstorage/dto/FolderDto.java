@@ -0,0 +1,20 @@
+package com.cloudstorage.dto;
+
+import com.cloudstorage.model.Folder;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+// The parent is referenced by id only, so a folder never serializes its whole ancestor chain
+public record FolderDto(UUID id, String name, UUID parentFolderId, LocalDateTime createdAt,
+        LocalDateTime updatedAt, Boolean isTrashed, Long directBytes, Long directFiles, Long totalBytes,
+        Long totalFiles, LocalDateTime contentUpdatedAt) {
+
+    // Reading the id of a lazy parent does not load it
+    public static FolderDto of(Folder folder) {
+        return new FolderDto(folder.getId(), folder.getName(),
+                folder.getParentFolder() == null ? null : folder.getParentFolder().getId(), folder.getCreatedAt(),
+                folder.getUpdatedAt(), folder.getIsTrashed(), folder.getDirectBytes(), folder.getDirectFiles(),
+                folder.getTotalBytes(), folder.getTotalFiles(), folder.getContentUpdatedAt());
+    }
+}
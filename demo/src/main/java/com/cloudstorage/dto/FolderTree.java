@@ -0,0 +1,16 @@
+package com.cloudstorage.dto;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A user's whole folder tree as a flat list in breadth-first order, so every parent comes before its
+ * children and a client rebuilds the nesting in one pass. The version changes whenever any node does.
+ */
+public record FolderTree(String version, List<Node> nodes) {
+
+    // parent is the index of the parent node, -1 at the root; totals include every folder below
+    public record Node(UUID id, String name, int parent, long files, long bytes, long totalFiles,
+            long totalBytes) {
+    }
+}
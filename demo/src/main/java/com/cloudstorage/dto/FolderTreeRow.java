@@ -0,0 +1,7 @@
+package com.cloudstorage.dto;
+
+import java.util.UUID;
+
+// One live folder with the count and bytes of the live files directly in it
+public record FolderTreeRow(UUID id, String name, UUID parentFolderId, Long files, Long bytes) {
+}
@@ -0,0 +1,17 @@
+package com.cloudstorage.dto;
+
+import lombok.Data;
+
+// Query parameters of a cursor-paginated listing; all optional
+@Data
+public class PageParams {
+    private String sort; // name, size, created or opened
+    private String direction; // asc or desc; defaults to asc for name, desc otherwise
+    private Integer limit;
+    private String cursor; // nextCursor of the previous page
+
+    // Listings answer with a plain list unless the client asked for pages
+    public boolean isRequested() {
+        return sort != null || direction != null || limit != null || cursor != null;
+    }
+}
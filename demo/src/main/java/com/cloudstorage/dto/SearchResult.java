@@ -0,0 +1,7 @@
+package com.cloudstorage.dto;
+
+import com.cloudstorage.search.SearchHit;
+
+// A ranked file or folder; exactly one of file and folder is set, per kind
+public record SearchResult(SearchHit.Kind kind, double score, FileDto file, FolderDto folder) {
+}
@@ -0,0 +1,18 @@
+package com.cloudstorage.dto;
+
+import com.cloudstorage.model.Share;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+public record ShareDto(UUID id, FileDto file, UserSummary sharedBy, UserSummary sharedWith,
+        Share.Permission permission, LocalDateTime createdAt, LocalDateTime expiresAt, LocalDateTime lastOpenedAt,
+        Boolean isStarred) {
+
+    // Expects file, its owner and folder, and both users to be fetched with the share
+    public static ShareDto of(Share share) {
+        return new ShareDto(share.getId(), FileDto.of(share.getFile()), UserSummary.of(share.getSharedBy()),
+                UserSummary.of(share.getSharedWith()), share.getPermission(), share.getCreatedAt(),
+                share.getExpiresAt(), share.getLastOpenedAt(), share.getIsStarred());
+    }
+}
@@ -0,0 +1,11 @@
+package com.cloudstorage.dto;
+
+import java.util.List;
+
+// Where a user's active storage goes, aggregated on the server
+public record StorageBreakdown(List<Group> byType, List<Group> byFolder, List<Group> byAge, List<FileDto> largest) {
+
+    // key identifies the group (MIME family, top-level folder id or "root", age bucket), name is what to show
+    public record Group(String key, String name, long bytes, long files) {
+    }
+}
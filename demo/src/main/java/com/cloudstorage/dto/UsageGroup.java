@@ -0,0 +1,5 @@
+package com.cloudstorage.dto;
+
+// Bytes and file count of one GROUP BY row; the key is whatever the query grouped on
+public record UsageGroup<K>(K key, Long bytes, Long files) {
+}
@@ -0,0 +1,18 @@
+package com.cloudstorage.dto;
+
+import com.cloudstorage.model.StorageUsage;
+
+import java.util.UUID;
+
+// What a user's files actually add up to, for checking the usage ledger against
+public record UsageTotals(UUID userId, Long activeBytes, Long activeFiles, Long trashedBytes, Long trashedFiles) {
+
+    public boolean matches(StorageUsage usage) {
+        return activeBytes.equals(usage.getActiveBytes()) && activeFiles.equals(usage.getActiveFiles())
+                && trashedBytes.equals(usage.getTrashedBytes()) && trashedFiles.equals(usage.getTrashedFiles());
+    }
+
+    public static UsageTotals empty(UUID userId) {
+        return new UsageTotals(userId, 0L, 0L, 0L, 0L);
+    }
+}
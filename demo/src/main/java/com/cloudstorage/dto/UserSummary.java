@@ -0,0 +1,13 @@
+package com.cloudstorage.dto;
+
+import com.cloudstorage.model.User;
+
+import java.util.UUID;
+
+// The parts of a user other users may see next to a file or share
+public record UserSummary(UUID id, String name, String email) {
+
+    public static UserSummary of(User user) {
+        return user == null ? null : new UserSummary(user.getId(), user.getName(), user.getEmail());
+    }
+}
@@ -0,0 +1,44 @@
+package com.cloudstorage.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Entity
+@Table(name = "blobs", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_blob_user_sha256", columnNames = { "user_id", "sha256" })
+}, indexes = {
+        @Index(name = "idx_blob_storage_key", columnList = "storage_key")
+})
+@Data
+public class Blob {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", nullable = false)
+    private User user; // Dedup scope: identical bytes are only shared within one user's library
+
+    @Column(nullable = false, length = 64)
+    private String sha256; // Hex SHA-256 of the object bytes, computed server-side
+
+    @Column(name = "storage_key", nullable = false)
+    private String storageKey; // S3 key holding the bytes
+
+    @Column(nullable = false)
+    private Long size;
+
+    @Column(name = "ref_count", nullable = false)
+    private Integer refCount = 1; // Number of File rows pointing at this object
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+}
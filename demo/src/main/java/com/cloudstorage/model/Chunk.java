@@ -0,0 +1,34 @@
+package com.cloudstorage.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "chunks", indexes = {
+        @Index(name = "idx_chunk_released", columnList = "ref_count, released_at")
+})
+@Data
+public class Chunk {
+
+    @Id
+    @Column(length = 64)
+    private String hash; // Hex SHA-256 of the chunk bytes, also names the S3 object
+
+    @Column(nullable = false)
+    private Integer size;
+
+    @Column(name = "ref_count", nullable = false)
+    private Integer refCount = 1; // Manifest entries pointing at this chunk; 0 once released, -1 while being swept
+
+    @Column(name = "released_at")
+    private LocalDateTime releasedAt; // Last time a reference was dropped; the sweeper deletes after a grace period
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+}
@@ -1,8 +1,10 @@
 package com.cloudstorage.model;
 
+import com.cloudstorage.search.NameIndexListener;
 import jakarta.persistence.*;
 import lombok.Data;
 import java.time.LocalDateTime;
+import java.util.Locale;
 import java.util.UUID;
 
 @Entity
@@ -10,8 +12,20 @@ import java.util.UUID;
         @Index(name = "idx_file_user", columnList = "user_id"),
         @Index(name = "idx_file_name", columnList = "fileName"),
         @Index(name = "idx_file_type", columnList = "fileType"),
-        @Index(name = "idx_file_created_at", columnList = "created_at")
+        @Index(name = "idx_file_created_at", columnList = "created_at"),
+        @Index(name = "idx_file_content_hash", columnList = "content_hash"),
+        @Index(name = "idx_file_path", columnList = "filePath"),
+        // Keyset pagination: one per sort column, ending in id as the tie-breaker
+        @Index(name = "idx_file_user_trashed_name", columnList = "user_id, is_trashed, fileName, id"),
+        @Index(name = "idx_file_user_trashed_size", columnList = "user_id, is_trashed, fileSize, id"),
+        @Index(name = "idx_file_user_trashed_created", columnList = "user_id, is_trashed, created_at, id"),
+        @Index(name = "idx_file_user_trashed_opened", columnList = "user_id, is_trashed, last_opened_at, id"),
+        @Index(name = "idx_file_folder_trashed_name", columnList = "folder_id, is_trashed, fileName, id"),
+        // Filtered search by exact type or type family prefix
+        @Index(name = "idx_file_user_type", columnList = "user_id, fileType"),
+        @Index(name = "idx_file_trash_root", columnList = "trash_root_id")
 })
+@EntityListeners(NameIndexListener.class)
 @Data
 public class File {
 
@@ -29,11 +43,14 @@ public class File {
 
     private Long fileSize; // Size in bytes
 
-    @ManyToOne
+    @Column(name = "content_hash", length = 64)
+    private String contentHash; // Hex SHA-256 of the content, null if never hashed by the server
+
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id", nullable = false)
     private User user; // File owner
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "folder_id")
     private Folder folder; // Parent folder (null if in root)
 
@@ -46,9 +63,15 @@ public class File {
     @Column(name = "is_trashed")
     private Boolean isTrashed = false;
 
+    @Column(name = "trash_root_id")
+    private UUID trashRootId; // Folder whose trashing took this file along; null if trashed on its own
+
     @Column(name = "is_starred")
     private Boolean isStarred = false;
 
+    @Column(name = "is_chunked")
+    private Boolean isChunked = false; // Content lives in the chunk store, see FileChunk
+
     @Column(name = "public_share_token", unique = true)
     private String publicShareToken;
 
@@ -60,10 +83,22 @@ public class File {
         createdAt = LocalDateTime.now();
         updatedAt = LocalDateTime.now();
         lastOpenedAt = LocalDateTime.now();
+        if (fileSize == null) {
+            fileSize = 0L; // Sort columns must not be null for keyset pagination
+        }
+        normalizeFileType();
     }
 
     @PreUpdate
     protected void onUpdate() {
         updatedAt = LocalDateTime.now();
+        normalizeFileType();
+    }
+
+    // MIME types are case-insensitive; storing them lower-cased lets type filters compare the bare column
+    private void normalizeFileType() {
+        if (fileType != null) {
+            fileType = fileType.trim().toLowerCase(Locale.ROOT);
+        }
     }
 }
@@ -0,0 +1,34 @@
+package com.cloudstorage.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import java.util.UUID;
+
+@Entity
+@Table(name = "file_chunks", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_file_chunk_index", columnNames = { "file_id", "chunk_index" })
+}, indexes = {
+        @Index(name = "idx_file_chunk_hash", columnList = "chunk_hash")
+})
+@Data
+public class FileChunk {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+
+    @Column(name = "file_id", nullable = false)
+    private UUID fileId;
+
+    @Column(name = "chunk_index", nullable = false)
+    private Integer chunkIndex; // Position of the chunk in the file, 0-based
+
+    @Column(name = "chunk_offset", nullable = false)
+    private Long chunkOffset; // Byte offset of the chunk in the file
+
+    @Column(name = "chunk_hash", nullable = false, length = 64)
+    private String chunkHash;
+
+    @Column(nullable = false)
+    private Integer length;
+}
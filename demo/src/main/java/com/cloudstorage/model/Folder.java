@@ -1,12 +1,19 @@
 package com.cloudstorage.model;
 
+import com.cloudstorage.search.NameIndexListener;
 import jakarta.persistence.*;
 import lombok.Data;
+import org.hibernate.annotations.ColumnDefault;
 import java.time.LocalDateTime;
 import java.util.UUID;
 
 @Entity
-@Table(name = "folders")
+@Table(name = "folders", indexes = {
+        @Index(name = "idx_folder_user_trashed_name", columnList = "user_id, is_trashed, name, id"),
+        @Index(name = "idx_folder_user_trashed_created", columnList = "user_id, is_trashed, created_at, id"),
+        @Index(name = "idx_folder_trash_root", columnList = "trash_root_id")
+})
+@EntityListeners(NameIndexListener.class)
 @Data
 public class Folder {
 
@@ -17,11 +24,11 @@ public class Folder {
     @Column(nullable = false)
     private String name;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "parent_folder_id")
     private Folder parentFolder; // Null if root folder
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id", nullable = false)
     private User user;
 
@@ -34,6 +41,30 @@ public class Folder {
     @Column(name = "is_trashed")
     private Boolean isTrashed = false;
 
+    @Column(name = "trash_root_id")
+    private UUID trashRootId; // Folder whose trashing took this one along, its own id for that folder itself
+
+    // Rollups of the live files below, moved by deltas in StorageUsageService. Never written from the
+    // entity, so saving a folder can't put back counters that changed since it was loaded.
+    @ColumnDefault("0")
+    @Column(name = "direct_bytes", nullable = false, insertable = false, updatable = false)
+    private Long directBytes = 0L; // Files directly in this folder
+
+    @ColumnDefault("0")
+    @Column(name = "direct_files", nullable = false, insertable = false, updatable = false)
+    private Long directFiles = 0L;
+
+    @ColumnDefault("0")
+    @Column(name = "total_bytes", nullable = false, insertable = false, updatable = false)
+    private Long totalBytes = 0L; // Files at any depth below
+
+    @ColumnDefault("0")
+    @Column(name = "total_files", nullable = false, insertable = false, updatable = false)
+    private Long totalFiles = 0L;
+
+    @Column(name = "content_updated_at", insertable = false, updatable = false)
+    private LocalDateTime contentUpdatedAt; // Last change to any file below
+
     @PrePersist
     protected void onCreate() {
         createdAt = LocalDateTime.now();
@@ -0,0 +1,48 @@
+package com.cloudstorage.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+
+import java.io.Serializable;
+import java.util.UUID;
+
+// Closure table of the folder hierarchy: one row for every folder and each of its ancestors,
+// including the folder itself at depth 0. Rows go with their folders through ON DELETE CASCADE.
+@Entity
+@Table(name = "folder_closure", indexes = {
+        @Index(name = "idx_folder_closure_descendant", columnList = "descendant_id, depth")
+})
+@IdClass(FolderClosure.Key.class)
+@Data
+public class FolderClosure {
+
+    @Id
+    @Column(name = "ancestor_id")
+    private UUID ancestorId;
+
+    @Id
+    @Column(name = "descendant_id")
+    private UUID descendantId;
+
+    @Column(nullable = false)
+    private Integer depth; // Levels between the two; 0 for the folder itself, 1 for a direct child
+
+    // Mapped only for the foreign keys
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "ancestor_id", insertable = false, updatable = false)
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    private Folder ancestor;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "descendant_id", insertable = false, updatable = false)
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    private Folder descendant;
+
+    @Data
+    public static class Key implements Serializable {
+        private UUID ancestorId;
+        private UUID descendantId;
+    }
+}
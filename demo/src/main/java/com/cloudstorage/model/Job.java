@@ -0,0 +1,90 @@
+package com.cloudstorage.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Entity
+@Table(name = "jobs", indexes = {
+        @Index(name = "idx_job_status_run_after", columnList = "status, run_after"),
+        @Index(name = "idx_job_user", columnList = "user_id")
+})
+@Data
+public class Job {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+
+    @Column(nullable = false, length = 64)
+    private String type; // Selects the JobHandler that runs it
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", nullable = false)
+    private User user; // The job runs on behalf of this user
+
+    @Column(length = 4000)
+    private String payload; // Handler-specific arguments, may be null
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private Status status = Status.QUEUED;
+
+    @Column(nullable = false)
+    private Integer attempts = 0;
+
+    @Column(name = "max_attempts", nullable = false)
+    private Integer maxAttempts;
+
+    @Column(name = "run_after", nullable = false)
+    private LocalDateTime runAfter; // Not claimed before this; pushed back between retries
+
+    @Column(name = "locked_by")
+    private String lockedBy; // Worker running the current attempt
+
+    @Column(name = "heartbeat_at")
+    private LocalDateTime heartbeatAt; // Refreshed by the running worker; a stale one means it died
+
+    @Column(name = "progress_done")
+    private Long progressDone = 0L;
+
+    @Column(name = "progress_total")
+    private Long progressTotal; // Null until the handler knows
+
+    @Column(length = 1000)
+    private String result; // Summary written by the handler on success
+
+    @Column(name = "last_error", length = 1000)
+    private String lastError;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
+
+    public enum Status {
+        QUEUED,
+        RUNNING,
+        COMPLETED,
+        FAILED
+    }
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+        updatedAt = createdAt;
+        if (runAfter == null) {
+            runAfter = createdAt;
+        }
+    }
+
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = LocalDateTime.now();
+    }
+}
@@ -6,7 +6,12 @@ import java.time.LocalDateTime;
 import java.util.UUID;
 
 @Entity
-@Table(name = "shares")
+@Table(name = "shares", indexes = {
+        @Index(name = "idx_share_file_with", columnList = "file_id, shared_with_user_id"),
+        @Index(name = "idx_share_with_created", columnList = "shared_with_user_id, created_at, id"),
+        // file_id lets recent-file queries skip trashed files without leaving the index
+        @Index(name = "idx_share_with_opened_file", columnList = "shared_with_user_id, last_opened_at, id, file_id")
+})
 @Data
 public class Share {
 
@@ -14,15 +19,15 @@ public class Share {
     @GeneratedValue(strategy = GenerationType.UUID)
     private UUID id;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "file_id", nullable = false)
     private File file;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "shared_by_user_id", nullable = false)
     private User sharedBy;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "shared_with_user_id", nullable = false)
     private User sharedWith;
 
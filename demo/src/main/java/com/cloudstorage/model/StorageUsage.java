@@ -0,0 +1,31 @@
+package com.cloudstorage.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Entity
+@Table(name = "storage_usage")
+@Data
+public class StorageUsage {
+
+    @Id
+    @Column(name = "user_id")
+    private UUID userId; // One row per user, created from the files table on first read
+
+    @Column(name = "active_bytes", nullable = false)
+    private Long activeBytes = 0L;
+
+    @Column(name = "active_files", nullable = false)
+    private Long activeFiles = 0L;
+
+    @Column(name = "trashed_bytes", nullable = false)
+    private Long trashedBytes = 0L; // Still stored until the trash is emptied
+
+    @Column(name = "trashed_files", nullable = false)
+    private Long trashedFiles = 0L;
+
+    @Column(name = "reconciled_at")
+    private LocalDateTime reconciledAt; // Last time the counters were recomputed rather than adjusted
+}
@@ -0,0 +1,38 @@
+package com.cloudstorage.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Entity
+@Table(name = "upload_parts", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_upload_part_session_number", columnNames = { "session_id", "part_number" })
+})
+@Data
+public class UploadPart {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+
+    @Column(name = "session_id", nullable = false)
+    private UUID sessionId;
+
+    @Column(name = "part_number", nullable = false)
+    private Integer partNumber; // 1-based, as in S3
+
+    @Column(nullable = false)
+    private String etag; // ETag returned by S3 for this part
+
+    @Column(nullable = false)
+    private Long size; // Bytes received for this part
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+}
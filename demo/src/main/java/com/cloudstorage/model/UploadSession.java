@@ -0,0 +1,87 @@
+package com.cloudstorage.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Entity
+@Table(name = "upload_sessions", indexes = {
+        @Index(name = "idx_upload_session_user", columnList = "user_id"),
+        @Index(name = "idx_upload_session_status_expiry", columnList = "status, expires_at")
+})
+@Data
+public class UploadSession {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", nullable = false)
+    private User user; // Session owner
+
+    @Column(nullable = false)
+    private String fileName;
+
+    private String fileType;
+
+    @Column(name = "folder_id")
+    private UUID folderId; // Target folder (null if root)
+
+    @Column(name = "s3_key", nullable = false)
+    private String s3Key;
+
+    @Column(name = "upload_id", nullable = false)
+    private String uploadId; // S3 multipart upload ID
+
+    @Column(name = "part_size", nullable = false)
+    private Long partSize; // Every part except the last must be exactly this size
+
+    @Column(name = "expected_size")
+    private Long expectedSize; // Optional size declared by the client at creation
+
+    @Column(name = "file_id")
+    private UUID fileId; // File registered on completion, so a repeated complete returns the same one
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private Mode mode = Mode.PROXIED;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private Status status = Status.ACTIVE;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    @Column(name = "expires_at", nullable = false)
+    private LocalDateTime expiresAt;
+
+    public enum Mode {
+        PROXIED, // Chunks flow through the app and are recorded in the part ledger
+        DIRECT // Browser PUTs parts straight to S3 via presigned URLs
+    }
+
+    public enum Status {
+        ACTIVE,
+        COMPLETING, // The multipart upload is being assembled; only completion can move it on
+        COMPLETED,
+        ABORTED,
+        EXPIRED
+    }
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+        updatedAt = LocalDateTime.now();
+    }
+
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = LocalDateTime.now();
+    }
+}
@@ -0,0 +1,59 @@
+package com.cloudstorage.repository;
+
+import com.cloudstorage.model.Blob;
+import com.cloudstorage.model.User;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface BlobRepository extends JpaRepository<Blob, UUID> {
+
+    Optional<Blob> findByUserAndSha256(User user, String sha256);
+
+    Optional<Blob> findByUserAndStorageKey(User user, String storageKey);
+
+    // Reference counts are only ever changed with single atomic statements so that
+    // concurrent uploads and deletes of the same content can't lose an update
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Blob b set b.refCount = b.refCount + 1 where b.id = :id and b.refCount > 0")
+    int incrementRefCount(@Param("id") UUID id);
+
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Blob b set b.refCount = b.refCount - 1 where b.id = :id")
+    int decrementRefCount(@Param("id") UUID id);
+
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from Blob b where b.id = :id and b.refCount <= 0")
+    int deleteIfUnreferenced(@Param("id") UUID id);
+
+    // Set-based variants for bulk purges, see ChunkRepository
+    List<Blob> findByUserAndSha256In(User user, Collection<String> hashes);
+
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Blob b set b.refCount = b.refCount - :count where b.id in :ids")
+    int decrementRefCounts(@Param("ids") Collection<UUID> ids, @Param("count") int count);
+
+    @Query("select b from Blob b where b.id in :ids and b.refCount <= 0")
+    List<Blob> findUnreferenced(@Param("ids") Collection<UUID> ids);
+
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from Blob b where b.id in :ids and b.refCount <= 0")
+    int deleteUnreferenced(@Param("ids") Collection<UUID> ids);
+
+    @Query("select b.storageKey from Blob b where b.storageKey in :keys")
+    List<String> findExistingKeys(@Param("keys") Collection<String> keys);
+}
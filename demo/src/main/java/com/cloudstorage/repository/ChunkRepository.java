@@ -0,0 +1,75 @@
+package com.cloudstorage.repository;
+
+import com.cloudstorage.model.Chunk;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface ChunkRepository extends JpaRepository<Chunk, String> {
+
+    // Plain insert (save() would merge over a concurrently created row); fails on a duplicate hash
+    @Transactional
+    @Modifying
+    @Query(value = "insert into chunks (hash, size, ref_count, created_at) values (:hash, :size, 1, CURRENT_TIMESTAMP)",
+            nativeQuery = true)
+    int insertNew(@Param("hash") String hash, @Param("size") int size);
+
+    // Same atomic reference counting as BlobRepository
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Chunk c set c.refCount = c.refCount + 1 where c.hash = :hash and c.refCount > 0")
+    int incrementRefCount(@Param("hash") String hash);
+
+    // A released chunk whose object the sweeper hasn't deleted yet is taken back by the next upload
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Chunk c set c.refCount = 1, c.releasedAt = null where c.hash = :hash and c.refCount = 0")
+    int revive(@Param("hash") String hash);
+
+    // Dropping the last reference leaves the row behind; objects are only deleted by the sweeper
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Chunk c set c.refCount = c.refCount - 1, c.releasedAt = :now where c.hash = :hash")
+    int decrementRefCount(@Param("hash") String hash, @Param("now") LocalDateTime now);
+
+    // Set-based variant for bulk purges
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Chunk c set c.refCount = c.refCount - :count, c.releasedAt = :now where c.hash in :hashes")
+    int decrementRefCounts(@Param("hashes") Collection<String> hashes, @Param("count") int count,
+            @Param("now") LocalDateTime now);
+
+    // Released before the cutoff, or claimed by a sweep that never finished
+    List<Chunk> findTop500ByRefCountLessThanEqualAndReleasedAtBefore(int refCount, LocalDateTime cutoff);
+
+    // Only one sweeper wins a chunk, and from then on neither revive() nor insertNew() can bring it back
+    // until its object and then its row are gone
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Chunk c set c.refCount = -1, c.releasedAt = :now"
+            + " where c.hash = :hash and c.refCount <= 0 and c.releasedAt < :cutoff")
+    int claimReleased(@Param("hash") String hash, @Param("cutoff") LocalDateTime cutoff,
+            @Param("now") LocalDateTime now);
+
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from Chunk c where c.hash in :hashes and c.refCount = -1")
+    int deleteClaimed(@Param("hashes") Collection<String> hashes);
+
+    // Objects that could not be deleted go back to released, to be retried after another grace period
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Chunk c set c.refCount = 0 where c.hash in :hashes and c.refCount = -1")
+    int unclaim(@Param("hashes") Collection<String> hashes);
+
+    @Query("select c.hash from Chunk c where c.hash in :hashes")
+    List<String> findExisting(@Param("hashes") Collection<String> hashes);
+}
@@ -0,0 +1,30 @@
+package com.cloudstorage.repository;
+
+import com.cloudstorage.model.FileChunk;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface FileChunkRepository extends JpaRepository<FileChunk, UUID> {
+
+    // Chunk manifest of a file, in reassembly order
+    List<FileChunk> findByFileIdOrderByChunkIndexAsc(UUID fileId);
+
+    @Transactional
+    void deleteByFileId(UUID fileId);
+
+    List<FileChunk> findByFileIdIn(Collection<UUID> fileIds);
+
+    @Transactional
+    @Modifying
+    @Query("delete from FileChunk c where c.fileId in :fileIds")
+    int deleteByFileIdIn(@Param("fileIds") Collection<UUID> fileIds);
+}
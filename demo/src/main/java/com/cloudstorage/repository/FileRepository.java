@@ -1,11 +1,26 @@
 package com.cloudstorage.repository;
 
+import com.cloudstorage.dto.FileDto;
+import com.cloudstorage.dto.UsageGroup;
+import com.cloudstorage.dto.UsageTotals;
 import com.cloudstorage.model.File;
 import com.cloudstorage.model.User;
+import com.cloudstorage.search.IndexedName;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -13,26 +28,176 @@ import java.util.UUID;
 @Repository
 public interface FileRepository extends JpaRepository<File, UUID>, JpaSpecificationExecutor<File> {
 
+    // Listings select only what FileDto carries, owner and folder joined in the same statement
+    String FILE_VIEW = "select new com.cloudstorage.dto.FileDto(f.id, f.fileName, f.fileType, f.fileSize, u.id,"
+            + " u.name, u.email, fo.id, fo.name, f.createdAt, f.updatedAt, f.lastOpenedAt, f.isTrashed, f.isStarred,"
+            + " f.publicShareToken) from File f join f.user u left join f.folder fo";
+
     // Find all files by user (not in trash)
-    List<File> findByUserAndIsTrashedFalse(User user);
+    @Query(FILE_VIEW + " where f.user = :user and f.isTrashed = false")
+    List<FileDto> findViewsByUser(@Param("user") User user);
+
+    // Files trashed along with a folder are listed through that folder
+    @Query(FILE_VIEW + " where f.user = :user and f.isTrashed = true and f.trashRootId is null")
+    List<FileDto> findTrashedViewsByUser(@Param("user") User user);
+
+    // One page of trashed files, for bulk purges. Locked, so an overlapping purge waits and then no longer
+    // sees the rows this one deleted.
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    List<File> findByUserAndIsTrashedTrueOrderByIdAsc(User user, Pageable pageable);
+
+    long countByUserAndIsTrashedTrue(User user);
 
-    // Find all trashed files by user
-    List<File> findByUserAndIsTrashedTrue(User user);
+    // The same for one trashed folder and everything below it, for deleting that folder forever
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select f from File f where f.user = :user and f.isTrashed = true and f.folder.id in"
+            + " (select c.descendantId from FolderClosure c where c.ancestorId = :rootId) order by f.id")
+    List<File> findTrashedInSubtree(@Param("user") User user, @Param("rootId") UUID rootId, Pageable pageable);
+
+    @Query("select count(f) from File f where f.user = :user and f.isTrashed = true and f.folder.id in"
+            + " (select c.descendantId from FolderClosure c where c.ancestorId = :rootId)")
+    long countTrashedInSubtree(@Param("user") User user, @Param("rootId") UUID rootId);
 
     // Find files by user and folder
-    List<File> findByUserAndFolderIdAndIsTrashedFalse(User user, UUID folderId);
+    @Query(FILE_VIEW + " where f.user = :user and fo.id = :folderId and f.isTrashed = false")
+    List<FileDto> findViewsByUserInFolder(@Param("user") User user, @Param("folderId") UUID folderId);
 
-    // Find files in root (no folder)
-    List<File> findByUserAndFolderIsNullAndIsTrashedFalse(User user);
+    // Files directly inside any of the given folders
+    List<File> findByUserAndFolderIdInAndIsTrashedFalse(User user, Collection<UUID> folderIds);
 
-    // Search files by name
-    List<File> findByUserAndFileNameContainingIgnoreCaseAndIsTrashedFalse(User user, String fileName);
+    // Find files in root (no folder)
+    @Query(FILE_VIEW + " where f.user = :user and f.folder is null and f.isTrashed = false")
+    List<FileDto> findViewsByUserInRoot(@Param("user") User user);
 
     Optional<File> findByPublicShareToken(String token);
 
     // Find starred files
-    List<File> findByUserAndIsStarredTrueAndIsTrashedFalse(User user);
+    @Query(FILE_VIEW + " where f.user = :user and f.isStarred = true and f.isTrashed = false")
+    List<FileDto> findStarredViewsByUser(@Param("user") User user);
+
+    // Most recently opened files, owned or shared with the user; a shared file counts from when this user last
+    // opened their share of it. Each branch reads only columns of its (user, last_opened_at) index, in index
+    // order, and stops at the limit; the rest of each row is joined in for the merged top rows alone, so the cost
+    // doesn't grow with the library. The branch sorts repeat the equality columns so that planners which only
+    // match an index to the whole ORDER BY (H2) walk it too.
+    @Query("select new com.cloudstorage.dto.FileDto(f.id, f.fileName, f.fileType, f.fileSize, u.id, u.name, u.email,"
+            + " fo.id, fo.name, f.createdAt, f.updatedAt, r.opened, f.isTrashed, coalesce(s.isStarred, f.isStarred),"
+            + " f.publicShareToken)"
+            + " from ((select o.id as file, o.lastOpenedAt as opened from File o"
+            + " where o.user = :user and o.isTrashed = false"
+            + " order by o.user.id desc, o.isTrashed desc, o.lastOpenedAt desc, o.id desc limit :limit)"
+            + " union all (select x.file.id as file, x.lastOpenedAt as opened from Share x"
+            + " where x.sharedWith = :user and x.file.isTrashed = false"
+            + " order by x.sharedWith.id desc, x.lastOpenedAt desc, x.id desc limit :limit)) r"
+            + " join File f on f.id = r.file join f.user u left join f.folder fo"
+            + " left join Share s on s.file = f and s.sharedWith = :user"
+            + " order by r.opened desc, f.id desc limit :limit")
+    List<FileDto> findRecentViews(@Param("user") User user, @Param("limit") int limit);
+
+    // Rows written before last_opened_at was always set fall back to their creation time
+    @Transactional
+    @Modifying
+    @Query("update File f set f.lastOpenedAt = f.createdAt where f.lastOpenedAt is null")
+    int fillMissingLastOpened();
+
+    // Storage breakdown: each grouping is over parameter-free expressions, which every database accepts in GROUP BY
+    @Query("select new com.cloudstorage.dto.UsageGroup(case when locate('/', f.fileType) > 1"
+            + " then lower(substring(f.fileType, 1, locate('/', f.fileType) - 1)) else 'other' end,"
+            + " coalesce(sum(f.fileSize), 0L), count(f)) from File f where f.user = :user and f.isTrashed = false"
+            + " group by case when locate('/', f.fileType) > 1"
+            + " then lower(substring(f.fileType, 1, locate('/', f.fileType) - 1)) else 'other' end")
+    List<UsageGroup<String>> sumActiveByMimeFamily(@Param("user") User user);
+
+    // Per direct folder; the caller rolls these up to top-level folders
+    @Query("select new com.cloudstorage.dto.UsageGroup(f.folder.id, coalesce(sum(f.fileSize), 0L), count(f))"
+            + " from File f where f.user = :user and f.isTrashed = false group by f.folder.id")
+    List<UsageGroup<UUID>> sumActiveByFolder(@Param("user") User user);
+
+    // Per day of upload; the caller folds days into age buckets relative to today
+    @Query("select new com.cloudstorage.dto.UsageGroup(cast(f.createdAt as LocalDate), coalesce(sum(f.fileSize), 0L),"
+            + " count(f)) from File f where f.user = :user and f.isTrashed = false"
+            + " group by cast(f.createdAt as LocalDate)")
+    List<UsageGroup<LocalDate>> sumActiveByDay(@Param("user") User user);
+
+    // Walks the (user, trashed, size) index from the top
+    @Query(FILE_VIEW + " where f.user = :user and f.isTrashed = false order by f.fileSize desc, f.id desc")
+    List<FileDto> findLargestViews(@Param("user") User user, Limit limit);
+
+    // Trashed too: a restore is a bulk update the in-process search index never hears about
+    @Query("select new com.cloudstorage.search.IndexedName(f.id, f.fileName) from File f where f.user.id = :userId")
+    List<IndexedName> findNamesByUser(@Param("userId") UUID userId);
+
+    // Search hits that still exist, belong to the user and aren't trashed
+    @Query(FILE_VIEW + " where f.user = :user and f.id in :ids and f.isTrashed = false")
+    List<FileDto> findViewsByUserAndIdIn(@Param("user") User user, @Param("ids") Collection<UUID> ids);
+
+    // Every user's usage in one pass over the files table, for reconciling the usage ledger
+    @Query("select new com.cloudstorage.dto.UsageTotals(f.user.id,"
+            + " coalesce(sum(case when f.isTrashed = false then coalesce(f.fileSize, 0L) else 0L end), 0L),"
+            + " sum(case when f.isTrashed = false then 1L else 0L end),"
+            + " coalesce(sum(case when f.isTrashed = true then coalesce(f.fileSize, 0L) else 0L end), 0L),"
+            + " sum(case when f.isTrashed = true then 1L else 0L end))"
+            + " from File f group by f.user.id")
+    List<UsageTotals> sumUsageByUser();
+
+    // Only the caller whose statement removed the rows may give back their references
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from File f where f.id in :ids")
+    int deleteByIds(@Param("ids") Collection<UUID> ids);
+
+    // Flips the trash flag only if it isn't already set that way, so the caller knows whether it changed.
+    // A file trashed along with a folder is left alone; it comes back only with that folder.
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update File f set f.isTrashed = :trashed"
+            + " where f.id = :id and f.isTrashed <> :trashed and f.trashRootId is null")
+    int updateTrashed(@Param("id") UUID id, @Param("trashed") boolean trashed);
+
+    // Every live file anywhere under the folder, marked with it so a restore brings back exactly these
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update File f set f.isTrashed = true, f.trashRootId = :rootId where f.isTrashed = false and f.folder.id in"
+            + " (select c.descendantId from FolderClosure c where c.ancestorId = :rootId)")
+    int trashInSubtree(@Param("rootId") UUID rootId);
+
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update File f set f.isTrashed = false, f.trashRootId = null where f.trashRootId = :rootId")
+    int restoreTrashedWith(@Param("rootId") UUID rootId);
+
+    @Query("select new com.cloudstorage.dto.UsageGroup(f.trashRootId, coalesce(sum(f.fileSize), 0L), count(f))"
+            + " from File f where f.trashRootId = :rootId group by f.trashRootId")
+    List<UsageGroup<UUID>> sumTrashedWith(@Param("rootId") UUID rootId);
+
+    // Bulk operations: the caller's own files among the ids, locked so that sums taken over them stay
+    // right until the bulk updates commit
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select f from File f where f.id in :ids and f.user = :user")
+    List<File> lockOwned(@Param("ids") Collection<UUID> ids, @Param("user") User user);
+
+    @Query("select new com.cloudstorage.dto.UsageGroup(f.folder.id, coalesce(sum(f.fileSize), 0L), count(f))"
+            + " from File f where f.id in :ids and f.isTrashed = :trashed group by f.folder.id")
+    List<UsageGroup<UUID>> sumByFolder(@Param("ids") Collection<UUID> ids, @Param("trashed") boolean trashed);
+
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update File f set f.isStarred = :starred where f.id in :ids")
+    int updateStarred(@Param("ids") Collection<UUID> ids, @Param("starred") boolean starred);
+
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update File f set f.isTrashed = :trashed"
+            + " where f.id in :ids and f.isTrashed <> :trashed and f.trashRootId is null")
+    int updateTrashed(@Param("ids") Collection<UUID> ids, @Param("trashed") boolean trashed);
+
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update File f set f.folder.id = :folderId, f.updatedAt = :now where f.id in :ids")
+    int moveAll(@Param("ids") Collection<UUID> ids, @Param("folderId") UUID folderId,
+            @Param("now") LocalDateTime now);
 
-    // Find recent files
-    List<File> findTop20ByUserAndIsTrashedFalseOrderByCreatedAtDesc(User user);
+    // Which of these storage locations are still referenced by a file row (trashed or not)
+    @Query("select distinct f.filePath from File f where f.filePath in :paths")
+    List<String> findExistingPaths(@Param("paths") Collection<String> paths);
 }
@@ -1,13 +1,27 @@
 package com.cloudstorage.repository;
 
 import com.cloudstorage.model.File;
+import com.cloudstorage.model.FolderClosure;
+import com.cloudstorage.model.Share;
 import com.cloudstorage.model.User;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Subquery;
 import org.springframework.data.jpa.domain.Specification;
 
 import java.time.LocalDateTime;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
 
 public class FileSpecification {
 
+    // Columns file listings can be sorted and paginated by
+    public static final Map<Keyset.SortBy, Keyset.Column> SORT_COLUMNS = Map.of(
+            Keyset.SortBy.NAME, new Keyset.Column("fileName", String.class),
+            Keyset.SortBy.SIZE, new Keyset.Column("fileSize", Long.class),
+            Keyset.SortBy.CREATED, new Keyset.Column("createdAt", LocalDateTime.class),
+            Keyset.SortBy.OPENED, new Keyset.Column("lastOpenedAt", LocalDateTime.class));
+
     public static Specification<File> hasUser(User user) {
         return (root, query, cb) -> cb.equal(root.get("user"), user);
     }
@@ -16,14 +30,62 @@ public class FileSpecification {
         return (root, query, cb) -> cb.equal(root.get("isTrashed"), false);
     }
 
+    public static Specification<File> isTrashed() {
+        return (root, query, cb) -> cb.equal(root.get("isTrashed"), true);
+    }
+
+    // Files trashed along with a folder come back with it, so the trash lists only that folder
+    public static Specification<File> isTrashedOnItsOwn() {
+        return (root, query, cb) -> cb.isNull(root.get("trashRootId"));
+    }
+
+    public static Specification<File> isStarred() {
+        return (root, query, cb) -> cb.equal(root.get("isStarred"), true);
+    }
+
+    // A null folder means the root
+    public static Specification<File> inFolder(UUID folderId) {
+        return (root, query, cb) -> folderId == null ? cb.isNull(root.get("folder"))
+                : cb.equal(root.get("folder").get("id"), folderId);
+    }
+
+    // In the folder or any folder below it, through the closure table
+    public static Specification<File> inSubtree(UUID folderId) {
+        return (root, query, cb) -> {
+            Subquery<UUID> subtree = query.subquery(UUID.class);
+            Root<FolderClosure> closure = subtree.from(FolderClosure.class);
+            subtree.select(closure.get("descendantId")).where(cb.equal(closure.get("ancestorId"), folderId));
+            return root.get("folder").get("id").in(subtree);
+        };
+    }
+
+    // Types are stored lower-cased (see File), so both forms compare the bare column and can use its index:
+    // a full MIME type by equality, a family such as "image" by the prefix "image/"
     public static Specification<File> hasFileType(String fileType) {
         return (root, query, cb) -> {
-            if (fileType == null || fileType.isEmpty())
+            if (fileType == null || fileType.isBlank())
                 return null;
-            return cb.like(cb.lower(root.get("fileType")), "%" + fileType.toLowerCase() + "%");
+            String type = fileType.trim().toLowerCase(Locale.ROOT);
+            if (type.contains("/"))
+                return cb.equal(root.get("fileType"), type);
+            return cb.like(root.get("fileType"), escapeLike(type) + "/%", '\\');
         };
     }
 
+    // Shared with another user or through a public link
+    public static Specification<File> isShared() {
+        return (root, query, cb) -> {
+            Subquery<Integer> shares = query.subquery(Integer.class);
+            Root<Share> share = shares.from(Share.class);
+            shares.select(cb.literal(1)).where(cb.equal(share.get("file"), root));
+            return cb.or(cb.isNotNull(root.get("publicShareToken")), cb.exists(shares));
+        };
+    }
+
+    public static Specification<File> isNotShared() {
+        return Specification.not(isShared());
+    }
+
     public static Specification<File> hasSizeGreaterThan(Long minSize) {
         return (root, query, cb) -> {
             if (minSize == null)
@@ -56,11 +118,24 @@ public class FileSpecification {
         };
     }
 
+    // Strictly before, for half-open ranges such as whole days
+    public static Specification<File> createdBeforeExclusive(LocalDateTime date) {
+        return (root, query, cb) -> {
+            if (date == null)
+                return null;
+            return cb.lessThan(root.get("createdAt"), date);
+        };
+    }
+
     public static Specification<File> nameContains(String name) {
         return (root, query, cb) -> {
             if (name == null || name.isEmpty())
                 return null;
-            return cb.like(cb.lower(root.get("fileName")), "%" + name.toLowerCase() + "%");
+            return cb.like(cb.lower(root.get("fileName")), "%" + escapeLike(name.toLowerCase()) + "%", '\\');
         };
     }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
 }
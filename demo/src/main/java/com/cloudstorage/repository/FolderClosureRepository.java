@@ -0,0 +1,84 @@
+package com.cloudstorage.repository;
+
+import com.cloudstorage.model.FolderClosure;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+// Every statement here handles a whole path or subtree at once, never one folder per round trip
+@Repository
+public interface FolderClosureRepository extends JpaRepository<FolderClosure, FolderClosure.Key> {
+
+    // The new folder's own row plus one per ancestor of its parent, if it has one
+    @Transactional
+    @Modifying
+    @Query("insert into FolderClosure (ancestorId, descendantId, depth)"
+            + " select c.ancestorId, :folderId, c.depth + 1 from FolderClosure c where c.descendantId = :parentId")
+    int insertAncestors(@Param("folderId") UUID folderId, @Param("parentId") UUID parentId);
+
+    @Transactional
+    @Modifying
+    @Query(value = "insert into folder_closure (ancestor_id, descendant_id, depth) values (:folderId, :folderId, 0)",
+            nativeQuery = true)
+    int insertSelf(@Param("folderId") UUID folderId);
+
+    // Cuts a subtree loose from everything above its top folder; the rows inside it stay. A folder k levels
+    // below the top has its outside ancestors exactly in its rows deeper than k.
+    @Transactional
+    @Modifying(flushAutomatically = true)
+    @Query("delete from FolderClosure c where c.descendantId in"
+            + " (select s.descendantId from FolderClosure s where s.ancestorId = :folderId)"
+            + " and c.depth > (select s.depth from FolderClosure s"
+            + " where s.ancestorId = :folderId and s.descendantId = c.descendantId)")
+    int detachSubtree(@Param("folderId") UUID folderId);
+
+    // Hangs a detached subtree under a new parent: every ancestor of the parent above every folder of the subtree
+    @Transactional
+    @Modifying
+    @Query("insert into FolderClosure (ancestorId, descendantId, depth)"
+            + " select up.ancestorId, down.descendantId, up.depth + down.depth + 1"
+            + " from FolderClosure up, FolderClosure down"
+            + " where up.descendantId = :parentId and down.ancestorId = :folderId")
+    int attachSubtree(@Param("folderId") UUID folderId, @Param("parentId") UUID parentId);
+
+    boolean existsByAncestorIdAndDescendantId(UUID ancestorId, UUID descendantId);
+
+    // Which of these folders are the folder itself or above it, i.e. can't be moved into it
+    @Query("select c.ancestorId from FolderClosure c where c.descendantId = :folderId and c.ancestorId in :ids")
+    List<UUID> findAncestorIdsIn(@Param("folderId") UUID folderId, @Param("ids") Collection<UUID> ids);
+
+    // Each of these folders once for every other one of them above it
+    @Query("select c.descendantId from FolderClosure c"
+            + " where c.ancestorId in :ids and c.descendantId in :ids and c.depth > 0")
+    List<UUID> findNestedIn(@Param("ids") Collection<UUID> ids);
+
+    // Folders created before the table existed, or written around FolderHierarchyService
+    @Query("select f.id from Folder f where not exists"
+            + " (select s.ancestorId from FolderClosure s where s.descendantId = f.id and s.depth = 0)")
+    List<UUID> findUnindexedFolderIds(Limit limit);
+
+    // Adds whatever rows are missing in one statement, walking down from the top-level folders. Folders
+    // caught in a parent loop can't be reached from the top, so the recursion ends and they get no rows.
+    @Transactional
+    @Modifying
+    @Query(value = "insert into folder_closure (ancestor_id, descendant_id, depth)"
+            + " with recursive reachable (id) as ("
+            + "   select id from folders where parent_folder_id is null"
+            + "   union all select f.id from reachable r join folders f on f.parent_folder_id = r.id),"
+            + " paths (ancestor_id, descendant_id, depth) as ("
+            + "   select id, id, 0 from reachable"
+            + "   union all select p.ancestor_id, f.id, p.depth + 1 from paths p"
+            + "   join folders f on f.parent_folder_id = p.descendant_id)"
+            + " select p.ancestor_id, p.descendant_id, p.depth from paths p where not exists (select 1"
+            + "   from folder_closure c where c.ancestor_id = p.ancestor_id and c.descendant_id = p.descendant_id)",
+            nativeQuery = true)
+    int backfill();
+}
@@ -1,25 +1,170 @@
 package com.cloudstorage.repository;
 
+import com.cloudstorage.dto.FolderDto;
+import com.cloudstorage.dto.FolderTreeRow;
 import com.cloudstorage.model.Folder;
 import com.cloudstorage.model.User;
+import com.cloudstorage.search.IndexedName;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 
 @Repository
-public interface FolderRepository extends JpaRepository<Folder, UUID> {
+public interface FolderRepository extends JpaRepository<Folder, UUID>, JpaSpecificationExecutor<Folder> {
+
+    // The parent's id comes from the foreign key column; no parent row is read. Sizes are the cached rollups.
+    String FOLDER_VIEW = "select new com.cloudstorage.dto.FolderDto(f.id, f.name, f.parentFolder.id, f.createdAt,"
+            + " f.updatedAt, f.isTrashed, f.directBytes, f.directFiles, f.totalBytes, f.totalFiles,"
+            + " f.contentUpdatedAt) from Folder f";
+
+    // Rollups as the files table has them, for a folder f
+    String LIVE_DIRECT_BYTES = "(select coalesce(sum(x.fileSize), 0L) from File x"
+            + " where x.folder.id = f.id and x.isTrashed = false)";
+    String LIVE_DIRECT_FILES = "(select count(x) from File x where x.folder.id = f.id and x.isTrashed = false)";
+    String LIVE_BELOW = " from FolderClosure c, File x where c.ancestorId = f.id and x.folder.id = c.descendantId"
+            + " and x.isTrashed = false)";
+    String LIVE_TOTAL_BYTES = "(select coalesce(sum(x.fileSize), 0L)" + LIVE_BELOW;
+    String LIVE_TOTAL_FILES = "(select count(x)" + LIVE_BELOW;
+    String RECOMPUTE_STATS = "update Folder f set f.directBytes = " + LIVE_DIRECT_BYTES + ", f.directFiles = "
+            + LIVE_DIRECT_FILES + ", f.totalBytes = " + LIVE_TOTAL_BYTES + ", f.totalFiles = " + LIVE_TOTAL_FILES
+            + ", f.contentUpdatedAt = coalesce((select max(x.updatedAt)" + LIVE_BELOW + ", f.contentUpdatedAt)";
 
     // Find all folders by user (not in trash)
     List<Folder> findByUserAndIsTrashedFalse(User user);
 
-    // Find all trashed folders by user
-    List<Folder> findByUserAndIsTrashedTrue(User user);
+    @Query(FOLDER_VIEW + " where f.user = :user and f.isTrashed = false")
+    List<FolderDto> findViewsByUser(@Param("user") User user);
+
+    // Trashed or not, for walking the hierarchy
+    @Query(FOLDER_VIEW + " where f.user = :user")
+    List<FolderDto> findAllViewsByUser(@Param("user") User user);
+
+    @Query("select new com.cloudstorage.search.IndexedName(f.id, f.name) from Folder f where f.user.id = :userId")
+    List<IndexedName> findNamesByUser(@Param("userId") UUID userId);
+
+    @Query(FOLDER_VIEW + " where f.user = :user and f.id in :ids and f.isTrashed = false")
+    List<FolderDto> findViewsByUserAndIdIn(@Param("user") User user, @Param("ids") Collection<UUID> ids);
+
+    // The folder and its ancestors, root first, in one statement over the closure table
+    @Query(FOLDER_VIEW + ", FolderClosure c where c.descendantId = :folderId and f.id = c.ancestorId"
+            + " and f.user = :user order by c.depth desc")
+    List<FolderDto> findPathViews(@Param("user") User user, @Param("folderId") UUID folderId);
+
+    @Query(FOLDER_VIEW + " where f.user = :user and f.isTrashed = false and f.id in"
+            + " (select c.descendantId from FolderClosure c where c.ancestorId = :folderId and c.depth > 0)")
+    List<FolderDto> findDescendantViews(@Param("user") User user, @Param("folderId") UUID folderId);
+
+    // Every live folder with its direct live files summed, in one statement; siblings come back by name
+    @Query("select new com.cloudstorage.dto.FolderTreeRow(f.id, f.name, f.parentFolder.id, count(x.id),"
+            + " coalesce(sum(x.fileSize), 0L)) from Folder f left join File x on x.folder = f and x.isTrashed = false"
+            + " where f.user = :user and f.isTrashed = false"
+            + " group by f.id, f.name, f.parentFolder.id order by f.name, f.id")
+    List<FolderTreeRow> findTreeRows(@Param("user") User user);
+
+    // Find all trashed folders by user; those trashed along with another folder are listed through it
+    @Query(FOLDER_VIEW + " where f.user = :user and f.isTrashed = true"
+            + " and (f.trashRootId is null or f.trashRootId = f.id)")
+    List<FolderDto> findTrashedViewsByUser(@Param("user") User user);
 
     // Find root folders (no parent)
-    List<Folder> findByUserAndParentFolderIsNullAndIsTrashedFalse(User user);
+    @Query(FOLDER_VIEW + " where f.user = :user and f.parentFolder is null and f.isTrashed = false")
+    List<FolderDto> findViewsByUserInRoot(@Param("user") User user);
 
     // Find subfolders of a parent folder
-    List<Folder> findByUserAndParentFolderIdAndIsTrashedFalse(User user, UUID parentFolderId);
+    @Query(FOLDER_VIEW + " where f.user = :user and f.parentFolder.id = :parentId and f.isTrashed = false")
+    List<FolderDto> findViewsByUserInFolder(@Param("user") User user, @Param("parentId") UUID parentFolderId);
+
+    // The folder and every live folder below it, marked with the folder's id
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Folder f set f.isTrashed = true, f.trashRootId = :rootId where f.isTrashed = false and f.id in"
+            + " (select c.descendantId from FolderClosure c where c.ancestorId = :rootId)")
+    int trashSubtree(@Param("rootId") UUID rootId);
+
+    // Folders trashed before the marker existed carry none, so the folder itself is matched by id too
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Folder f set f.isTrashed = false, f.trashRootId = null"
+            + " where f.trashRootId = :rootId or f.id = :rootId")
+    int restoreTrashedWith(@Param("rootId") UUID rootId);
+
+    // Moves the rollups of a folder and every folder above it by a delta in one statement, like the usage
+    // ledger; minDepth 1 leaves the folder itself out
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Folder f set f.totalBytes = f.totalBytes + :bytes, f.totalFiles = f.totalFiles + :files,"
+            + " f.directBytes = f.directBytes + case when f.id = :folderId then :bytes else 0L end,"
+            + " f.directFiles = f.directFiles + case when f.id = :folderId then :files else 0L end,"
+            + " f.contentUpdatedAt = :now where f.id in (select c.ancestorId from FolderClosure c"
+            + " where c.descendantId = :folderId and c.depth >= :minDepth)")
+    int adjustStats(@Param("folderId") UUID folderId, @Param("minDepth") int minDepth, @Param("bytes") long bytes,
+            @Param("files") long files, @Param("now") LocalDateTime now);
+
+    // Adds (sign 1) or takes away (sign -1) a folder's totals from every folder above it, around a move
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Folder f set"
+            + " f.totalBytes = f.totalBytes + :sign * (select m.totalBytes from Folder m where m.id = :folderId),"
+            + " f.totalFiles = f.totalFiles + :sign * (select m.totalFiles from Folder m where m.id = :folderId),"
+            + " f.contentUpdatedAt = :now where f.id in (select c.ancestorId from FolderClosure c"
+            + " where c.descendantId = :folderId and c.depth > 0)")
+    int shiftAncestorStats(@Param("folderId") UUID folderId, @Param("sign") long sign,
+            @Param("now") LocalDateTime now);
+
+    // Live folders whose rollups disagree with their files
+    @Query("select f.id from Folder f where f.isTrashed = false and (f.directBytes <> " + LIVE_DIRECT_BYTES
+            + " or f.directFiles <> " + LIVE_DIRECT_FILES + " or f.totalBytes <> " + LIVE_TOTAL_BYTES
+            + " or f.totalFiles <> " + LIVE_TOTAL_FILES + ")")
+    List<UUID> findDriftedStatsIds(Limit limit);
+
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(RECOMPUTE_STATS + " where f.id in :ids")
+    int recomputeStats(@Param("ids") Collection<UUID> ids);
+
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(RECOMPUTE_STATS + " where f.id in (select c.descendantId from FolderClosure c where c.ancestorId = :rootId)")
+    int recomputeSubtreeStats(@Param("rootId") UUID rootId);
+
+    // Bulk operations: the caller's own folders among the ids, locked like their files
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select f from Folder f where f.id in :ids and f.user = :user")
+    List<Folder> lockOwned(@Param("ids") Collection<UUID> ids, @Param("user") User user);
+
+    // Parent links inside a trashed subtree, cut first so deleteTrashedSubtree needn't go leaves first
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Folder f set f.parentFolder = null where f.isTrashed = true and f.id <> :rootId and f.id in"
+            + " (select c.descendantId from FolderClosure c where c.ancestorId = :rootId)")
+    int unlinkTrashedSubtree(@Param("rootId") UUID rootId);
+
+    // Delete a trashed folder and every folder below it in one statement, once their files are gone
+    // and unlinkTrashedSubtree has run; their closure rows go with them
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from Folder f where f.isTrashed = true and f.id in"
+            + " (select c.descendantId from FolderClosure c where c.ancestorId = :rootId)")
+    int deleteTrashedSubtree(@Param("rootId") UUID rootId);
+
+    // Delete trashed folders that are now empty; repeated until nothing changes, this removes
+    // trashed subtrees one level at a time, leaves first
+    @Transactional
+    @Modifying
+    @Query("delete from Folder f where f.user = :user and f.isTrashed = true"
+            + " and not exists (select c.id from Folder c where c.parentFolder = f)"
+            + " and not exists (select x.id from File x where x.folder = f)")
+    int deleteEmptyTrashed(@Param("user") User user);
 }
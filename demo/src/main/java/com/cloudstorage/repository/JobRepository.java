@@ -0,0 +1,87 @@
+package com.cloudstorage.repository;
+
+import com.cloudstorage.model.Job;
+import com.cloudstorage.model.User;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface JobRepository extends JpaRepository<Job, UUID> {
+
+    // Lock runnable jobs for the current transaction; rows another worker holds are skipped, not waited on
+    @Query(value = "select * from jobs where status = 'QUEUED' and run_after <= :now"
+            + " order by run_after limit :limit for update skip locked", nativeQuery = true)
+    List<Job> lockRunnable(@Param("now") LocalDateTime now, @Param("limit") int limit);
+
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Job j set j.status = :running, j.lockedBy = :worker, j.heartbeatAt = :now, j.updatedAt = :now,"
+            + " j.attempts = j.attempts + 1 where j.id in :ids")
+    int markRunning(@Param("ids") Collection<UUID> ids, @Param("worker") String worker,
+            @Param("now") LocalDateTime now, @Param("running") Job.Status running);
+
+    // Every update of a running job is fenced on the worker holding it: once a stale job has been
+    // handed to another worker, the old one can no longer change it
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Job j set j.heartbeatAt = :now where j.id in :ids and j.lockedBy = :worker")
+    int heartbeat(@Param("ids") Collection<UUID> ids, @Param("worker") String worker,
+            @Param("now") LocalDateTime now);
+
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Job j set j.progressDone = :done, j.progressTotal = :total, j.heartbeatAt = :now,"
+            + " j.updatedAt = :now where j.id = :id and j.lockedBy = :worker")
+    int updateProgress(@Param("id") UUID id, @Param("worker") String worker, @Param("done") long done,
+            @Param("total") Long total, @Param("now") LocalDateTime now);
+
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Job j set j.status = :status, j.result = :result, j.lastError = :error, j.lockedBy = null,"
+            + " j.finishedAt = :now, j.updatedAt = :now where j.id = :id and j.lockedBy = :worker")
+    int finish(@Param("id") UUID id, @Param("worker") String worker, @Param("status") Job.Status status,
+            @Param("result") String result, @Param("error") String error, @Param("now") LocalDateTime now);
+
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Job j set j.status = :queued, j.lastError = :error, j.lockedBy = null, j.runAfter = :runAfter,"
+            + " j.updatedAt = :now where j.id = :id and j.lockedBy = :worker")
+    int retry(@Param("id") UUID id, @Param("worker") String worker, @Param("error") String error,
+            @Param("runAfter") LocalDateTime runAfter, @Param("now") LocalDateTime now,
+            @Param("queued") Job.Status queued);
+
+    // Jobs whose worker stopped sending heartbeats go back to the queue, or fail when out of attempts
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Job j set j.status = :queued, j.lockedBy = null, j.runAfter = :now, j.updatedAt = :now,"
+            + " j.lastError = 'Worker stopped responding'"
+            + " where j.status = :running and j.heartbeatAt < :cutoff and j.attempts < j.maxAttempts")
+    int requeueStale(@Param("cutoff") LocalDateTime cutoff, @Param("now") LocalDateTime now,
+            @Param("running") Job.Status running, @Param("queued") Job.Status queued);
+
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Job j set j.status = :failed, j.lockedBy = null, j.finishedAt = :now, j.updatedAt = :now,"
+            + " j.lastError = 'Worker stopped responding'"
+            + " where j.status = :running and j.heartbeatAt < :cutoff and j.attempts >= j.maxAttempts")
+    int failStale(@Param("cutoff") LocalDateTime cutoff, @Param("now") LocalDateTime now,
+            @Param("running") Job.Status running, @Param("failed") Job.Status failed);
+
+    @Transactional
+    @Modifying
+    @Query("delete from Job j where j.finishedAt < :cutoff")
+    int deleteFinishedBefore(@Param("cutoff") LocalDateTime cutoff);
+
+    // A queued or running job of this type for the user, to avoid starting the same work twice
+    Optional<Job> findFirstByUserAndTypeAndStatusIn(User user, String type, Collection<Job.Status> statuses);
+}
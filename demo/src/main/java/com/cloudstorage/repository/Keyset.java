@@ -0,0 +1,160 @@
+package com.cloudstorage.repository;
+
+import com.cloudstorage.dto.CursorPage;
+import com.cloudstorage.dto.PageParams;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import org.springframework.beans.BeanWrapperImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Keyset (cursor) pagination. Rows are ordered by (sort column, id) and a page starts strictly after
+ * the last row of the previous one, so the database seeks into the matching index instead of
+ * skipping over an offset and page N costs the same as page 1. The cursor handed to clients is an
+ * opaque encoding of that last row's sort value and id. Sort columns must not be null.
+ */
+public final class Keyset {
+
+    public static final int DEFAULT_LIMIT = 50;
+    public static final int MAX_LIMIT = 500;
+
+    private Keyset() {
+    }
+
+    public enum SortBy {
+        NAME,
+        SIZE,
+        CREATED,
+        OPENED
+    }
+
+    // Entity attribute behind a sort key; nested paths such as file.fileName are allowed
+    public record Column(String path, Class<? extends Comparable<?>> type) {
+    }
+
+    // A validated page request for one listing
+    public record Request(SortBy sortBy, Column column, boolean ascending, int limit, Object afterValue,
+            UUID afterId) {
+
+        public Sort sort() {
+            Sort.Direction direction = ascending ? Sort.Direction.ASC : Sort.Direction.DESC;
+            return Sort.by(direction, column.path()).and(Sort.by(direction, "id"));
+        }
+    }
+
+    public static Request request(Map<SortBy, Column> columns, PageParams params) {
+        SortBy sortBy = params.getSort() == null ? SortBy.NAME : parse(SortBy.class, params.getSort(), "sort");
+        Column column = columns.get(sortBy);
+        if (column == null) {
+            throw new IllegalArgumentException("Cannot sort this listing by " + sortBy.name().toLowerCase(Locale.ROOT));
+        }
+        boolean ascending = params.getDirection() == null ? sortBy == SortBy.NAME
+                : parse(Sort.Direction.class, params.getDirection(), "direction") == Sort.Direction.ASC;
+        int limit = params.getLimit() == null ? DEFAULT_LIMIT : params.getLimit();
+        if (limit < 1 || limit > MAX_LIMIT) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_LIMIT);
+        }
+        if (params.getCursor() == null) {
+            return new Request(sortBy, column, ascending, limit, null, null);
+        }
+        // sort|id|value; the value goes last since names may contain the separator
+        String[] parts = decode(params.getCursor()).split("\\|", 3);
+        if (parts.length != 3 || !parts[0].equals(sortBy.name())) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        try {
+            return new Request(sortBy, column, ascending, limit, parseValue(column.type(), parts[2]),
+                    UUID.fromString(parts[1]));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+
+    // Rows strictly after the cursor in (column, id) order; no restriction on the first page
+    public static <T> Specification<T> after(Request request) {
+        return (root, query, cb) -> {
+            if (request.afterId() == null) {
+                return null;
+            }
+            Path<Comparable<Object>> column = path(root, request.column().path());
+            Comparable<Object> value = comparable(request.afterValue());
+            Path<UUID> id = root.get("id");
+            Predicate beyond = request.ascending() ? cb.greaterThan(column, value) : cb.lessThan(column, value);
+            Predicate tie = cb.and(cb.equal(column, value), request.ascending()
+                    ? cb.greaterThan(id, request.afterId()) : cb.lessThan(id, request.afterId()));
+            return cb.or(beyond, tie);
+        };
+    }
+
+    // rows were fetched with limit + 1; the extra one only tells whether another page exists
+    public static <T> CursorPage<T> page(List<T> rows, Request request) {
+        if (rows.size() <= request.limit()) {
+            return new CursorPage<>(rows, null);
+        }
+        List<T> items = rows.subList(0, request.limit());
+        BeanWrapperImpl last = new BeanWrapperImpl(items.get(items.size() - 1));
+        Object value = last.getPropertyValue(request.column().path());
+        if (value instanceof LocalDateTime time) {
+            // An entity that hasn't been reloaded can carry more precision than the column keeps (microseconds,
+            // rounded); the cursor must hold the stored value or the tie comparison misses it
+            value = time.plusNanos(500).truncatedTo(ChronoUnit.MICROS);
+        }
+        String cursor = request.sortBy().name() + "|" + last.getPropertyValue("id") + "|" + value;
+        return new CursorPage<>(List.copyOf(items), Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(cursor.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static Object parseValue(Class<?> type, String raw) {
+        if (type == String.class) {
+            return raw;
+        }
+        if (type == Long.class) {
+            return Long.valueOf(raw);
+        }
+        if (type == LocalDateTime.class) {
+            return LocalDateTime.parse(raw);
+        }
+        throw new IllegalStateException("Unsupported sort column type " + type);
+    }
+
+    private static String decode(String cursor) {
+        try {
+            return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+
+    private static <E extends Enum<E>> E parse(Class<E> type, String value, String name) {
+        try {
+            return Enum.valueOf(type, value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid " + name + ": " + value);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Comparable<Object> comparable(Object value) {
+        return (Comparable<Object>) value;
+    }
+
+    private static <X> Path<X> path(Path<?> root, String dotted) {
+        Path<?> path = root;
+        for (String part : dotted.split("\\.")) {
+            path = path.get(part);
+        }
+        @SuppressWarnings("unchecked")
+        Path<X> typed = (Path<X>) path;
+        return typed;
+    }
+}
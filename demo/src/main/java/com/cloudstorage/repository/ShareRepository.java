@@ -2,20 +2,31 @@ package com.cloudstorage.repository;
 
 import com.cloudstorage.model.Share;
 import com.cloudstorage.model.User;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
 @Repository
-public interface ShareRepository extends JpaRepository<Share, UUID> {
+public interface ShareRepository extends JpaRepository<Share, UUID>, JpaSpecificationExecutor<Share> {
+
+    // Listings fetch everything ShareDto reads together with the share, in one statement
 
     // Find shares where file is shared WITH this user
+    @EntityGraph(attributePaths = { "file", "file.user", "file.folder", "sharedBy", "sharedWith" })
     List<Share> findBySharedWith(User user);
 
     // Find shares created BY this user
+    @EntityGraph(attributePaths = { "file", "file.user", "file.folder", "sharedBy", "sharedWith" })
     List<Share> findBySharedBy(User user);
 
     // Find specific share
@@ -25,5 +36,17 @@ public interface ShareRepository extends JpaRepository<Share, UUID> {
     boolean existsByFileIdAndSharedWith(UUID fileId, User sharedWith);
 
     // Find all shares for a specific file
+    @EntityGraph(attributePaths = { "file", "file.user", "file.folder", "sharedBy", "sharedWith" })
     List<Share> findByFileId(UUID fileId);
+
+    @Transactional
+    @Modifying
+    @Query("update Share s set s.lastOpenedAt = s.createdAt where s.lastOpenedAt is null")
+    int fillMissingLastOpened();
+
+    // Drop the shares of files about to be deleted
+    @Transactional
+    @Modifying
+    @Query("delete from Share s where s.file.id in :fileIds")
+    int deleteByFileIdIn(@Param("fileIds") Collection<UUID> fileIds);
 }
@@ -0,0 +1,55 @@
+package com.cloudstorage.repository;
+
+import com.cloudstorage.model.StorageUsage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.UUID;
+
+@Repository
+public interface StorageUsageRepository extends JpaRepository<StorageUsage, UUID> {
+
+    String ACTIVE_BYTES = "(select coalesce(sum(f.fileSize), 0) from File f"
+            + " where f.user.id = u.userId and f.isTrashed = false)";
+    String ACTIVE_FILES = "(select count(f) from File f where f.user.id = u.userId and f.isTrashed = false)";
+    String TRASHED_BYTES = "(select coalesce(sum(f.fileSize), 0) from File f"
+            + " where f.user.id = u.userId and f.isTrashed = true)";
+    String TRASHED_FILES = "(select count(f) from File f where f.user.id = u.userId and f.isTrashed = true)";
+
+    // Counters only ever move by deltas in a single statement, like blob reference counts, so concurrent
+    // uploads and deletes can't lose each other's update. No row yet means nothing to adjust: it is
+    // computed from the files table, which already includes the change, when first read.
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update StorageUsage u set u.activeBytes = u.activeBytes + :activeBytes,"
+            + " u.activeFiles = u.activeFiles + :activeFiles, u.trashedBytes = u.trashedBytes + :trashedBytes,"
+            + " u.trashedFiles = u.trashedFiles + :trashedFiles where u.userId = :userId")
+    int adjust(@Param("userId") UUID userId, @Param("activeBytes") long activeBytes,
+            @Param("activeFiles") long activeFiles, @Param("trashedBytes") long trashedBytes,
+            @Param("trashedFiles") long trashedFiles);
+
+    // Creates the row from the user's files in one statement; fails on the primary key if it already exists
+    @Transactional
+    @Modifying
+    @Query("insert into StorageUsage (userId, activeBytes, activeFiles, trashedBytes, trashedFiles, reconciledAt)"
+            + " select :userId,"
+            + " coalesce(sum(case when f.isTrashed = false then coalesce(f.fileSize, 0L) else 0L end), 0L),"
+            + " coalesce(sum(case when f.isTrashed = false then 1L else 0L end), 0L),"
+            + " coalesce(sum(case when f.isTrashed = true then coalesce(f.fileSize, 0L) else 0L end), 0L),"
+            + " coalesce(sum(case when f.isTrashed = true then 1L else 0L end), 0L),"
+            + " current_timestamp from File f where f.user.id = :userId")
+    int create(@Param("userId") UUID userId);
+
+    // Overwrites the counters with what the files table says, each row in a single statement
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update StorageUsage u set u.activeBytes = " + ACTIVE_BYTES + ", u.activeFiles = " + ACTIVE_FILES
+            + ", u.trashedBytes = " + TRASHED_BYTES + ", u.trashedFiles = " + TRASHED_FILES
+            + ", u.reconciledAt = current_timestamp where u.userId in :userIds")
+    int recompute(@Param("userIds") Collection<UUID> userIds);
+}
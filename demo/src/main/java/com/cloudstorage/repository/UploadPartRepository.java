@@ -0,0 +1,20 @@
+package com.cloudstorage.repository;
+
+import com.cloudstorage.model.UploadPart;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface UploadPartRepository extends JpaRepository<UploadPart, UUID> {
+
+    // Ledger of received parts, in S3 assembly order
+    List<UploadPart> findBySessionIdOrderByPartNumberAsc(UUID sessionId);
+
+    Optional<UploadPart> findBySessionIdAndPartNumber(UUID sessionId, Integer partNumber);
+
+    void deleteBySessionId(UUID sessionId);
+}
@@ -0,0 +1,35 @@
+package com.cloudstorage.repository;
+
+import com.cloudstorage.model.UploadSession;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface UploadSessionRepository extends JpaRepository<UploadSession, UUID> {
+
+    // Find sessions that are past their expiry and still hold an open S3 upload
+    List<UploadSession> findTop100ByStatusAndExpiresAtBefore(UploadSession.Status status, LocalDateTime now);
+
+    // Serializes ledger writes and the status changes of completion for one session until commit
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select s from UploadSession s where s.id = :id")
+    Optional<UploadSession> lockById(@Param("id") UUID id);
+
+    // Ends a session only while it is still ACTIVE; of racing aborts and completions just one gets a row back
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update UploadSession s set s.status = :status where s.id = :id and s.status = :active")
+    int endIfActive(@Param("id") UUID id, @Param("status") UploadSession.Status status,
+            @Param("active") UploadSession.Status active);
+}
@@ -0,0 +1,7 @@
+package com.cloudstorage.search;
+
+import java.util.UUID;
+
+// What the in-process index needs of a file or folder row
+public record IndexedName(UUID id, String name) {
+}
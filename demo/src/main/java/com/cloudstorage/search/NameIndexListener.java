@@ -0,0 +1,41 @@
+package com.cloudstorage.search;
+
+import com.cloudstorage.model.File;
+import com.cloudstorage.model.Folder;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/**
+ * Passes saved and deleted File and Folder names on to the search engine. Hibernate creates it
+ * through Spring, which injects the provider; where no engine is configured (repository tests)
+ * it does nothing.
+ */
+public class NameIndexListener {
+
+    @Autowired
+    private ObjectProvider<NameSearchEngine> engine;
+
+    @PostPersist
+    @PostUpdate
+    public void saved(Object entity) {
+        if (entity instanceof File file) {
+            engine.ifAvailable(e -> e.indexed(SearchHit.Kind.FILE, file.getUser().getId(), file.getId(),
+                    file.getFileName()));
+        } else if (entity instanceof Folder folder) {
+            engine.ifAvailable(e -> e.indexed(SearchHit.Kind.FOLDER, folder.getUser().getId(), folder.getId(),
+                    folder.getName()));
+        }
+    }
+
+    @PostRemove
+    public void removed(Object entity) {
+        if (entity instanceof File file) {
+            engine.ifAvailable(e -> e.removed(SearchHit.Kind.FILE, file.getUser().getId(), file.getId()));
+        } else if (entity instanceof Folder folder) {
+            engine.ifAvailable(e -> e.removed(SearchHit.Kind.FOLDER, folder.getUser().getId(), folder.getId()));
+        }
+    }
+}
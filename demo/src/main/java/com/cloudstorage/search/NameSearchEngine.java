@@ -0,0 +1,23 @@
+package com.cloudstorage.search;
+
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Ranks the names of a user's files and folders against a query, best first. A hit is a candidate
+ * only: an engine may lag behind the database, so callers load hits by id and drop what no longer
+ * exists or has been trashed.
+ */
+public interface NameSearchEngine {
+
+    // Hits ranked from position offset on, at most limit of them
+    List<SearchHit> search(UUID userId, String query, Set<SearchHit.Kind> kinds, int offset, int limit);
+
+    // Told about names saved or removed through JPA; engines that query the tables directly ignore it
+    default void indexed(SearchHit.Kind kind, UUID userId, UUID id, String name) {
+    }
+
+    default void removed(SearchHit.Kind kind, UUID userId, UUID id) {
+    }
+}
@@ -0,0 +1,196 @@
+package com.cloudstorage.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Trigram inverted index over the names of one user's files and folders. Entries are numbered in
+ * insertion order and each trigram maps to the ascending list of entries containing it, so a query
+ * only visits entries that share at least one trigram with it. Renames and removals leave a
+ * tombstone behind; once tombstones outnumber live entries the index is rebuilt.
+ */
+class NgramIndex {
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Postings> postings = new HashMap<>();
+    private final Map<UUID, Integer> entryOf = new HashMap<>();
+    private final List<UUID> ids = new ArrayList<>();
+    private final List<String> names = new ArrayList<>();
+    private final List<SearchHit.Kind> kinds = new ArrayList<>();
+    private Postings gramCounts = new Postings();
+    private final BitSet removed = new BitSet();
+    private final long builtAt;
+
+    NgramIndex(long builtAt) {
+        this.builtAt = builtAt;
+    }
+
+    long builtAt() {
+        return builtAt;
+    }
+
+    int size() {
+        lock.readLock().lock();
+        try {
+            return entryOf.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void put(SearchHit.Kind kind, UUID id, String name) {
+        String normalized = Trigrams.normalize(name);
+        lock.writeLock().lock();
+        try {
+            Integer existing = entryOf.get(id);
+            if (existing != null) {
+                if (names.get(existing).equals(normalized)) {
+                    return;
+                }
+                removed.set(existing);
+            }
+            int entry = ids.size();
+            ids.add(id);
+            names.add(normalized);
+            kinds.add(kind);
+            entryOf.put(id, entry);
+            Set<String> grams = Trigrams.of(normalized);
+            gramCounts.add(grams.size());
+            for (String gram : grams) {
+                postings.computeIfAbsent(gram, g -> new Postings()).add(entry);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void remove(UUID id) {
+        lock.writeLock().lock();
+        try {
+            Integer entry = entryOf.remove(id);
+            if (entry == null) {
+                return;
+            }
+            removed.set(entry);
+            if (removed.cardinality() > entryOf.size() && removed.cardinality() > 1024) {
+                compact();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    List<SearchHit> search(String query, Set<SearchHit.Kind> wanted, int offset, int limit) {
+        String q = Trigrams.normalize(query);
+        int keep = offset + limit;
+        if (q.isEmpty() || keep <= 0) {
+            return List.of();
+        }
+        Comparator<Scored> worstFirst = Comparator.comparingDouble(Scored::score)
+                .thenComparing(Scored::name, Comparator.reverseOrder())
+                .thenComparing(Scored::id, Comparator.reverseOrder());
+        PriorityQueue<Scored> best = new PriorityQueue<>(worstFirst);
+        lock.readLock().lock();
+        try {
+            Set<String> queryGrams = Trigrams.of(q);
+            int[] shared = new int[ids.size()];
+            Postings touched = new Postings();
+            if (q.length() < 3) {
+                // Too short to share a trigram with a name it sits in the middle of; check every name
+                for (int entry = 0; entry < ids.size(); entry++) {
+                    touched.add(entry);
+                }
+            }
+            for (String gram : queryGrams) {
+                Postings list = postings.get(gram);
+                if (list == null) {
+                    continue;
+                }
+                for (int i = 0; i < list.size; i++) {
+                    int entry = list.values[i];
+                    if (shared[entry]++ == 0 && q.length() >= 3) {
+                        touched.add(entry);
+                    }
+                }
+            }
+            for (int i = 0; i < touched.size; i++) {
+                int entry = touched.values[i];
+                if (removed.get(entry) || !wanted.contains(kinds.get(entry))) {
+                    continue;
+                }
+                String name = names.get(entry);
+                double score = Trigrams.score(name, q, shared[entry], queryGrams.size(), gramCounts.values[entry]);
+                if (score < 0) {
+                    continue;
+                }
+                Scored scored = new Scored(entry, score, name, ids.get(entry));
+                if (best.size() < keep) {
+                    best.add(scored);
+                } else if (worstFirst.compare(scored, best.peek()) > 0) {
+                    best.poll();
+                    best.add(scored);
+                }
+            }
+            List<Scored> ranked = new ArrayList<>(best);
+            ranked.sort(worstFirst.reversed());
+            List<SearchHit> hits = new ArrayList<>();
+            for (int i = offset; i < ranked.size(); i++) {
+                Scored scored = ranked.get(i);
+                hits.add(new SearchHit(kinds.get(scored.entry()), scored.id(), scored.score()));
+            }
+            return hits;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Renumbers the live entries from scratch; caller holds the write lock
+    private void compact() {
+        List<UUID> liveIds = new ArrayList<>();
+        List<String> liveNames = new ArrayList<>();
+        List<SearchHit.Kind> liveKinds = new ArrayList<>();
+        for (int entry = 0; entry < ids.size(); entry++) {
+            if (!removed.get(entry)) {
+                liveIds.add(ids.get(entry));
+                liveNames.add(names.get(entry));
+                liveKinds.add(kinds.get(entry));
+            }
+        }
+        postings.clear();
+        entryOf.clear();
+        ids.clear();
+        names.clear();
+        kinds.clear();
+        gramCounts = new Postings();
+        removed.clear();
+        for (int i = 0; i < liveIds.size(); i++) {
+            put(liveKinds.get(i), liveIds.get(i), liveNames.get(i));
+        }
+    }
+
+    private record Scored(int entry, double score, String name, UUID id) {
+    }
+
+    // Growable int array; entries are appended in ascending order
+    private static class Postings {
+        int[] values = new int[4];
+        int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+}
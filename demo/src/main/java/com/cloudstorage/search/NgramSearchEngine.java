@@ -0,0 +1,166 @@
+package com.cloudstorage.search;
+
+import com.cloudstorage.repository.FileRepository;
+import com.cloudstorage.repository.FolderRepository;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * In-process fallback for databases without pg_trgm (H2 in development and tests). A user's index
+ * is built from their names on first search and then kept current by the JPA listener on File and
+ * Folder. Writes made by another instance, or by bulk statements that bypass JPA, only show up
+ * once the index reaches its maximum age and is rebuilt; until then callers' checks against the
+ * database drop whatever it still holds that is gone. Only the most recently built indexes are kept.
+ */
+@Slf4j
+public class NgramSearchEngine implements NameSearchEngine {
+
+    private final FileRepository fileRepository;
+    private final FolderRepository folderRepository;
+    private final Duration maxAge;
+    private final int maxUsers;
+    private final Clock clock;
+    private final Map<UUID, Holder> indexes = new ConcurrentHashMap<>();
+
+    public NgramSearchEngine(FileRepository fileRepository, FolderRepository folderRepository, Duration maxAge,
+            int maxUsers, Clock clock) {
+        this.fileRepository = fileRepository;
+        this.folderRepository = folderRepository;
+        this.maxAge = maxAge;
+        this.maxUsers = maxUsers;
+        this.clock = clock;
+    }
+
+    @Override
+    public List<SearchHit> search(UUID userId, String query, Set<SearchHit.Kind> kinds, int offset, int limit) {
+        return index(userId).search(query, kinds, offset, limit);
+    }
+
+    @Override
+    public void indexed(SearchHit.Kind kind, UUID userId, UUID id, String name) {
+        Holder holder = indexes.get(userId);
+        if (holder != null) {
+            holder.apply(index -> index.put(kind, id, name));
+        }
+    }
+
+    @Override
+    public void removed(SearchHit.Kind kind, UUID userId, UUID id) {
+        Holder holder = indexes.get(userId);
+        if (holder != null) {
+            holder.apply(index -> index.remove(id));
+        }
+    }
+
+    // The build runs outside any map lock; other searches of the same user wait for it, or keep using
+    // the stale index while it is rebuilt
+    NgramIndex index(UUID userId) {
+        long now = clock.millis();
+        Holder holder = indexes.computeIfAbsent(userId, id -> new Holder());
+        CompletableFuture<NgramIndex> building;
+        boolean builder = false;
+        synchronized (holder) {
+            if (holder.current != null && now - holder.current.builtAt() < maxAge.toMillis()) {
+                return holder.current;
+            }
+            if (holder.building == null) {
+                holder.building = new CompletableFuture<>();
+                holder.pending = new ArrayList<>();
+                builder = true;
+            } else if (holder.current != null) {
+                return holder.current;
+            }
+            building = holder.building;
+        }
+        if (builder) {
+            try {
+                holder.publish(build(userId, now));
+            } catch (RuntimeException e) {
+                holder.fail(e);
+                throw e;
+            }
+            evictOldest(userId);
+        }
+        return building.join();
+    }
+
+    private void evictOldest(UUID userId) {
+        if (indexes.size() <= maxUsers) {
+            return;
+        }
+        indexes.entrySet().stream()
+                .filter(entry -> !entry.getKey().equals(userId))
+                .min(Comparator.comparingLong(entry -> entry.getValue().builtAt()))
+                .ifPresent(oldest -> indexes.remove(oldest.getKey(), oldest.getValue()));
+    }
+
+    private NgramIndex build(UUID userId, long now) {
+        long started = System.nanoTime();
+        NgramIndex index = new NgramIndex(now);
+        fileRepository.findNamesByUser(userId).forEach(name -> index.put(SearchHit.Kind.FILE, name.id(), name.name()));
+        folderRepository.findNamesByUser(userId)
+                .forEach(name -> index.put(SearchHit.Kind.FOLDER, name.id(), name.name()));
+        log.info("Built name index of user {}: {} entries in {} ms", userId, index.size(),
+                (System.nanoTime() - started) / 1_000_000);
+        return index;
+    }
+
+    /**
+     * One user's index. Changes that arrive while it is being built are applied to the index still in
+     * use and kept, then replayed in order onto the new one before it replaces it; put and remove give the
+     * same result whether or not the names read by the build already had them.
+     */
+    private static final class Holder {
+
+        private NgramIndex current;
+        private CompletableFuture<NgramIndex> building;
+        private List<Consumer<NgramIndex>> pending;
+
+        synchronized void apply(Consumer<NgramIndex> change) {
+            if (current != null) {
+                change.accept(current);
+            }
+            if (pending != null) {
+                pending.add(change);
+            }
+        }
+
+        void publish(NgramIndex built) {
+            CompletableFuture<NgramIndex> done;
+            synchronized (this) {
+                pending.forEach(change -> change.accept(built));
+                current = built;
+                done = building;
+                building = null;
+                pending = null;
+            }
+            done.complete(built);
+        }
+
+        void fail(RuntimeException e) {
+            CompletableFuture<NgramIndex> done;
+            synchronized (this) {
+                done = building;
+                building = null;
+                pending = null;
+            }
+            done.completeExceptionally(e);
+        }
+
+        // Still building its first index counts as newest
+        synchronized long builtAt() {
+            return current == null ? Long.MAX_VALUE : current.builtAt();
+        }
+    }
+}
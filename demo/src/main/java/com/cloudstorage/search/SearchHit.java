@@ -0,0 +1,12 @@
+package com.cloudstorage.search;
+
+import java.util.UUID;
+
+// One ranked match; score is trigram similarity plus any exact, prefix or substring boost
+public record SearchHit(Kind kind, UUID id, double score) {
+
+    public enum Kind {
+        FILE,
+        FOLDER
+    }
+}
@@ -0,0 +1,82 @@
+package com.cloudstorage.search;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Postgres search over GIN trigram indexes on the lower-cased names (pg_trgm). The same index answers
+ * both the word similarity operator and the substring LIKE, so neither scans the user's rows, and the
+ * score is computed in SQL the way {@link Trigrams} computes it for the in-process engine.
+ */
+@Slf4j
+public class TrigramSearchEngine implements NameSearchEngine {
+
+    private static final String MATCH = " (%1$s like :contains escape '\\' or :q <%% %1$s)";
+    private static final String SCORE = "word_similarity(:q, %1$s) + similarity(%1$s, :q)"
+            + " + case when %1$s = :q then " + Trigrams.EXACT_BOOST
+            + " when %1$s like :prefix escape '\\' then " + Trigrams.PREFIX_BOOST
+            + " when %1$s like :contains escape '\\' then " + Trigrams.CONTAINS_BOOST + " else 0 end";
+
+    private static final String FILES = "select 'FILE' as kind, f.id, lower(f.file_name) as name, "
+            + SCORE.formatted("lower(f.file_name)") + " as score from files f"
+            + " where f.user_id = :user and f.is_trashed = false and" + MATCH.formatted("lower(f.file_name)");
+    private static final String FOLDERS = "select 'FOLDER' as kind, d.id, lower(d.name) as name, "
+            + SCORE.formatted("lower(d.name)") + " as score from folders d"
+            + " where d.user_id = :user and d.is_trashed = false and" + MATCH.formatted("lower(d.name)");
+
+    private final NamedParameterJdbcTemplate jdbc;
+
+    public TrigramSearchEngine(JdbcTemplate jdbc) {
+        this.jdbc = new NamedParameterJdbcTemplate(jdbc);
+    }
+
+    // Creates the extension and indexes if missing; false when the database won't allow it.
+    // The <% operator uses pg_trgm's default threshold, which Trigrams.WORD_THRESHOLD matches.
+    public static boolean install(JdbcTemplate jdbc) {
+        try {
+            jdbc.execute("create extension if not exists pg_trgm");
+            jdbc.execute("create index if not exists idx_file_name_trgm on files using gin (lower(file_name)"
+                    + " gin_trgm_ops)");
+            jdbc.execute("create index if not exists idx_folder_name_trgm on folders using gin (lower(name)"
+                    + " gin_trgm_ops)");
+            return true;
+        } catch (RuntimeException e) {
+            log.warn("pg_trgm is not available: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public List<SearchHit> search(UUID userId, String query, Set<SearchHit.Kind> kinds, int offset, int limit) {
+        String q = Trigrams.normalize(query);
+        if (q.isEmpty() || kinds.isEmpty()) {
+            return List.of();
+        }
+        List<String> branches = new ArrayList<>();
+        if (kinds.contains(SearchHit.Kind.FILE)) {
+            branches.add(FILES);
+        }
+        if (kinds.contains(SearchHit.Kind.FOLDER)) {
+            branches.add(FOLDERS);
+        }
+        String escaped = q.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("user", userId)
+                .addValue("q", q)
+                .addValue("prefix", escaped + "%")
+                .addValue("contains", "%" + escaped + "%")
+                .addValue("offset", offset)
+                .addValue("limit", limit);
+        return jdbc.query("select kind, id, score from (" + String.join(" union all ", branches) + ") hits"
+                + " order by score desc, name, id offset :offset limit :limit", params,
+                (rs, i) -> new SearchHit(SearchHit.Kind.valueOf(rs.getString("kind")), rs.getObject("id", UUID.class),
+                        rs.getDouble("score")));
+    }
+}
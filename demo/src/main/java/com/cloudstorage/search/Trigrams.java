@@ -0,0 +1,66 @@
+package com.cloudstorage.search;
+
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Name scoring shared by the search engines, modelled on Postgres pg_trgm so that both rank alike.
+ * Each word is lower-cased and padded with two spaces in front and one behind before it is cut into
+ * trigrams. A name matches when it contains the query or holds most of the query's trigrams (word
+ * similarity, which unlike plain similarity doesn't punish long names). The score adds plain
+ * similarity, so closer names come first, and a boost for names that equal, start with or contain
+ * the query. pg_trgm's word similarity looks for the best contiguous stretch of the name; here the
+ * trigrams may be anywhere in it, which ranks a few scattered matches higher than Postgres would.
+ */
+public final class Trigrams {
+
+    // pg_trgm's default word_similarity_threshold; names below it only match by containing the query
+    public static final double WORD_THRESHOLD = 0.6;
+    public static final double EXACT_BOOST = 1.0;
+    public static final double PREFIX_BOOST = 0.5;
+    public static final double CONTAINS_BOOST = 0.25;
+
+    private Trigrams() {
+    }
+
+    public static String normalize(String name) {
+        return name == null ? "" : name.toLowerCase(Locale.ROOT).trim();
+    }
+
+    // Trigrams of an already normalized name; words are runs of letters and digits
+    public static Set<String> of(String normalized) {
+        Set<String> grams = new LinkedHashSet<>();
+        for (String word : normalized.split("[^\\p{L}\\p{Nd}]+")) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            String padded = "  " + word + " ";
+            for (int i = 0; i + 3 <= padded.length(); i++) {
+                grams.add(padded.substring(i, i + 3));
+            }
+        }
+        return grams;
+    }
+
+    // Score of a name sharing this many trigrams with the query, or -1 if it doesn't match
+    public static double score(String name, String query, int shared, int queryGrams, int nameGrams) {
+        double boost = boost(name, query);
+        double wordSimilarity = queryGrams == 0 ? 0 : (double) shared / queryGrams;
+        if (boost == 0 && wordSimilarity < WORD_THRESHOLD) {
+            return -1;
+        }
+        int union = queryGrams + nameGrams - shared;
+        return wordSimilarity + (union == 0 ? 0 : (double) shared / union) + boost;
+    }
+
+    public static double boost(String name, String query) {
+        if (name.equals(query)) {
+            return EXACT_BOOST;
+        }
+        if (name.startsWith(query)) {
+            return PREFIX_BOOST;
+        }
+        return name.contains(query) ? CONTAINS_BOOST : 0;
+    }
+}
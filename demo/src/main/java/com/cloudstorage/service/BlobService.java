@@ -0,0 +1,114 @@
+package com.cloudstorage.service;
+
+import com.cloudstorage.model.Blob;
+import com.cloudstorage.model.User;
+import com.cloudstorage.repository.BlobRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Optional;
+
+/**
+ * Reference-counted, content-addressed registry of stored objects.
+ * Every File whose bytes were hashed by the server points at a Blob; uploading the same bytes
+ * again only bumps the reference count, and the S3 object is deleted with the last reference.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class BlobService {
+
+    private final BlobRepository blobRepository;
+
+    public Optional<Blob> findBySha256(User user, String sha256) {
+        if (sha256 == null) {
+            return Optional.empty();
+        }
+        return blobRepository.findByUserAndSha256(user, sha256);
+    }
+
+    // Take a reference on an existing blob. Empty if there is none, or it is being released right now.
+    public Optional<Blob> retain(User user, String sha256) {
+        if (sha256 == null) {
+            return Optional.empty();
+        }
+        return blobRepository.findByUserAndSha256(user, sha256)
+                .filter(blob -> blobRepository.incrementRefCount(blob.getId()) == 1);
+    }
+
+    public Optional<Blob> retainByKey(User user, String storageKey) {
+        return blobRepository.findByUserAndStorageKey(user, storageKey)
+                .filter(blob -> blobRepository.incrementRefCount(blob.getId()) == 1);
+    }
+
+    /**
+     * Register freshly uploaded bytes. If the same content was registered in the meantime the
+     * existing blob is retained instead, and the caller should drop its own copy when the returned
+     * blob's key differs from the key it uploaded to.
+     */
+    public Blob register(User user, String sha256, String storageKey, long size) {
+        Optional<Blob> existing = retain(user, sha256);
+        if (existing.isPresent()) {
+            return existing.get();
+        }
+        Blob blob = new Blob();
+        blob.setUser(user);
+        blob.setSha256(sha256);
+        blob.setStorageKey(storageKey);
+        blob.setSize(size);
+        try {
+            return blobRepository.saveAndFlush(blob);
+        } catch (DataIntegrityViolationException e) {
+            // Lost a race with a concurrent upload of the same bytes
+            return retain(user, sha256).orElseThrow(() -> e);
+        }
+    }
+
+    // Drop a reference; true when it was the last one and the stored object can be deleted. The
+    // decrement locks the blob row until commit, so the delete sees the count this release left.
+    @Transactional
+    public boolean release(User user, String sha256) {
+        Optional<Blob> blob = blobRepository.findByUserAndSha256(user, sha256);
+        if (blob.isEmpty()) {
+            return true;
+        }
+        blobRepository.decrementRefCount(blob.get().getId());
+        boolean deleted = blobRepository.deleteIfUnreferenced(blob.get().getId()) == 1;
+        if (!deleted) {
+            log.info("Kept shared object {} (still referenced)", blob.get().getStorageKey());
+        }
+        return deleted;
+    }
+
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static String toHex(MessageDigest digest) {
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    public static String sha256(InputStream in) throws IOException {
+        MessageDigest digest = newDigest();
+        try (in) {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return toHex(digest);
+    }
+}
@@ -0,0 +1,224 @@
+package com.cloudstorage.service;
+
+import com.cloudstorage.dto.BulkRequest;
+import com.cloudstorage.dto.BulkResult;
+import com.cloudstorage.dto.UsageGroup;
+import com.cloudstorage.model.File;
+import com.cloudstorage.model.Folder;
+import com.cloudstorage.model.User;
+import com.cloudstorage.repository.FileRepository;
+import com.cloudstorage.repository.FolderClosureRepository;
+import com.cloudstorage.repository.FolderRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Multi-select actions on up to MAX_ITEMS files and folders in one transaction. One locking query per
+ * kind finds the caller's own items, so an id that doesn't exist or belongs to someone else fails only
+ * its own entry. Files then change with one bulk update per action; folders go through FolderService,
+ * whose subtree operations are already set-based. Folders are handled first, so a selected file inside
+ * a selected folder ends up the way the folder left it.
+ */
+@Service
+@RequiredArgsConstructor
+public class BulkOperationService {
+
+    public static final int MAX_ITEMS = 5000;
+
+    private static final String NOT_FOUND = "Not found";
+
+    private final FileRepository fileRepository;
+    private final FolderRepository folderRepository;
+    private final FolderClosureRepository closureRepository;
+    private final FileService fileService;
+    private final FolderService folderService;
+    private final StorageUsageService usageService;
+
+    @Transactional
+    public BulkResult apply(User user, BulkRequest request) {
+        if (request.getAction() == null) {
+            throw new IllegalArgumentException("Action is required");
+        }
+        List<UUID> fileIds = distinct(request.getFileIds());
+        List<UUID> folderIds = distinct(request.getFolderIds());
+        if (fileIds.size() + folderIds.size() > MAX_ITEMS) {
+            throw new IllegalArgumentException("At most " + MAX_ITEMS + " items per request");
+        }
+        Folder target = request.getAction() == BulkRequest.Action.MOVE ? resolveTarget(request, user) : null;
+
+        Map<UUID, String> results = new LinkedHashMap<>();
+        folderIds.forEach(id -> results.put(id, NOT_FOUND));
+        fileIds.forEach(id -> results.put(id, NOT_FOUND));
+        Map<UUID, Folder> folders = folderIds.isEmpty() ? Map.of() : folderRepository.lockOwned(folderIds, user)
+                .stream().collect(Collectors.toMap(Folder::getId, Function.identity()));
+        Map<UUID, File> files = fileIds.isEmpty() ? Map.of() : fileRepository.lockOwned(fileIds, user)
+                .stream().collect(Collectors.toMap(File::getId, Function.identity()));
+
+        switch (request.getAction()) {
+            case STAR, UNSTAR -> {
+                folders.keySet().forEach(id -> results.put(id, "Folders can't be starred"));
+                if (!files.isEmpty()) {
+                    fileRepository.updateStarred(files.keySet(), request.getAction() == BulkRequest.Action.STAR);
+                }
+                succeeded(files.keySet(), results);
+            }
+            case DELETE -> {
+                // A folder below another selected one is trashed with it, under that folder's marker
+                Map<UUID, Long> nested = selectedAbove(folders.keySet());
+                for (UUID id : folders.keySet()) {
+                    if (!nested.containsKey(id)) {
+                        folderService.deleteFolder(id, user);
+                    }
+                    results.put(id, BulkResult.OK);
+                }
+                trashFiles(user, files, true);
+                succeeded(files.keySet(), results);
+            }
+            case RESTORE -> {
+                // A file trashed along with a folder comes back only with that folder, like a subfolder
+                Set<UUID> restored = restoreFolders(user, folders, results);
+                Map<UUID, File> restorable = new LinkedHashMap<>();
+                files.forEach((id, file) -> {
+                    if (file.getTrashRootId() == null || restored.contains(file.getTrashRootId())) {
+                        restorable.put(id, file);
+                    } else {
+                        results.put(id, FileService.TRASHED_WITH_FOLDER);
+                    }
+                });
+                trashFiles(user, restorable, false);
+                succeeded(restorable.keySet(), results);
+            }
+            case MOVE -> {
+                moveFolders(user, folders, target, results);
+                if (!files.isEmpty()) {
+                    UUID targetId = target == null ? null : target.getId();
+                    usageService.moved(fileRepository.sumByFolder(files.keySet(), false), targetId);
+                    fileRepository.moveAll(files.keySet(), targetId, LocalDateTime.now());
+                }
+                succeeded(files.keySet(), results);
+            }
+            case RENAME -> rename(request.getNames(), folders, files, results);
+        }
+        return BulkResult.of(results);
+    }
+
+    private Folder resolveTarget(BulkRequest request, User user) {
+        if (request.getTargetFolderId() == null) {
+            return null;
+        }
+        Folder target = folderService.getFolder(request.getTargetFolderId(), user);
+        if (Boolean.TRUE.equals(target.getIsTrashed())) {
+            throw new IllegalArgumentException("Target folder is in the trash");
+        }
+        return target;
+    }
+
+    // Only the files whose state actually changes are summed; they stay locked until the update commits
+    private void trashFiles(User user, Map<UUID, File> files, boolean trashed) {
+        if (files.isEmpty()) {
+            return;
+        }
+        List<UsageGroup<UUID>> changing = fileRepository.sumByFolder(files.keySet(), !trashed);
+        fileRepository.updateTrashed(files.keySet(), trashed);
+        if (trashed) {
+            usageService.trashed(user, changing);
+            files.values().forEach(fileService::evictUrl);
+        } else {
+            usageService.restored(user, changing);
+        }
+    }
+
+    // A folder trashed along with another comes back only with it, so it succeeds only if that one
+    // is selected too. Folders go top down, so one trashed on its own comes back under its parent.
+    private Set<UUID> restoreFolders(User user, Map<UUID, Folder> folders, Map<UUID, String> results) {
+        Map<UUID, Long> nested = selectedAbove(folders.keySet());
+        List<Folder> ordered = folders.values().stream()
+                .sorted(Comparator.comparingLong(folder -> nested.getOrDefault(folder.getId(), 0L))).toList();
+        Set<UUID> restored = new HashSet<>();
+        for (Folder folder : ordered) {
+            if (folder.getTrashRootId() == null || folder.getTrashRootId().equals(folder.getId())) {
+                folderService.restoreFolder(folder.getId(), user);
+                restored.add(folder.getId());
+                results.put(folder.getId(), BulkResult.OK);
+            }
+        }
+        for (Folder folder : folders.values()) {
+            if (!restored.contains(folder.getId())) {
+                results.put(folder.getId(), restored.contains(folder.getTrashRootId()) ? BulkResult.OK
+                        : "Folder was trashed with a parent folder; restore that folder instead");
+            }
+        }
+        return restored;
+    }
+
+    // How many other selected folders sit above each selected folder, leaving out those with none
+    private Map<UUID, Long> selectedAbove(Set<UUID> folderIds) {
+        if (folderIds.size() < 2) {
+            return Map.of();
+        }
+        return closureRepository.findNestedIn(folderIds).stream()
+                .collect(Collectors.groupingBy(Function.identity(), Collectors.counting()));
+    }
+
+    // The target and everything above it can't move into it; one query finds them all
+    private void moveFolders(User user, Map<UUID, Folder> folders, Folder target, Map<UUID, String> results) {
+        if (folders.isEmpty()) {
+            return;
+        }
+        Set<UUID> blocked = target == null ? Set.of()
+                : new HashSet<>(closureRepository.findAncestorIdsIn(target.getId(), folders.keySet()));
+        for (UUID id : folders.keySet()) {
+            if (blocked.contains(id)) {
+                results.put(id, "Cannot move a folder into itself or one of its subfolders");
+            } else {
+                folderService.moveFolder(id, target == null ? null : target.getId(), user);
+                results.put(id, BulkResult.OK);
+            }
+        }
+    }
+
+    // A different name per item, so these are entity updates, flushed as JDBC batches
+    private void rename(Map<UUID, String> names, Map<UUID, Folder> folders, Map<UUID, File> files,
+            Map<UUID, String> results) {
+        Map<UUID, String> newNames = names == null ? Map.of() : names;
+        for (Folder folder : folders.values()) {
+            String name = newNames.get(folder.getId());
+            if (name == null || name.isBlank()) {
+                results.put(folder.getId(), "Name is required");
+            } else {
+                folder.setName(name.trim());
+                results.put(folder.getId(), BulkResult.OK);
+            }
+        }
+        for (File file : files.values()) {
+            String name = newNames.get(file.getId());
+            if (name == null || name.isBlank()) {
+                results.put(file.getId(), "Name is required");
+            } else {
+                file.setFileName(name.trim());
+                results.put(file.getId(), BulkResult.OK);
+            }
+        }
+    }
+
+    private static void succeeded(Set<UUID> ids, Map<UUID, String> results) {
+        ids.forEach(id -> results.put(id, BulkResult.OK));
+    }
+
+    private static List<UUID> distinct(List<UUID> ids) {
+        return ids == null ? List.of() : ids.stream().filter(Objects::nonNull).distinct().toList();
+    }
+}
@@ -0,0 +1,305 @@
+package com.cloudstorage.service;
+
+import com.cloudstorage.model.Chunk;
+import com.cloudstorage.model.FileChunk;
+import com.cloudstorage.repository.ChunkRepository;
+import com.cloudstorage.repository.FileChunkRepository;
+import com.cloudstorage.storage.FastCdcChunker;
+import com.cloudstorage.storage.StorageBackend;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Collectors;
+
+/**
+ * Block-level deduplicating store. Content is split with {@link FastCdcChunker}, each unique chunk is
+ * stored once under {@code chunks/<sha256>} with a reference count, and every file keeps an ordered
+ * chunk manifest. Near-identical files (new video versions, VM images, document revisions) then only
+ * cost the chunks that actually changed. A chunk that loses its last reference keeps its row and object for
+ * a grace period, so the same content uploaded again meanwhile takes it back; only then does the sweeper
+ * delete the object, and the row after it.
+ */
+@Service
+@Slf4j
+public class ChunkStoreService {
+
+    public static final String KEY_PREFIX = "chunks/";
+
+    // How long a new chunk waits for a sweep of the same hash to finish before giving up
+    private static final int SWEEP_WAIT_ATTEMPTS = 50;
+    private static final long SWEEP_WAIT_MILLIS = 100;
+
+    private final ChunkRepository chunkRepository;
+    private final FileChunkRepository fileChunkRepository;
+    private final StorageBackend storage;
+    private final FastCdcChunker chunker;
+    private final int maxInFlight;
+    private final Duration releaseGrace;
+    private final ExecutorService executor;
+
+    @Autowired
+    public ChunkStoreService(ChunkRepository chunkRepository, FileChunkRepository fileChunkRepository,
+            StorageBackend storage,
+            @Value("${storage.chunking.min-size-kb:256}") int minSizeKb,
+            @Value("${storage.chunking.avg-size-kb:1024}") int avgSizeKb,
+            @Value("${storage.chunking.max-size-kb:4096}") int maxSizeKb,
+            @Value("${storage.chunking.max-in-flight:8}") int maxInFlight,
+            @Value("${storage.chunking.release-grace-minutes:60}") long releaseGraceMinutes) {
+        this.chunkRepository = chunkRepository;
+        this.fileChunkRepository = fileChunkRepository;
+        this.storage = storage;
+        this.chunker = new FastCdcChunker(minSizeKb * 1024, avgSizeKb * 1024, maxSizeKb * 1024);
+        this.maxInFlight = maxInFlight;
+        this.releaseGrace = Duration.ofMinutes(releaseGraceMinutes);
+        this.executor = Executors.newFixedThreadPool(maxInFlight, r -> {
+            Thread t = new Thread(r, "chunk-store");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Chunk and store a stream. New chunks are uploaded in parallel (bounded), known chunks only gain a
+     * reference. The returned manifest still has to be attached to a file with {@link #saveManifest}.
+     */
+    public StoredContent store(InputStream in) throws IOException {
+        MessageDigest fileDigest = BlobService.newDigest();
+        List<FileChunk> manifest = new ArrayList<>();
+        List<Future<?>> pending = new ArrayList<>();
+        List<String> acquired = Collections.synchronizedList(new ArrayList<>());
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        long[] offset = { 0 };
+        long[] newBytes = { 0 };
+
+        try {
+            chunker.split(in, (buffer, off, length) -> {
+                fileDigest.update(buffer, off, length);
+                MessageDigest chunkDigest = BlobService.newDigest();
+                chunkDigest.update(buffer, off, length);
+                String hash = BlobService.toHex(chunkDigest);
+
+                FileChunk entry = new FileChunk();
+                entry.setChunkIndex(manifest.size());
+                entry.setChunkOffset(offset[0]);
+                entry.setChunkHash(hash);
+                entry.setLength(length);
+                manifest.add(entry);
+                offset[0] += length;
+
+                if (reference(hash)) {
+                    acquired.add(hash);
+                    return;
+                }
+                newBytes[0] += length;
+                byte[] copy = Arrays.copyOfRange(buffer, off, off + length);
+                try {
+                    inFlight.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while storing chunks", e);
+                }
+                pending.add(executor.submit(() -> {
+                    try {
+                        storeNewChunk(hash, copy);
+                        acquired.add(hash);
+                    } finally {
+                        inFlight.release();
+                    }
+                    return null;
+                }));
+            });
+            for (Future<?> future : pending) {
+                future.get();
+            }
+        } catch (Exception e) {
+            pending.forEach(f -> f.cancel(true));
+            for (Future<?> future : pending) {
+                try {
+                    future.get();
+                } catch (Exception ignored) {
+                    // Already failed or cancelled
+                }
+            }
+            // Give back the references taken so far so a failed upload leaves no garbage behind
+            synchronized (acquired) {
+                acquired.forEach(this::releaseChunk);
+            }
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+            throw new IOException("Chunked store failed: " + cause.getMessage(), cause);
+        }
+
+        log.info("Stored {} bytes as {} chunks ({} bytes new)", offset[0], manifest.size(), newBytes[0]);
+        return new StoredContent(offset[0], BlobService.toHex(fileDigest), manifest, newBytes[0]);
+    }
+
+    // A live chunk gains a reference; a released one the sweeper hasn't claimed is taken back as it is
+    private boolean reference(String hash) {
+        return chunkRepository.incrementRefCount(hash) == 1 || chunkRepository.revive(hash) == 1;
+    }
+
+    // Upload the object first, then publish the row, so a visible chunk row always has its bytes. A row that
+    // is neither live nor released is being swept; its object goes before its row, so nothing is uploaded
+    // until the row is gone, or the sweep could delete the new bytes.
+    private void storeNewChunk(String hash, byte[] data) throws InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            if (!chunkRepository.existsById(hash)) {
+                storage.put(KEY_PREFIX + hash, new ByteArrayInputStream(data), data.length,
+                        "application/octet-stream");
+                try {
+                    chunkRepository.insertNew(hash, data.length);
+                    return;
+                } catch (DataIntegrityViolationException e) {
+                    // Another upload stored the same chunk concurrently
+                }
+            }
+            if (reference(hash)) {
+                return;
+            }
+            if (attempt == SWEEP_WAIT_ATTEMPTS) {
+                throw new IllegalStateException("Chunk " + hash + " is still being deleted");
+            }
+            Thread.sleep(SWEEP_WAIT_MILLIS);
+        }
+    }
+
+    public void saveManifest(UUID fileId, List<FileChunk> manifest) {
+        manifest.forEach(entry -> entry.setFileId(fileId));
+        fileChunkRepository.saveAll(manifest);
+    }
+
+    // Reassemble a file as a stream; chunks are fetched one at a time as the reader advances
+    public InputStream open(UUID fileId) {
+        Iterator<FileChunk> chunks = fileChunkRepository.findByFileIdOrderByChunkIndexAsc(fileId).iterator();
+        return new SequenceInputStream(new Enumeration<>() {
+            @Override
+            public boolean hasMoreElements() {
+                return chunks.hasNext();
+            }
+
+            @Override
+            public InputStream nextElement() {
+                return storage.get(KEY_PREFIX + chunks.next().getChunkHash());
+            }
+        });
+    }
+
+    // Read {@code length} bytes from {@code offset}: only the chunks overlapping the range are fetched,
+    // and the first and last of them with ranged reads
+    public InputStream open(UUID fileId, long offset, long length) {
+        long end = offset + length;
+        Iterator<FileChunk> chunks = fileChunkRepository.findByFileIdOrderByChunkIndexAsc(fileId).stream()
+                .filter(c -> c.getChunkOffset() < end && c.getChunkOffset() + c.getLength() > offset)
+                .iterator();
+        return new SequenceInputStream(new Enumeration<>() {
+            @Override
+            public boolean hasMoreElements() {
+                return chunks.hasNext();
+            }
+
+            @Override
+            public InputStream nextElement() {
+                FileChunk chunk = chunks.next();
+                long from = Math.max(offset, chunk.getChunkOffset()) - chunk.getChunkOffset();
+                long to = Math.min(end, chunk.getChunkOffset() + chunk.getLength()) - chunk.getChunkOffset();
+                return storage.get(KEY_PREFIX + chunk.getChunkHash(), from, to - from);
+            }
+        });
+    }
+
+    // Drop a file's manifest; chunks no other file references are deleted from the bucket
+    public void release(UUID fileId) {
+        List<FileChunk> manifest = fileChunkRepository.findByFileIdOrderByChunkIndexAsc(fileId);
+        fileChunkRepository.deleteByFileId(fileId);
+        discard(manifest);
+    }
+
+    // Give back the chunk references of a manifest that was never (or is no longer) attached to a file
+    public void discard(List<FileChunk> manifest) {
+        for (FileChunk entry : manifest) {
+            releaseChunk(entry.getChunkHash());
+        }
+    }
+
+    private void releaseChunk(String hash) {
+        chunkRepository.decrementRefCount(hash, LocalDateTime.now());
+    }
+
+    @Scheduled(fixedDelayString = "${storage.chunking.sweep-interval-ms:600000}")
+    public void sweepReleased() {
+        try {
+            int removed = sweepReleased(LocalDateTime.now().minus(releaseGrace));
+            if (removed > 0) {
+                log.info("Chunk sweeper deleted {} unreferenced chunks", removed);
+            }
+        } catch (Exception e) {
+            log.error("Chunk sweep failed: {}", e.getMessage());
+        }
+    }
+
+    // Delete the chunks released before the cutoff: each is claimed first, then its object is deleted, and
+    // its row last. Returns the number of chunks removed.
+    public int sweepReleased(LocalDateTime cutoff) {
+        int removed = 0;
+        while (true) {
+            List<Chunk> released = chunkRepository.findTop500ByRefCountLessThanEqualAndReleasedAtBefore(0, cutoff);
+            if (released.isEmpty()) {
+                return removed;
+            }
+            LocalDateTime now = LocalDateTime.now();
+            List<String> claimed = released.stream().map(Chunk::getHash)
+                    .filter(hash -> chunkRepository.claimReleased(hash, cutoff, now) == 1)
+                    .toList();
+            if (claimed.isEmpty()) {
+                continue;
+            }
+            Set<String> failed = storage.deleteAll(claimed.stream().map(hash -> KEY_PREFIX + hash).toList())
+                    .stream().map(key -> key.substring(KEY_PREFIX.length())).collect(Collectors.toSet());
+            List<String> deleted = claimed.stream().filter(hash -> !failed.contains(hash)).toList();
+            if (!deleted.isEmpty()) {
+                chunkRepository.deleteClaimed(deleted);
+            }
+            removed += deleted.size();
+            if (!failed.isEmpty()) {
+                chunkRepository.unclaim(failed);
+                log.warn("Could not delete {} chunks; they will be retried", failed.size());
+                return removed;
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public record StoredContent(long size, String sha256, List<FileChunk> manifest, long newBytes) {
+    }
+}
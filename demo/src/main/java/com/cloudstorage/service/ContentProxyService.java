@@ -0,0 +1,155 @@
+package com.cloudstorage.service;
+
+import com.cloudstorage.model.File;
+import com.cloudstorage.storage.HotObjectCache;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Serves file content through this server instead of redirecting to the bucket. Handles single
+ * {@code Range} requests (video seeking) and {@code If-None-Match}, and serves hot objects from
+ * {@link HotObjectCache} with {@link FileChannel#transferTo}. A full download that misses the cache
+ * fills it while streaming; a ranged miss is answered with a ranged read from the backend while the
+ * whole object is cached in the background.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ContentProxyService {
+
+    private final FileService fileService;
+    private final HotObjectCache hotCache;
+
+    // When on, downloads are always proxied rather than redirected to a presigned URL
+    @Value("${storage.proxy.enabled:false}")
+    private boolean enabled;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public ResponseEntity<StreamingResponseBody> serve(File file, HttpHeaders request) {
+        String key = fileService.storageKey(file);
+        long size = file.getFileSize();
+        String etag = "\"" + (file.getContentHash() != null ? file.getContentHash() : key) + "\"";
+
+        if (matches(request.getIfNoneMatch(), etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+
+        long start = 0;
+        long length = size;
+        boolean partial = false;
+        List<HttpRange> ranges;
+        try {
+            ranges = request.getRange();
+            // Multipart byteranges aren't worth it; ignoring the header and sending everything is allowed
+            if (ranges.size() == 1) {
+                start = ranges.get(0).getRangeStart(size);
+                if (start >= size) {
+                    throw new IllegalArgumentException("Range starts past the end");
+                }
+                length = ranges.get(0).getRangeEnd(size) - start + 1;
+                partial = true;
+            }
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                    .header(HttpHeaders.CONTENT_RANGE, "bytes */" + size).build();
+        }
+
+        StreamingResponseBody body = body(file, key, size, start, length, partial);
+        HttpStatus status = partial ? HttpStatus.PARTIAL_CONTENT : HttpStatus.OK;
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(status)
+                .eTag(etag)
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .contentType(file.getFileType() != null ? MediaType.parseMediaType(file.getFileType())
+                        : MediaType.APPLICATION_OCTET_STREAM)
+                .contentLength(length)
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.inline()
+                        .filename(file.getFileName(), StandardCharsets.UTF_8).build().toString());
+        if (partial) {
+            response.header(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + (start + length - 1) + "/" + size);
+        }
+        return response.body(body);
+    }
+
+    private StreamingResponseBody body(File file, String key, long size, long start, long length, boolean partial) {
+        Optional<FileChannel> cached = hotCache.lookup(key).flatMap(ContentProxyService::open);
+        if (cached.isPresent()) {
+            FileChannel channel = cached.get();
+            return out -> {
+                try (channel) {
+                    transfer(channel, start, length, out);
+                }
+            };
+        }
+        if (!partial) {
+            return out -> {
+                InputStream source = fileService.openContent(file);
+                try (InputStream in = hotCache.fillWhileReading(key, file.getFileType(), source, size)) {
+                    in.transferTo(out);
+                }
+            };
+        }
+        hotCache.fillAsync(key, file.getFileType(), () -> fileService.openContent(file), size);
+        return out -> {
+            try (InputStream in = fileService.openContent(file, start, length)) {
+                in.transferTo(out);
+            }
+        };
+    }
+
+    // The cached copy may be evicted between lookup and open; the caller then falls back to the backend
+    private static Optional<FileChannel> open(Path path) {
+        try {
+            return Optional.of(FileChannel.open(path, StandardOpenOption.READ));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        } catch (IOException e) {
+            log.warn("Could not open cached object {}: {}", path, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    private static void transfer(FileChannel channel, long start, long length, OutputStream out) throws IOException {
+        WritableByteChannel target = Channels.newChannel(out);
+        long position = start;
+        long remaining = length;
+        while (remaining > 0) {
+            long sent = channel.transferTo(position, remaining, target);
+            if (sent <= 0) {
+                break;
+            }
+            position += sent;
+            remaining -= sent;
+        }
+    }
+
+    private static boolean matches(List<String> ifNoneMatch, String etag) {
+        return ifNoneMatch.stream()
+                .map(tag -> tag.startsWith("W/") ? tag.substring(2) : tag)
+                .anyMatch(tag -> tag.equals("*") || tag.equals(etag));
+    }
+}
@@ -1,108 +1,298 @@
 package com.cloudstorage.service;
 
-import com.amazonaws.HttpMethod;
-import com.amazonaws.services.s3.AmazonS3;
-import com.amazonaws.services.s3.model.GeneratePresignedUrlRequest;
-import com.amazonaws.services.s3.model.ObjectMetadata;
-import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.cloudstorage.dto.CursorPage;
+import com.cloudstorage.dto.FileDto;
+import com.cloudstorage.dto.FileFilter;
+import com.cloudstorage.dto.PageParams;
+import com.cloudstorage.model.Blob;
 import com.cloudstorage.model.File;
 import com.cloudstorage.model.Folder;
 import com.cloudstorage.model.User;
 import com.cloudstorage.repository.FileRepository;
+import com.cloudstorage.repository.FileSpecification;
 import com.cloudstorage.repository.FolderRepository;
+import com.cloudstorage.repository.Keyset;
 import com.cloudstorage.repository.ShareRepository;
+import com.cloudstorage.storage.HotObjectCache;
+import com.cloudstorage.storage.MultipartUploadEngine;
+import com.cloudstorage.storage.PresignedUrlCache;
+import com.cloudstorage.storage.StorageBackend;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.net.URL;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.time.Duration;
 import java.time.LocalDateTime;
-import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class FileService {
 
+    public static final String TRASHED_WITH_FOLDER = "File was trashed with its folder; restore that folder instead";
+
+    private static final int RECENT_LIMIT = 20;
+
     private final FileRepository fileRepository;
     private final FolderRepository folderRepository;
     private final ShareRepository shareRepository;
-    private final AmazonS3 s3Client;
-
-    @Value("${aws.s3.bucket}")
-    private String bucketName;
-
-    // Upload file to AWS S3
+    private final StorageBackend storage;
+    private final MultipartUploadEngine uploadEngine;
+    private final BlobService blobService;
+    private final ChunkStoreService chunkStore;
+    private final PresignedUrlCache urlCache;
+    private final HotObjectCache hotCache;
+    private final StorageUsageService usageService;
+
+    @Value("${storage.chunking.enabled:false}")
+    private boolean chunkingEnabled;
+
+    // Upload file to object storage
     public File uploadFile(MultipartFile multipartFile, User user, UUID folderId) {
+        return await(uploadFileAsync(multipartFile, user, folderId));
+    }
+
+    // Non-blocking upload: the caller's thread is released while the object is written,
+    // metadata is saved once the backend confirms it
+    public CompletableFuture<File> uploadFileAsync(MultipartFile multipartFile, User user, UUID folderId) {
         try {
             if (multipartFile.isEmpty()) {
                 throw new RuntimeException("File is empty");
             }
+            Folder folder = resolveOwnedFolder(folderId, user);
 
             String originalFilename = multipartFile.getOriginalFilename();
+
+            if (chunkingEnabled) {
+                return CompletableFuture.completedFuture(storeChunked(multipartFile.getInputStream(),
+                        originalFilename, multipartFile.getContentType(), folder, user));
+            }
+
+            // The part is already spooled locally, so hash it first and skip the PUT for known content
+            String sha256 = BlobService.sha256(multipartFile.getInputStream());
+            Optional<Blob> existing = blobService.retain(user, sha256);
+            if (existing.isPresent()) {
+                log.info("Deduplicated upload of {} onto {}", originalFilename, existing.get().getStorageKey());
+                return CompletableFuture.completedFuture(registerUploadedFile(originalFilename,
+                        existing.get().getStorageKey(), multipartFile.getContentType(), existing.get().getSize(),
+                        sha256, folder, user));
+            }
+
             String fileExtension = originalFilename.contains(".")
                     ? originalFilename.substring(originalFilename.lastIndexOf("."))
                     : "";
             String uniqueFileName = UUID.randomUUID().toString() + fileExtension;
             String s3Path = user.getId() + "/" + uniqueFileName;
 
-            // Prepare metadata
-            ObjectMetadata metadata = new ObjectMetadata();
-            metadata.setContentType(multipartFile.getContentType());
-            metadata.setContentLength(multipartFile.getSize());
-
-            log.info("Uploading file to S3: {}/{} (Size: {} bytes)", bucketName, s3Path, multipartFile.getSize());
-
-            // Upload to S3
-            s3Client.putObject(new PutObjectRequest(bucketName, s3Path, multipartFile.getInputStream(), metadata));
-
-            // Generate a permanent S3 URL (Note: This might not be accessible if bucket is
-            // private,
-            // but we use presigned URLs for access later)
-            String s3Url = s3Client.getUrl(bucketName, s3Path).toString();
-
-            // Get folder if specified
-            Folder folder = null;
-            if (folderId != null) {
-                folder = folderRepository.findById(folderId)
-                        .orElseThrow(() -> new RuntimeException("Folder not found"));
-                if (!folder.getUser().getId().equals(user.getId())) {
-                    throw new RuntimeException("Access denied to folder");
-                }
+            log.info("Uploading file to storage: {} (Size: {} bytes)", s3Path, multipartFile.getSize());
+            return storage.putAsync(s3Path, multipartFile.getInputStream(), multipartFile.getSize(),
+                    multipartFile.getContentType())
+                    .thenApply(stored -> {
+                        String storedKey = registerBlob(user, sha256, s3Path, multipartFile.getSize());
+                        return registerUploadedFile(originalFilename, storedKey, multipartFile.getContentType(),
+                                multipartFile.getSize(), sha256, folder, user);
+                    })
+                    .exceptionallyCompose(e -> uploadFailed(unwrap(e)));
+        } catch (Exception e) {
+            return uploadFailed(e);
+        }
+    }
+
+    private static <T> CompletableFuture<T> uploadFailed(Throwable e) {
+        log.error("Storage upload error: {}", e.getMessage());
+        return CompletableFuture.failedFuture(new RuntimeException("Could not upload file: " + e.getMessage()));
+    }
+
+    // Stream a raw request body to storage as a parallel multipart upload (no temp file, bounded heap).
+    // If the client already knows the SHA-256 and this user has that content, the body is never read.
+    public File uploadStream(InputStream content, String originalFilename, String contentType, String sha256Hint,
+            User user, UUID folderId) {
+        // Resolve the folder before touching storage so a bad folder id can't leave an orphaned object
+        Folder folder = resolveOwnedFolder(folderId, user);
+
+        if (chunkingEnabled) {
+            try {
+                return storeChunked(content, originalFilename, contentType, folder, user);
+            } catch (Exception e) {
+                log.error("Chunked streaming upload error: {}", e.getMessage());
+                throw new RuntimeException("Could not upload file: " + e.getMessage());
+            }
+        }
+
+        Optional<Blob> existing = blobService.retain(user, normalizeSha256(sha256Hint));
+        if (existing.isPresent()) {
+            log.info("Deduplicated streaming upload of {} onto {}", originalFilename, existing.get().getStorageKey());
+            return registerUploadedFile(originalFilename, existing.get().getStorageKey(), contentType,
+                    existing.get().getSize(), existing.get().getSha256(), folder, user);
+        }
+
+        try {
+            String fileExtension = originalFilename.contains(".")
+                    ? originalFilename.substring(originalFilename.lastIndexOf("."))
+                    : "";
+            String s3Path = user.getId() + "/" + UUID.randomUUID() + fileExtension;
+
+            log.info("Streaming upload to storage: {}", s3Path);
+            MessageDigest digest = BlobService.newDigest();
+            MultipartUploadEngine.UploadResult result = uploadEngine.upload(s3Path, contentType,
+                    new DigestInputStream(content, digest));
+            if (result.size() == 0) {
+                storage.delete(s3Path);
+                throw new RuntimeException("File is empty");
             }
 
-            // Create file metadata in DB
+            String sha256 = BlobService.toHex(digest);
+            String storedKey = registerBlob(user, sha256, s3Path, result.size());
+            return registerUploadedFile(originalFilename, storedKey, contentType, result.size(), sha256, folder,
+                    user);
+        } catch (Exception e) {
+            log.error("Streaming upload error: {}", e.getMessage());
+            throw new RuntimeException("Could not upload file: " + e.getMessage());
+        }
+    }
+
+    // Block-level dedup: only chunks the store has never seen are uploaded
+    private File storeChunked(InputStream content, String originalFilename, String contentType, Folder folder,
+            User user) throws java.io.IOException {
+        ChunkStoreService.StoredContent stored = chunkStore.store(content);
+        if (stored.size() == 0) {
+            throw new RuntimeException("File is empty");
+        }
+        try {
             File file = new File();
             file.setFileName(originalFilename);
-            file.setFilePath(s3Url); // Storing the S3 Object URL
-            file.setFileType(multipartFile.getContentType());
-            file.setFileSize(multipartFile.getSize());
+            file.setFilePath(ChunkStoreService.KEY_PREFIX + stored.sha256());
+            file.setFileType(contentType);
+            file.setFileSize(stored.size());
+            file.setContentHash(stored.sha256());
+            file.setIsChunked(true);
             file.setUser(user);
             file.setFolder(folder);
-            file.setLastOpenedAt(LocalDateTime.now());
+            file = fileRepository.save(file);
+            chunkStore.saveManifest(file.getId(), stored.manifest());
+            usageService.added(file);
+            return file;
+        } catch (RuntimeException e) {
+            chunkStore.discard(stored.manifest());
+            throw e;
+        }
+    }
 
-            return fileRepository.save(file);
+    // Stream a file's content through the server; chunked files are reassembled from their manifest
+    public InputStream openContent(File file) {
+        if (Boolean.TRUE.equals(file.getIsChunked())) {
+            return chunkStore.open(file.getId());
+        }
+        return storage.get(storageKey(file));
+    }
 
-        } catch (Exception e) {
-            log.error("AWS S3 upload error: {}", e.getMessage());
-            throw new RuntimeException("Could not upload to S3: " + e.getMessage());
+    public InputStream openContent(File file, long offset, long length) {
+        if (Boolean.TRUE.equals(file.getIsChunked())) {
+            return chunkStore.open(file.getId(), offset, length);
+        }
+        return storage.get(storageKey(file), offset, length);
+    }
+
+    // Our keys are user-id/unique-filename; filePath holds the full location, so take the last segment
+    public String storageKey(File file) {
+        String path = file.getFilePath();
+        return file.getUser().getId() + "/" + path.substring(path.lastIndexOf("/") + 1);
+    }
+
+    // Record freshly uploaded bytes; if identical content already exists, drop the new copy and share the old one
+    private String registerBlob(User user, String sha256, String s3Path, long size) {
+        Blob blob = blobService.register(user, sha256, s3Path, size);
+        if (!blob.getStorageKey().equals(s3Path)) {
+            log.info("Content of {} already stored as {}, deleting duplicate", s3Path, blob.getStorageKey());
+            storage.delete(s3Path);
+        }
+        return blob.getStorageKey();
+    }
+
+    private static String normalizeSha256(String sha256) {
+        if (sha256 == null || !sha256.matches("(?i)[0-9a-f]{64}")) {
+            return null;
+        }
+        return sha256.toLowerCase();
+    }
+
+    // Look up a target folder and make sure the user owns it (null means root)
+    public Folder resolveOwnedFolder(UUID folderId, User user) {
+        if (folderId == null) {
+            return null;
+        }
+        Folder folder = folderRepository.findById(folderId)
+                .orElseThrow(() -> new RuntimeException("Folder not found"));
+        if (!folder.getUser().getId().equals(user.getId())) {
+            throw new RuntimeException("Access denied to folder");
         }
+        return folder;
+    }
+
+    // Persist metadata for an object that is already fully stored under the given key
+    public File registerUploadedFile(String fileName, String s3Key, String fileType, long fileSize, Folder folder,
+            User user) {
+        return registerUploadedFile(fileName, s3Key, fileType, fileSize, null, folder, user);
+    }
+
+    public File registerUploadedFile(String fileName, String s3Key, String fileType, long fileSize,
+            String contentHash, Folder folder, User user) {
+        File file = new File();
+        file.setFileName(fileName);
+        file.setFilePath(storage.locationOf(s3Key));
+        file.setFileType(fileType);
+        file.setFileSize(fileSize);
+        file.setContentHash(contentHash);
+        file.setUser(user);
+        file.setFolder(folder);
+        file.setLastOpenedAt(LocalDateTime.now());
+
+        file = fileRepository.save(file);
+        usageService.added(file);
+        return file;
+    }
+
+    public List<FileDto> getUserFiles(User user) {
+        return fileRepository.findViewsByUser(user);
     }
 
-    public List<File> getUserFiles(User user) {
-        return fileRepository.findByUserAndIsTrashedFalse(user);
+    public CursorPage<FileDto> getUserFiles(User user, PageParams params) {
+        return pageFiles(FileSpecification.hasUser(user).and(FileSpecification.isNotTrashed()), params);
     }
 
-    public List<File> getFilesInFolder(User user, UUID folderId) {
+    public List<FileDto> getFilesInFolder(User user, UUID folderId) {
         if (folderId == null) {
-            return fileRepository.findByUserAndFolderIsNullAndIsTrashedFalse(user);
+            return fileRepository.findViewsByUserInRoot(user);
         }
-        return fileRepository.findByUserAndFolderIdAndIsTrashedFalse(user, folderId);
+        return fileRepository.findViewsByUserInFolder(user, folderId);
+    }
+
+    public CursorPage<FileDto> getFilesInFolder(User user, UUID folderId, PageParams params) {
+        return pageFiles(FileSpecification.hasUser(user).and(FileSpecification.inFolder(folderId))
+                .and(FileSpecification.isNotTrashed()), params);
+    }
+
+    // One page of the filtered files; fetches a single extra row to know whether there is a next page.
+    // Owner and folder are fetched in the same statement so mapping to FileDto loads nothing more.
+    private CursorPage<FileDto> pageFiles(Specification<File> filter, PageParams params) {
+        Keyset.Request request = Keyset.request(FileSpecification.SORT_COLUMNS, params);
+        List<File> rows = fileRepository.findBy(filter.and(Keyset.after(request)),
+                query -> query.project("user", "folder").sortBy(request.sort()).limit(request.limit() + 1).all());
+        return Keyset.page(rows, request).map(FileDto::of);
     }
 
     public File getFile(UUID fileId, User user) {
@@ -121,8 +311,8 @@ public class FileService {
                 .orElseThrow(() -> new RuntimeException("File not found"));
 
         if (file.getUser().getId().toString().equals(user.getId().toString())) {
-            file.setIsTrashed(true);
-            fileRepository.save(file);
+            setTrashed(file, true);
+            urlCache.evict(storageKey(file));
             return;
         }
 
@@ -135,17 +325,77 @@ public class FileService {
     }
 
     public void restoreFile(UUID fileId, User user) {
-        File file = getFile(fileId, user);
-        file.setIsTrashed(false);
-        fileRepository.save(file);
+        setTrashed(getFile(fileId, user), false);
+    }
+
+    // One conditional update, so trashing or restoring twice can't count the file twice in the owner's usage
+    public void setTrashed(File file, boolean trashed) {
+        if (!trashed && file.getTrashRootId() != null) {
+            throw new RuntimeException(TRASHED_WITH_FOLDER);
+        }
+        if (fileRepository.updateTrashed(file.getId(), trashed) == 0) {
+            return;
+        }
+        if (trashed) {
+            usageService.trashed(file);
+        } else {
+            usageService.restored(file);
+        }
+    }
+
+    public List<FileDto> getTrashedFiles(User user) {
+        return fileRepository.findTrashedViewsByUser(user);
+    }
+
+    public CursorPage<FileDto> getTrashedFiles(User user, PageParams params) {
+        return pageFiles(FileSpecification.hasUser(user).and(FileSpecification.isTrashed())
+                .and(FileSpecification.isTrashedOnItsOwn()), params);
+    }
+
+    public List<FileDto> getStarredFiles(User user) {
+        return fileRepository.findStarredViewsByUser(user);
     }
 
-    public List<File> getTrashedFiles(User user) {
-        return fileRepository.findByUserAndIsTrashedTrue(user);
+    public CursorPage<FileDto> getStarredFiles(User user, PageParams params) {
+        return pageFiles(FileSpecification.hasUser(user).and(FileSpecification.isStarred())
+                .and(FileSpecification.isNotTrashed()), params);
     }
 
-    public List<File> getStarredFiles(User user) {
-        return fileRepository.findByUserAndIsStarredTrueAndIsTrashedFalse(user);
+    // Every filter narrows one keyset-paginated statement; whether there is more comes from the one extra
+    // row fetched, never from a count
+    public CursorPage<FileDto> filterFiles(User user, FileFilter filter, PageParams params) {
+        if (filter.getMinSize() != null && filter.getMaxSize() != null && filter.getMinSize() > filter.getMaxSize()) {
+            throw new IllegalArgumentException("minSize must not exceed maxSize");
+        }
+        if (filter.getCreatedFrom() != null && filter.getCreatedTo() != null
+                && filter.getCreatedFrom().isAfter(filter.getCreatedTo())) {
+            throw new IllegalArgumentException("createdFrom must not be after createdTo");
+        }
+        if (filter.getFolderId() != null && Boolean.TRUE.equals(filter.getRoot())) {
+            throw new IllegalArgumentException("Filter by folderId or root, not both");
+        }
+        Specification<File> spec = FileSpecification.hasUser(user).and(FileSpecification.isNotTrashed())
+                .and(FileSpecification.nameContains(filter.getName()))
+                .and(FileSpecification.hasFileType(filter.getType()))
+                .and(FileSpecification.hasSizeGreaterThan(filter.getMinSize()))
+                .and(FileSpecification.hasSizeLessThan(filter.getMaxSize()))
+                .and(FileSpecification.createdAfter(filter.getCreatedFrom() == null ? null
+                        : filter.getCreatedFrom().atStartOfDay()))
+                .and(FileSpecification.createdBeforeExclusive(filter.getCreatedTo() == null ? null
+                        : filter.getCreatedTo().plusDays(1).atStartOfDay()));
+        if (filter.getFolderId() != null && Boolean.TRUE.equals(filter.getRecursive())) {
+            spec = spec.and(FileSpecification.inSubtree(filter.getFolderId()));
+        } else if (filter.getFolderId() != null || Boolean.TRUE.equals(filter.getRoot())) {
+            spec = spec.and(FileSpecification.inFolder(filter.getFolderId()));
+        }
+        if (filter.getStarred() != null) {
+            spec = spec.and(filter.getStarred() ? FileSpecification.isStarred()
+                    : Specification.not(FileSpecification.isStarred()));
+        }
+        if (filter.getShared() != null) {
+            spec = spec.and(filter.getShared() ? FileSpecification.isShared() : FileSpecification.isNotShared());
+        }
+        return pageFiles(spec, params);
     }
 
     public Object toggleStar(UUID fileId, User user) {
@@ -164,48 +414,69 @@ public class FileService {
     }
 
     public void permanentDeleteFile(UUID fileId, User user) {
-        File file = getFile(fileId, user);
+        await(permanentDeleteFileAsync(fileId, user));
+    }
 
-        // Delete from S3
+    public CompletableFuture<Void> permanentDeleteFileAsync(UUID fileId, User user) {
+        File file;
         try {
-            String path = file.getFilePath();
-            // Extract key from URL: s3-endpoint/bucket/user-id/filename
-            // or simply use the fact that our key is user-id/filename
-            String key = file.getUser().getId() + "/" + path.substring(path.lastIndexOf("/") + 1);
+            file = getFile(fileId, user);
+            evictCached(storageKey(file));
 
-            log.info("Deleting from S3: {}/{}", bucketName, key);
-            s3Client.deleteObject(bucketName, key);
-        } catch (Exception e) {
-            log.warn("Could not delete from S3: {}", e.getMessage());
+            // The row goes first; only the call that deleted it gives back its references, so this and an
+            // overlapping trash purge never release the same content twice
+            if (fileRepository.deleteByIds(List.of(file.getId())) == 0) {
+                return CompletableFuture.completedFuture(null);
+            }
+            usageService.deleted(file);
+
+            if (Boolean.TRUE.equals(file.getIsChunked())) {
+                chunkStore.release(file.getId());
+                return CompletableFuture.completedFuture(null);
+            }
+
+            // Deduplicated content is shared: only the last reference removes the object
+            if (file.getContentHash() != null && !blobService.release(file.getUser(), file.getContentHash())) {
+                return CompletableFuture.completedFuture(null);
+            }
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
         }
 
-        fileRepository.delete(file);
+        // Delete from storage
+        String key = storageKey(file);
+        log.info("Deleting from storage: {}", key);
+        return storage.deleteAsync(key)
+                .exceptionally(e -> {
+                    log.warn("Could not delete from storage: {}", unwrap(e).getMessage());
+                    return null;
+                });
     }
 
-    public List<File> searchFiles(User user, String query) {
-        return fileRepository.findByUserAndFileNameContainingIgnoreCaseAndIsTrashedFalse(user, query);
+    // Forget cached URLs of a file that went to the trash, so they aren't handed out again
+    public void evictUrl(File file) {
+        urlCache.evict(storageKey(file));
     }
 
-    public List<File> getRecentFiles(User user) {
-        List<File> ownedFiles = fileRepository.findByUserAndIsTrashedFalse(user);
-        List<com.cloudstorage.model.Share> sharedWithMe = shareRepository.findBySharedWith(user);
-        List<File> sharedFiles = sharedWithMe.stream()
-                .map(com.cloudstorage.model.Share::getFile)
-                .filter(f -> !f.getIsTrashed())
-                .toList();
+    // Forget cached URLs and local copies of an object that is about to be deleted
+    public void evictCached(String key) {
+        urlCache.evict(key);
+        hotCache.evict(key);
+    }
 
-        java.util.List<File> combined = new java.util.ArrayList<>();
-        combined.addAll(ownedFiles);
-        combined.addAll(sharedFiles);
+    public List<FileDto> getRecentFiles(User user) {
+        return fileRepository.findRecentViews(user, RECENT_LIMIT);
+    }
 
-        return combined.stream()
-                .sorted((f1, f2) -> {
-                    LocalDateTime t1 = f1.getLastOpenedAt() != null ? f1.getLastOpenedAt() : f1.getCreatedAt();
-                    LocalDateTime t2 = f2.getLastOpenedAt() != null ? f2.getLastOpenedAt() : f2.getCreatedAt();
-                    return t2.compareTo(t1);
-                })
-                .limit(20)
-                .toList();
+    // The recent-files query orders by last_opened_at alone so it can walk the index; older rows without one
+    // get their creation time, which is what they sorted by before
+    @EventListener(ApplicationReadyEvent.class)
+    public void fillMissingLastOpened() {
+        int files = fileRepository.fillMissingLastOpened();
+        int shares = shareRepository.fillMissingLastOpened();
+        if (files + shares > 0) {
+            log.info("Filled in last opened time of {} files and {} shares", files, shares);
+        }
     }
 
     public void reportFileOpen(UUID fileId, User user) {
@@ -241,14 +512,11 @@ public class FileService {
         if (!file.getUser().getId().toString().equals(user.getId().toString())) {
             throw new RuntimeException("Only the owner can move this file to a folder.");
         }
-        if (targetFolderId != null) {
-            Folder targetFolder = folderRepository.findById(targetFolderId)
-                    .orElseThrow(() -> new RuntimeException("Folder not found"));
-            file.setFolder(targetFolder);
-        } else {
-            file.setFolder(null);
-        }
-        return fileRepository.save(file);
+        UUID fromFolderId = file.getFolder() == null ? null : file.getFolder().getId();
+        file.setFolder(resolveOwnedFolder(targetFolderId, user));
+        file = fileRepository.save(file);
+        usageService.moved(file, fromFolderId);
+        return file;
     }
 
     private void checkPermission(UUID fileId, User user, com.cloudstorage.model.Share.Permission required) {
@@ -265,11 +533,6 @@ public class FileService {
         }
     }
 
-    public long calculateUserStorage(User user) {
-        return fileRepository.findByUserAndIsTrashedFalse(user).stream()
-                .mapToLong(File::getFileSize).sum();
-    }
-
     public String generatePublicLink(UUID fileId, User user) {
         File file = getFile(fileId, user);
         if (file.getPublicShareToken() == null) {
@@ -283,6 +546,7 @@ public class FileService {
         File file = getFile(fileId, user);
         file.setPublicShareToken(null);
         fileRepository.save(file);
+        urlCache.evict(storageKey(file));
     }
 
     public File getFileByPublicToken(String token) {
@@ -290,97 +554,112 @@ public class FileService {
                 .orElseThrow(() -> new RuntimeException("Invalid link"));
     }
 
+    // Signed download URL, or null when the content has to be streamed through the server instead
     public String generateSignedUrl(File file) {
+        if (Boolean.TRUE.equals(file.getIsChunked())) {
+            return null;
+        }
         try {
-            String path = file.getFilePath();
-            // In S3, the key is what we need. For our app, it's user-id/unique-filename
-            // Since we store the full URL, we extract the part after the last slash
-            String key = file.getUser().getId() + "/" + path.substring(path.lastIndexOf("/") + 1);
-
-            // Set expiration to 2 hours
-            Date expiration = new Date();
-            long expTimeMillis = expiration.getTime();
-            expTimeMillis += 1000 * 60 * 60 * 2; // 2 hours
-            expiration.setTime(expTimeMillis);
-
-            log.info("Generating presigned URL for S3 key: {}", key);
-            GeneratePresignedUrlRequest request = new GeneratePresignedUrlRequest(bucketName, key)
-                    .withMethod(HttpMethod.GET)
-                    .withExpiration(expiration);
-
-            URL url = s3Client.generatePresignedUrl(request);
-            return url.toString();
+            // Valid for 2 hours; reused from the cache until close to expiry
+            return urlCache.presignGet(storageKey(file), Duration.ofHours(2)).orElse(null);
         } catch (Exception e) {
-            log.error("Failed to generate S3 presigned URL: {}", e.getMessage());
+            log.error("Failed to generate presigned URL: {}", e.getMessage());
             return file.getFilePath();
         }
     }
 
     // Generate a Presigned URL for UPLOADING (Direct Browser-to-S3)
     public Map<String, String> generatePresignedUploadUrl(String fileName, String contentType, User user) {
+        return generatePresignedUploadUrl(fileName, contentType, null, user);
+    }
+
+    public Map<String, String> generatePresignedUploadUrl(String fileName, String contentType, String sha256,
+            User user) {
         try {
+            // Known content: nothing to upload, complete-upload will just link to the stored object
+            Optional<Blob> existing = blobService.findBySha256(user, normalizeSha256(sha256));
+            if (existing.isPresent()) {
+                return Map.of(
+                        "duplicate", "true",
+                        "fileName", fileName,
+                        "fileKey", existing.get().getStorageKey(),
+                        "fileType", contentType);
+            }
+
             String fileExtension = fileName.contains(".")
                     ? fileName.substring(fileName.lastIndexOf("."))
                     : "";
             String uniqueFileName = UUID.randomUUID().toString() + fileExtension;
             String key = user.getId() + "/" + uniqueFileName;
 
-            // Set expiration to 30 minutes for the upload window
-            Date expiration = new Date();
-            long expTimeMillis = expiration.getTime();
-            expTimeMillis += 1000 * 60 * 30; // 30 mins
-            expiration.setTime(expTimeMillis);
-
-            GeneratePresignedUrlRequest request = new GeneratePresignedUrlRequest(bucketName, key)
-                    .withMethod(HttpMethod.PUT)
-                    .withExpiration(expiration);
-
-            // Critical for CORS: S3 needs to know the content type we're pre-approving
-            request.setContentType(contentType);
-
-            URL url = s3Client.generatePresignedUrl(request);
+            // 30 minute upload window
+            String url = storage.presignPut(key, contentType, Duration.ofMinutes(30))
+                    .orElseThrow(() -> new RuntimeException("Storage backend does not support direct uploads"));
 
             return Map.of(
-                    "uploadUrl", url.toString(),
+                    "uploadUrl", url,
                     "fileName", fileName,
                     "fileKey", key,
                     "fileType", contentType);
         } catch (Exception e) {
-            log.error("Failed to generate S3 upload URL: {}", e.getMessage());
+            log.error("Failed to generate upload URL: {}", e.getMessage());
             throw new RuntimeException("Could not initialize upload: " + e.getMessage());
         }
     }
 
     // Save metadata after successful direct upload
     public File completeUpload(Map<String, Object> metadata, User user) {
+        return await(completeUploadAsync(metadata, user));
+    }
+
+    public CompletableFuture<File> completeUploadAsync(Map<String, Object> metadata, User user) {
         try {
             String fileName = (String) metadata.get("fileName");
             String fileKey = (String) metadata.get("fileKey");
             String fileType = (String) metadata.get("fileType");
-            long fileSize = Long.parseLong(metadata.get("fileSize").toString());
             UUID folderId = metadata.get("folderId") != null ? UUID.fromString(metadata.get("folderId").toString())
                     : null;
 
-            String s3Url = s3Client.getUrl(bucketName, fileKey).toString();
-
-            Folder folder = null;
-            if (folderId != null) {
-                folder = folderRepository.findById(folderId).orElse(null);
+            // Only keys issued to this user by init-upload may be registered
+            if (fileKey == null || !fileKey.startsWith(user.getId() + "/")) {
+                throw new RuntimeException("Invalid file key");
             }
 
-            File file = new File();
-            file.setFileName(fileName);
-            file.setFilePath(s3Url);
-            file.setFileType(fileType);
-            file.setFileSize(fileSize);
-            file.setUser(user);
-            file.setFolder(folder);
-            file.setLastOpenedAt(LocalDateTime.now());
+            Folder folder = resolveOwnedFolder(folderId, user);
 
-            return fileRepository.save(file);
+            // A key that already belongs to a deduplicated object is linked, not re-registered
+            Optional<Blob> existing = blobService.retainByKey(user, fileKey);
+            if (existing.isPresent()) {
+                return CompletableFuture.completedFuture(registerUploadedFile(fileName, fileKey, fileType,
+                        existing.get().getSize(), existing.get().getSha256(), folder, user));
+            }
+
+            // Trust what actually landed in the bucket, not the client-supplied fileSize
+            Folder target = folder;
+            return storage.sizeAsync(fileKey)
+                    .thenApply(fileSize -> registerUploadedFile(fileName, fileKey, fileType, fileSize, target, user))
+                    .exceptionallyCompose(e -> completeFailed(unwrap(e)));
         } catch (Exception e) {
-            log.error("Failed to complete upload metadata: {}", e.getMessage());
-            throw new RuntimeException("Failed to finalize upload: " + e.getMessage());
+            return completeFailed(e);
         }
     }
+
+    private static <T> CompletableFuture<T> completeFailed(Throwable e) {
+        log.error("Failed to complete upload metadata: {}", e.getMessage());
+        return CompletableFuture.failedFuture(new RuntimeException("Failed to finalize upload: " + e.getMessage()));
+    }
+
+    // Blocking callers see the same RuntimeException the future failed with
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = unwrap(e);
+            throw cause instanceof RuntimeException runtime ? runtime : new RuntimeException(cause);
+        }
+    }
+
+    public static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
 }
@@ -0,0 +1,67 @@
+package com.cloudstorage.service;
+
+import com.cloudstorage.model.Folder;
+import com.cloudstorage.repository.FolderClosureRepository;
+import com.cloudstorage.repository.UserRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.data.domain.Limit;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Keeps the folder closure table in step with parentFolder. Creating a folder copies its parent's path,
+ * moving one detaches and reattaches its whole subtree in two statements, and deleting one drops its
+ * rows through the foreign keys. Moves of one user are serialized on the user's row, so two moves
+ * can't each pass the cycle check and together build a loop.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class FolderHierarchyService {
+
+    private final FolderClosureRepository closureRepository;
+    private final UserRepository userRepository;
+
+    // Call once the folder has its id
+    @Transactional
+    public void created(Folder folder) {
+        closureRepository.insertSelf(folder.getId());
+        if (folder.getParentFolder() != null) {
+            closureRepository.insertAncestors(folder.getId(), folder.getParentFolder().getId());
+        }
+    }
+
+    // Cycle check and closure update for a move the caller is about to save; null target is the root
+    @Transactional
+    public void move(Folder folder, Folder target) {
+        userRepository.lockById(folder.getUser().getId());
+        if (target != null && closureRepository.existsByAncestorIdAndDescendantId(folder.getId(), target.getId())) {
+            throw new RuntimeException("Cannot move a folder into itself or one of its subfolders");
+        }
+        closureRepository.detachSubtree(folder.getId());
+        if (target != null) {
+            closureRepository.attachSubtree(folder.getId(), target.getId());
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillOnStartup() {
+        int rows = backfill();
+        if (rows > 0) {
+            log.info("Folder hierarchy: added {} closure rows", rows);
+        }
+    }
+
+    // Adds the rows of folders that have none, such as folders from before the closure table; a cheap
+    // check first, so the full walk only runs when something is missing
+    @Transactional
+    public int backfill() {
+        if (closureRepository.findUnindexedFolderIds(Limit.of(1)).isEmpty()) {
+            return 0;
+        }
+        return closureRepository.backfill();
+    }
+}
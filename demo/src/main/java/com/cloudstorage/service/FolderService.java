@@ -1,21 +1,47 @@
 package com.cloudstorage.service;
 
+import com.cloudstorage.dto.CursorPage;
+import com.cloudstorage.dto.FolderDto;
+import com.cloudstorage.dto.FolderTree;
+import com.cloudstorage.dto.FolderTreeRow;
+import com.cloudstorage.dto.PageParams;
+import com.cloudstorage.dto.UsageGroup;
 import com.cloudstorage.model.Folder;
 import com.cloudstorage.model.User;
+import com.cloudstorage.repository.FileRepository;
 import com.cloudstorage.repository.FolderRepository;
+import com.cloudstorage.repository.Keyset;
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
-
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 @Service
 @RequiredArgsConstructor
 public class FolderService {
 
+    private static final Map<Keyset.SortBy, Keyset.Column> SORT_COLUMNS = Map.of(
+            Keyset.SortBy.NAME, new Keyset.Column("name", String.class),
+            Keyset.SortBy.CREATED, new Keyset.Column("createdAt", LocalDateTime.class));
+
     private final FolderRepository folderRepository;
+    private final FileRepository fileRepository;
+    private final FolderHierarchyService hierarchyService;
+    private final StorageUsageService usageService;
 
     // Create folder
+    @Transactional
     public Folder createFolder(String name, User user, UUID parentFolderId) {
         Folder folder = new Folder();
         folder.setName(name);
@@ -33,22 +59,90 @@ public class FolderService {
             folder.setParentFolder(parentFolder);
         }
 
-        return folderRepository.save(folder);
+        folder = folderRepository.save(folder);
+        hierarchyService.created(folder);
+        return folder;
     }
 
     // Get user's folders
-    public List<Folder> getUserFolders(User user) {
-        return folderRepository.findByUserAndIsTrashedFalse(user);
+    public List<FolderDto> getUserFolders(User user) {
+        return folderRepository.findViewsByUser(user);
+    }
+
+    public CursorPage<FolderDto> getUserFolders(User user, PageParams params) {
+        Keyset.Request request = Keyset.request(SORT_COLUMNS, params);
+        Specification<Folder> filter = (root, query, cb) -> cb.and(cb.equal(root.get("user"), user),
+                cb.equal(root.get("isTrashed"), false));
+        List<Folder> rows = folderRepository.findBy(filter.and(Keyset.after(request)),
+                query -> query.sortBy(request.sort()).limit(request.limit() + 1).all());
+        return Keyset.page(rows, request).map(FolderDto::of);
+    }
+
+    // The whole tree from one query: rows are grouped by parent, a breadth-first walk from the top-level
+    // folders numbers the nodes, and a reverse pass adds each node's totals into its parent's. Live
+    // folders under a trashed parent can't be reached from the top and are left out, as in the sidebar.
+    public FolderTree getTree(User user) {
+        List<FolderTreeRow> rows = folderRepository.findTreeRows(user);
+        Map<UUID, List<FolderTreeRow>> children = new HashMap<>();
+        for (FolderTreeRow row : rows) {
+            children.computeIfAbsent(row.parentFolderId(), id -> new ArrayList<>()).add(row);
+        }
+        List<FolderTreeRow> order = new ArrayList<>(children.getOrDefault(null, List.of()));
+        int[] parents = new int[rows.size()];
+        Arrays.fill(parents, -1);
+        for (int i = 0; i < order.size(); i++) {
+            for (FolderTreeRow child : children.getOrDefault(order.get(i).id(), List.of())) {
+                parents[order.size()] = i;
+                order.add(child);
+            }
+        }
+
+        long[] totalFiles = new long[order.size()];
+        long[] totalBytes = new long[order.size()];
+        for (int i = order.size() - 1; i >= 0; i--) {
+            totalFiles[i] += order.get(i).files();
+            totalBytes[i] += order.get(i).bytes();
+            if (parents[i] >= 0) {
+                totalFiles[parents[i]] += totalFiles[i];
+                totalBytes[parents[i]] += totalBytes[i];
+            }
+        }
+
+        MessageDigest digest = BlobService.newDigest();
+        List<FolderTree.Node> nodes = new ArrayList<>(order.size());
+        for (int i = 0; i < order.size(); i++) {
+            FolderTreeRow row = order.get(i);
+            nodes.add(new FolderTree.Node(row.id(), row.name(), parents[i], row.files(), row.bytes(), totalFiles[i],
+                    totalBytes[i]));
+            digest.update((row.id() + "\0" + row.name() + "\0" + parents[i] + "\0" + row.files() + "\0"
+                    + row.bytes() + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        return new FolderTree(HexFormat.of().formatHex(digest.digest(), 0, 16), nodes);
     }
 
     // Get root folders (no parent)
-    public List<Folder> getRootFolders(User user) {
-        return folderRepository.findByUserAndParentFolderIsNullAndIsTrashedFalse(user);
+    public List<FolderDto> getRootFolders(User user) {
+        return folderRepository.findViewsByUserInRoot(user);
     }
 
     // Get subfolders
-    public List<Folder> getSubfolders(User user, UUID parentFolderId) {
-        return folderRepository.findByUserAndParentFolderIdAndIsTrashedFalse(user, parentFolderId);
+    public List<FolderDto> getSubfolders(User user, UUID parentFolderId) {
+        return folderRepository.findViewsByUserInFolder(user, parentFolderId);
+    }
+
+    // Root first, ending with the folder itself
+    public List<FolderDto> getBreadcrumbs(User user, UUID folderId) {
+        List<FolderDto> path = folderRepository.findPathViews(user, folderId);
+        if (path.isEmpty()) {
+            throw new RuntimeException("Folder not found");
+        }
+        return path;
+    }
+
+    // Every folder below this one, at any depth
+    public List<FolderDto> getDescendants(User user, UUID folderId) {
+        getFolder(folderId, user);
+        return folderRepository.findDescendantViews(user, folderId);
     }
 
     // Get folder by ID
@@ -64,24 +158,37 @@ public class FolderService {
         return folder;
     }
 
-    // Delete folder (soft delete)
+    // Delete folder (soft delete) with its whole subtree: two set-based updates over the closure table,
+    // each row marked with this folder. Items already in the trash keep their own marker.
+    @Transactional
     public void deleteFolder(UUID folderId, User user) {
         Folder folder = getFolder(folderId, user);
-        folder.setIsTrashed(true);
-        folderRepository.save(folder);
+        if (Boolean.TRUE.equals(folder.getIsTrashed())) {
+            return;
+        }
+        folderRepository.trashSubtree(folderId);
+        fileRepository.trashInSubtree(folderId);
+        fileRepository.sumTrashedWith(folderId).forEach(files -> usageService.trashed(user, files));
     }
 
-    // Restore folder
+    // Restore folder with exactly what was trashed along with it
+    @Transactional
     public void restoreFolder(UUID folderId, User user) {
         Folder folder = getFolder(folderId, user);
-        folder.setIsTrashed(false);
-        folderRepository.save(folder);
-    }
-
-    // Permanent delete
-    public void permanentDeleteFolder(UUID folderId, User user) {
-        Folder folder = getFolder(folderId, user);
-        folderRepository.delete(folder);
+        if (folder.getTrashRootId() != null && !folder.getTrashRootId().equals(folderId)) {
+            throw new RuntimeException("Folder was trashed with a parent folder; restore that folder instead");
+        }
+        // Its parent went to the trash on its own later, so the folder comes back at the root
+        if (folder.getParentFolder() != null && Boolean.TRUE.equals(folder.getParentFolder().getIsTrashed())) {
+            hierarchyService.move(folder, null);
+            folder.setParentFolder(null);
+            folderRepository.save(folder);
+        }
+        List<UsageGroup<UUID>> restored = fileRepository.sumTrashedWith(folderId);
+        fileRepository.restoreTrashedWith(folderId);
+        folderRepository.restoreTrashedWith(folderId);
+        usageService.recomputeFolders(folderId);
+        restored.forEach(files -> usageService.restored(user, files));
     }
 
     // Rename folder
@@ -91,33 +198,31 @@ public class FolderService {
         return folderRepository.save(folder);
     }
 
-    // Move folder
+    // Move folder; the target must not be the folder itself or anywhere below it
+    @Transactional
     public Folder moveFolder(UUID folderId, UUID targetFolderId, User user) {
         Folder folder = getFolder(folderId, user);
-
-        // Prevent moving folder into itself
-        if (folder.getId().equals(targetFolderId)) {
-            throw new RuntimeException("Cannot move a folder into itself");
-        }
+        Folder targetFolder = null;
 
         if (targetFolderId != null) {
-            Folder targetFolder = folderRepository.findById(targetFolderId)
+            targetFolder = folderRepository.findById(targetFolderId)
                     .orElseThrow(() -> new RuntimeException("Target folder not found"));
 
             if (!targetFolder.getUser().getId().equals(user.getId())) {
                 throw new RuntimeException("You don't have access to the target folder");
             }
-
-            // Check for circular dependency (simplified check)
-            // In production, we should robustly check if target folder is a child of source
-            // folder
-
-            folder.setParentFolder(targetFolder);
-        } else {
-            // Move to root
-            folder.setParentFolder(null);
         }
 
+        // Only a live folder counts in the rollups of the folders above it
+        boolean live = !Boolean.TRUE.equals(folder.getIsTrashed());
+        if (live) {
+            usageService.folderDetached(folderId);
+        }
+        hierarchyService.move(folder, targetFolder);
+        if (live) {
+            usageService.folderAttached(folderId);
+        }
+        folder.setParentFolder(targetFolder);
         return folderRepository.save(folder);
     }
 }
@@ -0,0 +1,23 @@
+package com.cloudstorage.service;
+
+import com.cloudstorage.model.Job;
+
+/**
+ * Runs one type of background job. Handlers are Spring beans picked up by {@link JobService}.
+ * A job may be attempted more than once (after a failure, or when its worker died), so a handler
+ * must be able to pick up where a partial earlier attempt left off.
+ */
+public interface JobHandler {
+
+    // Value of Job.type this handler runs
+    String type();
+
+    // One attempt; the return value is stored as the job's result, throwing schedules a retry
+    String run(Job job, Progress progress) throws Exception;
+
+    @FunctionalInterface
+    interface Progress {
+        // Also serves as a heartbeat; throws if the job has been taken over by another worker
+        void update(long done, Long total);
+    }
+}
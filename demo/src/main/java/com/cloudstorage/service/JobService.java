@@ -0,0 +1,235 @@
+package com.cloudstorage.service;
+
+import com.cloudstorage.model.Job;
+import com.cloudstorage.model.User;
+import com.cloudstorage.repository.JobRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Durable background jobs. Jobs are rows in the {@code jobs} table; every instance polls it and
+ * claims runnable rows with {@code SELECT ... FOR UPDATE SKIP LOCKED}, so any number of instances
+ * can share the queue without handing the same job to two workers. A bounded pool runs the claimed
+ * jobs. Failed attempts are retried with exponential backoff up to a maximum number of attempts,
+ * and a job whose worker stops sending heartbeats is handed to another one.
+ */
+@Service
+@Slf4j
+public class JobService {
+
+    private static final List<Job.Status> ACTIVE = List.of(Job.Status.QUEUED, Job.Status.RUNNING);
+
+    private final JobRepository jobRepository;
+    private final Map<String, JobHandler> handlers;
+    private final TransactionTemplate transactions;
+    private final int workers;
+    private final int maxAttempts;
+    private final Duration backoffBase;
+    private final Duration backoffMax;
+    private final Duration lease;
+    private final String workerId;
+    private final ExecutorService executor;
+    private final AtomicInteger busy = new AtomicInteger();
+    private final Set<UUID> running = ConcurrentHashMap.newKeySet();
+
+    @Autowired
+    public JobService(JobRepository jobRepository, List<JobHandler> handlers,
+            PlatformTransactionManager transactionManager,
+            @Value("${jobs.workers:3}") int workers,
+            @Value("${jobs.max-attempts:5}") int maxAttempts,
+            @Value("${jobs.backoff-base-seconds:10}") long backoffBaseSeconds,
+            @Value("${jobs.backoff-max-seconds:600}") long backoffMaxSeconds,
+            @Value("${jobs.lease-seconds:120}") long leaseSeconds) {
+        this(jobRepository, handlers, transactionManager, workers, maxAttempts,
+                Duration.ofSeconds(backoffBaseSeconds), Duration.ofSeconds(backoffMaxSeconds),
+                Duration.ofSeconds(leaseSeconds));
+    }
+
+    public JobService(JobRepository jobRepository, List<JobHandler> handlers,
+            PlatformTransactionManager transactionManager, int workers, int maxAttempts, Duration backoffBase,
+            Duration backoffMax, Duration lease) {
+        this.jobRepository = jobRepository;
+        this.handlers = handlers.stream().collect(Collectors.toMap(JobHandler::type, Function.identity()));
+        this.transactions = new TransactionTemplate(transactionManager);
+        this.workers = workers;
+        this.maxAttempts = maxAttempts;
+        this.backoffBase = backoffBase;
+        this.backoffMax = backoffMax;
+        this.lease = lease;
+        this.workerId = ManagementFactory.getRuntimeMXBean().getName() + "/"
+                + UUID.randomUUID().toString().substring(0, 8);
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(workers, r -> {
+            Thread t = new Thread(r, "job-worker-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public Job enqueue(User user, String type, String payload) {
+        if (!handlers.containsKey(type)) {
+            throw new IllegalArgumentException("Unknown job type: " + type);
+        }
+        Job job = new Job();
+        job.setUser(user);
+        job.setType(type);
+        job.setPayload(payload);
+        job.setMaxAttempts(maxAttempts);
+        return jobRepository.save(job);
+    }
+
+    // Returns the user's queued or running job of this type instead of adding a second one
+    public Job enqueueUnique(User user, String type) {
+        return jobRepository.findFirstByUserAndTypeAndStatusIn(user, type, ACTIVE)
+                .orElseGet(() -> enqueue(user, type, null));
+    }
+
+    public Job getJob(UUID jobId, User user) {
+        Job job = jobRepository.findById(jobId).orElseThrow(() -> new RuntimeException("Job not found"));
+        if (!job.getUser().getId().equals(user.getId())) {
+            throw new RuntimeException("Job not found");
+        }
+        return job;
+    }
+
+    // One polling round: keep our jobs alive, recover abandoned ones, and fill the free workers
+    // Must not queue behind the long scheduled sweeps; spring.task.scheduling.pool.size gives it its own thread
+    @Scheduled(fixedDelayString = "${jobs.poll-interval-ms:1000}")
+    public void poll() {
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            if (!running.isEmpty()) {
+                jobRepository.heartbeat(Set.copyOf(running), workerId, now);
+            }
+            LocalDateTime cutoff = now.minus(lease);
+            int requeued = jobRepository.requeueStale(cutoff, now, Job.Status.RUNNING, Job.Status.QUEUED);
+            int failed = jobRepository.failStale(cutoff, now, Job.Status.RUNNING, Job.Status.FAILED);
+            if (requeued + failed > 0) {
+                log.warn("Recovered abandoned jobs: {} requeued, {} failed", requeued, failed);
+            }
+
+            int free = workers - busy.get();
+            if (free <= 0) {
+                return;
+            }
+            for (Job job : claim(free)) {
+                busy.incrementAndGet();
+                running.add(job.getId());
+                executor.execute(() -> {
+                    try {
+                        execute(job);
+                    } finally {
+                        running.remove(job.getId());
+                        busy.decrementAndGet();
+                    }
+                });
+            }
+        } catch (Exception e) {
+            log.error("Job polling failed: {}", e.getMessage());
+        }
+    }
+
+    // Finished jobs are kept for a while so clients can read the outcome
+    @Scheduled(fixedDelayString = "${jobs.cleanup-interval-ms:3600000}")
+    public void deleteOldJobs() {
+        int deleted = jobRepository.deleteFinishedBefore(LocalDateTime.now().minusDays(7));
+        if (deleted > 0) {
+            log.info("Deleted {} finished jobs", deleted);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    // Take up to limit runnable jobs for this worker
+    List<Job> claim(int limit) {
+        return transactions.execute(status -> {
+            List<UUID> ids = jobRepository.lockRunnable(LocalDateTime.now(), limit).stream().map(Job::getId).toList();
+            if (ids.isEmpty()) {
+                return List.of();
+            }
+            jobRepository.markRunning(ids, workerId, LocalDateTime.now(), Job.Status.RUNNING);
+            return jobRepository.findAllById(ids);
+        });
+    }
+
+    // Run one claimed attempt on the calling thread and record its outcome
+    void execute(Job job) {
+        JobHandler handler = handlers.get(job.getType());
+        try {
+            if (handler == null) {
+                throw new IllegalStateException("No handler for job type " + job.getType());
+            }
+            String result = handler.run(job, (done, total) -> {
+                if (jobRepository.updateProgress(job.getId(), workerId, done, total, LocalDateTime.now()) == 0) {
+                    throw new IllegalStateException("Job " + job.getId() + " was taken over by another worker");
+                }
+            });
+            jobRepository.finish(job.getId(), workerId, Job.Status.COMPLETED, truncate(result), null,
+                    LocalDateTime.now());
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            String error = truncate(e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName());
+            if (handler == null || job.getAttempts() >= job.getMaxAttempts()) {
+                log.error("Job {} ({}) failed for good after {} attempts: {}", job.getId(), job.getType(),
+                        job.getAttempts(), error);
+                jobRepository.finish(job.getId(), workerId, Job.Status.FAILED, null, error, LocalDateTime.now());
+            } else {
+                Duration delay = backoff(job.getAttempts());
+                log.warn("Job {} ({}) attempt {} failed, retrying in {}s: {}", job.getId(), job.getType(),
+                        job.getAttempts(), delay.toSeconds(), error);
+                jobRepository.retry(job.getId(), workerId, error, LocalDateTime.now().plus(delay),
+                        LocalDateTime.now(), Job.Status.QUEUED);
+            }
+        }
+    }
+
+    // Exponential, capped, with jitter so jobs that failed together don't all retry together
+    Duration backoff(int attempts) {
+        long base = backoffBase.toMillis() << Math.min(attempts - 1, 20);
+        long capped = Math.min(base, backoffMax.toMillis());
+        return Duration.ofMillis(capped / 2 + ThreadLocalRandom.current().nextLong(capped / 2 + 1));
+    }
+
+    private static String truncate(String text) {
+        return text == null || text.length() <= 1000 ? text : text.substring(0, 1000);
+    }
+
+    // What clients see of a job
+    public record JobStatus(UUID id, String type, Job.Status status, int attempts, int maxAttempts,
+            long progressDone, Long progressTotal, String result, String error, LocalDateTime createdAt,
+            LocalDateTime finishedAt) {
+
+        public static JobStatus of(Job job) {
+            return new JobStatus(job.getId(), job.getType(), job.getStatus(), job.getAttempts(),
+                    job.getMaxAttempts(), job.getProgressDone() != null ? job.getProgressDone() : 0,
+                    job.getProgressTotal(), job.getResult(), job.getLastError(), job.getCreatedAt(),
+                    job.getFinishedAt());
+        }
+    }
+}
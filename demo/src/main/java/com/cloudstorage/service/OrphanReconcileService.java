@@ -0,0 +1,210 @@
+package com.cloudstorage.service;
+
+import com.cloudstorage.model.Job;
+import com.cloudstorage.repository.BlobRepository;
+import com.cloudstorage.repository.ChunkRepository;
+import com.cloudstorage.repository.FileRepository;
+import com.cloudstorage.storage.StorageBackend;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Finds objects in the bucket that no row points at: uploads whose metadata never got saved,
+ * presigned uploads that were never completed, content left behind by deleted folders. The listing
+ * is streamed page by page and each page is checked against the database with indexed IN lookups,
+ * so memory stays bounded by the page size however many objects the bucket holds. Objects younger
+ * than the grace period are never counted, since an upload in flight has its object before its row.
+ */
+@Service
+@Slf4j
+public class OrphanReconcileService implements JobHandler {
+
+    public static final String TYPE = "reconcile-orphans";
+    private static final int SAMPLE_SIZE = 20;
+
+    public enum Mode {
+        REPORT, // Count and log orphans only
+        DELETE
+    }
+
+    private final FileRepository fileRepository;
+    private final BlobRepository blobRepository;
+    private final ChunkRepository chunkRepository;
+    private final StorageBackend storage;
+    private final int batchSize;
+    private final Duration grace;
+    private final Mode scheduledMode;
+    private final Clock clock;
+
+    @Autowired
+    public OrphanReconcileService(FileRepository fileRepository, BlobRepository blobRepository,
+            ChunkRepository chunkRepository, StorageBackend storage,
+            @Value("${storage.reconcile.batch-size:500}") int batchSize,
+            @Value("${storage.reconcile.grace-hours:24}") long graceHours,
+            @Value("${storage.reconcile.mode:report}") String scheduledMode) {
+        this(fileRepository, blobRepository, chunkRepository, storage, batchSize, Duration.ofHours(graceHours),
+                parseMode(scheduledMode), Clock.systemUTC());
+    }
+
+    public OrphanReconcileService(FileRepository fileRepository, BlobRepository blobRepository,
+            ChunkRepository chunkRepository, StorageBackend storage, int batchSize, Duration grace,
+            Mode scheduledMode, Clock clock) {
+        this.fileRepository = fileRepository;
+        this.blobRepository = blobRepository;
+        this.chunkRepository = chunkRepository;
+        this.storage = storage;
+        this.batchSize = batchSize;
+        this.grace = grace;
+        this.scheduledMode = scheduledMode;
+        this.clock = clock;
+    }
+
+    public static Mode parseMode(String value) {
+        if (value == null || value.isBlank()) {
+            return Mode.REPORT;
+        }
+        try {
+            return Mode.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown reconcile mode: " + value);
+        }
+    }
+
+    @Override
+    public String type() {
+        return TYPE;
+    }
+
+    // A user's job only covers their own prefix; the payload is the mode
+    @Override
+    public String run(Job job, Progress progress) {
+        return reconcile(job.getUser().getId() + "/", parseMode(job.getPayload()), progress).toString();
+    }
+
+    // Whole-bucket sweep, which also catches prefixes of users that no longer exist. Off unless a cron is set.
+    @Scheduled(cron = "${storage.reconcile.cron:-}")
+    public void reconcileBucket() {
+        try {
+            log.info("Orphan reconcile: {}", reconcile("", scheduledMode, (done, total) -> {
+            }));
+        } catch (Exception e) {
+            log.error("Orphan reconcile failed: {}", e.getMessage());
+        }
+    }
+
+    public Report reconcile(String prefix, Mode mode, Progress progress) {
+        Instant cutoff = clock.instant().minus(grace);
+        Tally tally = new Tally();
+        List<StorageBackend.ObjectInfo> page = new ArrayList<>(batchSize);
+        try (Stream<StorageBackend.ObjectInfo> objects = storage.list(prefix)) {
+            Iterator<StorageBackend.ObjectInfo> it = objects.iterator();
+            while (it.hasNext()) {
+                StorageBackend.ObjectInfo object = it.next();
+                tally.scanned++;
+                if (object.lastModified().isAfter(cutoff)) {
+                    tally.recent++;
+                    continue;
+                }
+                page.add(object);
+                if (page.size() == batchSize) {
+                    check(page, mode, tally);
+                    page.clear();
+                    progress.update(tally.scanned, null);
+                }
+            }
+        }
+        if (!page.isEmpty()) {
+            check(page, mode, tally);
+        }
+        progress.update(tally.scanned, tally.scanned);
+        Report report = tally.report(prefix, mode);
+        if (report.orphans() > 0) {
+            log.warn("Orphaned objects under '{}': {}", prefix, report);
+        }
+        return report;
+    }
+
+    private void check(List<StorageBackend.ObjectInfo> page, Mode mode, Tally tally) {
+        Set<String> referenced = referencedKeys(page.stream().map(StorageBackend.ObjectInfo::key).toList());
+        List<String> orphans = new ArrayList<>();
+        for (StorageBackend.ObjectInfo object : page) {
+            if (referenced.contains(object.key())) {
+                continue;
+            }
+            orphans.add(object.key());
+            tally.orphanBytes += object.size();
+            if (tally.sample.size() < SAMPLE_SIZE) {
+                tally.sample.add(object.key());
+            }
+        }
+        tally.orphans += orphans.size();
+        if (mode == Mode.DELETE && !orphans.isEmpty()) {
+            List<String> failed = storage.deleteAll(orphans);
+            tally.deleted += orphans.size() - failed.size();
+            tally.failed += failed.size();
+        }
+    }
+
+    // Keys some row still points at: chunk objects by hash, everything else by file location or blob key
+    private Set<String> referencedKeys(List<String> keys) {
+        Set<String> referenced = new HashSet<>();
+        List<String> hashes = keys.stream()
+                .filter(key -> key.startsWith(ChunkStoreService.KEY_PREFIX))
+                .map(key -> key.substring(ChunkStoreService.KEY_PREFIX.length()))
+                .toList();
+        if (!hashes.isEmpty()) {
+            chunkRepository.findExisting(hashes).forEach(hash -> referenced.add(ChunkStoreService.KEY_PREFIX + hash));
+        }
+        List<String> others = keys.stream().filter(key -> !key.startsWith(ChunkStoreService.KEY_PREFIX)).toList();
+        if (!others.isEmpty()) {
+            Map<String, String> byLocation = others.stream()
+                    .collect(Collectors.toMap(storage::locationOf, Function.identity(), (a, b) -> a));
+            fileRepository.findExistingPaths(byLocation.keySet()).forEach(path -> referenced.add(byLocation.get(path)));
+            referenced.addAll(blobRepository.findExistingKeys(others));
+        }
+        return referenced;
+    }
+
+    private static class Tally {
+        long scanned;
+        long recent;
+        long orphans;
+        long orphanBytes;
+        long deleted;
+        long failed;
+        final List<String> sample = new ArrayList<>();
+
+        Report report(String prefix, Mode mode) {
+            return new Report(prefix, mode, scanned, recent, orphans, orphanBytes, deleted, failed, sample);
+        }
+    }
+
+    // sample holds the first few orphan keys found
+    public record Report(String prefix, Mode mode, long scanned, long skippedRecent, long orphans,
+            long orphanBytes, long deleted, long failed, List<String> sample) {
+
+        @Override
+        public String toString() {
+            return scanned + " objects scanned (" + skippedRecent + " within grace period), " + orphans
+                    + " orphaned (" + orphanBytes + " bytes), " + deleted + " deleted, " + failed
+                    + " could not be deleted";
+        }
+    }
+}
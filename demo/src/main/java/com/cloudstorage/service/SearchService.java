@@ -0,0 +1,133 @@
+package com.cloudstorage.service;
+
+import com.cloudstorage.dto.CursorPage;
+import com.cloudstorage.dto.FileDto;
+import com.cloudstorage.dto.FolderDto;
+import com.cloudstorage.dto.PageParams;
+import com.cloudstorage.dto.SearchResult;
+import com.cloudstorage.model.User;
+import com.cloudstorage.repository.FileRepository;
+import com.cloudstorage.repository.FolderRepository;
+import com.cloudstorage.repository.Keyset;
+import com.cloudstorage.search.NameSearchEngine;
+import com.cloudstorage.search.SearchHit;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Relevance-ranked search over file and folder names. The engine ranks; each batch of hits is then
+ * loaded by id in one statement per kind, which also drops hits the engine still holds but that were
+ * deleted or trashed since. Pages are positions in the ranking rather than keysets, as a score is
+ * not a stable sort key; the cursor is the position to continue from.
+ */
+@Service
+@RequiredArgsConstructor
+public class SearchService {
+
+    private static final String CURSOR_PREFIX = "RELEVANCE|";
+
+    private final NameSearchEngine engine;
+    private final FileRepository fileRepository;
+    private final FolderRepository folderRepository;
+
+    public CursorPage<SearchResult> search(User user, String query, Set<SearchHit.Kind> kinds, PageParams params) {
+        if (params.getSort() != null || params.getDirection() != null) {
+            throw new IllegalArgumentException("Search results are ordered by relevance");
+        }
+        int limit = params.getLimit() == null ? Keyset.DEFAULT_LIMIT : params.getLimit();
+        if (limit < 1 || limit > Keyset.MAX_LIMIT) {
+            throw new IllegalArgumentException("limit must be between 1 and " + Keyset.MAX_LIMIT);
+        }
+        int position = params.getCursor() == null ? 0 : decode(params.getCursor());
+        if (query == null || query.isBlank() || kinds.isEmpty()) {
+            return new CursorPage<>(List.of(), null);
+        }
+
+        // One result past the page tells whether there is another
+        List<SearchResult> results = new ArrayList<>();
+        int next = position;
+        while (results.size() <= limit) {
+            int wanted = limit + 1 - results.size();
+            List<SearchHit> hits = engine.search(user.getId(), query, kinds, position, wanted);
+            List<SearchResult> loaded = load(user, hits);
+            for (int i = 0; i < hits.size(); i++) {
+                if (loaded.get(i) == null) {
+                    continue;
+                }
+                results.add(loaded.get(i));
+                if (results.size() == limit) {
+                    next = position + i + 1;
+                }
+            }
+            position += hits.size();
+            if (hits.size() < wanted) {
+                break;
+            }
+        }
+        if (results.size() <= limit) {
+            return new CursorPage<>(results, null);
+        }
+        return new CursorPage<>(List.copyOf(results.subList(0, limit)), encode(next));
+    }
+
+    // The first page of matching files, for the plain file search
+    public List<FileDto> searchFiles(User user, String query) {
+        return search(user, query, EnumSet.of(SearchHit.Kind.FILE), new PageParams()).items().stream()
+                .map(SearchResult::file)
+                .toList();
+    }
+
+    // One result per hit, null where the file or folder is gone or trashed
+    private List<SearchResult> load(User user, List<SearchHit> hits) {
+        Map<UUID, FileDto> files = ids(hits, SearchHit.Kind.FILE).isEmpty() ? Map.of()
+                : fileRepository.findViewsByUserAndIdIn(user, ids(hits, SearchHit.Kind.FILE)).stream()
+                        .collect(Collectors.toMap(FileDto::id, Function.identity()));
+        Map<UUID, FolderDto> folders = ids(hits, SearchHit.Kind.FOLDER).isEmpty() ? Map.of()
+                : folderRepository.findViewsByUserAndIdIn(user, ids(hits, SearchHit.Kind.FOLDER)).stream()
+                        .collect(Collectors.toMap(FolderDto::id, Function.identity()));
+        List<SearchResult> results = new ArrayList<>();
+        for (SearchHit hit : hits) {
+            FileDto file = hit.kind() == SearchHit.Kind.FILE ? files.get(hit.id()) : null;
+            FolderDto folder = hit.kind() == SearchHit.Kind.FOLDER ? folders.get(hit.id()) : null;
+            results.add(file == null && folder == null ? null
+                    : new SearchResult(hit.kind(), hit.score(), file, folder));
+        }
+        return results;
+    }
+
+    private static List<UUID> ids(List<SearchHit> hits, SearchHit.Kind kind) {
+        return hits.stream().filter(hit -> hit.kind() == kind).map(SearchHit::id).toList();
+    }
+
+    private static String encode(int position) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((CURSOR_PREFIX + position).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static int decode(String cursor) {
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            if (!value.startsWith(CURSOR_PREFIX)) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            int position = Integer.parseInt(value.substring(CURSOR_PREFIX.length()));
+            if (position < 0) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            return position;
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+}
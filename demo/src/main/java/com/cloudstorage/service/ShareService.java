@@ -1,13 +1,18 @@
 package com.cloudstorage.service;
 
+import com.cloudstorage.dto.CursorPage;
+import com.cloudstorage.dto.PageParams;
+import com.cloudstorage.dto.ShareDto;
 import com.cloudstorage.model.File;
 import com.cloudstorage.model.Share;
 import com.cloudstorage.model.User;
 import com.cloudstorage.repository.FileRepository;
+import com.cloudstorage.repository.Keyset;
 import com.cloudstorage.repository.ShareRepository;
 import com.cloudstorage.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
@@ -21,6 +26,13 @@ import java.util.UUID;
 @Slf4j
 public class ShareService {
 
+    // Name and size come from the shared file; created is when it was shared
+    private static final Map<Keyset.SortBy, Keyset.Column> SORT_COLUMNS = Map.of(
+            Keyset.SortBy.NAME, new Keyset.Column("file.fileName", String.class),
+            Keyset.SortBy.SIZE, new Keyset.Column("file.fileSize", Long.class),
+            Keyset.SortBy.CREATED, new Keyset.Column("createdAt", LocalDateTime.class),
+            Keyset.SortBy.OPENED, new Keyset.Column("lastOpenedAt", LocalDateTime.class));
+
     private final ShareRepository shareRepository;
     private final FileRepository fileRepository;
     private final UserRepository userRepository;
@@ -123,17 +135,26 @@ public class ShareService {
     }
 
     // Get files shared with me
-    public List<Share> getSharedWithMe(User user) {
-        return shareRepository.findBySharedWith(user);
+    public List<ShareDto> getSharedWithMe(User user) {
+        return shareRepository.findBySharedWith(user).stream().map(ShareDto::of).toList();
+    }
+
+    public CursorPage<ShareDto> getSharedWithMe(User user, PageParams params) {
+        Keyset.Request request = Keyset.request(SORT_COLUMNS, params);
+        Specification<Share> filter = (root, query, cb) -> cb.equal(root.get("sharedWith"), user);
+        List<Share> rows = shareRepository.findBy(filter.and(Keyset.after(request)),
+                query -> query.project("file", "file.user", "file.folder", "sharedBy", "sharedWith")
+                        .sortBy(request.sort()).limit(request.limit() + 1).all());
+        return Keyset.page(rows, request).map(ShareDto::of);
     }
 
     // Get files shared by me
-    public List<Share> getSharedByMe(User user) {
-        return shareRepository.findBySharedBy(user);
+    public List<ShareDto> getSharedByMe(User user) {
+        return shareRepository.findBySharedBy(user).stream().map(ShareDto::of).toList();
     }
 
     // Get shares for a specific file
-    public List<Share> getFileShares(UUID fileId, User user) {
+    public List<ShareDto> getFileShares(UUID fileId, User user) {
         File file = fileRepository.findById(fileId)
                 .orElseThrow(() -> new RuntimeException("File not found"));
 
@@ -145,6 +166,6 @@ public class ShareService {
             throw new RuntimeException("Access denied: You are not the owner of this file.");
         }
 
-        return shareRepository.findByFileId(fileId);
+        return shareRepository.findByFileId(fileId).stream().map(ShareDto::of).toList();
     }
 }
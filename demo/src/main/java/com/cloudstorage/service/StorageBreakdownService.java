@@ -0,0 +1,116 @@
+package com.cloudstorage.service;
+
+import com.cloudstorage.dto.FolderDto;
+import com.cloudstorage.dto.StorageBreakdown;
+import com.cloudstorage.dto.UsageGroup;
+import com.cloudstorage.model.User;
+import com.cloudstorage.repository.FileRepository;
+import com.cloudstorage.repository.FolderRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Aggregates a user's active files by MIME family, top-level folder and age, and picks the largest
+ * ones. The database does the summing with GROUP BY; what comes back is one row per family, folder
+ * or upload day, never the file listing itself.
+ */
+@Service
+@RequiredArgsConstructor
+public class StorageBreakdownService {
+
+    public static final int MAX_TOP = 100;
+    private static final String ROOT = "root";
+
+    // Upper bound in days and label of each age bucket; the last one takes everything older
+    private static final int[] AGE_DAYS = { 7, 30, 365 };
+    private static final String[] AGE_NAMES = { "Last 7 days", "Last 30 days", "Last year", "Older" };
+
+    private final FileRepository fileRepository;
+    private final FolderRepository folderRepository;
+
+    public StorageBreakdown breakdown(User user, int top) {
+        return breakdown(user, top, LocalDate.now());
+    }
+
+    public StorageBreakdown breakdown(User user, int top, LocalDate today) {
+        if (top < 1 || top > MAX_TOP) {
+            throw new IllegalArgumentException("top must be between 1 and " + MAX_TOP);
+        }
+        List<StorageBreakdown.Group> byType = fileRepository.sumActiveByMimeFamily(user).stream()
+                .map(row -> new StorageBreakdown.Group(row.key(), row.key(), row.bytes(), row.files()))
+                .sorted(Comparator.comparingLong(StorageBreakdown.Group::bytes).reversed())
+                .toList();
+        return new StorageBreakdown(byType, byTopFolder(user), byAge(user, today),
+                fileRepository.findLargestViews(user, Limit.of(top)));
+    }
+
+    // Folder totals rolled up to the top-level folder each one sits under; files outside any folder are "root"
+    private List<StorageBreakdown.Group> byTopFolder(User user) {
+        List<UsageGroup<UUID>> rows = fileRepository.sumActiveByFolder(user);
+        Map<UUID, FolderDto> folders = rows.stream().anyMatch(row -> row.key() != null)
+                ? folderRepository.findAllViewsByUser(user).stream()
+                        .collect(Collectors.toMap(FolderDto::id, Function.identity()))
+                : Map.of();
+        Map<UUID, UUID> topOf = new HashMap<>();
+        Map<String, long[]> totals = new LinkedHashMap<>();
+        for (UsageGroup<UUID> row : rows) {
+            UUID top = row.key() == null ? null : topOf.computeIfAbsent(row.key(), id -> topFolder(id, folders));
+            long[] total = totals.computeIfAbsent(top == null ? ROOT : top.toString(), key -> new long[2]);
+            total[0] += row.bytes();
+            total[1] += row.files();
+        }
+        List<StorageBreakdown.Group> groups = new ArrayList<>();
+        totals.forEach((key, total) -> groups.add(new StorageBreakdown.Group(key,
+                ROOT.equals(key) ? "My Drive" : folders.get(UUID.fromString(key)).name(), total[0], total[1])));
+        groups.sort(Comparator.comparingLong(StorageBreakdown.Group::bytes).reversed());
+        return groups;
+    }
+
+    // Follows parents up to a folder without one; stops at a cycle rather than looping. A folder the user
+    // doesn't own counts as root.
+    private static UUID topFolder(UUID id, Map<UUID, FolderDto> folders) {
+        Set<UUID> seen = new HashSet<>();
+        FolderDto folder = folders.get(id);
+        if (folder == null) {
+            return null;
+        }
+        while (folder.parentFolderId() != null && folders.containsKey(folder.parentFolderId())
+                && seen.add(folder.id())) {
+            folder = folders.get(folder.parentFolderId());
+        }
+        return folder.id();
+    }
+
+    // All buckets are returned, empty or not, newest first
+    private List<StorageBreakdown.Group> byAge(User user, LocalDate today) {
+        long[][] totals = new long[AGE_NAMES.length][2];
+        for (UsageGroup<LocalDate> row : fileRepository.sumActiveByDay(user)) {
+            int bucket = 0;
+            while (bucket < AGE_DAYS.length && row.key().isBefore(today.minusDays(AGE_DAYS[bucket]))) {
+                bucket++;
+            }
+            totals[bucket][0] += row.bytes();
+            totals[bucket][1] += row.files();
+        }
+        List<StorageBreakdown.Group> groups = new ArrayList<>();
+        for (int i = 0; i < AGE_NAMES.length; i++) {
+            String key = i < AGE_DAYS.length ? AGE_DAYS[i] + "d" : "older";
+            groups.add(new StorageBreakdown.Group(key, AGE_NAMES[i], totals[i][0], totals[i][1]));
+        }
+        return groups;
+    }
+}
@@ -0,0 +1,211 @@
+package com.cloudstorage.service;
+
+import com.cloudstorage.dto.UsageGroup;
+import com.cloudstorage.dto.UsageTotals;
+import com.cloudstorage.model.File;
+import com.cloudstorage.model.StorageUsage;
+import com.cloudstorage.model.User;
+import com.cloudstorage.repository.FileRepository;
+import com.cloudstorage.repository.FolderRepository;
+import com.cloudstorage.repository.StorageUsageRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Per-user ledger of stored bytes and files, split into active and trashed, so that reading a user's
+ * usage is a single-row lookup instead of a sum over their files. Every path that adds, trashes,
+ * restores or deletes files moves the counters by a delta; a periodic reconcile recomputes the rows
+ * that drifted, e.g. when a process died between saving a file and recording it.
+ * <p>
+ * The same events keep each folder's rollups of its live files, direct and at any depth: one statement
+ * moves the folder and all its ancestors through the closure table. A trashed folder keeps the rollups
+ * it had; they are recomputed for its subtree when it is restored.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class StorageUsageService {
+
+    private static final int FOLDER_BATCH = 500;
+
+    private final StorageUsageRepository usageRepository;
+    private final FileRepository fileRepository;
+    private final FolderRepository folderRepository;
+
+    public StorageUsage getUsage(User user) {
+        return usageRepository.findById(user.getId()).orElseGet(() -> create(user.getId()));
+    }
+
+    private StorageUsage create(UUID userId) {
+        try {
+            usageRepository.create(userId);
+        } catch (DataIntegrityViolationException e) {
+            // Another request created it first
+        }
+        return usageRepository.findById(userId).orElseThrow(() -> new RuntimeException("Usage not found"));
+    }
+
+    public void added(File file) {
+        usageRepository.adjust(file.getUser().getId(), size(file), 1, 0, 0);
+        adjustFolders(folderId(file), size(file), 1);
+    }
+
+    public void trashed(File file) {
+        usageRepository.adjust(file.getUser().getId(), -size(file), -1, size(file), 1);
+        adjustFolders(folderId(file), -size(file), -1);
+    }
+
+    public void restored(File file) {
+        usageRepository.adjust(file.getUser().getId(), size(file), 1, -size(file), -1);
+        adjustFolders(folderId(file), size(file), 1);
+    }
+
+    // Files trashed or restored together with a folder, summed in one query and keyed by that folder;
+    // only the folders above it change
+    public void trashed(User user, UsageGroup<UUID> files) {
+        usageRepository.adjust(user.getId(), -files.bytes(), -files.files(), files.bytes(), files.files());
+        folderRepository.adjustStats(files.key(), 1, -files.bytes(), -files.files(), LocalDateTime.now());
+    }
+
+    public void restored(User user, UsageGroup<UUID> files) {
+        usageRepository.adjust(user.getId(), files.bytes(), files.files(), -files.bytes(), -files.files());
+        folderRepository.adjustStats(files.key(), 1, files.bytes(), files.files(), LocalDateTime.now());
+    }
+
+    public void deleted(File file) {
+        if (Boolean.TRUE.equals(file.getIsTrashed())) {
+            usageRepository.adjust(file.getUser().getId(), 0, 0, -size(file), -1);
+        } else {
+            usageRepository.adjust(file.getUser().getId(), -size(file), -1, 0, 0);
+            adjustFolders(folderId(file), -size(file), -1);
+        }
+    }
+
+    // Files trashed, restored or moved in bulk, summed per folder they are in
+    public void trashed(User user, List<UsageGroup<UUID>> byFolder) {
+        long bytes = byFolder.stream().mapToLong(UsageGroup::bytes).sum();
+        long files = byFolder.stream().mapToLong(UsageGroup::files).sum();
+        usageRepository.adjust(user.getId(), -bytes, -files, bytes, files);
+        byFolder.forEach(group -> adjustFolders(group.key(), -group.bytes(), -group.files()));
+    }
+
+    public void restored(User user, List<UsageGroup<UUID>> byFolder) {
+        long bytes = byFolder.stream().mapToLong(UsageGroup::bytes).sum();
+        long files = byFolder.stream().mapToLong(UsageGroup::files).sum();
+        usageRepository.adjust(user.getId(), bytes, files, -bytes, -files);
+        byFolder.forEach(group -> adjustFolders(group.key(), group.bytes(), group.files()));
+    }
+
+    public void moved(List<UsageGroup<UUID>> byFolder, UUID toFolderId) {
+        for (UsageGroup<UUID> group : byFolder) {
+            if (!Objects.equals(group.key(), toFolderId)) {
+                adjustFolders(group.key(), -group.bytes(), -group.files());
+                adjustFolders(toFolderId, group.bytes(), group.files());
+            }
+        }
+    }
+
+    // A file moved between folders; the user's totals stay the same
+    public void moved(File file, UUID fromFolderId) {
+        if (!Boolean.TRUE.equals(file.getIsTrashed()) && !Objects.equals(fromFolderId, folderId(file))) {
+            adjustFolders(fromFolderId, -size(file), -1);
+            adjustFolders(folderId(file), size(file), 1);
+        }
+    }
+
+    // Around a folder move: its totals leave the folders above it, then join the ones above its new place
+    public void folderDetached(UUID folderId) {
+        folderRepository.shiftAncestorStats(folderId, -1, LocalDateTime.now());
+    }
+
+    public void folderAttached(UUID folderId) {
+        folderRepository.shiftAncestorStats(folderId, 1, LocalDateTime.now());
+    }
+
+    // A restored folder's own subtree, whose rollups may have gone stale while it was in the trash
+    public void recomputeFolders(UUID rootId) {
+        folderRepository.recomputeSubtreeStats(rootId);
+    }
+
+    private void adjustFolders(UUID folderId, long bytes, long files) {
+        if (folderId != null) {
+            folderRepository.adjustStats(folderId, 0, bytes, files, LocalDateTime.now());
+        }
+    }
+
+    // Reading the id of a lazy folder does not load it
+    private static UUID folderId(File file) {
+        return file.getFolder() == null ? null : file.getFolder().getId();
+    }
+
+    // A page of trashed files removed at once by the trash purge
+    public void purged(User user, List<File> files) {
+        long bytes = files.stream().mapToLong(StorageUsageService::size).sum();
+        usageRepository.adjust(user.getId(), 0, 0, -bytes, -files.size());
+    }
+
+    // One GROUP BY over the files table, compared with the ledger; only rows that disagree are rewritten
+    @Scheduled(cron = "${storage.usage.reconcile-cron:0 30 3 * * *}")
+    public void reconcileAll() {
+        try {
+            int corrected = reconcile();
+            if (corrected > 0) {
+                log.warn("Corrected storage usage of {} users", corrected);
+            }
+            corrected = reconcileFolders();
+            if (corrected > 0) {
+                log.warn("Corrected size rollups of {} folders", corrected);
+            }
+        } catch (Exception e) {
+            log.error("Storage usage reconcile failed: {}", e.getMessage());
+        }
+    }
+
+    // Live folders only, a batch at a time; a batch is rewritten from the files table in one statement
+    public int reconcileFolders() {
+        int corrected = 0;
+        List<UUID> drifted;
+        do {
+            drifted = folderRepository.findDriftedStatsIds(Limit.of(FOLDER_BATCH));
+            if (!drifted.isEmpty()) {
+                log.info("Size rollups of {} folders drifted", drifted.size());
+                corrected += folderRepository.recomputeStats(drifted);
+            }
+        } while (drifted.size() == FOLDER_BATCH);
+        return corrected;
+    }
+
+    public int reconcile() {
+        Map<UUID, UsageTotals> totals = fileRepository.sumUsageByUser().stream()
+                .collect(Collectors.toMap(UsageTotals::userId, Function.identity()));
+        List<UUID> drifted = new ArrayList<>();
+        for (StorageUsage usage : usageRepository.findAll()) {
+            UsageTotals actual = totals.getOrDefault(usage.getUserId(), UsageTotals.empty(usage.getUserId()));
+            if (!actual.matches(usage)) {
+                log.info("Storage usage of user {} drifted: ledger {} active / {} trashed bytes, files {} / {}",
+                        usage.getUserId(), usage.getActiveBytes(), usage.getTrashedBytes(), actual.activeBytes(),
+                        actual.trashedBytes());
+                drifted.add(usage.getUserId());
+            }
+        }
+        // Recomputed in SQL rather than written from the totals, which may be stale by now
+        return drifted.isEmpty() ? 0 : usageRepository.recompute(drifted);
+    }
+
+    private static long size(File file) {
+        return file.getFileSize() == null ? 0 : file.getFileSize();
+    }
+}
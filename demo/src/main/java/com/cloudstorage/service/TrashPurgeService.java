@@ -0,0 +1,293 @@
+package com.cloudstorage.service;
+
+import com.cloudstorage.model.Blob;
+import com.cloudstorage.model.File;
+import com.cloudstorage.model.FileChunk;
+import com.cloudstorage.model.Job;
+import com.cloudstorage.model.User;
+import com.cloudstorage.repository.BlobRepository;
+import com.cloudstorage.repository.ChunkRepository;
+import com.cloudstorage.repository.FileChunkRepository;
+import com.cloudstorage.repository.FileRepository;
+import com.cloudstorage.repository.FolderRepository;
+import com.cloudstorage.repository.ShareRepository;
+import com.cloudstorage.storage.StorageBackend;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Empties a user's trash, as the {@value #TYPE} background job. Trashed files are taken a page at a time; each page is
+ * removed from the database with a handful of set-based statements (shares, chunk manifests, blob and
+ * chunk reference counts, file rows) in one transaction, and the objects no longer referenced are
+ * then deleted from the bucket in bulk batches of up to {@link StorageBackend#MAX_DELETE_BATCH} keys,
+ * several batches at a time; unreferenced chunks are left to the ChunkStoreService sweeper. Rows go
+ * first: an object whose delete fails is only an orphan in the bucket, never a file pointing at
+ * missing content, and a retried job simply continues with the files still in the trash.
+ */
+@Service
+@Slf4j
+public class TrashPurgeService implements JobHandler {
+
+    public static final String TYPE = "empty-trash";
+
+    private final FileRepository fileRepository;
+    private final FolderRepository folderRepository;
+    private final ShareRepository shareRepository;
+    private final BlobRepository blobRepository;
+    private final ChunkRepository chunkRepository;
+    private final FileChunkRepository fileChunkRepository;
+    private final FileService fileService;
+    private final StorageUsageService usageService;
+    private final StorageBackend storage;
+    private final TransactionTemplate transactions;
+    private final int pageSize;
+    private final Semaphore inFlight;
+    private final ExecutorService deleteExecutor;
+
+    @Autowired
+    public TrashPurgeService(FileRepository fileRepository, FolderRepository folderRepository,
+            ShareRepository shareRepository, BlobRepository blobRepository, ChunkRepository chunkRepository,
+            FileChunkRepository fileChunkRepository, FileService fileService, StorageUsageService usageService,
+            StorageBackend storage, PlatformTransactionManager transactionManager,
+            @Value("${storage.purge.page-size:1000}") int pageSize,
+            @Value("${storage.purge.threads:4}") int threads) {
+        this.fileRepository = fileRepository;
+        this.folderRepository = folderRepository;
+        this.shareRepository = shareRepository;
+        this.blobRepository = blobRepository;
+        this.chunkRepository = chunkRepository;
+        this.fileChunkRepository = fileChunkRepository;
+        this.fileService = fileService;
+        this.usageService = usageService;
+        this.storage = storage;
+        this.transactions = new TransactionTemplate(transactionManager);
+        this.pageSize = pageSize;
+        // Bounds the keys waiting to be deleted, so the pager can't run ahead of the bucket
+        this.inFlight = new Semaphore(threads * 2);
+        AtomicInteger counter = new AtomicInteger();
+        this.deleteExecutor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "trash-purge-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @Override
+    public String type() {
+        return TYPE;
+    }
+
+    @Override
+    public String run(Job job, Progress progress) throws InterruptedException {
+        PurgeResult result = purge(job.getUser(), progress);
+        log.info("Emptied trash of user {}: {}", job.getUser().getId(), result);
+        return result.toString();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        deleteExecutor.shutdownNow();
+    }
+
+    public PurgeResult purge(User user, Progress progress) throws InterruptedException {
+        return purge(user, null, progress);
+    }
+
+    // Delete one trashed folder forever, with every file and folder below it, the same way
+    public PurgeResult purgeFolder(User user, UUID folderId) throws InterruptedException {
+        return purge(user, folderId, (done, total) -> {
+        });
+    }
+
+    // The whole trash when rootId is null, otherwise the subtree of that folder
+    private PurgeResult purge(User user, UUID rootId, Progress progress) throws InterruptedException {
+        long total = rootId == null ? fileRepository.countByUserAndIsTrashedTrue(user)
+                : fileRepository.countTrashedInSubtree(user, rootId);
+        Counts counts = new Counts();
+        List<Future<?>> batches = new ArrayList<>();
+        List<String> pending = new ArrayList<>();
+        try {
+            while (true) {
+                PurgedPage page = transactions.execute(status -> purgePage(user, rootId));
+                if (page == null || page.files() == 0) {
+                    break;
+                }
+                counts.files.addAndGet(page.files());
+                progress.update(counts.files.get(), Math.max(total, counts.files.get()));
+                pending.addAll(page.keys());
+                while (pending.size() >= StorageBackend.MAX_DELETE_BATCH) {
+                    List<String> batch = pending.subList(0, StorageBackend.MAX_DELETE_BATCH);
+                    batches.add(deleteObjects(new ArrayList<>(batch), counts));
+                    batch.clear();
+                }
+            }
+            if (!pending.isEmpty()) {
+                batches.add(deleteObjects(pending, counts));
+            }
+        } finally {
+            for (Future<?> batch : batches) {
+                try {
+                    batch.get();
+                } catch (ExecutionException e) {
+                    log.warn("Object delete batch failed: {}", e.getCause().getMessage());
+                }
+            }
+        }
+
+        if (rootId != null) {
+            transactions.executeWithoutResult(status -> {
+                folderRepository.unlinkTrashedSubtree(rootId);
+                counts.folders.addAndGet(folderRepository.deleteTrashedSubtree(rootId));
+            });
+        } else {
+            int removed;
+            while ((removed = folderRepository.deleteEmptyTrashed(user)) > 0) {
+                counts.folders.addAndGet(removed);
+            }
+        }
+        return new PurgeResult(counts.files.get(), counts.folders.get(), counts.objectsDeleted.get(),
+                counts.objectsFailed.get());
+    }
+
+    // One page of trashed files: rows and references go, the keys of unreferenced objects come back. The
+    // page is locked; if any of its rows is gone anyway, the page rolls back rather than release twice.
+    private PurgedPage purgePage(User user, UUID rootId) {
+        PageRequest page = PageRequest.of(0, pageSize);
+        List<File> files = rootId == null ? fileRepository.findByUserAndIsTrashedTrueOrderByIdAsc(user, page)
+                : fileRepository.findTrashedInSubtree(user, rootId, page);
+        if (files.isEmpty()) {
+            return new PurgedPage(0, List.of());
+        }
+        List<UUID> ids = new ArrayList<>();
+        List<UUID> chunked = new ArrayList<>();
+        Map<String, Integer> hashRefs = new HashMap<>();
+        Map<String, String> keyByHash = new HashMap<>();
+        List<String> keys = new ArrayList<>();
+        for (File file : files) {
+            ids.add(file.getId());
+            String key = fileService.storageKey(file);
+            fileService.evictCached(key);
+            if (Boolean.TRUE.equals(file.getIsChunked())) {
+                chunked.add(file.getId());
+            } else if (file.getContentHash() != null) {
+                hashRefs.merge(file.getContentHash(), 1, Integer::sum);
+                keyByHash.putIfAbsent(file.getContentHash(), key);
+            } else {
+                keys.add(key);
+            }
+        }
+        if (!hashRefs.isEmpty()) {
+            keys.addAll(releaseBlobs(user, hashRefs, keyByHash));
+        }
+        if (!chunked.isEmpty()) {
+            releaseChunks(chunked);
+        }
+        shareRepository.deleteByFileIdIn(ids);
+        if (fileRepository.deleteByIds(ids) != ids.size()) {
+            throw new IllegalStateException("Trashed files were deleted by another purge");
+        }
+        usageService.purged(user, files);
+        return new PurgedPage(files.size(), keys);
+    }
+
+    private List<String> releaseBlobs(User user, Map<String, Integer> hashRefs, Map<String, String> keyByHash) {
+        List<Blob> blobs = blobRepository.findByUserAndSha256In(user, hashRefs.keySet());
+        Set<String> registered = blobs.stream().map(Blob::getSha256).collect(Collectors.toSet());
+        // Content that was hashed but never registered belongs to its file alone, as in BlobService.release
+        List<String> keys = new ArrayList<>(hashRefs.keySet().stream()
+                .filter(hash -> !registered.contains(hash))
+                .map(keyByHash::get)
+                .toList());
+        if (blobs.isEmpty()) {
+            return keys;
+        }
+        blobs.stream()
+                .collect(Collectors.groupingBy(blob -> hashRefs.get(blob.getSha256()),
+                        Collectors.mapping(Blob::getId, Collectors.toList())))
+                .forEach((count, blobIds) -> blobRepository.decrementRefCounts(blobIds, count));
+        List<Blob> unreferenced = blobRepository.findUnreferenced(blobs.stream().map(Blob::getId).toList());
+        if (!unreferenced.isEmpty()) {
+            blobRepository.deleteUnreferenced(unreferenced.stream().map(Blob::getId).toList());
+            unreferenced.forEach(blob -> keys.add(blob.getStorageKey()));
+        }
+        return keys;
+    }
+
+    // Chunks that lose their last reference stay as released rows; their objects are swept later
+    private void releaseChunks(List<UUID> fileIds) {
+        Map<String, Integer> chunkRefs = fileChunkRepository.findByFileIdIn(fileIds).stream()
+                .collect(Collectors.toMap(FileChunk::getChunkHash, entry -> 1, Integer::sum));
+        fileChunkRepository.deleteByFileIdIn(fileIds);
+        LocalDateTime now = LocalDateTime.now();
+        chunkRefs.entrySet().stream()
+                .collect(Collectors.groupingBy(Map.Entry::getValue,
+                        Collectors.mapping(Map.Entry::getKey, Collectors.toList())))
+                .forEach((count, hashes) -> chunkRepository.decrementRefCounts(hashes, count, now));
+    }
+
+    private Future<?> deleteObjects(List<String> keys, Counts counts) throws InterruptedException {
+        inFlight.acquire();
+        try {
+            return deleteExecutor.submit(() -> {
+                try {
+                    List<String> failed = storage.deleteAll(keys);
+                    counts.objectsDeleted.addAndGet(keys.size() - failed.size());
+                    counts.objectsFailed.addAndGet(failed.size());
+                    if (!failed.isEmpty()) {
+                        log.warn("Could not delete {} objects, first {}", failed.size(), failed.get(0));
+                    }
+                } catch (RuntimeException e) {
+                    counts.objectsFailed.addAndGet(keys.size());
+                    log.warn("Could not delete {} objects: {}", keys.size(), e.getMessage());
+                } finally {
+                    inFlight.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.release();
+            throw e;
+        }
+    }
+
+    private record PurgedPage(int files, List<String> keys) {
+    }
+
+    // Object deletes finish on the delete pool, hence atomics
+    private static class Counts {
+        final AtomicLong files = new AtomicLong();
+        final AtomicLong folders = new AtomicLong();
+        final AtomicLong objectsDeleted = new AtomicLong();
+        final AtomicLong objectsFailed = new AtomicLong();
+    }
+
+    // Objects that failed to delete stay in the bucket as orphans
+    public record PurgeResult(long files, long folders, long objectsDeleted, long objectsFailed) {
+        @Override
+        public String toString() {
+            return files + " files and " + folders + " folders purged, " + objectsDeleted + " objects deleted, "
+                    + objectsFailed + " failed";
+        }
+    }
+}
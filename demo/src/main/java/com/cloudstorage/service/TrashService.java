@@ -1,7 +1,10 @@
 package com.cloudstorage.service;
 
+import com.cloudstorage.dto.FileDto;
+import com.cloudstorage.dto.FolderDto;
 import com.cloudstorage.model.File;
 import com.cloudstorage.model.Folder;
+import com.cloudstorage.model.Job;
 import com.cloudstorage.model.User;
 import com.cloudstorage.repository.FileRepository;
 import com.cloudstorage.repository.FolderRepository;
@@ -11,6 +14,7 @@ import org.springframework.stereotype.Service;
 
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 @RequiredArgsConstructor
@@ -20,10 +24,13 @@ public class TrashService {
     private final FileRepository fileRepository;
     private final FolderRepository folderRepository;
     private final FileService fileService;
+    private final FolderService folderService;
+    private final JobService jobService;
+    private final TrashPurgeService purgeService;
 
     public TrashResponse getTrash(User user) {
-        List<File> trashedFiles = fileRepository.findByUserAndIsTrashedTrue(user);
-        List<Folder> trashedFolders = folderRepository.findByUserAndIsTrashedTrue(user);
+        List<FileDto> trashedFiles = fileRepository.findTrashedViewsByUser(user);
+        List<FolderDto> trashedFolders = folderRepository.findTrashedViewsByUser(user);
         return new TrashResponse(trashedFiles, trashedFolders);
     }
 
@@ -31,16 +38,12 @@ public class TrashService {
         File file = fileRepository.findById(fileId).orElseThrow(() -> new RuntimeException("File not found"));
         if (!file.getUser().getId().equals(user.getId()))
             throw new RuntimeException("Denied");
-        file.setIsTrashed(false);
-        fileRepository.save(file);
+        fileService.setTrashed(file, false);
     }
 
+    // Brings back the folder with everything that was trashed along with it
     public void restoreFolder(UUID folderId, User user) {
-        Folder folder = folderRepository.findById(folderId).orElseThrow(() -> new RuntimeException("Folder not found"));
-        if (!folder.getUser().getId().equals(user.getId()))
-            throw new RuntimeException("Denied");
-        folder.setIsTrashed(false);
-        folderRepository.save(folder);
+        folderService.restoreFolder(folderId, user);
     }
 
     public void permanentDeleteFile(UUID fileId, User user) {
@@ -48,22 +51,25 @@ public class TrashService {
         fileService.permanentDeleteFile(fileId, user);
     }
 
-    public void permanentDeleteFolder(UUID folderId, User user) {
+    public CompletableFuture<Void> permanentDeleteFileAsync(UUID fileId, User user) {
+        return fileService.permanentDeleteFileAsync(fileId, user);
+    }
+
+    // Everything trashed inside the folder goes with it: files, their objects and usage, then the folders
+    public void permanentDeleteFolder(UUID folderId, User user) throws InterruptedException {
         Folder folder = folderRepository.findById(folderId).orElseThrow(() -> new RuntimeException("Folder not found"));
         if (!folder.getUser().getId().equals(user.getId()))
             throw new RuntimeException("Denied");
-        folderRepository.delete(folder);
+        if (!Boolean.TRUE.equals(folder.getIsTrashed()))
+            throw new RuntimeException("Folder is not in the trash");
+        purgeService.purgeFolder(user, folderId);
     }
 
-    public void emptyTrash(User user) {
-        List<File> trashedFiles = fileRepository.findByUserAndIsTrashedTrue(user);
-        List<Folder> trashedFolders = folderRepository.findByUserAndIsTrashedTrue(user);
-        for (File file : trashedFiles)
-            permanentDeleteFile(file.getId(), user);
-        for (Folder folder : trashedFolders)
-            permanentDeleteFolder(folder.getId(), user);
+    // Runs as a background job; an empty-trash job already queued or running is returned instead
+    public Job emptyTrash(User user) {
+        return jobService.enqueueUnique(user, TrashPurgeService.TYPE);
     }
 }
 
-record TrashResponse(List<File> files, List<Folder> folders) {
+record TrashResponse(List<FileDto> files, List<FolderDto> folders) {
 }
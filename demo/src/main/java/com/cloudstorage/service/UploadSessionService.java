@@ -0,0 +1,452 @@
+package com.cloudstorage.service;
+
+import com.cloudstorage.model.File;
+import com.cloudstorage.model.Folder;
+import com.cloudstorage.model.UploadPart;
+import com.cloudstorage.model.UploadSession;
+import com.cloudstorage.model.User;
+import com.cloudstorage.repository.UploadPartRepository;
+import com.cloudstorage.repository.UploadSessionRepository;
+import com.cloudstorage.storage.MultipartUploadEngine;
+import com.cloudstorage.storage.StorageBackend;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Resumable chunked uploads. Each session owns one storage multipart upload; every received chunk is
+ * recorded in a persistent part ledger so that a client can ask which byte ranges already arrived
+ * and resend only what is missing. Direct sessions instead hand the browser presigned part URLs and
+ * read the uploaded parts back from the storage backend at completion. Sessions that go quiet past their expiry are
+ * aborted by a sweeper. Storage calls that move data run outside any transaction, so a slow client never holds
+ * a database connection; only the ledger and status changes around them are transactional.
+ */
+@Service
+@Slf4j
+public class UploadSessionService {
+
+    // S3 limits: 10,000 parts per upload, 5 MB minimum for every part but the last
+    private static final int MAX_PARTS = 10_000;
+    private static final long MAX_OBJECT_SIZE = 5L * 1024 * 1024 * 1024 * 1024;
+    private static final long MB = 1024 * 1024;
+    private static final int MAX_URL_BATCH = 500;
+
+    private final UploadSessionRepository sessionRepository;
+    private final UploadPartRepository partRepository;
+    private final FileService fileService;
+    private final StorageBackend storage;
+    private final TransactionTemplate transactions;
+
+    public UploadSessionService(UploadSessionRepository sessionRepository, UploadPartRepository partRepository,
+            FileService fileService, StorageBackend storage, PlatformTransactionManager transactionManager) {
+        this.sessionRepository = sessionRepository;
+        this.partRepository = partRepository;
+        this.fileService = fileService;
+        this.storage = storage;
+        this.transactions = new TransactionTemplate(transactionManager);
+    }
+
+    @Value("${storage.upload.session.part-size-mb:8}")
+    private int partSizeMb;
+
+    @Value("${storage.upload.session.ttl-hours:24}")
+    private long ttlHours;
+
+    @Value("${storage.upload.direct.url-expiry-minutes:60}")
+    private long urlExpiryMinutes;
+
+    public UploadSession createSession(String fileName, String fileType, Long expectedSize, UUID folderId,
+            User user) {
+        return createSession(fileName, fileType, expectedSize, folderId, UploadSession.Mode.PROXIED, user);
+    }
+
+    public UploadSession createSession(String fileName, String fileType, Long expectedSize, UUID folderId,
+            UploadSession.Mode mode, User user) {
+        if (fileName == null || fileName.isBlank()) {
+            throw new RuntimeException("File name is required");
+        }
+        if (expectedSize != null && expectedSize > MAX_OBJECT_SIZE) {
+            throw new RuntimeException("File is too large");
+        }
+        fileService.resolveOwnedFolder(folderId, user);
+
+        // Grow the part size for very large files so they still fit in 10,000 parts
+        long partSize = Math.max((long) partSizeMb * 1024 * 1024, MultipartUploadEngine.MIN_PART_SIZE);
+        if (expectedSize != null && (expectedSize + partSize - 1) / partSize > MAX_PARTS) {
+            long minPartSize = (expectedSize + MAX_PARTS - 1) / MAX_PARTS;
+            partSize = (minPartSize + MB - 1) / MB * MB;
+        }
+
+        String fileExtension = fileName.contains(".") ? fileName.substring(fileName.lastIndexOf(".")) : "";
+        String key = user.getId() + "/" + UUID.randomUUID() + fileExtension;
+
+        // Fail before creating anything if the browser could never reach the backend directly
+        if (mode == UploadSession.Mode.DIRECT && !storage.supportsPresign()) {
+            throw new RuntimeException("Storage backend does not support direct uploads");
+        }
+        String uploadId = storage.initiateMultipart(key, fileType);
+
+        UploadSession session = new UploadSession();
+        session.setUser(user);
+        session.setFileName(fileName);
+        session.setFileType(fileType);
+        session.setFolderId(folderId);
+        session.setMode(mode);
+        session.setS3Key(key);
+        session.setUploadId(uploadId);
+        session.setPartSize(partSize);
+        session.setExpectedSize(expectedSize);
+        session.setExpiresAt(LocalDateTime.now().plusHours(ttlHours));
+
+        log.info("Created {} upload session for {} (upload {})", mode, key, uploadId);
+        return sessionRepository.save(session);
+    }
+
+    // Store chunk N; re-sending a chunk that already arrived simply replaces it. The body streams to storage
+    // first, then the ledger row is written under the session lock, so completion can't miss or race it.
+    public UploadPart uploadPart(UUID sessionId, int partNumber, InputStream content, long contentLength,
+            User user) {
+        UploadSession session = getActiveSession(sessionId, user);
+        if (session.getMode() != UploadSession.Mode.PROXIED) {
+            throw new RuntimeException("Parts of a direct upload must be sent to their presigned URLs");
+        }
+
+        if (partNumber < 1 || partNumber > MAX_PARTS) {
+            throw new RuntimeException("Part number must be between 1 and " + MAX_PARTS);
+        }
+        if (contentLength <= 0 || contentLength > session.getPartSize()) {
+            throw new RuntimeException("Part size must be between 1 and " + session.getPartSize() + " bytes");
+        }
+
+        String etag = storage.uploadPart(session.getS3Key(), session.getUploadId(), partNumber, content,
+                contentLength);
+
+        return transactions.execute(status -> {
+            UploadSession locked = lockActiveSession(sessionId, user);
+            UploadPart part = partRepository.findBySessionIdAndPartNumber(sessionId, partNumber)
+                    .orElseGet(UploadPart::new);
+            part.setSessionId(sessionId);
+            part.setPartNumber(partNumber);
+            part.setEtag(etag);
+            part.setSize(contentLength);
+
+            // Activity keeps the session alive
+            locked.setExpiresAt(LocalDateTime.now().plusHours(ttlHours));
+            sessionRepository.save(locked);
+
+            return partRepository.save(part);
+        });
+    }
+
+    public Map<String, Object> getStatus(UUID sessionId, User user) {
+        UploadSession session = getOwnedSession(sessionId, user);
+        List<UploadPart> parts = session.getStatus() == UploadSession.Status.ACTIVE ? loadParts(session)
+                : List.of();
+
+        long partSize = session.getPartSize();
+        long receivedBytes = 0;
+        List<Integer> partNumbers = new ArrayList<>();
+        List<long[]> ranges = new ArrayList<>();
+        for (UploadPart part : parts) {
+            partNumbers.add(part.getPartNumber());
+            receivedBytes += part.getSize();
+            long start = (part.getPartNumber() - 1) * partSize;
+            long end = start + part.getSize();
+            long[] last = ranges.isEmpty() ? null : ranges.get(ranges.size() - 1);
+            if (last != null && last[1] == start) {
+                last[1] = end;
+            } else {
+                ranges.add(new long[] { start, end });
+            }
+        }
+
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("sessionId", session.getId());
+        status.put("fileName", session.getFileName());
+        status.put("status", session.getStatus());
+        status.put("mode", session.getMode());
+        status.put("partSize", partSize);
+        status.put("expectedSize", session.getExpectedSize());
+        status.put("receivedBytes", receivedBytes);
+        status.put("receivedParts", partNumbers);
+        // Half-open [start, end) byte ranges
+        status.put("receivedRanges", ranges.stream().map(r -> Map.of("start", r[0], "end", r[1])).toList());
+        status.put("expiresAt", session.getExpiresAt());
+        return status;
+    }
+
+    // Presign PUT URLs for parts [fromPart, fromPart + count) of a direct upload
+    public Map<String, Object> generatePartUrls(UUID sessionId, int fromPart, int count, User user) {
+        UploadSession session = getActiveSession(sessionId, user);
+        if (session.getMode() != UploadSession.Mode.DIRECT) {
+            throw new RuntimeException("Upload session is not a direct upload");
+        }
+        if (fromPart < 1 || fromPart > MAX_PARTS) {
+            throw new RuntimeException("Part number must be between 1 and " + MAX_PARTS);
+        }
+        int lastPart = Math.min(MAX_PARTS, fromPart + Math.min(Math.max(count, 1), MAX_URL_BATCH) - 1);
+        if (session.getExpectedSize() != null) {
+            long totalParts = Math.max(1, (session.getExpectedSize() + session.getPartSize() - 1)
+                    / session.getPartSize());
+            lastPart = (int) Math.min(lastPart, totalParts);
+        }
+
+        Duration expiry = Duration.ofMinutes(urlExpiryMinutes);
+        Date expiration = new Date(System.currentTimeMillis() + expiry.toMillis());
+        List<Map<String, Object>> urls = new ArrayList<>();
+        for (int partNumber = fromPart; partNumber <= lastPart; partNumber++) {
+            String url = storage.presignPart(session.getS3Key(), session.getUploadId(), partNumber, expiry)
+                    .orElseThrow(() -> new RuntimeException("Storage backend does not support direct uploads"));
+            urls.add(Map.of("partNumber", partNumber, "url", url));
+        }
+
+        // Asking for more URLs counts as activity
+        session.setExpiresAt(LocalDateTime.now().plusHours(ttlHours));
+        sessionRepository.save(session);
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("sessionId", session.getId());
+        response.put("partSize", session.getPartSize());
+        response.put("urlsExpireAt", expiration);
+        response.put("parts", urls);
+        return response;
+    }
+
+    // Assemble the parts into the final object; the file size comes from the ledger (or the backend for direct
+    // uploads). The session moves to COMPLETING in its own transaction before storage is asked to assemble, and
+    // the file is registered in a second one, so a retry after any failure picks up where the last attempt
+    // stopped and a repeated or concurrent complete returns the same file.
+    public File completeSession(UUID sessionId, User user) {
+        UploadSession current = getOwnedSession(sessionId, user);
+        // The backend is the ledger of a direct upload, so it is read before anything is locked
+        Assembly listed = current.getStatus() == UploadSession.Status.ACTIVE
+                && current.getMode() == UploadSession.Mode.DIRECT ? assemble(current, loadParts(current)) : null;
+
+        Completion completion = transactions.execute(status -> beginCompletion(sessionId, user, listed));
+        UploadSession session = completion.session();
+        if (session.getStatus() == UploadSession.Status.COMPLETED) {
+            return fileService.getFile(session.getFileId(), user);
+        }
+
+        long totalSize = assembleObject(session, completion.assembly());
+        return transactions.execute(status -> finishCompletion(sessionId, user, totalSize));
+    }
+
+    // Validates and claims an active session; one already completing or completed is handed back as it is
+    private Completion beginCompletion(UUID sessionId, User user, Assembly listed) {
+        UploadSession session = lockOwnedSession(sessionId, user);
+        if (session.getStatus() == UploadSession.Status.COMPLETING
+                || session.getStatus() == UploadSession.Status.COMPLETED) {
+            return new Completion(session, null);
+        }
+        checkActive(session);
+        Assembly assembly = session.getMode() == UploadSession.Mode.PROXIED
+                ? assemble(session, partRepository.findBySessionIdOrderByPartNumberAsc(sessionId))
+                : listed;
+        fileService.resolveOwnedFolder(session.getFolderId(), user);
+
+        session.setStatus(UploadSession.Status.COMPLETING);
+        sessionRepository.save(session);
+        return new Completion(session, assembly);
+    }
+
+    // Completes the multipart upload unless an earlier or concurrent attempt already did, and returns the size
+    private long assembleObject(UploadSession session, Assembly assembly) {
+        if (assembly == null) {
+            if (storage.exists(session.getS3Key())) {
+                return storage.size(session.getS3Key());
+            }
+            // An earlier attempt stopped before the object was assembled; its parts are all still there
+            assembly = assemble(session, loadParts(session));
+        }
+        try {
+            storage.completeMultipart(session.getS3Key(), session.getUploadId(), assembly.parts());
+            return assembly.totalSize();
+        } catch (RuntimeException e) {
+            if (storage.exists(session.getS3Key())) {
+                return storage.size(session.getS3Key());
+            }
+            // Nothing was assembled, so the client may still fix its parts and try again
+            transactions.executeWithoutResult(status -> reopen(session.getId()));
+            throw e;
+        }
+    }
+
+    private File finishCompletion(UUID sessionId, User user, long totalSize) {
+        UploadSession session = lockOwnedSession(sessionId, user);
+        if (session.getStatus() == UploadSession.Status.COMPLETED) {
+            return fileService.getFile(session.getFileId(), user);
+        }
+        if (session.getStatus() != UploadSession.Status.COMPLETING) {
+            throw new RuntimeException("Upload session is " + session.getStatus().name().toLowerCase());
+        }
+        Folder folder = fileService.resolveOwnedFolder(session.getFolderId(), user);
+        File file = fileService.registerUploadedFile(session.getFileName(), session.getS3Key(),
+                session.getFileType(), totalSize, folder, user);
+
+        session.setStatus(UploadSession.Status.COMPLETED);
+        session.setFileId(file.getId());
+        sessionRepository.save(session);
+        partRepository.deleteBySessionId(sessionId);
+
+        log.info("Completed upload session {} ({} bytes)", sessionId, totalSize);
+        return file;
+    }
+
+    private void reopen(UUID sessionId) {
+        sessionRepository.lockById(sessionId)
+                .filter(session -> session.getStatus() == UploadSession.Status.COMPLETING)
+                .ifPresent(session -> {
+                    session.setStatus(UploadSession.Status.ACTIVE);
+                    sessionRepository.save(session);
+                });
+    }
+
+    // Checks that parts 1..N are all present and full-sized except the last, and adds up their sizes
+    private Assembly assemble(UploadSession session, List<UploadPart> parts) {
+        if (parts.isEmpty()) {
+            throw new RuntimeException("No parts have been uploaded");
+        }
+
+        long totalSize = 0;
+        List<StorageBackend.StoredPart> storedParts = new ArrayList<>(parts.size());
+        for (int i = 0; i < parts.size(); i++) {
+            UploadPart part = parts.get(i);
+            if (part.getPartNumber() != i + 1) {
+                throw new RuntimeException("Missing part " + (i + 1));
+            }
+            boolean isLast = i == parts.size() - 1;
+            if (!isLast && !part.getSize().equals(session.getPartSize())) {
+                throw new RuntimeException("Part " + part.getPartNumber() + " is incomplete");
+            }
+            totalSize += part.getSize();
+            storedParts.add(new StorageBackend.StoredPart(part.getPartNumber(), part.getEtag(), part.getSize()));
+        }
+        if (session.getExpectedSize() != null && session.getExpectedSize() != totalSize) {
+            throw new RuntimeException("Received " + totalSize + " bytes, expected " + session.getExpectedSize());
+        }
+        return new Assembly(storedParts, totalSize);
+    }
+
+    public void abortSession(UUID sessionId, User user) {
+        UploadSession session = getActiveSession(sessionId, user);
+        if (!abort(session, UploadSession.Status.ABORTED)) {
+            throw new RuntimeException("Upload session is no longer active");
+        }
+    }
+
+    // Abort expired sessions so abandoned parts don't keep accruing storage in the bucket
+    @Scheduled(fixedDelayString = "${storage.upload.session.sweep-interval-ms:600000}")
+    public void sweepExpiredSessions() {
+        List<UploadSession> expired = sessionRepository
+                .findTop100ByStatusAndExpiresAtBefore(UploadSession.Status.ACTIVE, LocalDateTime.now());
+        int aborted = 0;
+        for (UploadSession session : expired) {
+            if (abort(session, UploadSession.Status.EXPIRED)) {
+                aborted++;
+            }
+        }
+        if (aborted > 0) {
+            log.info("Upload session sweeper aborted {} expired sessions", aborted);
+        }
+    }
+
+    // Claims the session with a conditional update first, so a session that a completion has already
+    // moved past ACTIVE is left alone; the storage abort then runs outside the transaction
+    private boolean abort(UploadSession session, UploadSession.Status status) {
+        boolean claimed = Boolean.TRUE.equals(transactions.execute(tx -> {
+            if (sessionRepository.endIfActive(session.getId(), status, UploadSession.Status.ACTIVE) == 0) {
+                return false;
+            }
+            partRepository.deleteBySessionId(session.getId());
+            return true;
+        }));
+        if (!claimed) {
+            return false;
+        }
+        try {
+            storage.abortMultipart(session.getS3Key(), session.getUploadId());
+        } catch (Exception e) {
+            log.warn("Could not abort upload {}: {}", session.getUploadId(), e.getMessage());
+        }
+        return true;
+    }
+
+    // Proxied uploads keep their own ledger; for direct uploads the backend itself is the ledger
+    private List<UploadPart> loadParts(UploadSession session) {
+        if (session.getMode() == UploadSession.Mode.PROXIED) {
+            return partRepository.findBySessionIdOrderByPartNumberAsc(session.getId());
+        }
+
+        List<UploadPart> parts = new ArrayList<>();
+        for (StorageBackend.StoredPart stored : storage.listParts(session.getS3Key(), session.getUploadId())) {
+            UploadPart part = new UploadPart();
+            part.setSessionId(session.getId());
+            part.setPartNumber(stored.partNumber());
+            part.setEtag(stored.etag());
+            part.setSize(stored.size());
+            parts.add(part);
+        }
+        parts.sort(Comparator.comparing(UploadPart::getPartNumber));
+        return parts;
+    }
+
+    private UploadSession getOwnedSession(UUID sessionId, User user) {
+        UploadSession session = sessionRepository.findById(sessionId)
+                .orElseThrow(() -> new RuntimeException("Upload session not found"));
+        if (!session.getUser().getId().equals(user.getId())) {
+            throw new RuntimeException("Access denied to upload session");
+        }
+        return session;
+    }
+
+    private UploadSession getActiveSession(UUID sessionId, User user) {
+        UploadSession session = getOwnedSession(sessionId, user);
+        checkActive(session);
+        return session;
+    }
+
+    private UploadSession lockOwnedSession(UUID sessionId, User user) {
+        UploadSession session = sessionRepository.lockById(sessionId)
+                .orElseThrow(() -> new RuntimeException("Upload session not found"));
+        if (!session.getUser().getId().equals(user.getId())) {
+            throw new RuntimeException("Access denied to upload session");
+        }
+        return session;
+    }
+
+    private UploadSession lockActiveSession(UUID sessionId, User user) {
+        UploadSession session = lockOwnedSession(sessionId, user);
+        checkActive(session);
+        return session;
+    }
+
+    private static void checkActive(UploadSession session) {
+        if (session.getStatus() != UploadSession.Status.ACTIVE) {
+            throw new RuntimeException("Upload session is " + session.getStatus().name().toLowerCase());
+        }
+        if (session.getExpiresAt().isBefore(LocalDateTime.now())) {
+            throw new RuntimeException("Upload session has expired");
+        }
+    }
+
+    private record Assembly(List<StorageBackend.StoredPart> parts, long totalSize) {
+    }
+
+    private record Completion(UploadSession session, Assembly assembly) {
+    }
+}
@@ -0,0 +1,278 @@
+package com.cloudstorage.service;
+
+import com.cloudstorage.model.File;
+import com.cloudstorage.model.Folder;
+import com.cloudstorage.model.User;
+import com.cloudstorage.repository.FileRepository;
+import com.cloudstorage.repository.FolderRepository;
+import com.cloudstorage.repository.ShareRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.attribute.FileTime;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Builds ZIP archives of a folder subtree or a set of files and streams them straight to the client.
+ * Objects are opened a few entries ahead on a small pool so the next download is already under way
+ * while the current one is written, but nothing is buffered beyond what is being copied, so memory
+ * stays flat however large the archive is. Already-compressed types are written without compression.
+ */
+@Service
+@Slf4j
+public class ZipDownloadService {
+
+    // Formats whose content is already compressed; deflating them again only burns CPU
+    private static final Set<String> COMPRESSED_TYPES = Set.of(
+            "application/zip", "application/gzip", "application/x-gzip", "application/x-7z-compressed",
+            "application/x-rar-compressed", "application/vnd.rar", "application/x-bzip2", "application/x-xz",
+            "application/zstd", "application/java-archive", "application/epub+zip", "application/pdf");
+    private static final Set<String> COMPRESSED_EXTENSIONS = Set.of(
+            "zip", "gz", "tgz", "7z", "rar", "bz2", "xz", "zst", "jar", "epub", "pdf", "jpg", "jpeg", "png", "gif",
+            "webp", "heic", "avif", "mp4", "mov", "mkv", "webm", "avi", "mp3", "aac", "m4a", "ogg", "flac", "opus",
+            "docx", "xlsx", "pptx");
+    private static final Set<String> UNCOMPRESSED_MEDIA = Set.of(
+            "image/bmp", "image/svg+xml", "image/tiff", "audio/wav", "audio/x-wav");
+
+    private final FileRepository fileRepository;
+    private final FolderRepository folderRepository;
+    private final ShareRepository shareRepository;
+    private final FileService fileService;
+    private final int prefetch;
+    private final ExecutorService executor;
+
+    @Autowired
+    public ZipDownloadService(FileRepository fileRepository, FolderRepository folderRepository,
+            ShareRepository shareRepository, FileService fileService,
+            @Value("${storage.zip.prefetch:4}") int prefetch,
+            @Value("${storage.zip.threads:8}") int threads) {
+        this.fileRepository = fileRepository;
+        this.folderRepository = folderRepository;
+        this.shareRepository = shareRepository;
+        this.fileService = fileService;
+        this.prefetch = Math.max(prefetch, 1);
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "zip-prefetch-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // Directory entries have no file
+    public record ZipItem(String path, File file) {
+    }
+
+    public record ZipPlan(String archiveName, List<ZipItem> items) {
+    }
+
+    // Everything under a folder the user owns, with paths relative to it
+    public ZipPlan planFolder(UUID folderId, User user) {
+        Folder root = folderRepository.findById(folderId)
+                .orElseThrow(() -> new RuntimeException("Folder not found"));
+        if (!root.getUser().getId().equals(user.getId())) {
+            throw new RuntimeException("You don't have access to this folder");
+        }
+
+        // One query for the whole folder table of the user, walked in memory
+        Map<UUID, List<Folder>> children = folderRepository.findByUserAndIsTrashedFalse(user).stream()
+                .filter(f -> f.getParentFolder() != null)
+                .collect(Collectors.groupingBy(f -> f.getParentFolder().getId()));
+        Map<UUID, String> paths = new LinkedHashMap<>();
+        Map<UUID, Names> names = new HashMap<>();
+        paths.put(root.getId(), "");
+        names.put(root.getId(), new Names());
+        Deque<Folder> queue = new ArrayDeque<>(List.of(root));
+        while (!queue.isEmpty()) {
+            Folder parent = queue.poll();
+            for (Folder child : children.getOrDefault(parent.getId(), List.of())) {
+                if (paths.containsKey(child.getId())) {
+                    continue; // guards against a corrupted parent chain
+                }
+                paths.put(child.getId(), paths.get(parent.getId())
+                        + names.get(parent.getId()).allocate(child.getName()) + "/");
+                names.put(child.getId(), new Names());
+                queue.add(child);
+            }
+        }
+
+        Map<UUID, List<File>> filesByFolder = findFiles(user, paths.keySet()).stream()
+                .sorted(Comparator.comparing(File::getFileName))
+                .collect(Collectors.groupingBy(f -> f.getFolder().getId()));
+        List<ZipItem> items = new ArrayList<>();
+        paths.forEach((id, path) -> {
+            if (!path.isEmpty()) {
+                items.add(new ZipItem(path, null));
+            }
+            for (File file : filesByFolder.getOrDefault(id, List.of())) {
+                items.add(new ZipItem(path + names.get(id).allocate(file.getFileName()), file));
+            }
+        });
+        return new ZipPlan(sanitize(root.getName()) + ".zip", items);
+    }
+
+    // A flat archive of files the user owns or has been shared
+    public ZipPlan planFiles(List<UUID> fileIds, User user) {
+        if (fileIds == null || fileIds.isEmpty()) {
+            throw new RuntimeException("No files selected");
+        }
+        Map<UUID, File> found = fileRepository.findAllById(new LinkedHashSet<>(fileIds)).stream()
+                .collect(Collectors.toMap(File::getId, f -> f));
+        Names names = new Names();
+        List<ZipItem> items = new ArrayList<>();
+        for (UUID id : new LinkedHashSet<>(fileIds)) {
+            File file = found.get(id);
+            if (file == null || Boolean.TRUE.equals(file.getIsTrashed())) {
+                throw new RuntimeException("File not found: " + id);
+            }
+            boolean isOwner = file.getUser().getId().equals(user.getId());
+            if (!isOwner && !shareRepository.existsByFileIdAndSharedWith(id, user)) {
+                throw new RuntimeException("Access denied: " + id);
+            }
+            items.add(new ZipItem(names.allocate(file.getFileName()), file));
+        }
+        return new ZipPlan("files.zip", items);
+    }
+
+    // Stream the archive; a failure part way leaves a truncated archive the client will reject
+    public void write(List<ZipItem> items, OutputStream out) throws IOException {
+        List<File> files = items.stream().map(ZipItem::file).filter(Objects::nonNull).toList();
+        Deque<Future<InputStream>> window = new ArrayDeque<>();
+        int next = 0;
+        ZipOutputStream zip = new ZipOutputStream(out);
+        try {
+            for (ZipItem item : items) {
+                ZipEntry entry = new ZipEntry(item.path());
+                if (item.file() == null) {
+                    zip.putNextEntry(entry);
+                    zip.closeEntry();
+                    continue;
+                }
+                while (window.size() < prefetch && next < files.size()) {
+                    File file = files.get(next++);
+                    window.add(executor.submit(() -> fileService.openContent(file)));
+                }
+                File file = item.file();
+                if (file.getCreatedAt() != null) {
+                    entry.setLastModifiedTime(FileTime.from(file.getCreatedAt().atZone(ZoneId.systemDefault())
+                            .toInstant()));
+                }
+                // STORED would need the CRC before the data, i.e. reading every object twice
+                zip.setLevel(isCompressed(file) ? Deflater.NO_COMPRESSION : Deflater.DEFAULT_COMPRESSION);
+                zip.putNextEntry(entry);
+                try (InputStream in = await(window.poll())) {
+                    in.transferTo(zip);
+                }
+                zip.closeEntry();
+            }
+            zip.finish();
+            zip.flush();
+        } finally {
+            discard(window);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    static boolean isCompressed(File file) {
+        String type = file.getFileType() == null ? "" : file.getFileType().toLowerCase(Locale.ROOT);
+        if (COMPRESSED_TYPES.contains(type) || type.startsWith("application/vnd.openxmlformats")) {
+            return true;
+        }
+        if ((type.startsWith("image/") || type.startsWith("video/") || type.startsWith("audio/"))
+                && !UNCOMPRESSED_MEDIA.contains(type)) {
+            return true;
+        }
+        String name = file.getFileName() == null ? "" : file.getFileName().toLowerCase(Locale.ROOT);
+        int dot = name.lastIndexOf('.');
+        return dot >= 0 && COMPRESSED_EXTENSIONS.contains(name.substring(dot + 1));
+    }
+
+    private List<File> findFiles(User user, Collection<UUID> folderIds) {
+        List<UUID> ids = new ArrayList<>(folderIds);
+        List<File> files = new ArrayList<>();
+        for (int from = 0; from < ids.size(); from += 1000) {
+            files.addAll(fileRepository.findByUserAndFolderIdInAndIsTrashedFalse(user,
+                    ids.subList(from, Math.min(from + 1000, ids.size()))));
+        }
+        return files;
+    }
+
+    private static InputStream await(Future<InputStream> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while fetching object", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Could not fetch object: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    // Close whatever was prefetched but never written
+    private static void discard(Deque<Future<InputStream>> window) {
+        for (Future<InputStream> future : window) {
+            try {
+                future.get().close();
+            } catch (Exception e) {
+                log.debug("Discarding prefetched object: {}", e.getMessage());
+            }
+        }
+    }
+
+    // Entry names come from user input: no separators, no relative segments
+    static String sanitize(String name) {
+        String clean = name == null ? "" : name.replace('/', '_').replace('\\', '_').trim();
+        return clean.isEmpty() || clean.equals(".") || clean.equals("..") ? "_" : clean;
+    }
+
+    // Hands out unique names within one directory: "a.txt", "a (1).txt", ...
+    private static class Names {
+        private final Set<String> used = new HashSet<>();
+
+        String allocate(String name) {
+            String clean = sanitize(name);
+            String candidate = clean;
+            int dot = clean.lastIndexOf('.');
+            String base = dot > 0 ? clean.substring(0, dot) : clean;
+            String extension = dot > 0 ? clean.substring(dot) : "";
+            for (int i = 1; !used.add(candidate.toLowerCase(Locale.ROOT)); i++) {
+                candidate = base + " (" + i + ")" + extension;
+            }
+            return candidate;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.cloudstorage.storage;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fixed-capacity pool of equally sized byte buffers.
+ * Buffers are allocated lazily; once the pool is exhausted callers block until one is released,
+ * which is what keeps heap usage of concurrent uploads bounded.
+ */
+public class BufferPool {
+
+    private final int bufferSize;
+    private final int capacity;
+    private final BlockingQueue<byte[]> free;
+    private final AtomicInteger allocated = new AtomicInteger();
+    private final AtomicInteger inUse = new AtomicInteger();
+    private final AtomicInteger peakInUse = new AtomicInteger();
+
+    public BufferPool(int bufferSize, int capacity) {
+        if (bufferSize <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("Buffer size and capacity must be positive");
+        }
+        this.bufferSize = bufferSize;
+        this.capacity = capacity;
+        this.free = new ArrayBlockingQueue<>(capacity);
+    }
+
+    public byte[] acquire() throws InterruptedException {
+        byte[] buffer = free.poll();
+        if (buffer == null) {
+            buffer = tryAllocate();
+        }
+        if (buffer == null) {
+            buffer = free.take();
+        }
+        peakInUse.accumulateAndGet(inUse.incrementAndGet(), Math::max);
+        return buffer;
+    }
+
+    public void release(byte[] buffer) {
+        inUse.decrementAndGet();
+        free.offer(buffer);
+    }
+
+    private byte[] tryAllocate() {
+        while (true) {
+            int current = allocated.get();
+            if (current >= capacity) {
+                return null;
+            }
+            if (allocated.compareAndSet(current, current + 1)) {
+                return new byte[bufferSize];
+            }
+        }
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getAllocated() {
+        return allocated.get();
+    }
+
+    public int getInUse() {
+        return inUse.get();
+    }
+
+    public int getPeakInUse() {
+        return peakInUse.get();
+    }
+}
@@ -0,0 +1,106 @@
+package com.cloudstorage.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.SplittableRandom;
+
+/**
+ * Content-defined chunker using the FastCDC gear hash with normalized chunking.
+ * Cut points depend only on the bytes in a small rolling window, so inserting or removing data in
+ * the middle of a file only changes the chunks around the edit and the rest still deduplicate.
+ */
+public class FastCdcChunker {
+
+    private static final long[] GEAR = new long[256];
+
+    static {
+        // Fixed seed: cut points must be stable across restarts and nodes
+        SplittableRandom random = new SplittableRandom(0x5eed_cdc_2026L);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    private final int minSize;
+    private final int avgSize;
+    private final int maxSize;
+    private final long maskSmall; // Harder to match, used below the average size
+    private final long maskLarge; // Easier to match, used above the average size
+
+    public FastCdcChunker(int minSize, int avgSize, int maxSize) {
+        if (minSize <= 0 || minSize > avgSize || avgSize > maxSize) {
+            throw new IllegalArgumentException("Chunk sizes must satisfy 0 < min <= avg <= max");
+        }
+        this.minSize = minSize;
+        this.avgSize = avgSize;
+        this.maxSize = maxSize;
+        int bits = 31 - Integer.numberOfLeadingZeros(avgSize);
+        this.maskSmall = topBits(Math.min(bits + 2, 63));
+        this.maskLarge = topBits(Math.max(bits - 2, 1));
+    }
+
+    // Masks over the high bits so that each decision depends on the last 64 bytes, not just the last few
+    private static long topBits(int count) {
+        return -1L << (64 - count);
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Length of the first chunk in {@code data[offset, offset + length)}. The caller must pass at least
+     * {@code maxSize} bytes unless the end of the stream has been reached.
+     */
+    public int cutPoint(byte[] data, int offset, int length) {
+        if (length <= minSize) {
+            return length;
+        }
+        int end = Math.min(length, maxSize);
+        int normal = Math.min(avgSize, end);
+        long fp = 0;
+        int i = minSize;
+        for (; i < normal; i++) {
+            fp = (fp << 1) + GEAR[data[offset + i] & 0xff];
+            if ((fp & maskSmall) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < end; i++) {
+            fp = (fp << 1) + GEAR[data[offset + i] & 0xff];
+            if ((fp & maskLarge) == 0) {
+                return i + 1;
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Split a stream into chunks. The handler receives a view of an internal buffer that is reused
+     * for the next chunk, so it must copy any bytes it needs to keep.
+     */
+    public void split(InputStream in, ChunkHandler handler) throws IOException {
+        byte[] buffer = new byte[maxSize];
+        int length = 0;
+        boolean eof = false;
+        while (true) {
+            if (!eof) {
+                int read = in.readNBytes(buffer, length, buffer.length - length);
+                length += read;
+                eof = length < buffer.length;
+            }
+            if (length == 0) {
+                return;
+            }
+            int cut = cutPoint(buffer, 0, length);
+            handler.onChunk(buffer, 0, cut);
+            System.arraycopy(buffer, cut, buffer, 0, length - cut);
+            length -= cut;
+        }
+    }
+
+    @FunctionalInterface
+    public interface ChunkHandler {
+        void onChunk(byte[] buffer, int offset, int length) throws IOException;
+    }
+}
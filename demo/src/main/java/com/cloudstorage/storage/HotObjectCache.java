@@ -0,0 +1,310 @@
+package com.cloudstorage.storage;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Size-bounded LRU cache of whole objects on local disk, so popular downloads are served without
+ * going back to the bucket. Only objects whose MIME type matches one of the configured prefixes and
+ * that are no larger than the per-object limit are admitted. Entries are filled either while the
+ * object is being streamed to a client or in the background, always into a temp file that is moved
+ * into place only once complete. Storage keys never change content, so entries need no revalidation.
+ * A cache size of 0 disables it.
+ */
+@Component
+@Slf4j
+public class HotObjectCache {
+
+    private static final String TMP_DIR = ".tmp";
+    private static final Pattern CACHE_FILE = Pattern.compile("[0-9a-f]{64}");
+
+    private final Path dir;
+    private final long maxBytes;
+    private final List<String> mimePrefixes;
+    private final long maxObjectBytes;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<String> filling = ConcurrentHashMap.newKeySet();
+    private final ExecutorService fillExecutor;
+    private long totalBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @Autowired
+    public HotObjectCache(@Value("${storage.proxy.cache-dir:cache}") String dir,
+            @Value("${storage.proxy.cache-max-mb:2048}") long maxMb,
+            @Value("${storage.proxy.cache-types:video/,audio/,image/}") List<String> mimePrefixes,
+            @Value("${storage.proxy.cache-max-object-mb:512}") long maxObjectMb,
+            @Value("${storage.proxy.fill-threads:2}") int fillThreads) {
+        this(Path.of(dir), maxMb * 1024 * 1024, mimePrefixes, maxObjectMb * 1024 * 1024, fillThreads);
+    }
+
+    public HotObjectCache(Path dir, long maxBytes, List<String> mimePrefixes, long maxObjectBytes,
+            int fillThreads) {
+        this.dir = dir.toAbsolutePath().normalize();
+        this.maxBytes = maxBytes;
+        this.mimePrefixes = mimePrefixes;
+        this.maxObjectBytes = Math.min(maxObjectBytes, maxBytes);
+        AtomicInteger counter = new AtomicInteger();
+        this.fillExecutor = Executors.newFixedThreadPool(Math.max(fillThreads, 1), r -> {
+            Thread t = new Thread(r, "cache-fill-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        if (isEnabled()) {
+            // The index lives in memory only, so whatever a previous run left behind is unreachable
+            try {
+                Files.createDirectories(this.dir.resolve(TMP_DIR));
+                removeLeftovers();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not prepare cache directory " + dir, e);
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return maxBytes > 0;
+    }
+
+    // Whether an object of this type and size may be cached at all
+    public boolean accepts(String contentType, long size) {
+        if (!isEnabled() || size < 0 || size > maxObjectBytes) {
+            return false;
+        }
+        String type = contentType == null ? "" : contentType.toLowerCase();
+        return mimePrefixes.stream().anyMatch(p -> !p.isBlank() && type.startsWith(p.trim().toLowerCase()));
+    }
+
+    // Local copy of the object, if cached
+    public Optional<Path> lookup(String key) {
+        if (!isEnabled()) {
+            return Optional.empty();
+        }
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && Files.exists(entry.path())) {
+                hits.incrementAndGet();
+                return Optional.of(entry.path());
+            }
+        }
+        misses.incrementAndGet();
+        return Optional.empty();
+    }
+
+    // Wrap a stream of the whole object so that reading it to the end also caches it
+    public InputStream fillWhileReading(String key, String contentType, InputStream source, long size) {
+        if (!accepts(contentType, size) || !filling.add(key)) {
+            return source;
+        }
+        try {
+            Path temp = Files.createTempFile(dir.resolve(TMP_DIR), "fill-", ".tmp");
+            return new TeeInputStream(source, key, temp, size);
+        } catch (IOException e) {
+            filling.remove(key);
+            log.warn("Could not start caching {}: {}", key, e.getMessage());
+            return source;
+        }
+    }
+
+    // Fetch the whole object in the background, e.g. after a range request missed
+    public void fillAsync(String key, String contentType, Supplier<InputStream> source, long size) {
+        if (!accepts(contentType, size) || filling.contains(key)) {
+            return;
+        }
+        fillExecutor.execute(() -> {
+            try (InputStream in = fillWhileReading(key, contentType, source.get(), size)) {
+                in.transferTo(OutputStream.nullOutputStream());
+            } catch (Exception e) {
+                log.warn("Background cache fill of {} failed: {}", key, e.getMessage());
+            }
+        });
+    }
+
+    public void evict(String key) {
+        if (!isEnabled()) {
+            return;
+        }
+        synchronized (entries) {
+            Entry entry = entries.remove(key);
+            if (entry != null) {
+                totalBytes -= entry.size();
+                deleteQuietly(entry.path());
+            }
+        }
+    }
+
+    public Stats stats() {
+        synchronized (entries) {
+            return new Stats(hits.get(), misses.get(), entries.size(), totalBytes);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        fillExecutor.shutdownNow();
+    }
+
+    private void commit(String key, Path temp, long size) throws IOException {
+        Path target = dir.resolve(fileName(key));
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        synchronized (entries) {
+            Entry previous = entries.put(key, new Entry(target, size));
+            if (previous != null) {
+                totalBytes -= previous.size();
+            }
+            totalBytes += size;
+            // Readers of an evicted file keep their open handle, so deleting it under them is safe
+            Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+            while (totalBytes > maxBytes && it.hasNext()) {
+                Map.Entry<String, Entry> eldest = it.next();
+                if (eldest.getKey().equals(key)) {
+                    continue;
+                }
+                it.remove();
+                totalBytes -= eldest.getValue().size();
+                deleteQuietly(eldest.getValue().path());
+            }
+        }
+    }
+
+    // Keys contain user ids and names; the file name is their hash
+    private static String fileName(String key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(key.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Could not delete cached object {}: {}", path, e.getMessage());
+        }
+    }
+
+    // Only files this cache writes are touched, in case the directory is shared by mistake
+    private void removeLeftovers() throws IOException {
+        try (Stream<Path> paths = Stream.concat(Files.list(dir), Files.list(dir.resolve(TMP_DIR)))) {
+            for (Path path : paths.toList()) {
+                String name = path.getFileName().toString();
+                if (Files.isRegularFile(path) && (CACHE_FILE.matcher(name).matches() || name.startsWith("fill-"))) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+    }
+
+    private record Entry(Path path, long size) {
+    }
+
+    public record Stats(long hits, long misses, int entries, long bytes) {
+    }
+
+    // Copies everything read into a temp file; a complete copy is committed on close, anything else dropped
+    private class TeeInputStream extends FilterInputStream {
+        private final String key;
+        private final Path temp;
+        private final long expected;
+        private final OutputStream copy;
+        private long copied;
+        private boolean failed;
+
+        TeeInputStream(InputStream in, String key, Path temp, long expected) throws IOException {
+            super(in);
+            this.key = key;
+            this.temp = temp;
+            this.expected = expected;
+            this.copy = Files.newOutputStream(temp);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                tee(new byte[] {(byte) b}, 0, 1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                tee(b, off, n);
+            }
+            return n;
+        }
+
+        // Skipping would leave a hole in the copy
+        @Override
+        public long skip(long n) throws IOException {
+            failed = true;
+            return super.skip(n);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                try {
+                    copy.close();
+                    if (!failed && copied == expected) {
+                        commit(key, temp, copied);
+                    }
+                } catch (IOException e) {
+                    log.warn("Could not cache {}: {}", key, e.getMessage());
+                } finally {
+                    deleteQuietly(temp);
+                    filling.remove(key);
+                }
+            }
+        }
+
+        // A failing cache write must never break the download itself
+        private void tee(byte[] b, int off, int len) {
+            if (failed) {
+                return;
+            }
+            try {
+                copy.write(b, off, len);
+                copied += len;
+            } catch (IOException e) {
+                failed = true;
+            }
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.cloudstorage.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Stream;
+
+/**
+ * Objects held on the heap. Nothing survives a restart; meant for tests, local development and for
+ * benchmarking the metadata path without object I/O in the way.
+ */
+public class InMemoryStorageBackend implements StorageBackend {
+
+    private final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+    private final Map<String, Instant> modified = new ConcurrentHashMap<>();
+    private final Map<String, ConcurrentSkipListMap<Integer, byte[]>> uploads = new ConcurrentHashMap<>();
+
+    @Override
+    public void put(String key, InputStream content, long length, String contentType) {
+        byte[] data = readAll(content);
+        if (length >= 0 && data.length != length) {
+            throw new RuntimeException("Expected " + length + " bytes but received " + data.length);
+        }
+        objects.put(key, data);
+        modified.put(key, Instant.now());
+    }
+
+    @Override
+    public InputStream get(String key) {
+        return new ByteArrayInputStream(object(key));
+    }
+
+    @Override
+    public InputStream get(String key, long offset, long length) {
+        byte[] data = object(key);
+        int from = (int) Math.min(offset, data.length);
+        int to = (int) Math.min(data.length, from + Math.max(length, 0));
+        return new ByteArrayInputStream(data, from, to - from);
+    }
+
+    @Override
+    public long size(String key) {
+        return object(key).length;
+    }
+
+    @Override
+    public boolean exists(String key) {
+        return objects.containsKey(key);
+    }
+
+    @Override
+    public void delete(String key) {
+        objects.remove(key);
+        modified.remove(key);
+    }
+
+    @Override
+    public Stream<ObjectInfo> list(String prefix) {
+        return objects.keySet().stream()
+                .filter(key -> key.startsWith(prefix))
+                .sorted()
+                .map(key -> new ObjectInfo(key, objects.getOrDefault(key, new byte[0]).length,
+                        modified.getOrDefault(key, Instant.EPOCH)))
+                .toList()
+                .stream();
+    }
+
+    @Override
+    public String locationOf(String key) {
+        return "memory://" + key;
+    }
+
+    @Override
+    public String initiateMultipart(String key, String contentType) {
+        String uploadId = UUID.randomUUID().toString();
+        uploads.put(uploadId, new ConcurrentSkipListMap<>());
+        return uploadId;
+    }
+
+    @Override
+    public String uploadPart(String key, String uploadId, int partNumber, InputStream content, long length) {
+        byte[] data = readAll(content);
+        if (data.length != length) {
+            throw new RuntimeException("Expected " + length + " bytes but received " + data.length);
+        }
+        upload(uploadId).put(partNumber, data);
+        return etag(data);
+    }
+
+    @Override
+    public void completeMultipart(String key, String uploadId, List<StoredPart> parts) {
+        Map<Integer, byte[]> received = upload(uploadId);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (StoredPart part : parts) {
+            byte[] data = received.get(part.partNumber());
+            if (data == null) {
+                throw new RuntimeException("InvalidPart " + part.partNumber());
+            }
+            out.writeBytes(data);
+        }
+        objects.put(key, out.toByteArray());
+        modified.put(key, Instant.now());
+        uploads.remove(uploadId);
+    }
+
+    @Override
+    public void abortMultipart(String key, String uploadId) {
+        uploads.remove(uploadId);
+    }
+
+    @Override
+    public List<StoredPart> listParts(String key, String uploadId) {
+        List<StoredPart> parts = new ArrayList<>();
+        upload(uploadId).forEach((number, data) -> parts.add(new StoredPart(number, etag(data), data.length)));
+        return parts;
+    }
+
+    public int objectCount() {
+        return objects.size();
+    }
+
+    public int openUploads() {
+        return uploads.size();
+    }
+
+    private byte[] object(String key) {
+        byte[] data = objects.get(key);
+        if (data == null) {
+            throw new RuntimeException("Object not found: " + key);
+        }
+        return data;
+    }
+
+    private ConcurrentSkipListMap<Integer, byte[]> upload(String uploadId) {
+        ConcurrentSkipListMap<Integer, byte[]> parts = uploads.get(uploadId);
+        if (parts == null) {
+            throw new RuntimeException("NoSuchUpload " + uploadId);
+        }
+        return parts;
+    }
+
+    private static String etag(byte[] data) {
+        return Integer.toHexString(Arrays.hashCode(data));
+    }
+
+    private static byte[] readAll(InputStream in) {
+        try (in) {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
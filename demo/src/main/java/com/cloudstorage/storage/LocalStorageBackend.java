@@ -0,0 +1,357 @@
+package com.cloudstorage.storage;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Objects stored as plain files under a root directory ({@code file.upload-dir}), for edge nodes
+ * without S3. Every write goes to a temp file on the same filesystem, is forced to disk and then
+ * atomically moved into place, so readers never see a partially written object. Multipart parts are
+ * kept under {@code .uploads/<uploadId>/} and concatenated with {@link FileChannel#transferTo}.
+ */
+public class LocalStorageBackend implements StorageBackend {
+
+    private static final String TMP_DIR = ".tmp";
+    private static final String UPLOADS_DIR = ".uploads";
+    private static final long TRANSFER_CHUNK = 8 * 1024 * 1024;
+
+    private final Path root;
+    private final Path tmpDir;
+    private final Path uploadsDir;
+
+    public LocalStorageBackend(Path root) {
+        try {
+            this.root = root.toAbsolutePath().normalize();
+            this.tmpDir = Files.createDirectories(this.root.resolve(TMP_DIR));
+            this.uploadsDir = Files.createDirectories(this.root.resolve(UPLOADS_DIR));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create storage directory " + root, e);
+        }
+    }
+
+    @Override
+    public void put(String key, InputStream content, long length, String contentType) {
+        Path target = resolve(key);
+        try {
+            Path temp = Files.createTempFile(tmpDir, "put-", ".tmp");
+            try {
+                long written = write(temp, content);
+                if (length >= 0 && written != length) {
+                    throw new IOException("Expected " + length + " bytes but received " + written);
+                }
+                moveIntoPlace(temp, target);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not store " + key, e);
+        }
+    }
+
+    @Override
+    public InputStream get(String key) {
+        return get(key, 0, Long.MAX_VALUE);
+    }
+
+    @Override
+    public InputStream get(String key, long offset, long length) {
+        try {
+            FileChannel channel = FileChannel.open(resolve(key), StandardOpenOption.READ);
+            channel.position(offset);
+            InputStream in = Channels.newInputStream(channel);
+            return length == Long.MAX_VALUE ? in : new RangeInputStream(in, length);
+        } catch (NoSuchFileException e) {
+            throw new RuntimeException("Object not found: " + key);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read " + key, e);
+        }
+    }
+
+    @Override
+    public long size(String key) {
+        try {
+            return Files.size(resolve(key));
+        } catch (NoSuchFileException e) {
+            throw new RuntimeException("Object not found: " + key);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not stat " + key, e);
+        }
+    }
+
+    @Override
+    public boolean exists(String key) {
+        return Files.isRegularFile(resolve(key));
+    }
+
+    @Override
+    public void delete(String key) {
+        try {
+            Files.deleteIfExists(resolve(key));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not delete " + key, e);
+        }
+    }
+
+    @Override
+    public Stream<ObjectInfo> list(String prefix) {
+        // Only the directory the prefix points into is walked; its keys are sorted in memory, which is
+        // fine at the scale a single disk holds
+        int slash = prefix.lastIndexOf('/');
+        Path start = slash < 0 ? root : root.resolve(prefix.substring(0, slash)).normalize();
+        if (!start.startsWith(root) || !Files.isDirectory(start)) {
+            return Stream.empty();
+        }
+        try {
+            Stream<Path> paths = Files.walk(start);
+            return paths.filter(path -> !path.startsWith(tmpDir) && !path.startsWith(uploadsDir))
+                    .filter(Files::isRegularFile)
+                    .map(path -> root.relativize(path).toString().replace(path.getFileSystem().getSeparator(), "/"))
+                    .filter(key -> key.startsWith(prefix))
+                    .sorted()
+                    .map(this::info)
+                    .filter(Objects::nonNull)
+                    .onClose(paths::close);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not list " + prefix, e);
+        }
+    }
+
+    @Override
+    public String locationOf(String key) {
+        return resolve(key).toUri().toString();
+    }
+
+    @Override
+    public String initiateMultipart(String key, String contentType) {
+        resolve(key);
+        String uploadId = UUID.randomUUID().toString();
+        try {
+            Files.createDirectory(uploadsDir.resolve(uploadId));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not start upload for " + key, e);
+        }
+        return uploadId;
+    }
+
+    @Override
+    public String uploadPart(String key, String uploadId, int partNumber, InputStream content, long length) {
+        Path uploadDir = uploadDir(uploadId);
+        try {
+            Path temp = Files.createTempFile(tmpDir, "part-", ".tmp");
+            try {
+                MessageDigest md5 = md5();
+                long written = write(temp, new DigestInputStream(content, md5));
+                if (written != length) {
+                    throw new IOException("Expected " + length + " bytes but received " + written);
+                }
+                moveIntoPlace(temp, uploadDir.resolve(String.valueOf(partNumber)));
+                return HexFormat.of().formatHex(md5.digest());
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not store part " + partNumber + " of " + key, e);
+        }
+    }
+
+    @Override
+    public void completeMultipart(String key, String uploadId, List<StoredPart> parts) {
+        Path uploadDir = uploadDir(uploadId);
+        Path target = resolve(key);
+        try {
+            Path temp = Files.createTempFile(tmpDir, "complete-", ".tmp");
+            try {
+                try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                    for (StoredPart part : parts) {
+                        Path partFile = uploadDir.resolve(String.valueOf(part.partNumber()));
+                        if (!Files.exists(partFile)) {
+                            throw new RuntimeException("InvalidPart " + part.partNumber());
+                        }
+                        try (FileChannel in = FileChannel.open(partFile, StandardOpenOption.READ)) {
+                            long size = in.size();
+                            long position = 0;
+                            while (position < size) {
+                                position += in.transferTo(position, Math.min(TRANSFER_CHUNK, size - position), out);
+                            }
+                        }
+                    }
+                    out.force(true);
+                }
+                moveIntoPlace(temp, target);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            deleteRecursively(uploadDir);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not complete upload of " + key, e);
+        }
+    }
+
+    @Override
+    public void abortMultipart(String key, String uploadId) {
+        try {
+            deleteRecursively(uploadDir(uploadId));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not abort upload " + uploadId, e);
+        }
+    }
+
+    @Override
+    public List<StoredPart> listParts(String key, String uploadId) {
+        List<StoredPart> parts = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(uploadDir(uploadId))) {
+            for (Path file : files) {
+                MessageDigest md5 = md5();
+                try (InputStream in = new DigestInputStream(Files.newInputStream(file), md5)) {
+                    in.transferTo(OutputStream.nullOutputStream());
+                }
+                parts.add(new StoredPart(Integer.parseInt(file.getFileName().toString()),
+                        HexFormat.of().formatHex(md5.digest()), Files.size(file)));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not list parts of " + uploadId, e);
+        }
+        parts.sort(Comparator.comparingInt(StoredPart::partNumber));
+        return parts;
+    }
+
+    // Keys map to paths under the root; anything escaping it or touching internal directories is rejected
+    private Path resolve(String key) {
+        Path path = root.resolve(key).normalize();
+        if (!path.startsWith(root) || path.equals(root) || path.startsWith(tmpDir) || path.startsWith(uploadsDir)) {
+            throw new RuntimeException("Invalid storage key: " + key);
+        }
+        return path;
+    }
+
+    // Null when the file disappeared after it was listed
+    private ObjectInfo info(String key) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(root.resolve(key), BasicFileAttributes.class);
+            return new ObjectInfo(key, attributes.size(), attributes.lastModifiedTime().toInstant());
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not stat " + key, e);
+        }
+    }
+
+    private Path uploadDir(String uploadId) {
+        Path dir = uploadsDir.resolve(uploadId).normalize();
+        if (!dir.getParent().equals(uploadsDir) || !Files.isDirectory(dir)) {
+            throw new RuntimeException("NoSuchUpload " + uploadId);
+        }
+        return dir;
+    }
+
+    private static long write(Path file, InputStream content) throws IOException {
+        try (FileChannel out = FileChannel.open(file, StandardOpenOption.WRITE);
+                ReadableByteChannel in = Channels.newChannel(content)) {
+            long position = 0;
+            long transferred;
+            while ((transferred = out.transferFrom(in, position, TRANSFER_CHUNK)) > 0) {
+                position += transferred;
+            }
+            out.force(true);
+            return position;
+        }
+    }
+
+    private static void moveIntoPlace(Path temp, Path target) throws IOException {
+        try {
+            Files.createDirectories(target.getParent());
+        } catch (FileAlreadyExistsException e) {
+            throw new IOException("A file is in the way of " + target.getParent(), e);
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    private static MessageDigest md5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Stops after the requested range so callers can't read past it
+    private static class RangeInputStream extends FilterInputStream {
+        private long remaining;
+
+        RangeInputStream(InputStream in, long length) {
+            super(in);
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = super.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = super.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(super.available(), remaining);
+        }
+    }
+}
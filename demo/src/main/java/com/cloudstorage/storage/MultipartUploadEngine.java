@@ -0,0 +1,236 @@
+package com.cloudstorage.storage;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Streams an InputStream of unknown length into the storage backend using multipart upload.
+ * The stream is cut into fixed-size parts which are uploaded in parallel; the number of parts in
+ * flight per upload and the total number of part buffers are both bounded, so heap usage never
+ * exceeds {@code bufferPoolSize * partSize} no matter how large the object is.
+ */
+@Component
+@Slf4j
+public class MultipartUploadEngine {
+
+    // S3 rejects non-final parts smaller than 5 MB
+    public static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+
+    private final StorageBackend storage;
+    private final int partSize;
+    private final int maxInFlight;
+    private final BufferPool bufferPool;
+    private final ExecutorService executor;
+
+    @Autowired
+    public MultipartUploadEngine(StorageBackend storage,
+            @Value("${storage.upload.part-size-mb:8}") int partSizeMb,
+            @Value("${storage.upload.max-in-flight:4}") int maxInFlight,
+            @Value("${storage.upload.buffer-pool-size:16}") int bufferPoolSize,
+            @Value("${storage.upload.threads:16}") int threads) {
+        this(storage, Math.max(partSizeMb * 1024 * 1024, MIN_PART_SIZE), maxInFlight,
+                new BufferPool(Math.max(partSizeMb * 1024 * 1024, MIN_PART_SIZE), bufferPoolSize), threads);
+    }
+
+    public MultipartUploadEngine(StorageBackend storage, int partSize, int maxInFlight, BufferPool bufferPool,
+            int threads) {
+        if (bufferPool.getBufferSize() != partSize) {
+            throw new IllegalArgumentException("Buffer size must match part size");
+        }
+        this.storage = storage;
+        this.partSize = partSize;
+        this.maxInFlight = maxInFlight;
+        this.bufferPool = bufferPool;
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "part-upload-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public UploadResult upload(String key, String contentType, InputStream in) throws IOException {
+        byte[] first = acquireBuffer();
+        int firstLength;
+        try {
+            firstLength = readFully(in, first);
+        } catch (IOException e) {
+            bufferPool.release(first);
+            throw e;
+        }
+
+        // Small objects fit in one buffer: a plain PUT is cheaper than a multipart round trip
+        if (firstLength < partSize) {
+            try {
+                storage.put(key, new ByteArrayInputStream(first, 0, firstLength), firstLength, contentType);
+                return new UploadResult(firstLength, 1);
+            } finally {
+                bufferPool.release(first);
+            }
+        }
+
+        String uploadId = storage.initiateMultipart(key, contentType);
+        log.info("Started multipart upload {} for {}", uploadId, key);
+
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        List<PartTask> tasks = new ArrayList<>();
+        long totalBytes = 0;
+        int partNumber = 0;
+        byte[] buffer = first;
+        int length = firstLength;
+
+        try {
+            while (length > 0) {
+                partNumber++;
+                totalBytes += length;
+                inFlight.acquire();
+                tasks.add(submitPart(key, uploadId, partNumber, buffer, length, inFlight));
+                buffer = null;
+
+                // Fail fast instead of reading the rest of a multi-GB body after a part has failed
+                for (PartTask task : tasks) {
+                    if (task.future.isDone()) {
+                        task.future.get();
+                    }
+                }
+
+                buffer = acquireBuffer();
+                length = readFully(in, buffer);
+            }
+            bufferPool.release(buffer);
+            buffer = null;
+
+            List<StorageBackend.StoredPart> parts = new ArrayList<>(tasks.size());
+            for (PartTask task : tasks) {
+                parts.add(task.future.get());
+            }
+            parts.sort(Comparator.comparingInt(StorageBackend.StoredPart::partNumber));
+
+            storage.completeMultipart(key, uploadId, parts);
+            log.info("Completed multipart upload {} ({} parts, {} bytes)", uploadId, partNumber, totalBytes);
+            return new UploadResult(totalBytes, partNumber);
+        } catch (Exception e) {
+            if (buffer != null) {
+                bufferPool.release(buffer);
+            }
+            tasks.forEach(this::cancelOrAwait);
+            abortQuietly(key, uploadId);
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            throw new IOException("Multipart upload failed: " + e.getMessage(), e);
+        }
+    }
+
+    private PartTask submitPart(String key, String uploadId, int partNumber, byte[] buffer, int length,
+            Semaphore inFlight) {
+        PartTask task = new PartTask(buffer, inFlight);
+        task.future = executor.submit(() -> {
+            if (!task.claimed.compareAndSet(false, true)) {
+                throw new CancellationException("Upload aborted before part " + partNumber + " started");
+            }
+            try {
+                String etag = storage.uploadPart(key, uploadId, partNumber,
+                        new ByteArrayInputStream(buffer, 0, length), length);
+                return new StorageBackend.StoredPart(partNumber, etag, length);
+            } finally {
+                task.release(bufferPool);
+            }
+        });
+        return task;
+    }
+
+    // A part that never started gives its buffer and permit back here, since its finally will never run;
+    // one already running is waited for, so nothing is still uploading when the multipart upload is aborted
+    private void cancelOrAwait(PartTask task) {
+        if (task.claimed.compareAndSet(false, true)) {
+            task.future.cancel(false);
+            task.release(bufferPool);
+            return;
+        }
+        boolean interrupted = false;
+        while (true) {
+            try {
+                task.future.get();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            } catch (ExecutionException | CancellationException e) {
+                break;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void abortQuietly(String key, String uploadId) {
+        try {
+            storage.abortMultipart(key, uploadId);
+            log.warn("Aborted multipart upload {} for {}", uploadId, key);
+        } catch (Exception e) {
+            log.warn("Could not abort multipart upload {}: {}", uploadId, e.getMessage());
+        }
+    }
+
+    private byte[] acquireBuffer() throws IOException {
+        try {
+            return bufferPool.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for an upload buffer", e);
+        }
+    }
+
+    private static int readFully(InputStream in, byte[] buffer) throws IOException {
+        return in.readNBytes(buffer, 0, buffer.length);
+    }
+
+    public BufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public record UploadResult(long size, int parts) {
+    }
+
+    // Whichever side claims a part first, the worker or an aborting upload, owns its buffer and permit
+    private static final class PartTask {
+        private final byte[] buffer;
+        private final Semaphore inFlight;
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        private Future<StorageBackend.StoredPart> future;
+
+        private PartTask(byte[] buffer, Semaphore inFlight) {
+            this.buffer = buffer;
+            this.inFlight = inFlight;
+        }
+
+        private void release(BufferPool pool) {
+            pool.release(buffer);
+            inFlight.release();
+        }
+    }
+}
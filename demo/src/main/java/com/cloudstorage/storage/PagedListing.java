@@ -0,0 +1,55 @@
+package com.cloudstorage.storage;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Turns a continuation-token listing API into a lazy stream. The next page is only requested once
+ * the previous one has been consumed, so at most one page is held in memory.
+ */
+final class PagedListing {
+
+    private PagedListing() {
+    }
+
+    // nextToken is null on the last page
+    record Page(List<StorageBackend.ObjectInfo> objects, String nextToken) {
+    }
+
+    // fetch receives the token of the page to load, null for the first one
+    static Stream<StorageBackend.ObjectInfo> stream(Function<String, Page> fetch) {
+        Iterator<StorageBackend.ObjectInfo> pages = new Iterator<>() {
+            private Iterator<StorageBackend.ObjectInfo> current = Collections.emptyIterator();
+            private String token;
+            private boolean last;
+
+            @Override
+            public boolean hasNext() {
+                while (!current.hasNext() && !last) {
+                    Page page = fetch.apply(token);
+                    current = page.objects().iterator();
+                    token = page.nextToken();
+                    last = token == null;
+                }
+                return current.hasNext();
+            }
+
+            @Override
+            public StorageBackend.ObjectInfo next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return current.next();
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(pages,
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+}
@@ -0,0 +1,108 @@
+package com.cloudstorage.storage;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reuses presigned URLs instead of signing on every download. Entries are keyed by storage key and
+ * HTTP method, bounded in number (least recently used go first) and handed out only while they have
+ * more than {@code safetyMargin} of validity left, so a client never receives a URL about to expire.
+ * Callers evict a key when its object is deleted or stops being shareable.
+ */
+@Component
+public class PresignedUrlCache {
+
+    private static final List<String> METHODS = List.of("GET");
+
+    private final StorageBackend storage;
+    private final int maxEntries;
+    private final Duration safetyMargin;
+    private final Clock clock;
+    private final LinkedHashMap<CacheKey, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    @Autowired
+    public PresignedUrlCache(StorageBackend storage,
+            @Value("${storage.presign.cache.max-entries:10000}") int maxEntries,
+            @Value("${storage.presign.cache.safety-margin-minutes:15}") int safetyMarginMinutes) {
+        this(storage, maxEntries, Duration.ofMinutes(safetyMarginMinutes), Clock.systemUTC());
+    }
+
+    public PresignedUrlCache(StorageBackend storage, int maxEntries, Duration safetyMargin, Clock clock) {
+        this.storage = storage;
+        this.maxEntries = maxEntries;
+        this.safetyMargin = safetyMargin;
+        this.clock = clock;
+    }
+
+    // Cached GET URL for the key, signing a new one valid for {@code expiry} when needed
+    public Optional<String> presignGet(String key, Duration expiry) {
+        CacheKey cacheKey = new CacheKey(key, "GET");
+        Instant now = clock.instant();
+        synchronized (entries) {
+            Entry entry = entries.get(cacheKey);
+            if (entry != null && now.isBefore(entry.expiresAt().minus(safetyMargin))) {
+                hits.incrementAndGet();
+                return Optional.of(entry.url());
+            }
+        }
+        misses.incrementAndGet();
+        // Signing happens outside the lock; two concurrent misses just sign twice
+        Optional<String> url = storage.presignGet(key, expiry);
+        url.ifPresent(u -> put(cacheKey, new Entry(u, now.plus(expiry))));
+        return url;
+    }
+
+    // Forget every URL signed for the key
+    public void evict(String key) {
+        synchronized (entries) {
+            for (String method : METHODS) {
+                if (entries.remove(new CacheKey(key, method)) != null) {
+                    evictions.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    public Stats stats() {
+        synchronized (entries) {
+            return new Stats(hits.get(), misses.get(), evictions.get(), entries.size());
+        }
+    }
+
+    private void put(CacheKey cacheKey, Entry entry) {
+        synchronized (entries) {
+            entries.put(cacheKey, entry);
+            if (entries.size() > maxEntries) {
+                Map.Entry<CacheKey, Entry> eldest = entries.entrySet().iterator().next();
+                entries.remove(eldest.getKey());
+            }
+        }
+    }
+
+    private record CacheKey(String key, String method) {
+    }
+
+    private record Entry(String url, Instant expiresAt) {
+    }
+
+    public record Stats(long hits, long misses, long evictions, int size) {
+        public double hitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0 : (double) hits / total;
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package com.cloudstorage.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.core.client.config.SdkAdvancedAsyncClientOption;
+import software.amazon.awssdk.core.checksums.RequestChecksumCalculation;
+import software.amazon.awssdk.core.checksums.ResponseChecksumValidation;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3AsyncClientBuilder;
+import software.amazon.awssdk.services.s3.S3Configuration;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.ListPartsResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
+import software.amazon.awssdk.services.s3.model.S3Error;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * S3 on the non-blocking AWS SDK v2 client (Netty). Requests are multiplexed over a sized connection
+ * pool instead of each holding a servlet thread for the whole round trip; the pending-acquire queue
+ * bounds how many requests may wait for a connection before new ones fail fast, and every call is
+ * capped by connect, read and overall timeouts. Futures complete on a small dedicated pool so that
+ * follow-up work (saving metadata) never runs on a Netty event loop. Upload bodies are read from their
+ * InputStreams on a second bounded pool: those reads block for as long as the client sends, and must
+ * not starve future completion.
+ */
+@Slf4j
+public class S3AsyncStorageBackend implements StorageBackend, AutoCloseable {
+
+    private final S3AsyncClient s3Client;
+    private final S3Presigner presigner;
+    private final String bucketName;
+    private final ExecutorService completionExecutor;
+    private final ExecutorService bodyExecutor;
+
+    public S3AsyncStorageBackend(String bucketName, String region, String accessKey, String secretKey,
+            URI endpoint, Settings settings) {
+        AwsCredentialsProvider credentials = StaticCredentialsProvider.create(
+                AwsBasicCredentials.create(accessKey, secretKey));
+        this.completionExecutor = daemonPool(settings.completionThreads(), "s3-async-");
+        this.bodyExecutor = daemonPool(settings.bodyThreads(), "s3-body-");
+
+        S3AsyncClientBuilder builder = S3AsyncClient.builder()
+                .region(Region.of(region))
+                .credentialsProvider(credentials)
+                .httpClientBuilder(NettyNioAsyncHttpClient.builder()
+                        .maxConcurrency(settings.maxConcurrency())
+                        .maxPendingConnectionAcquires(settings.maxPendingAcquires())
+                        .connectionTimeout(settings.connectionTimeout())
+                        .connectionAcquisitionTimeout(settings.acquireTimeout())
+                        .readTimeout(settings.readTimeout())
+                        .writeTimeout(settings.readTimeout()))
+                .overrideConfiguration(o -> o.apiCallTimeout(settings.apiCallTimeout()))
+                .asyncConfiguration(a -> a.advancedOption(SdkAdvancedAsyncClientOption.FUTURE_COMPLETION_EXECUTOR,
+                        completionExecutor))
+                // Plain MD5/ETag integrity like the v1 client; S3-compatible stores often reject trailing checksums
+                .requestChecksumCalculation(RequestChecksumCalculation.WHEN_REQUIRED)
+                .responseChecksumValidation(ResponseChecksumValidation.WHEN_REQUIRED);
+        S3Presigner.Builder presignerBuilder = S3Presigner.builder()
+                .region(Region.of(region))
+                .credentialsProvider(credentials);
+        if (endpoint != null) {
+            builder.endpointOverride(endpoint).forcePathStyle(true);
+            presignerBuilder.endpointOverride(endpoint)
+                    .serviceConfiguration(S3Configuration.builder().pathStyleAccessEnabled(true).build());
+        }
+        this.s3Client = builder.build();
+        this.presigner = presignerBuilder.build();
+        this.bucketName = bucketName;
+        log.info("Async S3 client: {} connections, {} pending acquires, {} api call timeout",
+                settings.maxConcurrency(), settings.maxPendingAcquires(), settings.apiCallTimeout());
+    }
+
+    @Override
+    public CompletableFuture<Void> putAsync(String key, InputStream content, long length, String contentType) {
+        // The body is read on its own pool, never on an event loop or the completion pool
+        return s3Client.putObject(r -> r.bucket(bucketName).key(key).contentType(contentType).contentLength(length),
+                AsyncRequestBody.fromInputStream(content, length, bodyExecutor))
+                .thenApply(response -> null);
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteAsync(String key) {
+        return s3Client.deleteObject(r -> r.bucket(bucketName).key(key)).thenApply(response -> null);
+    }
+
+    @Override
+    public CompletableFuture<Long> sizeAsync(String key) {
+        return s3Client.headObject(r -> r.bucket(bucketName).key(key)).thenApply(response -> response.contentLength());
+    }
+
+    @Override
+    public void put(String key, InputStream content, long length, String contentType) {
+        await(putAsync(key, content, length, contentType));
+    }
+
+    @Override
+    public InputStream get(String key) {
+        return await(s3Client.getObject(r -> r.bucket(bucketName).key(key),
+                AsyncResponseTransformer.<GetObjectResponse>toBlockingInputStream()));
+    }
+
+    @Override
+    public InputStream get(String key, long offset, long length) {
+        if (length <= 0) {
+            return InputStream.nullInputStream();
+        }
+        String range = "bytes=" + offset + "-" + (offset + length - 1);
+        return await(s3Client.getObject(r -> r.bucket(bucketName).key(key).range(range),
+                AsyncResponseTransformer.<GetObjectResponse>toBlockingInputStream()));
+    }
+
+    @Override
+    public long size(String key) {
+        return await(sizeAsync(key));
+    }
+
+    @Override
+    public boolean exists(String key) {
+        try {
+            size(key);
+            return true;
+        } catch (NoSuchKeyException e) {
+            return false;
+        } catch (S3Exception e) {
+            if (e.statusCode() == 404) {
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public void delete(String key) {
+        await(deleteAsync(key));
+    }
+
+    // Batches are sent concurrently; each one is a single DeleteObjects call
+    @Override
+    public List<String> deleteAll(Collection<String> keys) {
+        List<String> all = new ArrayList<>(keys);
+        List<CompletableFuture<List<String>>> batches = new ArrayList<>();
+        for (int from = 0; from < all.size(); from += MAX_DELETE_BATCH) {
+            List<ObjectIdentifier> ids = all.subList(from, Math.min(from + MAX_DELETE_BATCH, all.size())).stream()
+                    .map(key -> ObjectIdentifier.builder().key(key).build()).toList();
+            batches.add(s3Client.deleteObjects(r -> r.bucket(bucketName).delete(d -> d.objects(ids).quiet(true)))
+                    .thenApply(response -> response.errors().stream().map(S3Error::key).toList()));
+        }
+        List<String> failed = new ArrayList<>();
+        batches.forEach(batch -> failed.addAll(await(batch)));
+        return failed;
+    }
+
+    @Override
+    public Stream<ObjectInfo> list(String prefix) {
+        return PagedListing.stream(token -> {
+            ListObjectsV2Response response = await(s3Client.listObjectsV2(r -> r.bucket(bucketName).prefix(prefix)
+                    .continuationToken(token)));
+            List<ObjectInfo> objects = response.contents().stream()
+                    .map(o -> new ObjectInfo(o.key(), o.size(), o.lastModified()))
+                    .toList();
+            return new PagedListing.Page(objects,
+                    Boolean.TRUE.equals(response.isTruncated()) ? response.nextContinuationToken() : null);
+        });
+    }
+
+    @Override
+    public String locationOf(String key) {
+        return s3Client.utilities().getUrl(r -> r.bucket(bucketName).key(key)).toString();
+    }
+
+    @Override
+    public String initiateMultipart(String key, String contentType) {
+        return await(s3Client.createMultipartUpload(r -> r.bucket(bucketName).key(key).contentType(contentType)))
+                .uploadId();
+    }
+
+    @Override
+    public String uploadPart(String key, String uploadId, int partNumber, InputStream content, long length) {
+        return await(s3Client.uploadPart(r -> r.bucket(bucketName).key(key).uploadId(uploadId)
+                .partNumber(partNumber).contentLength(length),
+                AsyncRequestBody.fromInputStream(content, length, bodyExecutor))).eTag();
+    }
+
+    @Override
+    public void completeMultipart(String key, String uploadId, List<StoredPart> parts) {
+        List<CompletedPart> completed = parts.stream()
+                .map(p -> CompletedPart.builder().partNumber(p.partNumber()).eTag(p.etag()).build())
+                .toList();
+        await(s3Client.completeMultipartUpload(r -> r.bucket(bucketName).key(key).uploadId(uploadId)
+                .multipartUpload(m -> m.parts(completed))));
+    }
+
+    @Override
+    public void abortMultipart(String key, String uploadId) {
+        await(s3Client.abortMultipartUpload(r -> r.bucket(bucketName).key(key).uploadId(uploadId)));
+    }
+
+    @Override
+    public List<StoredPart> listParts(String key, String uploadId) {
+        List<StoredPart> parts = new ArrayList<>();
+        Integer marker = null;
+        ListPartsResponse listing;
+        do {
+            Integer from = marker;
+            listing = await(s3Client.listParts(r -> r.bucket(bucketName).key(key).uploadId(uploadId)
+                    .partNumberMarker(from)));
+            listing.parts().forEach(p -> parts.add(new StoredPart(p.partNumber(), p.eTag(), p.size())));
+            marker = listing.nextPartNumberMarker();
+        } while (Boolean.TRUE.equals(listing.isTruncated()));
+        return parts;
+    }
+
+    @Override
+    public boolean supportsPresign() {
+        return true;
+    }
+
+    @Override
+    public Optional<String> presignGet(String key, Duration expiry) {
+        return Optional.of(presigner.presignGetObject(r -> r.signatureDuration(expiry)
+                .getObjectRequest(g -> g.bucket(bucketName).key(key))).url().toString());
+    }
+
+    @Override
+    public Optional<String> presignPut(String key, String contentType, Duration expiry) {
+        return Optional.of(presigner.presignPutObject(r -> r.signatureDuration(expiry)
+                .putObjectRequest(p -> p.bucket(bucketName).key(key).contentType(contentType))).url().toString());
+    }
+
+    @Override
+    public Optional<String> presignPart(String key, String uploadId, int partNumber, Duration expiry) {
+        return Optional.of(presigner.presignUploadPart(r -> r.signatureDuration(expiry)
+                .uploadPartRequest(p -> p.bucket(bucketName).key(key).uploadId(uploadId).partNumber(partNumber)))
+                .url().toString());
+    }
+
+    @Override
+    public void close() {
+        s3Client.close();
+        presigner.close();
+        completionExecutor.shutdown();
+        bodyExecutor.shutdown();
+    }
+
+    // Fixed size; work beyond it queues instead of adding threads
+    private static ExecutorService daemonPool(int threads, String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, prefix + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // Blocking calls keep the RuntimeException contract of the other engines
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    public record Settings(int maxConcurrency, int maxPendingAcquires, Duration connectionTimeout,
+            Duration acquireTimeout, Duration readTimeout, Duration apiCallTimeout, int completionThreads,
+            int bodyThreads) {
+    }
+}
@@ -0,0 +1,201 @@
+package com.cloudstorage.storage;
+
+import com.amazonaws.HttpMethod;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.GeneratePresignedUrlRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.ListPartsRequest;
+import com.amazonaws.services.s3.model.MultiObjectDeleteException;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PartListing;
+import com.amazonaws.services.s3.model.PartSummary;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Amazon S3 (or any S3-compatible service) as the object store. The only engine that can presign,
+ * so it is the one that supports redirect downloads and browser-direct uploads.
+ */
+public class S3StorageBackend implements StorageBackend {
+
+    private final AmazonS3 s3Client;
+    private final String bucketName;
+
+    public S3StorageBackend(AmazonS3 s3Client, String bucketName) {
+        this.s3Client = s3Client;
+        this.bucketName = bucketName;
+    }
+
+    @Override
+    public void put(String key, InputStream content, long length, String contentType) {
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentType(contentType);
+        metadata.setContentLength(length);
+        s3Client.putObject(new PutObjectRequest(bucketName, key, content, metadata));
+    }
+
+    @Override
+    public InputStream get(String key) {
+        return s3Client.getObject(bucketName, key).getObjectContent();
+    }
+
+    @Override
+    public InputStream get(String key, long offset, long length) {
+        if (length <= 0) {
+            return InputStream.nullInputStream();
+        }
+        GetObjectRequest request = new GetObjectRequest(bucketName, key).withRange(offset, offset + length - 1);
+        return s3Client.getObject(request).getObjectContent();
+    }
+
+    @Override
+    public long size(String key) {
+        return s3Client.getObjectMetadata(bucketName, key).getContentLength();
+    }
+
+    @Override
+    public boolean exists(String key) {
+        return s3Client.doesObjectExist(bucketName, key);
+    }
+
+    @Override
+    public void delete(String key) {
+        s3Client.deleteObject(bucketName, key);
+    }
+
+    @Override
+    public List<String> deleteAll(Collection<String> keys) {
+        List<String> all = new ArrayList<>(keys);
+        List<String> failed = new ArrayList<>();
+        for (int from = 0; from < all.size(); from += MAX_DELETE_BATCH) {
+            DeleteObjectsRequest request = new DeleteObjectsRequest(bucketName).withQuiet(true)
+                    .withKeys(all.subList(from, Math.min(from + MAX_DELETE_BATCH, all.size())).stream()
+                            .map(DeleteObjectsRequest.KeyVersion::new).toList());
+            try {
+                s3Client.deleteObjects(request);
+            } catch (MultiObjectDeleteException e) {
+                e.getErrors().forEach(error -> failed.add(error.getKey()));
+            }
+        }
+        return failed;
+    }
+
+    @Override
+    public Stream<ObjectInfo> list(String prefix) {
+        return PagedListing.stream(token -> {
+            ListObjectsV2Result result = s3Client.listObjectsV2(new ListObjectsV2Request()
+                    .withBucketName(bucketName).withPrefix(prefix).withContinuationToken(token));
+            List<ObjectInfo> objects = result.getObjectSummaries().stream()
+                    .map(o -> new ObjectInfo(o.getKey(), o.getSize(), o.getLastModified().toInstant()))
+                    .toList();
+            return new PagedListing.Page(objects, result.isTruncated() ? result.getNextContinuationToken() : null);
+        });
+    }
+
+    @Override
+    public String locationOf(String key) {
+        return s3Client.getUrl(bucketName, key).toString();
+    }
+
+    @Override
+    public String initiateMultipart(String key, String contentType) {
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentType(contentType);
+        return s3Client.initiateMultipartUpload(new InitiateMultipartUploadRequest(bucketName, key, metadata))
+                .getUploadId();
+    }
+
+    @Override
+    public String uploadPart(String key, String uploadId, int partNumber, InputStream content, long length) {
+        UploadPartRequest request = new UploadPartRequest()
+                .withBucketName(bucketName)
+                .withKey(key)
+                .withUploadId(uploadId)
+                .withPartNumber(partNumber)
+                .withPartSize(length)
+                .withInputStream(content);
+        return s3Client.uploadPart(request).getETag();
+    }
+
+    @Override
+    public void completeMultipart(String key, String uploadId, List<StoredPart> parts) {
+        List<PartETag> etags = parts.stream().map(p -> new PartETag(p.partNumber(), p.etag())).toList();
+        s3Client.completeMultipartUpload(
+                new CompleteMultipartUploadRequest(bucketName, key, uploadId, new ArrayList<>(etags)));
+    }
+
+    @Override
+    public void abortMultipart(String key, String uploadId) {
+        s3Client.abortMultipartUpload(new AbortMultipartUploadRequest(bucketName, key, uploadId));
+    }
+
+    @Override
+    public List<StoredPart> listParts(String key, String uploadId) {
+        List<StoredPart> parts = new ArrayList<>();
+        ListPartsRequest request = new ListPartsRequest(bucketName, key, uploadId);
+        PartListing listing;
+        do {
+            listing = s3Client.listParts(request);
+            for (PartSummary summary : listing.getParts()) {
+                parts.add(new StoredPart(summary.getPartNumber(), summary.getETag(), summary.getSize()));
+            }
+            request.setPartNumberMarker(listing.getNextPartNumberMarker());
+        } while (listing.isTruncated());
+        return parts;
+    }
+
+    @Override
+    public boolean supportsPresign() {
+        return true;
+    }
+
+    @Override
+    public Optional<String> presignGet(String key, Duration expiry) {
+        GeneratePresignedUrlRequest request = new GeneratePresignedUrlRequest(bucketName, key)
+                .withMethod(HttpMethod.GET);
+        return Optional.of(presign(request, expiry));
+    }
+
+    @Override
+    public Optional<String> presignPut(String key, String contentType, Duration expiry) {
+        GeneratePresignedUrlRequest request = new GeneratePresignedUrlRequest(bucketName, key)
+                .withMethod(HttpMethod.PUT);
+        // Critical for CORS: S3 needs to know the content type we're pre-approving
+        request.setContentType(contentType);
+        return Optional.of(presign(request, expiry));
+    }
+
+    @Override
+    public Optional<String> presignPart(String key, String uploadId, int partNumber, Duration expiry) {
+        GeneratePresignedUrlRequest request = new GeneratePresignedUrlRequest(bucketName, key)
+                .withMethod(HttpMethod.PUT);
+        request.addRequestParameter("uploadId", uploadId);
+        request.addRequestParameter("partNumber", String.valueOf(partNumber));
+        return Optional.of(presign(request, expiry));
+    }
+
+    private String presign(GeneratePresignedUrlRequest request, Duration expiry) {
+        request.setExpiration(new Date(System.currentTimeMillis() + expiry.toMillis()));
+        return s3Client.generatePresignedUrl(request).toString();
+    }
+
+    public String getBucketName() {
+        return bucketName;
+    }
+}
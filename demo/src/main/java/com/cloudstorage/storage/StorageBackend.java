@@ -0,0 +1,125 @@
+package com.cloudstorage.storage;
+
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+/**
+ * Object store for file content. Every read, write, delete and presign of file bytes goes through
+ * this interface so the storage engine (S3, local disk, in-memory) is a configuration choice
+ * ({@code storage.backend}). Keys are relative paths such as {@code <userId>/<uuid>.pdf}.
+ * Missing objects and engine failures surface as RuntimeExceptions.
+ */
+public interface StorageBackend {
+
+    // Store an object of the given length, replacing any existing one atomically
+    void put(String key, InputStream content, long length, String contentType);
+
+    InputStream get(String key);
+
+    // Read {@code length} bytes starting at {@code offset}
+    InputStream get(String key, long offset, long length);
+
+    long size(String key);
+
+    boolean exists(String key);
+
+    // Deleting a missing object is not an error
+    void delete(String key);
+
+    // Most keys one bulk delete call accepts (the S3 DeleteObjects limit)
+    int MAX_DELETE_BATCH = 1000;
+
+    // Delete many objects at once; returns the keys that could not be deleted. Engines with a bulk
+    // delete call override this, the default deletes one by one.
+    default List<String> deleteAll(Collection<String> keys) {
+        List<String> failed = new ArrayList<>();
+        for (String key : keys) {
+            try {
+                delete(key);
+            } catch (RuntimeException e) {
+                failed.add(key);
+            }
+        }
+        return failed;
+    }
+
+    // Objects whose key starts with the prefix, in key order. Listings are fetched page by page as the
+    // stream is consumed, so callers can walk millions of objects; close the stream when done.
+    Stream<ObjectInfo> list(String prefix);
+
+    // Where an object lives, for display and for the File.filePath column
+    String locationOf(String key);
+
+    String initiateMultipart(String key, String contentType);
+
+    // Returns the part's ETag; re-uploading a part number replaces it
+    String uploadPart(String key, String uploadId, int partNumber, InputStream content, long length);
+
+    // Assemble the given parts, in order, into the final object
+    void completeMultipart(String key, String uploadId, List<StoredPart> parts);
+
+    void abortMultipart(String key, String uploadId);
+
+    // Parts received so far, ordered by part number
+    List<StoredPart> listParts(String key, String uploadId);
+
+    // Non-blocking variants for request paths. Engines without an async client run the call inline
+    // and hand back an already completed future.
+
+    default CompletableFuture<Void> putAsync(String key, InputStream content, long length, String contentType) {
+        try {
+            put(key, content, length, contentType);
+            return CompletableFuture.completedFuture(null);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    default CompletableFuture<Void> deleteAsync(String key) {
+        try {
+            delete(key);
+            return CompletableFuture.completedFuture(null);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    default CompletableFuture<Long> sizeAsync(String key) {
+        try {
+            return CompletableFuture.completedFuture(size(key));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    // Engines that can't hand out URLs to clients return empty and content is proxied instead
+
+    default boolean supportsPresign() {
+        return false;
+    }
+
+    default Optional<String> presignGet(String key, Duration expiry) {
+        return Optional.empty();
+    }
+
+    default Optional<String> presignPut(String key, String contentType, Duration expiry) {
+        return Optional.empty();
+    }
+
+    default Optional<String> presignPart(String key, String uploadId, int partNumber, Duration expiry) {
+        return Optional.empty();
+    }
+
+    record StoredPart(int partNumber, String etag, long size) {
+    }
+
+    record ObjectInfo(String key, long size, Instant lastModified) {
+    }
+}
@@ -0,0 +1,142 @@
+package com.cloudstorage.search;
+
+import com.cloudstorage.model.User;
+import com.cloudstorage.repository.FileRepository;
+import com.cloudstorage.repository.FolderRepository;
+import com.cloudstorage.repository.UserRepository;
+import com.cloudstorage.service.TestFixtures;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Name search latency as one user's library grows to a million files: the n-gram index against the
+ * substring scan it replaced. Run with {@code mvn test -Pbenchmark}.
+ */
+@Tag("benchmark")
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class NameSearchBenchmarkTest {
+
+    private static final int[] LIBRARY_SIZES = { 10_000, 100_000, 1_000_000 };
+    private static final String[] WORDS = { "invoice", "report", "quarterly", "budget", "photo", "holiday",
+            "contract", "draft", "final", "scan", "receipt", "meeting", "notes", "slides", "backup", "export",
+            "design", "mockup", "summary", "project", "family", "travel", "tax", "payroll", "resume", "letter",
+            "presentation", "agenda", "minutes", "roadmap", "release", "build", "screenshot", "video", "audio",
+            "podcast", "thesis", "chapter", "manual", "license" };
+    private static final String[] EXTENSIONS = { "pdf", "docx", "xlsx", "jpg", "png", "zip", "txt", "mp4" };
+    private static final Set<SearchHit.Kind> FILES = EnumSet.of(SearchHit.Kind.FILE);
+
+    @Autowired
+    private JdbcTemplate jdbc;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private FileRepository fileRepository;
+    @Autowired
+    private FolderRepository folderRepository;
+
+    private final Random random = new Random(19);
+
+    @AfterEach
+    public void cleanup() {
+        // In chunks; a million deletes in one transaction won't fit in memory
+        while (jdbc.update("delete from files where id in (select id from files fetch first 50000 rows only)") > 0) {
+        }
+        userRepository.deleteAllInBatch();
+    }
+
+    @Test
+    public void nameSearchAsLibraryGrows() {
+        User user = new TestFixtures(userRepository, folderRepository, fileRepository).user("search@example.com");
+        UUID userId = user.getId();
+
+        double[] indexMillis = new double[LIBRARY_SIZES.length];
+        int inserted = 0;
+        for (int i = 0; i < LIBRARY_SIZES.length; i++) {
+            int size = LIBRARY_SIZES[i];
+            insertFiles(userId, size - inserted);
+            inserted = size;
+
+            // A fresh engine per size, so the first search pays for the build
+            NgramSearchEngine engine = new NgramSearchEngine(fileRepository, folderRepository, Duration.ofHours(1),
+                    1, Clock.systemUTC());
+            long begin = System.nanoTime();
+            engine.search(userId, "x", FILES, 0, 1);
+            double buildMillis = (System.nanoTime() - begin) / 1e6;
+
+            List<SearchHit> top = engine.search(userId, "Invoice", FILES, 0, 50);
+            assertEquals(50, top.size());
+            List<UUID> scanned = substringScan(userId, "invoice");
+            assertTrue(scanned.containsAll(top.stream().map(SearchHit::id).toList()));
+            // A typo still lands on the right word
+            String typo = jdbc.queryForObject("select file_name from files where id = ?", String.class,
+                    engine.search(userId, "quartely", FILES, 0, 1).get(0).id());
+            assertTrue(typo.contains("quarterly"), typo);
+
+            indexMillis[i] = median(50, () -> engine.search(userId, "invoice", FILES, 0, 50));
+            double prefixMillis = median(50, () -> engine.search(userId, "invo", FILES, 0, 50));
+            double scanMillis = median(5, () -> substringScan(userId, "invoice"));
+            System.out.printf("[name-search] %,d files: build %.0f ms, query %.2f ms, short query %.2f ms,"
+                    + " substring scan %.2f ms%n", size, buildMillis, indexMillis[i], prefixMillis, scanMillis);
+            if (size == LIBRARY_SIZES[LIBRARY_SIZES.length - 1]) {
+                assertTrue(indexMillis[i] < scanMillis, "index slower than a scan at " + size + " files");
+            }
+        }
+    }
+
+    // What the search used to do: a case-insensitive LIKE over every name the user has
+    private List<UUID> substringScan(UUID userId, String query) {
+        return jdbc.queryForList("select id from files where user_id = ? and is_trashed = false"
+                + " and lower(file_name) like ?", UUID.class, userId, "%" + query + "%");
+    }
+
+    private void insertFiles(UUID userId, int count) {
+        LocalDateTime now = LocalDateTime.now();
+        List<Object[]> batch = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            UUID id = UUID.randomUUID();
+            String name = WORDS[random.nextInt(WORDS.length)] + (random.nextBoolean() ? " " : "-")
+                    + WORDS[random.nextInt(WORDS.length)] + " " + random.nextInt(10_000) + "."
+                    + EXTENSIONS[random.nextInt(EXTENSIONS.length)];
+            batch.add(new Object[] { id, name, "memory://" + id, 1L, userId, now, now });
+            if (batch.size() == 10_000 || i == count - 1) {
+                jdbc.batchUpdate("insert into files (id, file_name, file_path, file_size, user_id, is_trashed,"
+                        + " created_at, updated_at, is_starred, is_chunked)"
+                        + " values (?, ?, ?, ?, ?, false, ?, ?, false, false)", batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private static double median(int runs, Supplier<?> call) {
+        call.get();
+        double[] millis = new double[runs];
+        for (int i = 0; i < runs; i++) {
+            long begin = System.nanoTime();
+            call.get();
+            millis[i] = (System.nanoTime() - begin) / 1e6;
+        }
+        Arrays.sort(millis);
+        return millis[runs / 2];
+    }
+}
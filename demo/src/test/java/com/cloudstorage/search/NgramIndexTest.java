@@ -0,0 +1,95 @@
+package com.cloudstorage.search;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NgramIndexTest {
+
+    private static final Set<SearchHit.Kind> ALL = EnumSet.allOf(SearchHit.Kind.class);
+
+    private final Map<UUID, String> names = new HashMap<>();
+    private NgramIndex index;
+
+    @BeforeEach
+    public void setup() {
+        index = new NgramIndex(0);
+    }
+
+    @Test
+    public void shouldRankExactThenPrefixThenSubstringThenSimilar() {
+        file("Quarterly report 2024.pdf");
+        file("report");
+        file("report-final.docx");
+        file("old reports.zip");
+        folder("Re-port");
+        file("holiday.jpg");
+
+        assertEquals(List.of("report", "report-final.docx", "Quarterly report 2024.pdf", "old reports.zip",
+                "Re-port"), search("Report", ALL, 0, 10));
+        assertEquals(List.of("Re-port"), search("report", EnumSet.of(SearchHit.Kind.FOLDER), 0, 10));
+        // A typo still finds the name through shared trigrams, however long the name is
+        assertEquals(List.of("Quarterly report 2024.pdf"), search("quartely", ALL, 0, 10));
+        assertEquals(List.of("report-final.docx", "Quarterly report 2024.pdf"), search("report", ALL, 1, 2));
+    }
+
+    @Test
+    public void shouldMatchShortQueriesInsideWords() {
+        file("IMG_0042.jpg");
+        file("budget.xlsx");
+        assertEquals(List.of("IMG_0042.jpg"), search("42", ALL, 0, 10));
+        assertEquals(List.of("budget.xlsx"), search("dg", ALL, 0, 10));
+        assertTrue(search(" ", ALL, 0, 10).isEmpty());
+    }
+
+    @Test
+    public void shouldFollowRenamesAndRemovals() {
+        UUID id = file("draft.txt");
+        UUID other = file("draft notes.txt");
+        rename(id, "final.txt");
+        assertEquals(List.of("draft notes.txt"), search("draft", ALL, 0, 10));
+        assertEquals(List.of("final.txt"), search("final", ALL, 0, 10));
+
+        index.remove(other);
+        assertTrue(search("draft", ALL, 0, 10).isEmpty());
+        assertEquals(1, index.size());
+
+        // Enough churn to compact; what is left must still be found
+        for (int i = 0; i < 3000; i++) {
+            index.remove(file("temp-" + i + ".tmp"));
+        }
+        assertEquals(1, index.size());
+        assertEquals(List.of("final.txt"), search("final", ALL, 0, 10));
+        assertTrue(search("temp", ALL, 0, 10).isEmpty());
+    }
+
+    private List<String> search(String query, Set<SearchHit.Kind> kinds, int offset, int limit) {
+        return index.search(query, kinds, offset, limit).stream().map(hit -> names.get(hit.id())).toList();
+    }
+
+    private UUID file(String name) {
+        UUID id = UUID.randomUUID();
+        names.put(id, name);
+        index.put(SearchHit.Kind.FILE, id, name);
+        return id;
+    }
+
+    private void folder(String name) {
+        UUID id = UUID.randomUUID();
+        names.put(id, name);
+        index.put(SearchHit.Kind.FOLDER, id, name);
+    }
+
+    private void rename(UUID id, String name) {
+        names.put(id, name);
+        index.put(SearchHit.Kind.FILE, id, name);
+    }
+}
@@ -0,0 +1,78 @@
+package com.cloudstorage.search;
+
+import com.cloudstorage.repository.FileRepository;
+import com.cloudstorage.repository.FolderRepository;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NgramSearchEngineTest {
+
+    private final CountDownLatch buildStarted = new CountDownLatch(1);
+    private final CountDownLatch releaseBuild = new CountDownLatch(1);
+    private final AtomicInteger builds = new AtomicInteger();
+
+    @Test
+    public void shouldKeepChangesMadeWhileTheIndexIsBuilt() throws Exception {
+        UUID userId = UUID.randomUUID();
+        UUID alpha = UUID.randomUUID();
+        UUID beta = UUID.randomUUID();
+        NgramSearchEngine engine = new NgramSearchEngine(files(List.of(new IndexedName(alpha, "alpha report"))),
+                folders(), Duration.ofMinutes(5), 10, Clock.systemUTC());
+
+        CompletableFuture<List<SearchHit>> first = CompletableFuture.supplyAsync(() -> search(engine, userId));
+        assertTrue(buildStarted.await(5, TimeUnit.SECONDS));
+        CompletableFuture<List<SearchHit>> second = CompletableFuture.supplyAsync(() -> search(engine, userId));
+        // Neither waits on the build, which has already read alpha and not beta
+        engine.indexed(SearchHit.Kind.FILE, userId, beta, "beta report");
+        engine.removed(SearchHit.Kind.FILE, userId, alpha);
+        releaseBuild.countDown();
+
+        assertEquals(List.of(beta), ids(first.get(5, TimeUnit.SECONDS)));
+        assertEquals(List.of(beta), ids(second.get(5, TimeUnit.SECONDS)));
+        assertEquals(1, builds.get());
+    }
+
+    private static List<SearchHit> search(NgramSearchEngine engine, UUID userId) {
+        return engine.search(userId, "report", EnumSet.allOf(SearchHit.Kind.class), 0, 10);
+    }
+
+    private static List<UUID> ids(List<SearchHit> hits) {
+        return hits.stream().map(SearchHit::id).toList();
+    }
+
+    // Only the name listing is used; it blocks until the test lets the build finish
+    private FileRepository files(List<IndexedName> names) {
+        return (FileRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{FileRepository.class}, (proxy, method, args) -> {
+                    if (!method.getName().equals("findNamesByUser")) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    builds.incrementAndGet();
+                    buildStarted.countDown();
+                    assertTrue(releaseBuild.await(5, TimeUnit.SECONDS));
+                    return names;
+                });
+    }
+
+    private FolderRepository folders() {
+        return (FolderRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{FolderRepository.class}, (proxy, method, args) -> {
+                    if (!method.getName().equals("findNamesByUser")) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    return List.of();
+                });
+    }
+}
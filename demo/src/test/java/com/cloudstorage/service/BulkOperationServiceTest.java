@@ -0,0 +1,265 @@
+package com.cloudstorage.service;
+
+import com.cloudstorage.dto.BulkRequest;
+import com.cloudstorage.dto.BulkResult;
+import com.cloudstorage.dto.FolderDto;
+import com.cloudstorage.model.File;
+import com.cloudstorage.model.Folder;
+import com.cloudstorage.model.StorageUsage;
+import com.cloudstorage.model.User;
+import com.cloudstorage.repository.BlobRepository;
+import com.cloudstorage.repository.FileRepository;
+import com.cloudstorage.repository.FolderClosureRepository;
+import com.cloudstorage.repository.FolderRepository;
+import com.cloudstorage.repository.ShareRepository;
+import com.cloudstorage.repository.StorageUsageRepository;
+import com.cloudstorage.repository.UserRepository;
+import com.cloudstorage.storage.HotObjectCache;
+import com.cloudstorage.storage.InMemoryStorageBackend;
+import com.cloudstorage.storage.PresignedUrlCache;
+import jakarta.persistence.EntityManager;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+public class BulkOperationServiceTest {
+
+    @Autowired
+    private EntityManager entityManager;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private FileRepository fileRepository;
+    @Autowired
+    private FolderRepository folderRepository;
+    @Autowired
+    private FolderClosureRepository closureRepository;
+    @Autowired
+    private StorageUsageRepository usageRepository;
+    @Autowired
+    private ShareRepository shareRepository;
+    @Autowired
+    private BlobRepository blobRepository;
+
+    private final InMemoryStorageBackend storage = new InMemoryStorageBackend();
+    private StorageUsageService usageService;
+    private FileService fileService;
+    private FolderService folderService;
+    private BulkOperationService bulkService;
+    private TestFixtures fixtures;
+    private Statistics statistics;
+    private User user;
+
+    @BeforeEach
+    public void setup() {
+        usageService = new StorageUsageService(usageRepository, fileRepository, folderRepository);
+        fileService = new FileService(fileRepository, folderRepository, shareRepository, storage, null,
+                new BlobService(blobRepository), null,
+                new PresignedUrlCache(storage, 100, Duration.ofMinutes(15), Clock.systemUTC()),
+                new HotObjectCache(Path.of("cache"), 0, List.of(), 0, 1), usageService);
+        folderService = new FolderService(folderRepository, fileRepository,
+                new FolderHierarchyService(closureRepository, userRepository), usageService);
+        bulkService = new BulkOperationService(fileRepository, folderRepository, closureRepository, fileService,
+                folderService, usageService);
+        statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        fixtures = new TestFixtures(userRepository, folderRepository, fileRepository);
+        user = fixtures.user("bulk@example.com");
+    }
+
+    @Test
+    public void shouldStarManyFilesWithAFixedNumberOfStatements() {
+        List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            ids.add(upload("file-" + i + ".txt", 1, null).getId());
+        }
+        File foreign = fixtures.file("theirs.txt", 0, null, fixtures.user("other@example.com"));
+        Folder folder = folderService.createFolder("Work", user, null);
+        UUID missing = UUID.randomUUID();
+        ids.add(foreign.getId());
+        ids.add(missing);
+        entityManager.flush();
+        entityManager.clear();
+
+        statistics.clear();
+        BulkResult result = bulkService.apply(user, request(BulkRequest.Action.STAR, ids, List.of(folder.getId())));
+        entityManager.flush();
+        // Folders and files found and locked in one query each, then one update
+        assertEquals(3, statistics.getPrepareStatementCount());
+        assertEquals(200, result.succeeded());
+        assertEquals(List.of("Folders can't be starred", "Not found", "Not found"), List.of(
+                result.results().get(folder.getId()), result.results().get(foreign.getId()),
+                result.results().get(missing)));
+        assertEquals(folder.getId(), result.results().keySet().iterator().next());
+        entityManager.clear();
+        assertEquals(200, fileRepository.findStarredViewsByUser(user).size());
+        assertFalse(fileRepository.findById(foreign.getId()).orElseThrow().getIsStarred());
+    }
+
+    @Test
+    public void shouldMoveTrashRestoreAndRenameWithCountersInStep() {
+        Folder work = folderService.createFolder("Work", user, null);
+        Folder projects = folderService.createFolder("Projects", user, work.getId());
+        Folder archive = folderService.createFolder("Archive", user, null);
+        File a = upload("a.txt", 10, work);
+        File b = upload("b.txt", 20, work);
+        File c = upload("c.txt", 30, projects);
+        File d = upload("d.txt", 40, null);
+
+        BulkResult moved = bulkService.apply(user, move(List.of(a.getId(), b.getId()),
+                List.of(projects.getId(), work.getId()), archive.getId()));
+        assertEquals(List.of(BulkResult.OK, BulkResult.OK, BulkResult.OK), List.of(moved.results().get(a.getId()),
+                moved.results().get(b.getId()), moved.results().get(projects.getId())));
+        assertEquals(Map.of("Work", 0L, "Projects", 30L, "Archive", 60L), totals());
+
+        // Archive now sits above Projects, so it can't move under it
+        BulkResult cycle = bulkService.apply(user, move(List.of(), List.of(archive.getId()), projects.getId()));
+        assertEquals("Cannot move a folder into itself or one of its subfolders",
+                cycle.results().get(archive.getId()));
+
+        bulkService.apply(user, request(BulkRequest.Action.DELETE, List.of(d.getId(), c.getId()),
+                List.of(projects.getId())));
+        assertUsage(30, 2, 70, 2);
+        assertEquals(Map.of("Work", 0L, "Archive", 30L), totals());
+
+        BulkResult restored = bulkService.apply(user, request(BulkRequest.Action.RESTORE, List.of(d.getId()),
+                List.of(projects.getId())));
+        assertEquals(2, restored.succeeded());
+        assertUsage(100, 4, 0, 0);
+        assertEquals(Map.of("Work", 0L, "Projects", 30L, "Archive", 60L), totals());
+        assertEquals(0, usageService.reconcile());
+        assertEquals(0, usageService.reconcileFolders());
+
+        BulkRequest rename = request(BulkRequest.Action.RENAME, List.of(a.getId(), b.getId()),
+                List.of(work.getId()));
+        rename.setNames(Map.of(a.getId(), "renamed.txt", b.getId(), " ", work.getId(), "Office"));
+        BulkResult renamed = bulkService.apply(user, rename);
+        assertEquals("Name is required", renamed.results().get(b.getId()));
+        entityManager.flush();
+        entityManager.clear();
+        assertEquals("renamed.txt", fileRepository.findById(a.getId()).orElseThrow().getFileName());
+        assertEquals("Office", folderRepository.findById(work.getId()).orElseThrow().getName());
+    }
+
+    @Test
+    public void shouldTrashAndRestoreASelectedFolderTogetherWithItsSelectedParent() {
+        Folder work = folderService.createFolder("Work", user, null);
+        Folder projects = folderService.createFolder("Projects", user, work.getId());
+        Folder alpha = folderService.createFolder("Alpha", user, projects.getId());
+        upload("a.txt", 10, work);
+        upload("b.txt", 20, projects);
+        upload("c.txt", 30, alpha);
+
+        // Children listed first; they still go to the trash as part of Work
+        BulkResult deleted = bulkService.apply(user, request(BulkRequest.Action.DELETE, List.of(),
+                List.of(alpha.getId(), projects.getId(), work.getId())));
+        assertEquals(3, deleted.succeeded());
+        assertUsage(0, 0, 60, 3);
+        bulkService.apply(user, request(BulkRequest.Action.RESTORE, List.of(), List.of(work.getId())));
+        assertUsage(60, 3, 0, 0);
+        assertEquals(Map.of("Work", 60L, "Projects", 50L, "Alpha", 30L), totals());
+
+        // Trashed one after the other, then restored together: Projects comes back under Work
+        folderService.deleteFolder(projects.getId(), user);
+        folderService.deleteFolder(work.getId(), user);
+        BulkResult restored = bulkService.apply(user, request(BulkRequest.Action.RESTORE, List.of(),
+                List.of(projects.getId(), work.getId())));
+        assertEquals(2, restored.succeeded());
+        assertUsage(60, 3, 0, 0);
+        assertEquals(Map.of("Work", 60L, "Projects", 50L, "Alpha", 30L), totals());
+        assertEquals(work.getId(), folderRepository.findById(projects.getId()).orElseThrow().getParentFolder()
+                .getId());
+        assertEquals(0, usageService.reconcile());
+        assertEquals(0, usageService.reconcileFolders());
+    }
+
+    @Test
+    public void shouldRestoreFilesTrashedWithAFolderOnlyAlongWithIt() {
+        Folder work = folderService.createFolder("Work", user, null);
+        Folder archive = folderService.createFolder("Archive", user, null);
+        File inWork = upload("work.txt", 10, work);
+        File inArchive = upload("archive.txt", 20, archive);
+        File loose = upload("loose.txt", 40, null);
+        bulkService.apply(user, request(BulkRequest.Action.DELETE, List.of(loose.getId()),
+                List.of(work.getId(), archive.getId())));
+        assertUsage(0, 0, 70, 3);
+
+        BulkResult restored = bulkService.apply(user, request(BulkRequest.Action.RESTORE,
+                List.of(inWork.getId(), inArchive.getId(), loose.getId()), List.of(archive.getId())));
+        assertEquals(List.of(FileService.TRASHED_WITH_FOLDER, BulkResult.OK, BulkResult.OK, BulkResult.OK),
+                List.of(restored.results().get(inWork.getId()), restored.results().get(inArchive.getId()),
+                        restored.results().get(loose.getId()), restored.results().get(archive.getId())));
+        assertUsage(60, 2, 10, 1);
+        assertEquals(Map.of("Archive", 20L), totals());
+        assertEquals(0, usageService.reconcile());
+        assertEquals(0, usageService.reconcileFolders());
+    }
+
+    @Test
+    public void shouldRejectOversizedRequestsAndTrashedTargets() {
+        List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i <= BulkOperationService.MAX_ITEMS; i++) {
+            ids.add(UUID.randomUUID());
+        }
+        assertThrows(IllegalArgumentException.class, () -> bulkService.apply(user,
+                request(BulkRequest.Action.STAR, ids, List.of())));
+
+        Folder trashed = folderService.createFolder("Old", user, null);
+        folderService.deleteFolder(trashed.getId(), user);
+        assertThrows(IllegalArgumentException.class, () -> bulkService.apply(user,
+                move(List.of(), List.of(), trashed.getId())));
+    }
+
+    private Map<String, Long> totals() {
+        entityManager.flush();
+        entityManager.clear();
+        Map<String, Long> totals = new HashMap<>();
+        for (FolderDto folder : folderService.getUserFolders(user)) {
+            totals.put(folder.name(), folder.totalBytes());
+        }
+        return totals;
+    }
+
+    private void assertUsage(long activeBytes, long activeFiles, long trashedBytes, long trashedFiles) {
+        entityManager.flush();
+        entityManager.clear();
+        StorageUsage usage = usageService.getUsage(user);
+        assertEquals(List.of(activeBytes, activeFiles, trashedBytes, trashedFiles), List.of(usage.getActiveBytes(),
+                usage.getActiveFiles(), usage.getTrashedBytes(), usage.getTrashedFiles()));
+    }
+
+    private static BulkRequest request(BulkRequest.Action action, List<UUID> fileIds, List<UUID> folderIds) {
+        BulkRequest request = new BulkRequest();
+        request.setAction(action);
+        request.setFileIds(fileIds);
+        request.setFolderIds(folderIds);
+        return request;
+    }
+
+    private static BulkRequest move(List<UUID> fileIds, List<UUID> folderIds, UUID target) {
+        BulkRequest request = request(BulkRequest.Action.MOVE, fileIds, folderIds);
+        request.setTargetFolderId(target);
+        return request;
+    }
+
+    private File upload(String name, int size, Folder folder) {
+        String key = user.getId() + "/" + UUID.randomUUID();
+        storage.put(key, new ByteArrayInputStream(new byte[size]), size, "text/plain");
+        return fileService.registerUploadedFile(name, key, "text/plain", size, folder, user);
+    }
+}
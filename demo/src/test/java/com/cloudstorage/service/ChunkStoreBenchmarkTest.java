@@ -0,0 +1,121 @@
+package com.cloudstorage.service;
+
+import com.cloudstorage.repository.ChunkRepository;
+import com.cloudstorage.repository.FileChunkRepository;
+import com.cloudstorage.storage.InMemoryStorageBackend;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.ByteArrayInputStream;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Dedup ratio and ingest throughput of the chunk store on synthetic version histories.
+ * Run with {@code mvn test -Pbenchmark}.
+ */
+@Tag("benchmark")
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class ChunkStoreBenchmarkTest {
+
+    private static final int MB = 1024 * 1024;
+
+    @Autowired
+    private ChunkRepository chunkRepository;
+    @Autowired
+    private FileChunkRepository fileChunkRepository;
+
+    private final InMemoryStorageBackend storage = new InMemoryStorageBackend();
+    private ChunkStoreService chunkStore;
+
+    @BeforeEach
+    public void setup() {
+        // Production defaults from application.properties
+        chunkStore = new ChunkStoreService(chunkRepository, fileChunkRepository, storage, 256, 1024, 4096, 8, 60);
+    }
+
+    @AfterEach
+    public void cleanup() {
+        chunkStore.shutdown();
+        fileChunkRepository.deleteAll();
+        chunkRepository.deleteAll();
+    }
+
+    // Disk image re-uploaded after a few scattered in-place block writes
+    @Test
+    public void diskImageVersions() throws Exception {
+        Random random = new Random(11);
+        byte[] image = randomBytes(128 * MB, random);
+        Stats stats = new Stats();
+        for (int v = 0; v < 8; v++) {
+            if (v > 0) {
+                for (int edit = 0; edit < 16; edit++) {
+                    int at = random.nextInt(image.length - 4096);
+                    for (int i = 0; i < 4096; i++) {
+                        image[at + i] = (byte) random.nextInt();
+                    }
+                }
+            }
+            stats.ingest(image);
+        }
+        stats.report("disk image, 8 versions x 128 MB, 16 x 4 KB writes each");
+    }
+
+    // Video/document revisions where content is inserted and removed, shifting everything after the edit
+    @Test
+    public void shiftedRevisions() throws Exception {
+        Random random = new Random(13);
+        byte[] doc = randomBytes(64 * MB, random);
+        Stats stats = new Stats();
+        stats.ingest(doc);
+        for (int v = 1; v < 10; v++) {
+            int at = random.nextInt(doc.length);
+            byte[] inserted = randomBytes(1 + random.nextInt(64 * 1024), random);
+            int removed = Math.min(random.nextInt(32 * 1024), doc.length - at);
+            byte[] next = new byte[doc.length + inserted.length - removed];
+            System.arraycopy(doc, 0, next, 0, at);
+            System.arraycopy(inserted, 0, next, at, inserted.length);
+            System.arraycopy(doc, at + removed, next, at + inserted.length, doc.length - at - removed);
+            doc = next;
+            stats.ingest(doc);
+        }
+        stats.report("revisions, 10 versions x 64 MB, one insert/delete each");
+    }
+
+    private class Stats {
+        private long logical;
+        private long stored;
+        private long nanos;
+
+        void ingest(byte[] version) throws Exception {
+            long start = System.nanoTime();
+            ChunkStoreService.StoredContent content = chunkStore.store(new ByteArrayInputStream(version));
+            chunkStore.saveManifest(UUID.randomUUID(), content.manifest());
+            nanos += System.nanoTime() - start;
+            logical += content.size();
+            stored += content.newBytes();
+        }
+
+        void report(String corpus) {
+            System.out.printf("[chunk-store] %s: logical %d MB, stored %d MB, dedup ratio %.2fx, ingest %.1f MB/s%n",
+                    corpus, logical / MB, stored / MB, (double) logical / stored,
+                    logical / (double) MB / (nanos / 1e9));
+            assertTrue(stored < logical);
+        }
+    }
+
+    private static byte[] randomBytes(int size, Random random) {
+        byte[] data = new byte[size];
+        random.nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,109 @@
+package com.cloudstorage.service;
+
+import com.cloudstorage.repository.ChunkRepository;
+import com.cloudstorage.repository.FileChunkRepository;
+import com.cloudstorage.storage.InMemoryStorageBackend;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Chunks are written from the store's worker threads, so the test can't run inside one rolled-back transaction
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class ChunkStoreServiceTest {
+
+    @Autowired
+    private ChunkRepository chunkRepository;
+    @Autowired
+    private FileChunkRepository fileChunkRepository;
+
+    private final InMemoryStorageBackend storage = new InMemoryStorageBackend();
+    private ChunkStoreService chunkStore;
+
+    @BeforeEach
+    public void setup() {
+        chunkStore = new ChunkStoreService(chunkRepository, fileChunkRepository, storage, 4, 16, 64, 4, 60);
+    }
+
+    @AfterEach
+    public void cleanup() {
+        chunkStore.shutdown();
+        fileChunkRepository.deleteAll();
+        chunkRepository.deleteAll();
+    }
+
+    @Test
+    public void shouldStoreOnlyChangedChunksOfANewVersion() throws Exception {
+        byte[] v1 = new byte[2_000_000];
+        new Random(7).nextBytes(v1);
+        byte[] v2 = v1.clone();
+        for (int i = 1_000_000; i < 1_000_200; i++) {
+            v2[i] ^= 0x5a;
+        }
+
+        UUID first = UUID.randomUUID();
+        ChunkStoreService.StoredContent stored1 = chunkStore.store(new ByteArrayInputStream(v1));
+        chunkStore.saveManifest(first, stored1.manifest());
+        UUID second = UUID.randomUUID();
+        ChunkStoreService.StoredContent stored2 = chunkStore.store(new ByteArrayInputStream(v2));
+        chunkStore.saveManifest(second, stored2.manifest());
+
+        assertEquals(v1.length, stored1.newBytes());
+        assertTrue(stored2.newBytes() < 200 * 1024, "new bytes: " + stored2.newBytes());
+        assertEquals(BlobService.sha256(new ByteArrayInputStream(v2)), stored2.sha256());
+
+        try (InputStream in = chunkStore.open(second)) {
+            assertArrayEquals(v2, in.readAllBytes());
+        }
+        // A range spanning chunk boundaries only touches the chunks it overlaps
+        try (InputStream in = chunkStore.open(second, 999_000, 2_000)) {
+            assertArrayEquals(Arrays.copyOfRange(v2, 999_000, 1_001_000), in.readAllBytes());
+        }
+    }
+
+    @Test
+    public void shouldDeleteChunksOnlyWhenSweptAfterTheirLastReference() throws Exception {
+        byte[] content = new byte[300_000];
+        new Random(3).nextBytes(content);
+
+        UUID first = UUID.randomUUID();
+        chunkStore.saveManifest(first, chunkStore.store(new ByteArrayInputStream(content)).manifest());
+        UUID copy = UUID.randomUUID();
+        chunkStore.saveManifest(copy, chunkStore.store(new ByteArrayInputStream(content)).manifest());
+        int objects = storage.objectCount();
+        int chunks = (int) chunkRepository.count();
+
+        chunkStore.release(first);
+        chunkStore.release(copy);
+        assertEquals(0, chunkStore.sweepReleased(LocalDateTime.now().minusMinutes(1)), "still in the grace period");
+        assertEquals(objects, storage.objectCount());
+
+        // The same content uploaded again takes the released chunks back without storing anything
+        UUID again = UUID.randomUUID();
+        ChunkStoreService.StoredContent stored = chunkStore.store(new ByteArrayInputStream(content));
+        chunkStore.saveManifest(again, stored.manifest());
+        assertEquals(0, stored.newBytes());
+        assertEquals(0, chunkStore.sweepReleased(LocalDateTime.now().plusMinutes(1)));
+        try (InputStream in = chunkStore.open(again)) {
+            assertArrayEquals(content, in.readAllBytes());
+        }
+
+        chunkStore.release(again);
+        assertEquals(chunks, chunkStore.sweepReleased(LocalDateTime.now().plusMinutes(1)));
+        assertEquals(0, storage.objectCount());
+        assertEquals(0, chunkRepository.count());
+    }
+}
@@ -0,0 +1,119 @@
+package com.cloudstorage.service;
+
+import com.cloudstorage.model.File;
+import com.cloudstorage.model.User;
+import com.cloudstorage.storage.HotObjectCache;
+import com.cloudstorage.storage.InMemoryStorageBackend;
+import com.cloudstorage.storage.PresignedUrlCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ContentProxyServiceTest {
+
+    @TempDir
+    Path cacheDir;
+
+    private final InMemoryStorageBackend storage = new InMemoryStorageBackend();
+    private final byte[] data = new byte[10_000];
+    private HotObjectCache hotCache;
+    private ContentProxyService proxy;
+    private File file;
+
+    @BeforeEach
+    public void setup() {
+        new Random(1).nextBytes(data);
+        hotCache = new HotObjectCache(cacheDir, 1024 * 1024, List.of("video/"), 1024 * 1024, 1);
+        FileService fileService = new FileService(null, null, null, storage, null, null, null,
+                new PresignedUrlCache(storage, 10, Duration.ofMinutes(15), Clock.systemUTC()), hotCache, null);
+        proxy = new ContentProxyService(fileService, hotCache);
+
+        User user = new User();
+        user.setId(UUID.randomUUID());
+        file = new File();
+        file.setUser(user);
+        file.setFileName("clip.mp4");
+        file.setFileType("video/mp4");
+        file.setFileSize((long) data.length);
+        file.setFilePath("memory://" + user.getId() + "/clip.mp4");
+        storage.put(user.getId() + "/clip.mp4", new ByteArrayInputStream(data), data.length, "video/mp4");
+    }
+
+    @AfterEach
+    public void cleanup() {
+        hotCache.shutdown();
+    }
+
+    @Test
+    public void shouldFillCacheOnFullDownloadAndServeRangesFromIt() throws IOException {
+        ResponseEntity<StreamingResponseBody> full = proxy.serve(file, new HttpHeaders());
+        assertEquals(200, full.getStatusCode().value());
+        assertEquals("bytes", full.getHeaders().getFirst(HttpHeaders.ACCEPT_RANGES));
+        assertArrayEquals(data, body(full));
+
+        // The bucket copy is gone: anything served now must come from the cache
+        storage.delete(fileKey());
+        HttpHeaders range = new HttpHeaders();
+        range.set(HttpHeaders.RANGE, "bytes=100-1099");
+        ResponseEntity<StreamingResponseBody> partial = proxy.serve(file, range);
+
+        assertEquals(206, partial.getStatusCode().value());
+        assertEquals("bytes 100-1099/10000", partial.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+        assertEquals(1000, partial.getHeaders().getContentLength());
+        assertArrayEquals(Arrays.copyOfRange(data, 100, 1100), body(partial));
+        assertEquals(1, hotCache.stats().hits());
+    }
+
+    @Test
+    public void shouldServeRangeMissesFromTheBackend() throws IOException {
+        HttpHeaders range = new HttpHeaders();
+        range.set(HttpHeaders.RANGE, "bytes=-500");
+
+        ResponseEntity<StreamingResponseBody> partial = proxy.serve(file, range);
+
+        assertEquals(206, partial.getStatusCode().value());
+        assertArrayEquals(Arrays.copyOfRange(data, 9500, 10000), body(partial));
+    }
+
+    @Test
+    public void shouldAnswerConditionalAndUnsatisfiableRequests() {
+        String etag = proxy.serve(file, new HttpHeaders()).getHeaders().getETag();
+
+        HttpHeaders conditional = new HttpHeaders();
+        conditional.setIfNoneMatch(etag);
+        assertEquals(304, proxy.serve(file, conditional).getStatusCode().value());
+
+        HttpHeaders outOfBounds = new HttpHeaders();
+        outOfBounds.set(HttpHeaders.RANGE, "bytes=20000-");
+        ResponseEntity<StreamingResponseBody> response = proxy.serve(file, outOfBounds);
+        assertEquals(416, response.getStatusCode().value());
+        assertEquals("bytes */10000", response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+    }
+
+    private String fileKey() {
+        return file.getUser().getId() + "/clip.mp4";
+    }
+
+    private static byte[] body(ResponseEntity<StreamingResponseBody> response) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.getBody().writeTo(out);
+        return out.toByteArray();
+    }
+}
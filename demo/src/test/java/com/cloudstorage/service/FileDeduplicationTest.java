@@ -0,0 +1,111 @@
+package com.cloudstorage.service;
+
+import com.cloudstorage.model.File;
+import com.cloudstorage.model.User;
+import com.cloudstorage.repository.BlobRepository;
+import com.cloudstorage.repository.FileRepository;
+import com.cloudstorage.repository.FolderRepository;
+import com.cloudstorage.repository.ShareRepository;
+import com.cloudstorage.repository.StorageUsageRepository;
+import com.cloudstorage.repository.UserRepository;
+import com.cloudstorage.storage.BufferPool;
+import com.cloudstorage.storage.HotObjectCache;
+import com.cloudstorage.storage.InMemoryS3;
+import com.cloudstorage.storage.MultipartUploadEngine;
+import com.cloudstorage.storage.PresignedUrlCache;
+import com.cloudstorage.storage.S3StorageBackend;
+import com.cloudstorage.storage.StorageBackend;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+public class FileDeduplicationTest {
+
+    private static final int PART_SIZE = MultipartUploadEngine.MIN_PART_SIZE;
+
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private FileRepository fileRepository;
+    @Autowired
+    private StorageUsageRepository usageRepository;
+    @Autowired
+    private FolderRepository folderRepository;
+    @Autowired
+    private ShareRepository shareRepository;
+    @Autowired
+    private BlobRepository blobRepository;
+
+    private final InMemoryS3 s3 = new InMemoryS3();
+    private FileService fileService;
+    private User user;
+
+    @BeforeEach
+    public void setup() {
+        StorageBackend storage = new S3StorageBackend(s3, "bucket");
+        StorageUsageService usageService = new StorageUsageService(usageRepository, fileRepository, folderRepository);
+        MultipartUploadEngine engine = new MultipartUploadEngine(storage, PART_SIZE, 2,
+                new BufferPool(PART_SIZE, 3), 2);
+        fileService = new FileService(fileRepository, folderRepository, shareRepository, storage, engine,
+                new BlobService(blobRepository), null,
+                new PresignedUrlCache(storage, 100, Duration.ofMinutes(15), Clock.systemUTC()),
+                new HotObjectCache(Path.of("cache"), 0, List.of(), 0, 1), usageService);
+
+        user = new TestFixtures(userRepository, folderRepository, fileRepository).user("dedup@example.com");
+    }
+
+    @Test
+    public void shouldStoreIdenticalUploadsOnceAndDeleteWithLastReference() {
+        byte[] content = "the same report, uploaded again".getBytes();
+
+        File first = fileService.uploadStream(new ByteArrayInputStream(content), "report.pdf", "application/pdf",
+                null, user, null);
+        File second = fileService.uploadFile(new MockMultipartFile("file", "report-copy.pdf", "application/pdf",
+                content), user, null);
+
+        assertEquals(first.getContentHash(), second.getContentHash());
+        assertEquals(first.getFilePath(), second.getFilePath());
+        assertEquals(1, s3.objectCount());
+        assertEquals(2, blobRepository.findByUserAndSha256(user, first.getContentHash()).orElseThrow()
+                .getRefCount());
+
+        fileService.permanentDeleteFile(first.getId(), user);
+        assertEquals(1, s3.objectCount(), "object is still referenced by the copy");
+
+        fileService.permanentDeleteFile(second.getId(), user);
+        assertEquals(0, s3.objectCount());
+        assertTrue(blobRepository.findByUserAndSha256(user, first.getContentHash()).isEmpty());
+    }
+
+    @Test
+    public void shouldSkipReadingBodyWhenHashIsAlreadyKnown() {
+        byte[] content = new byte[1024];
+        File original = fileService.uploadStream(new ByteArrayInputStream(content), "a.bin", "application/octet-stream",
+                null, user, null);
+
+        InputStream untouched = new InputStream() {
+            @Override
+            public int read() {
+                throw new AssertionError("body should not be read for known content");
+            }
+        };
+        File copy = fileService.uploadStream(untouched, "b.bin", "application/octet-stream",
+                original.getContentHash().toUpperCase(), user, null);
+
+        assertEquals(1024L, copy.getFileSize());
+        assertEquals(original.getFilePath(), copy.getFilePath());
+        assertEquals(1, s3.putCount());
+    }
+}
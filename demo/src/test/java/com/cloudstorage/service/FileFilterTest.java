@@ -0,0 +1,149 @@
+package com.cloudstorage.service;
+
+import com.cloudstorage.dto.CursorPage;
+import com.cloudstorage.dto.FileDto;
+import com.cloudstorage.dto.FileFilter;
+import com.cloudstorage.dto.PageParams;
+import com.cloudstorage.model.File;
+import com.cloudstorage.model.Folder;
+import com.cloudstorage.model.Share;
+import com.cloudstorage.model.User;
+import com.cloudstorage.repository.FileRepository;
+import com.cloudstorage.repository.FolderRepository;
+import com.cloudstorage.repository.ShareRepository;
+import com.cloudstorage.repository.UserRepository;
+import jakarta.persistence.EntityManager;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+public class FileFilterTest {
+
+    @Autowired
+    private EntityManager entityManager;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private FileRepository fileRepository;
+    @Autowired
+    private FolderRepository folderRepository;
+    @Autowired
+    private ShareRepository shareRepository;
+
+    private FileService fileService;
+    private TestFixtures fixtures;
+    private User user;
+    private Folder folder;
+
+    @BeforeEach
+    public void setup() {
+        fileService = new FileService(fileRepository, folderRepository, shareRepository, null, null, null, null,
+                null, null, null);
+        fixtures = new TestFixtures(userRepository, folderRepository, fileRepository);
+        user = fixtures.user("filter@example.com");
+        folder = fixtures.folder("Photos", null, user);
+    }
+
+    @Test
+    public void shouldCombineFiltersInOnePagedStatement() {
+        File beach = file("beach.jpg", "IMAGE/JPEG", 500, folder, 3);
+        File cat = file("cat.png", "image/png", 2000, null, 40);
+        file("pic.imagex", "imagex/custom", 800, folder, 3);
+        File report = file("report.pdf", "application/pdf", 900, null, 10);
+        file("old.jpg", "image/jpeg", 700, folder, 3).setIsTrashed(true);
+        cat.setIsStarred(true);
+        report.setPublicShareToken("token");
+        Share share = new Share();
+        share.setFile(beach);
+        share.setSharedBy(user);
+        share.setSharedWith(fixtures.user("friend@example.com"));
+        share.setPermission(Share.Permission.VIEWER);
+        shareRepository.save(share);
+        entityManager.flush();
+        entityManager.clear();
+
+        // A family matches by prefix but never a longer family name; the stored type was lower-cased
+        assertEquals(List.of("beach.jpg", "cat.png"), names(filter(f -> f.setType("image"))));
+        assertEquals(List.of("beach.jpg"), names(filter(f -> f.setType("Image/JPEG"))));
+        assertEquals(List.of("beach.jpg", "pic.imagex"), names(filter(f -> {
+            f.setMinSize(500L);
+            f.setMaxSize(800L);
+        })));
+        assertEquals(List.of("beach.jpg", "pic.imagex"), names(filter(f -> f.setFolderId(folder.getId()))));
+        assertEquals(List.of("cat.png", "report.pdf"), names(filter(f -> f.setRoot(true))));
+        assertEquals(List.of("cat.png"), names(filter(f -> f.setStarred(true))));
+        assertEquals(List.of("beach.jpg", "report.pdf"), names(filter(f -> f.setShared(true))));
+        assertEquals(List.of("cat.png", "pic.imagex"), names(filter(f -> f.setShared(false))));
+        assertEquals(List.of("cat.png", "report.pdf"), names(filter(f -> {
+            f.setCreatedFrom(LocalDate.now().minusDays(40));
+            f.setCreatedTo(LocalDate.now().minusDays(10));
+        })));
+        assertEquals(List.of("beach.jpg"), names(filter(f -> {
+            f.setType("image");
+            f.setShared(true);
+            f.setName("BEA");
+        })));
+        assertTrue(filter(f -> f.setName("100%")).items().isEmpty());
+
+        // Paging across everything costs one statement per page and no count
+        Statistics statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        List<String> walked = new ArrayList<>();
+        PageParams params = new PageParams();
+        params.setLimit(3);
+        CursorPage<FileDto> page = fileService.filterFiles(user, new FileFilter(), params);
+        walked.addAll(names(page));
+        assertNotNull(page.nextCursor());
+        params.setCursor(page.nextCursor());
+        page = fileService.filterFiles(user, new FileFilter(), params);
+        walked.addAll(names(page));
+        assertNull(page.nextCursor());
+        assertEquals(2, statistics.getPrepareStatementCount());
+        assertEquals(List.of("beach.jpg", "cat.png", "pic.imagex", "report.pdf"), walked);
+    }
+
+    @Test
+    public void shouldRejectInvertedRanges() {
+        assertThrows(IllegalArgumentException.class, () -> filter(f -> {
+            f.setMinSize(10L);
+            f.setMaxSize(5L);
+        }));
+        assertThrows(IllegalArgumentException.class, () -> filter(f -> {
+            f.setCreatedFrom(LocalDate.of(2026, 2, 1));
+            f.setCreatedTo(LocalDate.of(2026, 1, 1));
+        }));
+        assertThrows(IllegalArgumentException.class, () -> filter(f -> {
+            f.setFolderId(folder.getId());
+            f.setRoot(true);
+        }));
+    }
+
+    private CursorPage<FileDto> filter(Consumer<FileFilter> criteria) {
+        FileFilter filter = new FileFilter();
+        criteria.accept(filter);
+        return fileService.filterFiles(user, filter, new PageParams());
+    }
+
+    private static List<String> names(CursorPage<FileDto> page) {
+        return page.items().stream().map(FileDto::fileName).toList();
+    }
+
+    private File file(String name, String type, long size, Folder parent, int daysOld) {
+        File file = TestFixtures.newFile(name, size, parent, user);
+        file.setFileType(type);
+        file = fileRepository.save(file);
+        file.setCreatedAt(LocalDate.now().minusDays(daysOld).atTime(12, 0));
+        return file;
+    }
+}
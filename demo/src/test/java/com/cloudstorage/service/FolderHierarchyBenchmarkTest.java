@@ -0,0 +1,159 @@
+package com.cloudstorage.service;
+
+import com.cloudstorage.dto.FolderDto;
+import com.cloudstorage.model.User;
+import com.cloudstorage.repository.FileRepository;
+import com.cloudstorage.repository.FolderClosureRepository;
+import com.cloudstorage.repository.FolderRepository;
+import com.cloudstorage.repository.StorageUsageRepository;
+import com.cloudstorage.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Hierarchy queries on a 1000-level chain and a folder with 100k children: the closure table against
+ * walking parentFolder one row at a time. Run with {@code mvn test -Pbenchmark}.
+ */
+@Tag("benchmark")
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class FolderHierarchyBenchmarkTest {
+
+    private static final int DEPTH = 1_000;
+    private static final int WIDTH = 100_000;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private FileRepository fileRepository;
+    @Autowired
+    private FolderRepository folderRepository;
+    @Autowired
+    private FolderClosureRepository closureRepository;
+    @Autowired
+    private StorageUsageRepository usageRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @AfterEach
+    public void cleanup() {
+        closureRepository.deleteAllInBatch();
+        jdbc.update("update folders set parent_folder_id = null");
+        folderRepository.deleteAllInBatch();
+        userRepository.deleteAllInBatch();
+    }
+
+    @Test
+    public void deepAndWideTrees() {
+        User owner = new TestFixtures(userRepository, folderRepository, fileRepository).user("tree@example.com");
+        FolderHierarchyService hierarchyService = new FolderHierarchyService(closureRepository, userRepository);
+        FolderService folderService = new FolderService(folderRepository, fileRepository, hierarchyService,
+                new StorageUsageService(usageRepository, fileRepository, folderRepository));
+
+        List<UUID> chain = insertFolders(owner, DEPTH, true, null);
+        UUID wideRoot = insertFolders(owner, 1, false, null).get(0);
+        insertFolders(owner, WIDTH, false, wideRoot);
+        long begin = System.nanoTime();
+        // Every folder's own row plus one per ancestor
+        assertEquals(DEPTH * (DEPTH + 1) / 2 + 1 + 2 * WIDTH, hierarchyService.backfill());
+        System.out.printf("[folder-tree] backfill of %,d folders: %.0f ms%n", DEPTH + WIDTH + 1,
+                (System.nanoTime() - begin) / 1e6);
+
+        UUID bottom = chain.get(DEPTH - 1);
+        assertEquals(DEPTH, folderRepository.findPathViews(owner, bottom).size());
+        assertEquals(DEPTH, parentWalk(bottom).size());
+        double pathMillis = median(20, () -> folderRepository.findPathViews(owner, bottom));
+        double walkMillis = median(5, () -> parentWalk(bottom));
+        System.out.printf("[folder-tree] breadcrumbs at depth %,d: closure %.2f ms, parent walk %.2f ms%n", DEPTH,
+                pathMillis, walkMillis);
+        assertTrue(pathMillis < walkMillis, "closure path slower than walking parents");
+
+        List<FolderDto> deepSubtree = folderRepository.findDescendantViews(owner, chain.get(0));
+        assertEquals(DEPTH - 1, deepSubtree.size());
+        double wideMillis = median(5, () -> folderRepository.findDescendantViews(owner, wideRoot));
+        assertEquals(WIDTH, folderRepository.findDescendantViews(owner, wideRoot).size());
+        System.out.printf("[folder-tree] subtree of %,d children: %.2f ms%n", WIDTH, wideMillis);
+
+        // Moving the lower half of the chain, and the wide folder, under one another; a move locks the
+        // user's row, which needs the transaction the service would run in
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        UUID middle = chain.get(DEPTH / 2);
+        double cycleMillis = median(20, () -> assertThrows(RuntimeException.class, () -> transaction.execute(
+                status -> folderService.moveFolder(chain.get(0), bottom, owner))));
+        begin = System.nanoTime();
+        transaction.execute(status -> folderService.moveFolder(middle, wideRoot, owner));
+        double deepMoveMillis = (System.nanoTime() - begin) / 1e6;
+        begin = System.nanoTime();
+        transaction.execute(status -> folderService.moveFolder(wideRoot, chain.get(9), owner));
+        double wideMoveMillis = (System.nanoTime() - begin) / 1e6;
+        System.out.printf("[folder-tree] rejected cycle %.2f ms, move %,d-folder chain %.0f ms,"
+                + " move %,d-folder subtree %.0f ms%n", cycleMillis, DEPTH / 2, deepMoveMillis, WIDTH + DEPTH / 2 + 1,
+                wideMoveMillis);
+
+        List<FolderDto> path = folderRepository.findPathViews(owner, bottom);
+        assertEquals(10 + 1 + DEPTH / 2, path.size());
+        assertEquals(List.of(chain.get(9), wideRoot, middle), path.subList(9, 12).stream().map(FolderDto::id)
+                .toList());
+        assertEquals(WIDTH + DEPTH / 2, folderRepository.findDescendantViews(owner, wideRoot).size());
+    }
+
+    // What breadcrumbs cost without the closure table: one lookup per level
+    private List<UUID> parentWalk(UUID folderId) {
+        List<UUID> path = new ArrayList<>();
+        for (UUID id = folderId; id != null; ) {
+            path.add(0, id);
+            id = jdbc.queryForObject("select parent_folder_id from folders where id = ?", UUID.class, id);
+        }
+        return path;
+    }
+
+    // A chain links each folder to the one before it; otherwise all go under the given parent
+    private List<UUID> insertFolders(User owner, int count, boolean chain, UUID parent) {
+        LocalDateTime now = LocalDateTime.now();
+        List<UUID> ids = new ArrayList<>();
+        List<Object[]> batch = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            UUID id = UUID.randomUUID();
+            batch.add(new Object[] { id, "folder-" + i, chain && i > 0 ? ids.get(i - 1) : parent, owner.getId(),
+                    now, now });
+            ids.add(id);
+            if (batch.size() == 10_000 || i == count - 1) {
+                jdbc.batchUpdate("insert into folders (id, name, parent_folder_id, user_id, created_at, updated_at,"
+                        + " is_trashed) values (?, ?, ?, ?, ?, ?, false)", batch);
+                batch.clear();
+            }
+        }
+        return ids;
+    }
+
+    private static double median(int runs, Supplier<?> call) {
+        call.get();
+        double[] millis = new double[runs];
+        for (int i = 0; i < runs; i++) {
+            long begin = System.nanoTime();
+            call.get();
+            millis[i] = (System.nanoTime() - begin) / 1e6;
+        }
+        Arrays.sort(millis);
+        return millis[runs / 2];
+    }
+}
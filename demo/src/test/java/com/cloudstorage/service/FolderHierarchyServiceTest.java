@@ -0,0 +1,140 @@
+package com.cloudstorage.service;
+
+import com.cloudstorage.dto.FileDto;
+import com.cloudstorage.dto.FileFilter;
+import com.cloudstorage.dto.FolderDto;
+import com.cloudstorage.dto.PageParams;
+import com.cloudstorage.model.File;
+import com.cloudstorage.model.Folder;
+import com.cloudstorage.model.User;
+import com.cloudstorage.repository.FileRepository;
+import com.cloudstorage.repository.FolderClosureRepository;
+import com.cloudstorage.repository.FolderRepository;
+import com.cloudstorage.repository.StorageUsageRepository;
+import com.cloudstorage.repository.ShareRepository;
+import com.cloudstorage.repository.UserRepository;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+public class FolderHierarchyServiceTest {
+
+    @Autowired
+    private EntityManager entityManager;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private FileRepository fileRepository;
+    @Autowired
+    private FolderRepository folderRepository;
+    @Autowired
+    private FolderClosureRepository closureRepository;
+    @Autowired
+    private StorageUsageRepository usageRepository;
+    @Autowired
+    private ShareRepository shareRepository;
+
+    private FolderHierarchyService hierarchyService;
+    private FolderService folderService;
+    private TestFixtures fixtures;
+    private User user;
+
+    @BeforeEach
+    public void setup() {
+        hierarchyService = new FolderHierarchyService(closureRepository, userRepository);
+        folderService = new FolderService(folderRepository, fileRepository, hierarchyService,
+                new StorageUsageService(usageRepository, fileRepository, folderRepository));
+        fixtures = new TestFixtures(userRepository, folderRepository, fileRepository);
+        user = fixtures.user("tree@example.com");
+    }
+
+    @Test
+    public void shouldResolvePathsAndSubtreesAfterMoves() {
+        Folder work = folderService.createFolder("Work", user, null);
+        Folder projects = folderService.createFolder("Projects", user, work.getId());
+        Folder alpha = folderService.createFolder("Alpha", user, projects.getId());
+        Folder docs = folderService.createFolder("Docs", user, alpha.getId());
+        Folder archive = folderService.createFolder("Archive", user, null);
+
+        assertEquals(List.of("Work", "Projects", "Alpha", "Docs"), names(folderService.getBreadcrumbs(user,
+                docs.getId())));
+        assertEquals(List.of("Alpha", "Docs", "Projects"), sorted(folderService.getDescendants(user, work.getId())));
+
+        // The whole subtree travels with its top folder
+        folderService.moveFolder(alpha.getId(), archive.getId(), user);
+        assertEquals(List.of("Archive", "Alpha", "Docs"), names(folderService.getBreadcrumbs(user, docs.getId())));
+        assertEquals(List.of("Projects"), sorted(folderService.getDescendants(user, work.getId())));
+        assertEquals(List.of("Alpha", "Docs"), sorted(folderService.getDescendants(user, archive.getId())));
+
+        folderService.moveFolder(archive.getId(), null, user);
+        folderService.moveFolder(alpha.getId(), null, user);
+        assertEquals(List.of("Alpha", "Docs"), names(folderService.getBreadcrumbs(user, docs.getId())));
+        assertTrue(folderService.getDescendants(user, archive.getId()).isEmpty());
+    }
+
+    @Test
+    public void shouldRejectMovesIntoTheFolderItselfOrBelow() {
+        Folder top = folderService.createFolder("Top", user, null);
+        Folder middle = folderService.createFolder("Middle", user, top.getId());
+        Folder bottom = folderService.createFolder("Bottom", user, middle.getId());
+
+        assertThrows(RuntimeException.class, () -> folderService.moveFolder(top.getId(), top.getId(), user));
+        assertThrows(RuntimeException.class, () -> folderService.moveFolder(top.getId(), bottom.getId(), user));
+        assertThrows(RuntimeException.class, () -> folderService.moveFolder(middle.getId(), bottom.getId(), user));
+        assertEquals(List.of("Top", "Middle", "Bottom"), names(folderService.getBreadcrumbs(user, bottom.getId())));
+    }
+
+    @Test
+    public void shouldBackfillFoldersWrittenAroundTheServiceAndCascadeDeletes() {
+        // Folders from before the closure table: saved straight through the repository
+        Folder a = folder("A", null);
+        Folder b = folder("B", a);
+        Folder c = folder("C", b);
+        entityManager.flush();
+        assertEquals(6, hierarchyService.backfill());
+        assertEquals(0, hierarchyService.backfill());
+        assertEquals(List.of("A", "B", "C"), names(folderService.getBreadcrumbs(user, c.getId())));
+
+        FileService fileService = new FileService(fileRepository, folderRepository, shareRepository, null, null,
+                null, null, null, null, null);
+        file("top.txt", a);
+        File deep = file("deep.txt", c);
+        file("loose.txt", null);
+        entityManager.flush();
+        FileFilter filter = new FileFilter();
+        filter.setFolderId(a.getId());
+        filter.setRecursive(true);
+        assertEquals(List.of("deep.txt", "top.txt"), fileService.filterFiles(user, filter, new PageParams()).items()
+                .stream().map(FileDto::fileName).toList());
+
+        long rows = closureRepository.count();
+        fileRepository.delete(deep);
+        folderRepository.delete(c);
+        entityManager.flush();
+        // C's own row and its two ancestor rows went with it
+        assertEquals(rows - 3, closureRepository.count());
+    }
+
+    private static List<String> names(List<FolderDto> folders) {
+        return folders.stream().map(FolderDto::name).toList();
+    }
+
+    private static List<String> sorted(List<FolderDto> folders) {
+        return folders.stream().map(FolderDto::name).sorted().toList();
+    }
+
+    private Folder folder(String name, Folder parent) {
+        return fixtures.folder(name, parent, user);
+    }
+
+    private File file(String name, Folder folder) {
+        return fixtures.file(name, 0, folder, user);
+    }
+}
@@ -0,0 +1,169 @@
+package com.cloudstorage.service;
+
+import com.cloudstorage.dto.FolderDto;
+import com.cloudstorage.model.File;
+import com.cloudstorage.model.Folder;
+import com.cloudstorage.model.User;
+import com.cloudstorage.repository.BlobRepository;
+import com.cloudstorage.repository.FileRepository;
+import com.cloudstorage.repository.FolderClosureRepository;
+import com.cloudstorage.repository.FolderRepository;
+import com.cloudstorage.repository.ShareRepository;
+import com.cloudstorage.repository.StorageUsageRepository;
+import com.cloudstorage.repository.UserRepository;
+import com.cloudstorage.storage.HotObjectCache;
+import com.cloudstorage.storage.InMemoryStorageBackend;
+import com.cloudstorage.storage.PresignedUrlCache;
+import jakarta.persistence.EntityManager;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+public class FolderRollupTest {
+
+    @Autowired
+    private EntityManager entityManager;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private FileRepository fileRepository;
+    @Autowired
+    private FolderRepository folderRepository;
+    @Autowired
+    private FolderClosureRepository closureRepository;
+    @Autowired
+    private StorageUsageRepository usageRepository;
+    @Autowired
+    private ShareRepository shareRepository;
+    @Autowired
+    private BlobRepository blobRepository;
+
+    private final InMemoryStorageBackend storage = new InMemoryStorageBackend();
+    private StorageUsageService usageService;
+    private FileService fileService;
+    private FolderService folderService;
+    private TestFixtures fixtures;
+    private User user;
+
+    @BeforeEach
+    public void setup() {
+        usageService = new StorageUsageService(usageRepository, fileRepository, folderRepository);
+        fileService = new FileService(fileRepository, folderRepository, shareRepository, storage, null,
+                new BlobService(blobRepository), null,
+                new PresignedUrlCache(storage, 100, Duration.ofMinutes(15), Clock.systemUTC()),
+                new HotObjectCache(Path.of("cache"), 0, List.of(), 0, 1), usageService);
+        folderService = new FolderService(folderRepository, fileRepository,
+                new FolderHierarchyService(closureRepository, userRepository), usageService);
+        fixtures = new TestFixtures(userRepository, folderRepository, fileRepository);
+        user = fixtures.user("rollup@example.com");
+    }
+
+    @Test
+    public void shouldFollowUploadsTrashMovesAndDeletesUpTheTree() {
+        Folder work = folderService.createFolder("Work", user, null);
+        Folder projects = folderService.createFolder("Projects", user, work.getId());
+        Folder alpha = folderService.createFolder("Alpha", user, projects.getId());
+        Folder archive = folderService.createFolder("Archive", user, null);
+        upload("work.txt", 10, work);
+        upload("projects.txt", 20, projects);
+        File report = upload("alpha.txt", 30, alpha);
+        assertRollups(Map.of("Work", "10/1 60/3", "Projects", "20/1 50/2", "Alpha", "30/1 30/1",
+                "Archive", "0/0 0/0"));
+
+        // Listings carry the rollups in the same single query
+        Statistics statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class)
+                .getStatistics();
+        statistics.clear();
+        FolderDto top = folderService.getRootFolders(user).stream().filter(f -> f.name().equals("Work"))
+                .findFirst().orElseThrow();
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(List.of(60L, 3L), List.of(top.totalBytes(), top.totalFiles()));
+        assertNotNull(top.contentUpdatedAt());
+
+        fileService.deleteFile(report.getId(), user);
+        assertRollups(Map.of("Work", "10/1 30/2", "Projects", "20/1 20/1", "Alpha", "0/0 0/0",
+                "Archive", "0/0 0/0"));
+        fileService.restoreFile(report.getId(), user);
+        fileService.moveFile(report.getId(), archive.getId(), user);
+        assertRollups(Map.of("Work", "10/1 30/2", "Projects", "20/1 20/1", "Alpha", "0/0 0/0",
+                "Archive", "30/1 30/1"));
+
+        // A moved folder takes its totals along; trashing it takes them out until it is restored
+        folderService.moveFolder(projects.getId(), archive.getId(), user);
+        assertRollups(Map.of("Work", "10/1 10/1", "Projects", "20/1 20/1", "Alpha", "0/0 0/0",
+                "Archive", "30/1 50/2"));
+        folderService.deleteFolder(projects.getId(), user);
+        assertRollups(Map.of("Work", "10/1 10/1", "Archive", "30/1 30/1"));
+        folderService.restoreFolder(projects.getId(), user);
+        assertRollups(Map.of("Work", "10/1 10/1", "Projects", "20/1 20/1", "Alpha", "0/0 0/0",
+                "Archive", "30/1 50/2"));
+
+        fileService.permanentDeleteFile(report.getId(), user);
+        assertRollups(Map.of("Work", "10/1 10/1", "Projects", "20/1 20/1", "Alpha", "0/0 0/0",
+                "Archive", "0/0 20/1"));
+        assertEquals(0, usageService.reconcileFolders());
+    }
+
+    @Test
+    public void shouldRecomputeOnlyFoldersThatDrifted() {
+        Folder work = folderService.createFolder("Work", user, null);
+        Folder projects = folderService.createFolder("Projects", user, work.getId());
+        upload("projects.txt", 20, projects);
+        // A file row written without going through the rollups, and a counter knocked off
+        fixtures.file("stray.txt", 5, projects, user);
+        folderRepository.adjustStats(work.getId(), 0, 7, 0, LocalDateTime.now());
+
+        assertEquals(2, usageService.reconcileFolders());
+        assertRollups(Map.of("Work", "0/0 25/2", "Projects", "25/2 25/2"));
+        assertEquals(0, usageService.reconcileFolders());
+    }
+
+    @Test
+    public void shouldKeepFilesOutOfFoldersOfOtherUsers() {
+        User other = fixtures.user("other@example.com");
+        Folder theirs = folderService.createFolder("Theirs", other, null);
+        Folder work = folderService.createFolder("Work", user, null);
+        File report = upload("report.txt", 10, work);
+
+        assertThrows(RuntimeException.class, () -> fileService.moveFile(report.getId(), theirs.getId(), user));
+        String key = user.getId() + "/" + UUID.randomUUID();
+        storage.put(key, new ByteArrayInputStream(new byte[5]), 5, "text/plain");
+        assertThrows(RuntimeException.class, () -> fileService.completeUpload(Map.of("fileName", "late.txt",
+                "fileKey", key, "fileType", "text/plain", "folderId", theirs.getId().toString()), user));
+
+        assertRollups(Map.of("Work", "10/1 10/1"));
+        assertEquals(0, folderRepository.findById(theirs.getId()).orElseThrow().getTotalFiles());
+        assertEquals(0, usageService.reconcileFolders());
+    }
+
+    // Folder name to "directBytes/directFiles totalBytes/totalFiles", live folders only
+    private void assertRollups(Map<String, String> expected) {
+        entityManager.flush();
+        entityManager.clear();
+        assertEquals(expected, folderService.getUserFolders(user).stream().collect(Collectors.toMap(
+                FolderDto::name, f -> f.directBytes() + "/" + f.directFiles() + " " + f.totalBytes() + "/"
+                        + f.totalFiles())));
+    }
+
+    private File upload(String name, int size, Folder folder) {
+        String key = user.getId() + "/" + UUID.randomUUID();
+        storage.put(key, new ByteArrayInputStream(new byte[size]), size, "text/plain");
+        return fileService.registerUploadedFile(name, key, "text/plain", size, folder, user);
+    }
+}
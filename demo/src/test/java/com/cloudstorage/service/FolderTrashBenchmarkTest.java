@@ -0,0 +1,155 @@
+package com.cloudstorage.service;
+
+import com.cloudstorage.model.StorageUsage;
+import com.cloudstorage.model.User;
+import com.cloudstorage.repository.FileRepository;
+import com.cloudstorage.repository.FolderClosureRepository;
+import com.cloudstorage.repository.FolderRepository;
+import com.cloudstorage.repository.StorageUsageRepository;
+import com.cloudstorage.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Trashing and restoring a folder with 100k items below it, two levels of 100 folders holding 90k files.
+ * Run with {@code mvn test -Pbenchmark}.
+ */
+@Tag("benchmark")
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class FolderTrashBenchmarkTest {
+
+    private static final int FANOUT = 100;
+    private static final int FILES_PER_FOLDER = 9;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private FileRepository fileRepository;
+    @Autowired
+    private FolderRepository folderRepository;
+    @Autowired
+    private FolderClosureRepository closureRepository;
+    @Autowired
+    private StorageUsageRepository usageRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @AfterEach
+    public void cleanup() {
+        usageRepository.deleteAllInBatch();
+        fileRepository.deleteAllInBatch();
+        closureRepository.deleteAllInBatch();
+        jdbc.update("update folders set parent_folder_id = null");
+        folderRepository.deleteAllInBatch();
+        userRepository.deleteAllInBatch();
+    }
+
+    @Test
+    public void trashAndRestoreLargeSubtree() {
+        User owner = new TestFixtures(userRepository, folderRepository, fileRepository).user("trash@example.com");
+        FolderHierarchyService hierarchyService = new FolderHierarchyService(closureRepository, userRepository);
+        StorageUsageService usageService = new StorageUsageService(usageRepository, fileRepository, folderRepository);
+        FolderService folderService = new FolderService(folderRepository, fileRepository, hierarchyService,
+                usageService);
+
+        UUID root = insertFolders(owner, repeat(null, 1)).get(0);
+        List<UUID> middle = insertFolders(owner, repeat(root, FANOUT));
+        List<UUID> leaves = new ArrayList<>();
+        for (UUID parent : middle) {
+            leaves.addAll(insertFolders(owner, repeat(parent, FANOUT)));
+        }
+        insertFiles(owner, leaves);
+        hierarchyService.backfill();
+        int folders = 1 + FANOUT + FANOUT * FANOUT;
+        int files = FANOUT * FANOUT * FILES_PER_FOLDER;
+        usageService.getUsage(owner);
+
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        long begin = System.nanoTime();
+        transaction.executeWithoutResult(status -> folderService.deleteFolder(root, owner));
+        double trashMillis = (System.nanoTime() - begin) / 1e6;
+        assertEquals(folders, count("folders", true));
+        assertEquals(files, count("files", true));
+        assertEquals(files, usageService.getUsage(owner).getTrashedFiles());
+
+        begin = System.nanoTime();
+        transaction.executeWithoutResult(status -> folderService.restoreFolder(root, owner));
+        double restoreMillis = (System.nanoTime() - begin) / 1e6;
+        assertEquals(0, count("folders", true));
+        assertEquals(0, count("files", true));
+        StorageUsage usage = usageService.getUsage(owner);
+        assertEquals(List.of((long) files, 0L), List.of(usage.getActiveFiles(), usage.getTrashedFiles()));
+        assertEquals(0, usageService.reconcile());
+
+        System.out.printf("[folder-trash] %,d folders and %,d files: trash %.0f ms, restore %.0f ms%n", folders,
+                files, trashMillis, restoreMillis);
+        assertTrue(trashMillis + restoreMillis < 120_000, "subtree trash and restore took over two minutes");
+    }
+
+    private long count(String table, boolean trashed) {
+        return jdbc.queryForObject("select count(*) from " + table + " where is_trashed = ?", Long.class, trashed);
+    }
+
+    private static List<UUID> repeat(UUID parent, int count) {
+        List<UUID> parents = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            parents.add(parent);
+        }
+        return parents;
+    }
+
+    // One folder per entry, under that parent
+    private List<UUID> insertFolders(User owner, List<UUID> parents) {
+        LocalDateTime now = LocalDateTime.now();
+        List<UUID> ids = new ArrayList<>();
+        List<Object[]> batch = new ArrayList<>();
+        for (UUID parent : parents) {
+            UUID id = UUID.randomUUID();
+            batch.add(new Object[] { id, "folder-" + ids.size(), parent, owner.getId(), now, now });
+            ids.add(id);
+        }
+        jdbc.batchUpdate("insert into folders (id, name, parent_folder_id, user_id, created_at, updated_at,"
+                + " is_trashed) values (?, ?, ?, ?, ?, ?, false)", batch);
+        return ids;
+    }
+
+    private void insertFiles(User owner, List<UUID> folders) {
+        LocalDateTime now = LocalDateTime.now();
+        List<Object[]> batch = new ArrayList<>();
+        for (UUID folder : folders) {
+            for (int i = 0; i < FILES_PER_FOLDER; i++) {
+                batch.add(new Object[] { UUID.randomUUID(), "file-" + i + ".txt", "memory://" + UUID.randomUUID(),
+                        1_000L + i, folder, owner.getId(), now, now });
+            }
+            if (batch.size() >= 10_000) {
+                flushFiles(batch);
+            }
+        }
+        flushFiles(batch);
+    }
+
+    private void flushFiles(List<Object[]> batch) {
+        jdbc.batchUpdate("insert into files (id, file_name, file_path, file_size, folder_id, user_id, is_trashed,"
+                + " created_at, updated_at, is_starred, is_chunked)"
+                + " values (?, ?, ?, ?, ?, ?, false, ?, ?, false, false)", batch);
+        batch.clear();
+    }
+}
@@ -0,0 +1,152 @@
+package com.cloudstorage.service;
+
+import com.cloudstorage.dto.FileDto;
+import com.cloudstorage.dto.FolderDto;
+import com.cloudstorage.model.File;
+import com.cloudstorage.model.Folder;
+import com.cloudstorage.model.StorageUsage;
+import com.cloudstorage.model.User;
+import com.cloudstorage.repository.FileRepository;
+import com.cloudstorage.repository.FolderClosureRepository;
+import com.cloudstorage.repository.FolderRepository;
+import com.cloudstorage.repository.ShareRepository;
+import com.cloudstorage.repository.StorageUsageRepository;
+import com.cloudstorage.repository.UserRepository;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+public class FolderTrashTest {
+
+    @Autowired
+    private EntityManager entityManager;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private FileRepository fileRepository;
+    @Autowired
+    private FolderRepository folderRepository;
+    @Autowired
+    private FolderClosureRepository closureRepository;
+    @Autowired
+    private StorageUsageRepository usageRepository;
+    @Autowired
+    private ShareRepository shareRepository;
+
+    private StorageUsageService usageService;
+    private FolderService folderService;
+    private FileService fileService;
+    private User user;
+
+    @BeforeEach
+    public void setup() {
+        usageService = new StorageUsageService(usageRepository, fileRepository, folderRepository);
+        folderService = new FolderService(folderRepository, fileRepository,
+                new FolderHierarchyService(closureRepository, userRepository), usageService);
+        fileService = new FileService(fileRepository, folderRepository, shareRepository, null, null, null, null,
+                null, null, usageService);
+        user = new TestFixtures(userRepository, folderRepository, fileRepository).user("trash@example.com");
+    }
+
+    @Test
+    public void shouldRestoreExactlyWhatWasTrashedWithTheFolder() {
+        Folder work = folderService.createFolder("Work", user, null);
+        Folder projects = folderService.createFolder("Projects", user, work.getId());
+        Folder alpha = folderService.createFolder("Alpha", user, projects.getId());
+        Folder old = folderService.createFolder("Old", user, work.getId());
+        file("work.txt", 10, work, false);
+        file("projects.txt", 20, projects, false);
+        file("alpha.txt", 30, alpha, false);
+        file("old.txt", 40, old, false);
+        file("loose.txt", 5, work, true);
+        file("root.txt", 1, null, false);
+        assertUsage(101, 5, 5, 1);
+
+        // Trashed on their own before the folder above them: they stay in the trash when it comes back
+        folderService.deleteFolder(old.getId(), user);
+        assertUsage(61, 4, 45, 2);
+        folderService.deleteFolder(work.getId(), user);
+        assertUsage(1, 1, 105, 5);
+        assertEquals(List.of("Old", "Work"), trashedFolders());
+        assertEquals(List.of("loose.txt"), trashedFiles());
+        assertThrows(RuntimeException.class, () -> folderService.restoreFolder(projects.getId(), user));
+
+        folderService.restoreFolder(work.getId(), user);
+        assertUsage(61, 4, 45, 2);
+        assertEquals(List.of("Old"), trashedFolders());
+        assertEquals(List.of("loose.txt"), trashedFiles());
+        assertEquals(List.of("Alpha", "Projects"), folderService.getDescendants(user, work.getId()).stream()
+                .map(FolderDto::name).sorted().toList());
+        assertEquals(0, usageService.reconcile());
+    }
+
+    @Test
+    public void shouldRestoreAFolderAtTheRootWhenItsParentIsStillTrashed() {
+        Folder work = folderService.createFolder("Work", user, null);
+        Folder old = folderService.createFolder("Old", user, work.getId());
+        file("old.txt", 40, old, false);
+        assertUsage(40, 1, 0, 0);
+        folderService.deleteFolder(old.getId(), user);
+        folderService.deleteFolder(work.getId(), user);
+
+        folderService.restoreFolder(old.getId(), user);
+        assertUsage(40, 1, 0, 0);
+        assertEquals(List.of("Old"), folderService.getBreadcrumbs(user, old.getId()).stream().map(FolderDto::name)
+                .toList());
+        assertEquals(List.of("Work"), trashedFolders());
+        assertEquals(List.of("old.txt"), fileRepository.findViewsByUser(user).stream().map(FileDto::fileName)
+                .toList());
+    }
+
+    @Test
+    public void shouldRestoreAFileTrashedWithItsFolderOnlyWithThatFolder() {
+        Folder work = folderService.createFolder("Work", user, null);
+        File report = file("report.txt", 10, work, false);
+        File loose = file("loose.txt", 5, null, false);
+        folderService.deleteFolder(work.getId(), user);
+        fileService.setTrashed(loose, true);
+        assertUsage(0, 0, 15, 2);
+
+        RuntimeException refused = assertThrows(RuntimeException.class,
+                () -> fileService.restoreFile(report.getId(), user));
+        assertEquals(FileService.TRASHED_WITH_FOLDER, refused.getMessage());
+        fileService.restoreFile(loose.getId(), user);
+        assertUsage(5, 1, 10, 1);
+        assertTrue(fileRepository.findById(report.getId()).orElseThrow().getIsTrashed());
+        assertEquals(0, folderRepository.findById(work.getId()).orElseThrow().getTotalBytes());
+
+        folderService.restoreFolder(work.getId(), user);
+        assertUsage(15, 2, 0, 0);
+        assertEquals(0, usageService.reconcile());
+        assertEquals(0, usageService.reconcileFolders());
+    }
+
+    private List<String> trashedFolders() {
+        return folderRepository.findTrashedViewsByUser(user).stream().map(FolderDto::name).sorted().toList();
+    }
+
+    private List<String> trashedFiles() {
+        return fileRepository.findTrashedViewsByUser(user).stream().map(FileDto::fileName).sorted().toList();
+    }
+
+    private void assertUsage(long activeBytes, long activeFiles, long trashedBytes, long trashedFiles) {
+        entityManager.flush();
+        entityManager.clear();
+        StorageUsage usage = usageService.getUsage(user);
+        assertEquals(List.of(activeBytes, activeFiles, trashedBytes, trashedFiles), List.of(usage.getActiveBytes(),
+                usage.getActiveFiles(), usage.getTrashedBytes(), usage.getTrashedFiles()));
+    }
+
+    private File file(String name, long size, Folder folder, boolean trashed) {
+        File file = TestFixtures.newFile(name, size, folder, user);
+        file.setIsTrashed(trashed);
+        return fileRepository.save(file);
+    }
+}
@@ -0,0 +1,102 @@
+package com.cloudstorage.service;
+
+import com.cloudstorage.dto.FolderTree;
+import com.cloudstorage.model.File;
+import com.cloudstorage.model.Folder;
+import com.cloudstorage.model.User;
+import com.cloudstorage.repository.FileRepository;
+import com.cloudstorage.repository.FolderRepository;
+import com.cloudstorage.repository.UserRepository;
+import jakarta.persistence.EntityManager;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+public class FolderTreeTest {
+
+    @Autowired
+    private EntityManager entityManager;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private FileRepository fileRepository;
+    @Autowired
+    private FolderRepository folderRepository;
+
+    private FolderService folderService;
+    private TestFixtures fixtures;
+    private User user;
+
+    @BeforeEach
+    public void setup() {
+        folderService = new FolderService(folderRepository, fileRepository, null, null);
+        fixtures = new TestFixtures(userRepository, folderRepository, fileRepository);
+        user = fixtures.user("tree@example.com");
+    }
+
+    @Test
+    public void shouldAssembleTheWholeTreeFromOneQuery() {
+        Folder work = folder("Work", null, false);
+        Folder projects = folder("Projects", work, false);
+        Folder alpha = folder("Alpha", projects, false);
+        Folder archive = folder("Archive", null, false);
+        Folder trashed = folder("Trashed", work, true);
+        folder("Hidden", trashed, false);
+        file(work, 10, false);
+        file(projects, 20, false);
+        file(alpha, 30, false);
+        file(alpha, 40, false);
+        file(alpha, 1000, true);
+        file(trashed, 50, false);
+        file(null, 60, false);
+        entityManager.flush();
+        entityManager.clear();
+
+        Statistics statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class)
+                .getStatistics();
+        statistics.clear();
+        FolderTree tree = folderService.getTree(user);
+        assertEquals(1, statistics.getPrepareStatementCount());
+
+        // Breadth-first, siblings by name, each parent before its children
+        List<FolderTree.Node> nodes = tree.nodes();
+        assertEquals(List.of("Archive", "Work", "Projects", "Alpha"), nodes.stream().map(FolderTree.Node::name)
+                .toList());
+        assertEquals(List.of(-1, -1, 1, 2), nodes.stream().map(FolderTree.Node::parent).toList());
+        assertEquals(List.of(0L, 1L, 1L, 2L), nodes.stream().map(FolderTree.Node::files).toList());
+        assertEquals(List.of(0L, 100L, 90L, 70L), nodes.stream().map(FolderTree.Node::totalBytes).toList());
+        assertEquals(List.of(0L, 4L, 3L, 2L), nodes.stream().map(FolderTree.Node::totalFiles).toList());
+        assertEquals(archive.getId(), nodes.get(0).id());
+
+        // Same tree, same version; any change to a node gives a new one
+        assertEquals(tree.version(), folderService.getTree(user).version());
+        file(alpha, 5, false);
+        entityManager.flush();
+        String afterUpload = folderService.getTree(user).version();
+        assertNotEquals(tree.version(), afterUpload);
+        Folder renamed = folderRepository.findById(archive.getId()).orElseThrow();
+        renamed.setName("Old");
+        entityManager.flush();
+        assertNotEquals(afterUpload, folderService.getTree(user).version());
+    }
+
+    private Folder folder(String name, Folder parent, boolean trashed) {
+        Folder folder = TestFixtures.newFolder(name, parent, user);
+        folder.setIsTrashed(trashed);
+        return folderRepository.save(folder);
+    }
+
+    private void file(Folder folder, long size, boolean trashed) {
+        File file = TestFixtures.newFile(size + ".bin", size, folder, user);
+        file.setIsTrashed(trashed);
+        fileRepository.save(file);
+    }
+}
@@ -0,0 +1,185 @@
+package com.cloudstorage.service;
+
+import com.cloudstorage.model.Job;
+import com.cloudstorage.model.User;
+import com.cloudstorage.repository.JobRepository;
+import com.cloudstorage.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Claims must commit to be seen by other workers, so the test can't run inside one rolled-back transaction
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class JobServiceTest {
+
+    @Autowired
+    private JobRepository jobRepository;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final List<JobService> services = new ArrayList<>();
+    private final AtomicInteger failuresLeft = new AtomicInteger();
+    private User user;
+
+    // Fails while failuresLeft is positive, then succeeds after reporting some progress
+    private final JobHandler flaky = new JobHandler() {
+        @Override
+        public String type() {
+            return "flaky";
+        }
+
+        @Override
+        public String run(Job job, Progress progress) {
+            progress.update(1, 2L);
+            if (failuresLeft.getAndDecrement() > 0) {
+                throw new IllegalStateException("bucket unavailable");
+            }
+            progress.update(2, 2L);
+            return "done with " + job.getPayload();
+        }
+    };
+
+    @BeforeEach
+    public void setup() {
+        user = userRepository.save(TestFixtures.newUser("jobs@example.com"));
+    }
+
+    @AfterEach
+    public void cleanup() {
+        services.forEach(JobService::shutdown);
+        jobRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    public void shouldRetryFailedAttemptsAndGiveUpAfterTheLast() {
+        JobService jobs = service(Duration.ofMinutes(5), 3);
+        failuresLeft.set(1);
+        Job job = jobs.enqueue(user, "flaky", "payload");
+
+        runAll(jobs);
+        Job retried = jobRepository.findById(job.getId()).orElseThrow();
+        assertEquals(Job.Status.QUEUED, retried.getStatus());
+        assertEquals("bucket unavailable", retried.getLastError());
+        assertTrue(jobs.claim(10).isEmpty(), "backoff keeps it from running again right away");
+
+        moveRunAfterToNow(job.getId());
+        runAll(jobs);
+        Job done = jobRepository.findById(job.getId()).orElseThrow();
+        assertEquals(Job.Status.COMPLETED, done.getStatus());
+        assertEquals("done with payload", done.getResult());
+        assertEquals(2, done.getAttempts());
+        assertEquals(2, done.getProgressDone());
+
+        failuresLeft.set(10);
+        Job doomed = jobs.enqueue(user, "flaky", null);
+        for (int i = 0; i < 3; i++) {
+            moveRunAfterToNow(doomed.getId());
+            runAll(jobs);
+        }
+        Job failed = jobRepository.findById(doomed.getId()).orElseThrow();
+        assertEquals(Job.Status.FAILED, failed.getStatus());
+        assertEquals(3, failed.getAttempts());
+        assertNotNull(failed.getFinishedAt());
+    }
+
+    @Test
+    public void shouldNeverHandTheSameJobToTwoWorkers() throws Exception {
+        JobService first = service(Duration.ofMinutes(5), 3);
+        JobService second = service(Duration.ofMinutes(5), 3);
+        for (int i = 0; i < 40; i++) {
+            first.enqueue(user, "flaky", String.valueOf(i));
+        }
+
+        ConcurrentLinkedQueue<UUID> claimed = new ConcurrentLinkedQueue<>();
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int w = 0; w < 4; w++) {
+            JobService instance = w % 2 == 0 ? first : second;
+            workers.add(pool.submit(() -> {
+                List<Job> batch;
+                while (!(batch = instance.claim(3)).isEmpty()) {
+                    batch.forEach(job -> claimed.add(job.getId()));
+                }
+            }));
+        }
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+        pool.shutdown();
+
+        assertEquals(40, claimed.size());
+        assertEquals(40, new HashSet<>(claimed).size());
+    }
+
+    @Test
+    public void shouldHandJobsOfDeadWorkersToAnotherOne() throws Exception {
+        JobService dead = service(Duration.ofMinutes(5), 3);
+        JobService alive = service(Duration.ZERO, 3);
+        Job job = dead.enqueue(user, "flaky", "payload");
+        Job abandoned = dead.claim(1).get(0);
+
+        alive.poll(); // sees a stale heartbeat, requeues the job and runs it
+        Job done = awaitFinished(job.getId());
+        assertEquals(Job.Status.COMPLETED, done.getStatus());
+        assertEquals(2, done.getAttempts());
+
+        // The first worker comes back: everything it writes is ignored
+        failuresLeft.set(1);
+        dead.execute(abandoned);
+        Job after = jobRepository.findById(job.getId()).orElseThrow();
+        assertEquals(Job.Status.COMPLETED, after.getStatus());
+        assertEquals("done with payload", after.getResult());
+    }
+
+    private JobService service(Duration lease, int maxAttempts) {
+        JobService service = new JobService(jobRepository, List.of(flaky), transactionManager, 2, maxAttempts,
+                Duration.ofMinutes(1), Duration.ofMinutes(10), lease);
+        services.add(service);
+        return service;
+    }
+
+    private static void runAll(JobService jobs) {
+        jobs.claim(10).forEach(jobs::execute);
+    }
+
+    private void moveRunAfterToNow(UUID jobId) {
+        Job job = jobRepository.findById(jobId).orElseThrow();
+        job.setRunAfter(job.getCreatedAt());
+        jobRepository.save(job);
+    }
+
+    private Job awaitFinished(UUID jobId) throws InterruptedException {
+        Set<Job.Status> finished = Set.of(Job.Status.COMPLETED, Job.Status.FAILED);
+        for (int i = 0; i < 200; i++) {
+            Job job = jobRepository.findById(jobId).orElseThrow();
+            if (finished.contains(job.getStatus())) {
+                return job;
+            }
+            Thread.sleep(25);
+        }
+        throw new AssertionError("Job " + jobId + " did not finish");
+    }
+}
@@ -0,0 +1,165 @@
+package com.cloudstorage.service;
+
+import com.cloudstorage.dto.CursorPage;
+import com.cloudstorage.dto.FileDto;
+import com.cloudstorage.dto.FolderDto;
+import com.cloudstorage.dto.PageParams;
+import com.cloudstorage.model.File;
+import com.cloudstorage.model.Folder;
+import com.cloudstorage.model.Share;
+import com.cloudstorage.model.User;
+import com.cloudstorage.repository.FileRepository;
+import com.cloudstorage.repository.FolderRepository;
+import com.cloudstorage.repository.ShareRepository;
+import com.cloudstorage.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+public class ListingPaginationTest {
+
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private FileRepository fileRepository;
+    @Autowired
+    private FolderRepository folderRepository;
+    @Autowired
+    private ShareRepository shareRepository;
+
+    private FileService fileService;
+    private FolderService folderService;
+    private ShareService shareService;
+    private TestFixtures fixtures;
+    private User user;
+    private Folder folder;
+
+    @BeforeEach
+    public void setup() {
+        // Listings only touch the repositories
+        fileService = new FileService(fileRepository, folderRepository, shareRepository, null, null, null, null,
+                null, null, null);
+        folderService = new FolderService(folderRepository, null, null, null);
+        shareService = new ShareService(shareRepository, fileRepository, userRepository, null);
+        fixtures = new TestFixtures(userRepository, folderRepository, fileRepository);
+        user = fixtures.user("pages@example.com");
+        folder = fixtures.folder("Projects", null, user);
+    }
+
+    @Test
+    public void shouldWalkEveryFileExactlyOnceAcrossPages() {
+        // Repeated names and sizes so the id tie-breaker matters
+        for (int i = 0; i < 25; i++) {
+            file("file-" + (i % 6) + ".txt", i % 4, folder, i % 5 == 0, false);
+        }
+        file("elsewhere.txt", 1, null, false, false);
+
+        List<FileDto> byName = walk(cursor -> fileService.getFilesInFolder(user, folder.getId(),
+                params("name", null, 7, cursor)), 4);
+        assertEquals(25, new HashSet<>(byName.stream().map(FileDto::id).toList()).size());
+        for (int i = 1; i < byName.size(); i++) {
+            assertTrue(byName.get(i - 1).fileName().compareTo(byName.get(i).fileName()) <= 0);
+        }
+
+        List<FileDto> bySize = walk(cursor -> fileService.getUserFiles(user, params("size", null, 10, cursor)), 3);
+        assertEquals(26, new HashSet<>(bySize.stream().map(FileDto::id).toList()).size());
+        for (int i = 1; i < bySize.size(); i++) {
+            assertTrue(bySize.get(i - 1).fileSize() >= bySize.get(i).fileSize());
+        }
+
+        List<FileDto> starred = walk(cursor -> fileService.getStarredFiles(user, params("created", "asc", 2, cursor)),
+                3);
+        assertEquals(5, starred.size());
+        assertTrue(starred.stream().allMatch(FileDto::isStarred));
+    }
+
+    @Test
+    public void shouldPageTrashFoldersAndShares() {
+        file("a.txt", 1, null, false, true);
+        file("b.txt", 1, null, false, true);
+        file("c.txt", 1, null, false, false);
+        assertEquals(List.of("a.txt", "b.txt"), walk(cursor -> fileService.getTrashedFiles(user,
+                params(null, null, 1, cursor)), 2).stream().map(FileDto::fileName).toList());
+
+        for (String name : List.of("Zeta", "Alpha", "Mid")) {
+            fixtures.folder(name, null, user);
+        }
+        assertEquals(List.of("Zeta", "Projects", "Mid", "Alpha"), walk(cursor -> folderService.getUserFolders(user,
+                params("name", "desc", 3, cursor)), 2).stream().map(FolderDto::name).toList());
+
+        User owner = fixtures.user("owner@example.com");
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = 0; i < 3; i++) {
+            Share share = new Share();
+            share.setFile(file("shared-" + i + ".pdf", 1, null, false, false));
+            share.setSharedBy(owner);
+            share.setSharedWith(user);
+            share.setPermission(Share.Permission.VIEWER);
+            share = shareRepository.save(share);
+            share.setLastOpenedAt(now.minusHours(i));
+            shareRepository.save(share);
+        }
+        assertEquals(List.of("shared-0.pdf", "shared-1.pdf", "shared-2.pdf"), walk(cursor -> shareService
+                .getSharedWithMe(user, params("opened", null, 2, cursor)), 2).stream()
+                .map(share -> share.file().fileName()).toList());
+    }
+
+    @Test
+    public void shouldRejectCursorsAndSortsThatDoNotApply() {
+        for (int i = 0; i < 3; i++) {
+            file(i + ".txt", i, null, false, false);
+        }
+        String cursor = fileService.getUserFiles(user, params("name", null, 1, null)).nextCursor();
+        assertNotNull(cursor);
+
+        assertThrows(IllegalArgumentException.class, () -> fileService.getUserFiles(user,
+                params("size", null, 1, cursor)));
+        assertThrows(IllegalArgumentException.class, () -> fileService.getUserFiles(user,
+                params("name", null, 1, "not a cursor")));
+        assertThrows(IllegalArgumentException.class, () -> fileService.getUserFiles(user,
+                params("name", null, 0, null)));
+        assertThrows(IllegalArgumentException.class, () -> folderService.getUserFolders(user,
+                params("size", null, 1, null)));
+    }
+
+    // Follows nextCursor to the end, checking how many pages it took
+    private <T> List<T> walk(Function<String, CursorPage<T>> fetch, int expectedPages) {
+        List<T> all = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            CursorPage<T> page = fetch.apply(cursor);
+            all.addAll(page.items());
+            cursor = page.nextCursor();
+            pages++;
+        } while (cursor != null);
+        assertEquals(expectedPages, pages);
+        return all;
+    }
+
+    private static PageParams params(String sort, String direction, Integer limit, String cursor) {
+        PageParams params = new PageParams();
+        params.setSort(sort);
+        params.setDirection(direction);
+        params.setLimit(limit);
+        params.setCursor(cursor);
+        return params;
+    }
+
+    private File file(String name, long size, Folder parent, boolean starred, boolean trashed) {
+        File file = TestFixtures.newFile(name, size, parent, user);
+        file.setIsStarred(starred);
+        file.setIsTrashed(trashed);
+        return fileRepository.save(file);
+    }
+}
@@ -0,0 +1,175 @@
+package com.cloudstorage.service;
+
+import com.cloudstorage.dto.FileDto;
+import com.cloudstorage.dto.PageParams;
+import com.cloudstorage.dto.ShareDto;
+import com.cloudstorage.model.File;
+import com.cloudstorage.model.Folder;
+import com.cloudstorage.model.Share;
+import com.cloudstorage.model.User;
+import com.cloudstorage.repository.FileRepository;
+import com.cloudstorage.repository.FolderRepository;
+import com.cloudstorage.repository.ShareRepository;
+import com.cloudstorage.repository.UserRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Listings must cost one statement however many files, folders and owners they cover
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+public class ListingProjectionTest {
+
+    private static final int FILES = 30;
+
+    @Autowired
+    private EntityManager entityManager;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private FileRepository fileRepository;
+    @Autowired
+    private FolderRepository folderRepository;
+    @Autowired
+    private ShareRepository shareRepository;
+
+    private final ObjectMapper json = Jackson2ObjectMapperBuilder.json().build();
+    private FileService fileService;
+    private FolderService folderService;
+    private ShareService shareService;
+    private Statistics statistics;
+    private TestFixtures fixtures;
+    private User owner;
+    private User reader;
+
+    @BeforeEach
+    public void setup() {
+        fileService = new FileService(fileRepository, folderRepository, shareRepository, null, null, null, null,
+                null, null, null);
+        folderService = new FolderService(folderRepository, null, null, null);
+        shareService = new ShareService(shareRepository, fileRepository, userRepository, null);
+        statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+
+        fixtures = new TestFixtures(userRepository, folderRepository, fileRepository);
+        owner = fixtures.user("owner@example.com");
+        reader = fixtures.user("reader@example.com");
+        // Every file in its own folder, each one level deeper than the last
+        Folder parent = null;
+        for (int i = 0; i < FILES; i++) {
+            parent = fixtures.folder("level-" + i, parent, owner);
+
+            File file = TestFixtures.newFile("file-" + i + ".pdf", i, parent, owner);
+            file.setFileType("application/pdf");
+            file.setContentHash("ab".repeat(32));
+            file.setIsStarred(i % 2 == 0);
+            file = fileRepository.save(file);
+
+            Share share = new Share();
+            share.setFile(file);
+            share.setSharedBy(owner);
+            share.setSharedWith(reader);
+            share.setPermission(Share.Permission.VIEWER);
+            shareRepository.save(share);
+        }
+        // Nothing may be answered from the persistence context
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @Test
+    public void shouldListFilesWithOwnerAndFolderInOneStatement() throws Exception {
+        List<FileDto> files = statements(1, () -> fileService.getUserFiles(owner));
+        assertEquals(FILES, files.size());
+        assertTrue(files.stream().allMatch(f -> f.folder() != null && f.folder().name().startsWith("level-")));
+        assertTrue(files.stream().allMatch(f -> "owner@example.com".equals(f.user().email())));
+
+        assertEquals(FILES / 2, statements(1, () -> fileService.getStarredFiles(owner)).size());
+        assertEquals(1, statements(1, () -> fileService.getFilesInFolder(owner, files.get(3).folder().id())).size());
+        assertEquals(FILES, statements(1, () -> folderService.getUserFolders(owner)).size());
+
+        PageParams params = new PageParams();
+        params.setLimit(10);
+        assertEquals(10, statements(1, () -> fileService.getUserFiles(owner, params)).items().stream()
+                .filter(f -> f.folder() != null).count());
+
+        // Only what the UI shows: no password hash, storage location, content hash or ancestor chain
+        String body = json.writeValueAsString(files);
+        for (String hidden : List.of("password", "filePath", "contentHash", "parentFolder", "isChunked")) {
+            assertFalse(body.contains(hidden), hidden);
+        }
+        assertTrue(body.contains("\"isStarred\""));
+        assertTrue(body.length() / FILES < 500, "bytes per file: " + body.length() / FILES);
+    }
+
+    @Test
+    public void shouldListSharesWithFileAndBothUsersInOneStatement() throws Exception {
+        List<ShareDto> shares = statements(1, () -> shareService.getSharedWithMe(reader));
+        assertEquals(FILES, shares.size());
+        assertTrue(shares.stream().allMatch(s -> s.file().folder() != null
+                && "owner@example.com".equals(s.sharedBy().email())
+                && "reader@example.com".equals(s.sharedWith().email())));
+
+        PageParams params = new PageParams();
+        params.setSort("name");
+        params.setLimit(5);
+        assertEquals(5, statements(1, () -> shareService.getSharedWithMe(reader, params)).items().size());
+        assertEquals(FILES, statements(1, () -> shareService.getSharedByMe(owner)).size());
+
+        String body = json.writeValueAsString(shares);
+        assertFalse(body.contains("password"));
+        assertFalse(body.contains("filePath"));
+    }
+
+    @Test
+    public void shouldMergeOwnedAndSharedFilesByWhenTheyWereLastOpened() {
+        LocalDateTime now = LocalDateTime.now();
+        List<Share> shares = shareRepository.findBySharedWith(reader);
+        shares.sort(Comparator.comparing(share -> share.getFile().getFileSize()));
+        for (int i = 0; i < shares.size(); i++) {
+            shares.get(i).setLastOpenedAt(now.minusMinutes(10 * i));
+        }
+        shares.get(1).getFile().setIsTrashed(true);
+        // The reader's own files fall in between the shares
+        for (int i = 0; i < 3; i++) {
+            File file = fixtures.file("mine-" + i + ".txt", 0, null, reader);
+            file.setLastOpenedAt(now.minusMinutes(10 * i + 5));
+        }
+        entityManager.flush();
+
+        List<FileDto> recent = statements(1, () -> fileService.getRecentFiles(reader));
+
+        List<String> expected = new ArrayList<>(List.of("file-0.pdf", "mine-0.txt", "mine-1.txt", "file-2.pdf",
+                "mine-2.txt"));
+        for (int i = 3; expected.size() < 20; i++) {
+            expected.add("file-" + i + ".pdf");
+        }
+        assertEquals(expected, recent.stream().map(FileDto::fileName).toList());
+        // Shared files carry the reader's own open time and star, not the owner's
+        assertEquals(now.truncatedTo(ChronoUnit.MINUTES), recent.get(0).lastOpenedAt().truncatedTo(ChronoUnit.MINUTES));
+        assertFalse(recent.get(0).isStarred());
+        assertEquals("owner@example.com", recent.get(0).user().email());
+    }
+
+    // Runs the listing against an empty persistence context and checks how many statements it prepared
+    private <T> T statements(long expected, Supplier<T> listing) {
+        entityManager.clear();
+        statistics.clear();
+        T result = listing.get();
+        assertEquals(expected, statistics.getPrepareStatementCount());
+        return result;
+    }
+}
@@ -0,0 +1,127 @@
+package com.cloudstorage.service;
+
+import com.cloudstorage.model.Blob;
+import com.cloudstorage.model.File;
+import com.cloudstorage.model.User;
+import com.cloudstorage.repository.BlobRepository;
+import com.cloudstorage.repository.ChunkRepository;
+import com.cloudstorage.repository.FileRepository;
+import com.cloudstorage.repository.UserRepository;
+import com.cloudstorage.storage.InMemoryStorageBackend;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+
+import java.io.ByteArrayInputStream;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+public class OrphanReconcileServiceTest {
+
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private FileRepository fileRepository;
+    @Autowired
+    private BlobRepository blobRepository;
+    @Autowired
+    private ChunkRepository chunkRepository;
+
+    private final InMemoryStorageBackend storage = new InMemoryStorageBackend();
+    private User user;
+    private String prefix;
+
+    @BeforeEach
+    public void setup() {
+        user = userRepository.save(TestFixtures.newUser("orphans@example.com"));
+        prefix = user.getId() + "/";
+
+        file(prefix + "report.pdf");
+        blob(prefix + "shared.bin");
+        put(prefix + "abandoned-upload.bin", 4);
+        put(prefix + "lost-folder-content.txt", 6);
+        put("deleted-user/old.bin", 1);
+        chunkRepository.insertNew("aaaa", 1);
+        put(ChunkStoreService.KEY_PREFIX + "aaaa", 1);
+        put(ChunkStoreService.KEY_PREFIX + "bbbb", 2);
+    }
+
+    @Test
+    public void shouldReportOrphansUnderUserPrefixWithoutDeleting() {
+        List<Long> progress = new ArrayList<>();
+        OrphanReconcileService.Report report = reconciler(Duration.ofDays(2))
+                .reconcile(prefix, OrphanReconcileService.Mode.REPORT, (done, total) -> progress.add(done));
+
+        assertEquals(4, report.scanned());
+        assertEquals(2, report.orphans());
+        assertEquals(10, report.orphanBytes());
+        assertEquals(0, report.deleted());
+        assertEquals(List.of(prefix + "abandoned-upload.bin", prefix + "lost-folder-content.txt"), report.sample());
+        assertEquals(List.of(3L, 4L), progress);
+        assertEquals(7, storage.objectCount());
+    }
+
+    @Test
+    public void shouldDeleteOrphansAcrossWholeBucket() {
+        OrphanReconcileService.Report report = reconciler(Duration.ofDays(2))
+                .reconcile("", OrphanReconcileService.Mode.DELETE, (done, total) -> {
+                });
+
+        assertEquals(7, report.scanned());
+        assertEquals(4, report.orphans());
+        assertEquals(4, report.deleted());
+        assertTrue(storage.exists(prefix + "report.pdf"));
+        assertTrue(storage.exists(prefix + "shared.bin"));
+        assertTrue(storage.exists(ChunkStoreService.KEY_PREFIX + "aaaa"));
+        assertFalse(storage.exists(ChunkStoreService.KEY_PREFIX + "bbbb"));
+        assertFalse(storage.exists("deleted-user/old.bin"));
+        assertEquals(3, storage.objectCount());
+    }
+
+    @Test
+    public void shouldLeaveObjectsWithinGracePeriodAlone() {
+        OrphanReconcileService.Report report = reconciler(Duration.ZERO)
+                .reconcile("", OrphanReconcileService.Mode.DELETE, (done, total) -> {
+                });
+
+        assertEquals(7, report.skippedRecent());
+        assertEquals(0, report.orphans());
+        assertEquals(7, storage.objectCount());
+    }
+
+    // The clock runs this far ahead of when the objects were written; the grace period is one day
+    private OrphanReconcileService reconciler(Duration elapsed) {
+        return new OrphanReconcileService(fileRepository, blobRepository, chunkRepository, storage, 3,
+                Duration.ofDays(1), OrphanReconcileService.Mode.REPORT,
+                Clock.fixed(Instant.now().plus(elapsed), ZoneOffset.UTC));
+    }
+
+    private void put(String key, int size) {
+        storage.put(key, new ByteArrayInputStream(new byte[size]), size, "application/octet-stream");
+    }
+
+    private void file(String key) {
+        put(key, 3);
+        File file = TestFixtures.newFile("report.pdf", 3, null, user);
+        file.setFilePath(storage.locationOf(key));
+        fileRepository.save(file);
+    }
+
+    private void blob(String key) {
+        put(key, 5);
+        Blob blob = new Blob();
+        blob.setUser(user);
+        blob.setSha256("ab".repeat(32));
+        blob.setStorageKey(key);
+        blob.setSize(5L);
+        blobRepository.save(blob);
+    }
+}
@@ -0,0 +1,143 @@
+package com.cloudstorage.service;
+
+import com.cloudstorage.dto.FileDto;
+import com.cloudstorage.model.User;
+import com.cloudstorage.repository.FileRepository;
+import com.cloudstorage.repository.FolderRepository;
+import com.cloudstorage.repository.ShareRepository;
+import com.cloudstorage.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Latency of the recent-files widget as one user's library grows, against the in-memory merge it replaced.
+ * Run with {@code mvn test -Pbenchmark}.
+ */
+@Tag("benchmark")
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class RecentFilesBenchmarkTest {
+
+    private static final int[] LIBRARY_SIZES = { 1_000, 10_000, 100_000 };
+
+    @Autowired
+    private JdbcTemplate jdbc;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private FileRepository fileRepository;
+    @Autowired
+    private FolderRepository folderRepository;
+    @Autowired
+    private ShareRepository shareRepository;
+
+    private final Random random = new Random(17);
+    private final LocalDateTime start = LocalDateTime.now().minusYears(1);
+    private long inserted;
+
+    @AfterEach
+    public void cleanup() {
+        shareRepository.deleteAllInBatch();
+        fileRepository.deleteAllInBatch();
+        userRepository.deleteAllInBatch();
+    }
+
+    @Test
+    public void recentFilesAsLibraryGrows() {
+        FileService fileService = new FileService(fileRepository, folderRepository, shareRepository, null, null,
+                null, null, null, null, null);
+        TestFixtures fixtures = new TestFixtures(userRepository, folderRepository, fileRepository);
+        User reader = fixtures.user("reader@example.com");
+        User owner = fixtures.user("owner@example.com");
+        double[] queryMillis = new double[LIBRARY_SIZES.length];
+        int shared = 0;
+        for (int i = 0; i < LIBRARY_SIZES.length; i++) {
+            // A tenth of the library is shared with the reader by someone else
+            int size = LIBRARY_SIZES[i];
+            insertFiles(reader, size - size / 10 - ((i == 0 ? 0 : LIBRARY_SIZES[i - 1]) - shared), null);
+            insertFiles(owner, size / 10 - shared, reader);
+            shared = size / 10;
+
+            List<FileDto> recent = fileService.getRecentFiles(reader);
+            assertEquals(inMemoryMerge(reader).stream().map(FileDto::id).toList(),
+                    recent.stream().map(FileDto::id).toList());
+
+            queryMillis[i] = median(50, () -> fileService.getRecentFiles(reader));
+            double mergeMillis = median(5, () -> inMemoryMerge(reader));
+            System.out.printf("[recent-files] %,d files: query %.2f ms, in-memory merge %.2f ms%n", size,
+                    queryMillis[i], mergeMillis);
+        }
+        // A hundred times the files must not cost anywhere near a hundred times the latency
+        assertTrue(queryMillis[LIBRARY_SIZES.length - 1] < queryMillis[0] * 10,
+                "query latency grew with the library: " + Arrays.toString(queryMillis));
+    }
+
+    // What getRecentFiles used to do: load everything, sort in Java, keep 20
+    private List<FileDto> inMemoryMerge(User user) {
+        List<FileDto> shared = shareRepository.findBySharedWith(user).stream()
+                .filter(share -> !share.getFile().getIsTrashed())
+                .map(share -> {
+                    FileDto file = FileDto.of(share.getFile());
+                    return new FileDto(file.id(), file.fileName(), file.fileType(), file.fileSize(), file.user(),
+                            file.folder(), file.createdAt(), file.updatedAt(), share.getLastOpenedAt(),
+                            file.isTrashed(), share.getIsStarred(), file.publicShareToken());
+                })
+                .toList();
+        return Stream.concat(fileRepository.findViewsByUser(user).stream(), shared.stream())
+                .sorted(Comparator.comparing(FileDto::lastOpenedAt).reversed())
+                .limit(20)
+                .toList();
+    }
+
+    private void insertFiles(User owner, int count, User sharedWith) {
+        List<Object[]> files = new ArrayList<>();
+        List<Object[]> shares = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            UUID id = UUID.randomUUID();
+            LocalDateTime created = start.plusSeconds(random.nextInt(365 * 24 * 3600));
+            // A distinct microsecond per file keeps the expected order free of ties
+            LocalDateTime opened = created.plusSeconds(random.nextInt(24 * 3600)).plusNanos(1000 * inserted++);
+            files.add(new Object[] { id, "file-" + id + ".bin", "memory://" + id, (long) random.nextInt(1 << 20),
+                    owner.getId(), random.nextInt(50) == 0, created, created, opened });
+            if (sharedWith != null) {
+                shares.add(new Object[] { UUID.randomUUID(), id, owner.getId(), sharedWith.getId(), created,
+                        opened.plusSeconds(3600) });
+            }
+        }
+        jdbc.batchUpdate("insert into files (id, file_name, file_path, file_size, user_id, is_trashed, created_at,"
+                + " updated_at, last_opened_at, is_starred, is_chunked)"
+                + " values (?, ?, ?, ?, ?, ?, ?, ?, ?, false, false)", files);
+        jdbc.batchUpdate("insert into shares (id, file_id, shared_by_user_id, shared_with_user_id, permission,"
+                + " is_starred, created_at, last_opened_at) values (?, ?, ?, ?, 'VIEWER', false, ?, ?)", shares);
+    }
+
+    private static double median(int runs, Supplier<?> call) {
+        call.get();
+        double[] millis = new double[runs];
+        for (int i = 0; i < runs; i++) {
+            long begin = System.nanoTime();
+            call.get();
+            millis[i] = (System.nanoTime() - begin) / 1e6;
+        }
+        Arrays.sort(millis);
+        return millis[runs / 2];
+    }
+}
@@ -0,0 +1,120 @@
+package com.cloudstorage.service;
+
+import com.cloudstorage.dto.CursorPage;
+import com.cloudstorage.dto.PageParams;
+import com.cloudstorage.dto.SearchResult;
+import com.cloudstorage.model.File;
+import com.cloudstorage.model.User;
+import com.cloudstorage.repository.FileRepository;
+import com.cloudstorage.repository.FolderRepository;
+import com.cloudstorage.repository.UserRepository;
+import com.cloudstorage.search.NgramSearchEngine;
+import com.cloudstorage.search.SearchHit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+public class SearchServiceTest {
+
+    private static final Set<SearchHit.Kind> ALL = EnumSet.allOf(SearchHit.Kind.class);
+
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private FileRepository fileRepository;
+    @Autowired
+    private FolderRepository folderRepository;
+
+    private SearchService searchService;
+    private TestFixtures fixtures;
+    private User user;
+
+    @BeforeEach
+    public void setup() {
+        NgramSearchEngine engine = new NgramSearchEngine(fileRepository, folderRepository, Duration.ofMinutes(5),
+                10, Clock.systemUTC());
+        searchService = new SearchService(engine, fileRepository, folderRepository);
+        fixtures = new TestFixtures(userRepository, folderRepository, fileRepository);
+        user = fixtures.user("search@example.com");
+    }
+
+    @Test
+    public void shouldRankFilesAndFoldersAndDropWhatIsGone() {
+        file("budget 2024.xlsx", user);
+        file("budget.xlsx", user);
+        file("old budget.xlsx", user).setIsTrashed(true);
+        File deleted = file("budget-draft.xlsx", user);
+        file("budget.xlsx", fixtures.user("other@example.com"));
+        fixtures.folder("Budgets", null, user);
+        fileRepository.flush();
+
+        // Index built, then the draft goes away behind its back
+        searchService.search(user, "budget", ALL, new PageParams());
+        fileRepository.delete(deleted);
+        fileRepository.flush();
+
+        List<SearchResult> results = searchService.search(user, "Budget", ALL, new PageParams()).items();
+        assertEquals(List.of("budget.xlsx", "Budgets", "budget 2024.xlsx"), names(results));
+        assertEquals(SearchHit.Kind.FOLDER, results.get(1).kind());
+        assertTrue(results.get(0).score() > results.get(1).score());
+
+        assertEquals(List.of("budget.xlsx", "budget 2024.xlsx"),
+                searchService.searchFiles(user, "budget").stream().map(f -> f.fileName()).toList());
+    }
+
+    @Test
+    public void shouldWalkEveryResultOnceAcrossPages() {
+        for (int i = 0; i < 25; i++) {
+            file("photo-" + i + ".jpg", user).setIsTrashed(i % 5 == 0);
+        }
+        fileRepository.flush();
+
+        List<String> seen = new ArrayList<>();
+        PageParams params = new PageParams();
+        params.setLimit(4);
+        int pages = 0;
+        do {
+            CursorPage<SearchResult> page = searchService.search(user, "photo", ALL, params);
+            assertTrue(page.items().size() <= 4);
+            seen.addAll(names(page.items()));
+            params.setCursor(page.nextCursor());
+            pages++;
+        } while (params.getCursor() != null);
+
+        assertEquals(20, seen.size());
+        assertEquals(20, Set.copyOf(seen).size());
+        assertEquals(5, pages);
+    }
+
+    @Test
+    public void shouldRejectSortsAndBadCursors() {
+        PageParams sorted = new PageParams();
+        sorted.setSort("name");
+        assertThrows(IllegalArgumentException.class, () -> searchService.search(user, "a", ALL, sorted));
+
+        PageParams badCursor = new PageParams();
+        badCursor.setCursor("bm9wZQ");
+        assertThrows(IllegalArgumentException.class, () -> searchService.search(user, "a", ALL, badCursor));
+
+        assertTrue(searchService.search(user, "  ", ALL, new PageParams()).items().isEmpty());
+    }
+
+    private static List<String> names(List<SearchResult> results) {
+        return results.stream().map(r -> r.file() != null ? r.file().fileName() : r.folder().name()).toList();
+    }
+
+    private File file(String name, User owner) {
+        return fixtures.file(name, 1, null, owner);
+    }
+}
@@ -0,0 +1,112 @@
+package com.cloudstorage.service;
+
+import com.cloudstorage.dto.FileDto;
+import com.cloudstorage.dto.StorageBreakdown;
+import com.cloudstorage.model.File;
+import com.cloudstorage.model.Folder;
+import com.cloudstorage.model.User;
+import com.cloudstorage.repository.FileRepository;
+import com.cloudstorage.repository.FolderRepository;
+import com.cloudstorage.repository.UserRepository;
+import jakarta.persistence.EntityManager;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+public class StorageBreakdownServiceTest {
+
+    @Autowired
+    private EntityManager entityManager;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private FileRepository fileRepository;
+    @Autowired
+    private FolderRepository folderRepository;
+
+    private final LocalDate today = LocalDate.of(2026, 6, 15);
+    private StorageBreakdownService breakdownService;
+    private TestFixtures fixtures;
+    private User user;
+
+    @BeforeEach
+    public void setup() {
+        breakdownService = new StorageBreakdownService(fileRepository, folderRepository);
+        fixtures = new TestFixtures(userRepository, folderRepository, fileRepository);
+        user = fixtures.user("breakdown@example.com");
+    }
+
+    @Test
+    public void shouldGroupActiveFilesByTypeTopFolderAndAge() {
+        Folder photos = folder("Photos", null);
+        Folder trip = folder("Trip", folder("2025", photos));
+        Folder work = folder("Work", null);
+
+        file("beach.jpg", "image/jpeg", 500, trip, 2);
+        file("cat.png", "IMAGE/PNG", 300, photos, 20);
+        file("report.pdf", "application/pdf", 200, work, 100);
+        file("notes", null, 10, null, 400);
+        file("clip.mp4", "video/mp4", 1000, null, 0);
+        file("old.mp4", "video/mp4", 5000, trip, 1).setIsTrashed(true);
+        entityManager.flush();
+        entityManager.clear();
+
+        Statistics statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        StorageBreakdown breakdown = breakdownService.breakdown(user, 3, today);
+        // Types, folders, folder tree, days, largest files
+        assertEquals(5, statistics.getPrepareStatementCount());
+
+        assertEquals(List.of(new StorageBreakdown.Group("video", "video", 1000, 1),
+                new StorageBreakdown.Group("image", "image", 800, 2),
+                new StorageBreakdown.Group("application", "application", 200, 1),
+                new StorageBreakdown.Group("other", "other", 10, 1)), breakdown.byType());
+
+        assertEquals(List.of(new StorageBreakdown.Group("root", "My Drive", 1010, 2),
+                new StorageBreakdown.Group(photos.getId().toString(), "Photos", 800, 2),
+                new StorageBreakdown.Group(work.getId().toString(), "Work", 200, 1)), breakdown.byFolder());
+
+        assertEquals(List.of(new StorageBreakdown.Group("7d", "Last 7 days", 1500, 2),
+                new StorageBreakdown.Group("30d", "Last 30 days", 300, 1),
+                new StorageBreakdown.Group("365d", "Last year", 200, 1),
+                new StorageBreakdown.Group("older", "Older", 10, 1)), breakdown.byAge());
+
+        assertEquals(List.of("clip.mp4", "beach.jpg", "cat.png"),
+                breakdown.largest().stream().map(FileDto::fileName).toList());
+        assertEquals("Trip", breakdown.largest().get(1).folder().name());
+    }
+
+    @Test
+    public void shouldReturnEmptyBucketsAndRejectBadLimits() {
+        StorageBreakdown breakdown = breakdownService.breakdown(user, 10, today);
+        assertTrue(breakdown.byType().isEmpty());
+        assertTrue(breakdown.byFolder().isEmpty());
+        assertEquals(4, breakdown.byAge().size());
+        assertTrue(breakdown.byAge().stream().allMatch(group -> group.files() == 0));
+
+        assertThrows(IllegalArgumentException.class, () -> breakdownService.breakdown(user, 0, today));
+        assertThrows(IllegalArgumentException.class,
+                () -> breakdownService.breakdown(user, StorageBreakdownService.MAX_TOP + 1, today));
+    }
+
+    private Folder folder(String name, Folder parent) {
+        return fixtures.folder(name, parent, user);
+    }
+
+    private File file(String name, String type, long size, Folder folder, int daysOld) {
+        File file = TestFixtures.newFile(name, size, folder, user);
+        file.setFileType(type);
+        file = fileRepository.save(file);
+        file.setCreatedAt(today.minusDays(daysOld).atTime(12, 0));
+        return file;
+    }
+}
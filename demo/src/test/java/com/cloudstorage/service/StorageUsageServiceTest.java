@@ -0,0 +1,134 @@
+package com.cloudstorage.service;
+
+import com.cloudstorage.model.File;
+import com.cloudstorage.model.StorageUsage;
+import com.cloudstorage.model.User;
+import com.cloudstorage.repository.BlobRepository;
+import com.cloudstorage.repository.FileRepository;
+import com.cloudstorage.repository.FolderRepository;
+import com.cloudstorage.repository.ShareRepository;
+import com.cloudstorage.repository.StorageUsageRepository;
+import com.cloudstorage.repository.UserRepository;
+import com.cloudstorage.storage.HotObjectCache;
+import com.cloudstorage.storage.InMemoryStorageBackend;
+import com.cloudstorage.storage.PresignedUrlCache;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+public class StorageUsageServiceTest {
+
+    @Autowired
+    private EntityManager entityManager;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private FileRepository fileRepository;
+    @Autowired
+    private StorageUsageRepository usageRepository;
+    @Autowired
+    private FolderRepository folderRepository;
+    @Autowired
+    private ShareRepository shareRepository;
+    @Autowired
+    private BlobRepository blobRepository;
+
+    private final InMemoryStorageBackend storage = new InMemoryStorageBackend();
+    private StorageUsageService usageService;
+    private FileService fileService;
+    private TestFixtures fixtures;
+    private User user;
+
+    @BeforeEach
+    public void setup() {
+        usageService = new StorageUsageService(usageRepository, fileRepository, folderRepository);
+        fileService = new FileService(fileRepository, folderRepository, shareRepository, storage, null,
+                new BlobService(blobRepository), null,
+                new PresignedUrlCache(storage, 100, Duration.ofMinutes(15), Clock.systemUTC()),
+                new HotObjectCache(Path.of("cache"), 0, List.of(), 0, 1), usageService);
+        fixtures = new TestFixtures(userRepository, folderRepository, fileRepository);
+        user = fixtures.user("usage@example.com");
+    }
+
+    @Test
+    public void shouldStartFromExistingFilesAndFollowEveryChange() {
+        file(user, 100, false);
+        file(user, 40, true);
+        assertUsage(100, 1, 40, 1);
+
+        File upload = upload("report.pdf", 7);
+        assertUsage(107, 2, 40, 1);
+
+        // Trashing twice only moves the bytes once
+        fileService.deleteFile(upload.getId(), user);
+        fileService.deleteFile(upload.getId(), user);
+        assertUsage(100, 1, 47, 2);
+
+        fileService.restoreFile(upload.getId(), user);
+        fileService.restoreFile(upload.getId(), user);
+        assertUsage(107, 2, 40, 1);
+
+        fileService.deleteFile(upload.getId(), user);
+        fileService.permanentDeleteFile(upload.getId(), user);
+        assertUsage(100, 1, 40, 1);
+
+        File active = upload("notes.txt", 3);
+        fileService.permanentDeleteFile(active.getId(), user);
+        assertUsage(100, 1, 40, 1);
+    }
+
+    @Test
+    public void shouldRecomputeOnlyUsersWhoseLedgerDrifted() {
+        User other = fixtures.user("other@example.com");
+        file(user, 10, false);
+        file(other, 5, true);
+        usageService.getUsage(user);
+        usageService.getUsage(other);
+
+        // A file row written without going through the ledger, and a counter knocked off
+        file(user, 20, true);
+        usageRepository.adjust(user.getId(), 1, 0, 0, 0);
+        assertEquals(1, usageService.reconcile());
+        assertUsage(10, 1, 20, 1);
+        assertEquals(0, usageService.reconcile());
+
+        // A user whose files are all gone drifts to zero
+        fileRepository.deleteAll(fileRepository.findAll().stream()
+                .filter(file -> file.getUser().getId().equals(other.getId())).toList());
+        assertEquals(1, usageService.reconcile());
+        entityManager.clear();
+        assertEquals(0, usageService.getUsage(other).getTrashedBytes());
+    }
+
+    private void assertUsage(long activeBytes, long activeFiles, long trashedBytes, long trashedFiles) {
+        entityManager.flush();
+        entityManager.clear();
+        StorageUsage usage = usageService.getUsage(user);
+        assertEquals(List.of(activeBytes, activeFiles, trashedBytes, trashedFiles), List.of(usage.getActiveBytes(),
+                usage.getActiveFiles(), usage.getTrashedBytes(), usage.getTrashedFiles()));
+    }
+
+    private File upload(String name, int size) {
+        String key = user.getId() + "/" + UUID.randomUUID();
+        storage.put(key, new ByteArrayInputStream(new byte[size]), size, "text/plain");
+        return fileService.registerUploadedFile(name, key, "text/plain", size, null, user);
+    }
+
+    private void file(User owner, long size, boolean trashed) {
+        File file = TestFixtures.newFile(size + ".bin", size, null, owner);
+        file.setIsTrashed(trashed);
+        fileRepository.save(file);
+    }
+}
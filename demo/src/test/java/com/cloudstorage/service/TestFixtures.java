@@ -0,0 +1,67 @@
+package com.cloudstorage.service;
+
+import com.cloudstorage.model.File;
+import com.cloudstorage.model.Folder;
+import com.cloudstorage.model.User;
+import com.cloudstorage.repository.FileRepository;
+import com.cloudstorage.repository.FolderRepository;
+import com.cloudstorage.repository.UserRepository;
+
+import java.util.UUID;
+
+/**
+ * Users, folders and files for tests, saved straight through the repositories so that none of the
+ * services under test is involved. The new* factories return unsaved rows, for tests that set more
+ * fields before saving.
+ */
+public class TestFixtures {
+
+    private final UserRepository userRepository;
+    private final FolderRepository folderRepository;
+    private final FileRepository fileRepository;
+
+    public TestFixtures(UserRepository userRepository, FolderRepository folderRepository,
+            FileRepository fileRepository) {
+        this.userRepository = userRepository;
+        this.folderRepository = folderRepository;
+        this.fileRepository = fileRepository;
+    }
+
+    public User user(String email) {
+        return userRepository.save(newUser(email));
+    }
+
+    public Folder folder(String name, Folder parent, User owner) {
+        return folderRepository.save(newFolder(name, parent, owner));
+    }
+
+    public File file(String name, long size, Folder folder, User owner) {
+        return fileRepository.save(newFile(name, size, folder, owner));
+    }
+
+    public static User newUser(String email) {
+        User user = new User();
+        user.setEmail(email);
+        user.setPassword("secret");
+        return user;
+    }
+
+    public static Folder newFolder(String name, Folder parent, User owner) {
+        Folder folder = new Folder();
+        folder.setName(name);
+        folder.setParentFolder(parent);
+        folder.setUser(owner);
+        return folder;
+    }
+
+    // A path no storage engine holds, for rows whose content is never read
+    public static File newFile(String name, long size, Folder folder, User owner) {
+        File file = new File();
+        file.setFileName(name);
+        file.setFilePath("memory://" + UUID.randomUUID());
+        file.setFileSize(size);
+        file.setFolder(folder);
+        file.setUser(owner);
+        return file;
+    }
+}
@@ -0,0 +1,265 @@
+package com.cloudstorage.service;
+
+import com.cloudstorage.model.File;
+import com.cloudstorage.model.FileChunk;
+import com.cloudstorage.model.Folder;
+import com.cloudstorage.model.Share;
+import com.cloudstorage.model.StorageUsage;
+import com.cloudstorage.model.User;
+import com.cloudstorage.repository.BlobRepository;
+import com.cloudstorage.repository.ChunkRepository;
+import com.cloudstorage.repository.FileChunkRepository;
+import com.cloudstorage.repository.FileRepository;
+import com.cloudstorage.repository.FolderClosureRepository;
+import com.cloudstorage.repository.FolderRepository;
+import com.cloudstorage.repository.ShareRepository;
+import com.cloudstorage.repository.StorageUsageRepository;
+import com.cloudstorage.repository.UserRepository;
+import com.cloudstorage.storage.BufferPool;
+import com.cloudstorage.storage.HotObjectCache;
+import com.cloudstorage.storage.InMemoryS3;
+import com.cloudstorage.storage.MultipartUploadEngine;
+import com.cloudstorage.storage.PresignedUrlCache;
+import com.cloudstorage.storage.S3StorageBackend;
+import com.cloudstorage.storage.StorageBackend;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+public class TrashPurgeServiceTest {
+
+    private static final int PART_SIZE = MultipartUploadEngine.MIN_PART_SIZE;
+
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private FileRepository fileRepository;
+    @Autowired
+    private StorageUsageRepository usageRepository;
+    @Autowired
+    private FolderRepository folderRepository;
+    @Autowired
+    private FolderClosureRepository closureRepository;
+    @Autowired
+    private ShareRepository shareRepository;
+    @Autowired
+    private BlobRepository blobRepository;
+    @Autowired
+    private ChunkRepository chunkRepository;
+    @Autowired
+    private FileChunkRepository fileChunkRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final InMemoryS3 s3 = new InMemoryS3();
+    private StorageBackend storage;
+    private FileService fileService;
+    private StorageUsageService usageService;
+    private TrashPurgeService purgeService;
+    private TestFixtures fixtures;
+    private User user;
+
+    @BeforeEach
+    public void setup() {
+        storage = new S3StorageBackend(s3, "bucket");
+        usageService = new StorageUsageService(usageRepository, fileRepository, folderRepository);
+        MultipartUploadEngine engine = new MultipartUploadEngine(storage, PART_SIZE, 2,
+                new BufferPool(PART_SIZE, 3), 2);
+        fileService = new FileService(fileRepository, folderRepository, shareRepository, storage, engine,
+                new BlobService(blobRepository), null,
+                new PresignedUrlCache(storage, 100, Duration.ofMinutes(15), Clock.systemUTC()),
+                new HotObjectCache(Path.of("cache"), 0, List.of(), 0, 1), usageService);
+        // Small pages so the purge has to walk several of them
+        purgeService = new TrashPurgeService(fileRepository, folderRepository, shareRepository, blobRepository,
+                chunkRepository, fileChunkRepository, fileService, usageService, storage, transactionManager, 300, 2);
+
+        fixtures = new TestFixtures(userRepository, folderRepository, fileRepository);
+        user = fixtures.user("purge@example.com");
+    }
+
+    @AfterEach
+    public void cleanup() {
+        purgeService.shutdown();
+    }
+
+    @Test
+    public void shouldPurgeTrashInBulkBatches() throws InterruptedException {
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < StorageBackend.MAX_DELETE_BATCH + 200; i++) {
+            String key = user.getId() + "/" + i + ".txt";
+            storage.put(key, new ByteArrayInputStream(new byte[1]), 1, "text/plain");
+            File file = TestFixtures.newFile(i + ".txt", 1, null, user);
+            file.setFilePath(storage.locationOf(key));
+            file.setIsTrashed(true);
+            files.add(file);
+        }
+        fileRepository.saveAll(files);
+        File kept = upload("kept.txt", "keep me");
+        int batchesBefore = s3.deleteBatchCount();
+        assertEquals(files.size(), usageService.getUsage(user).getTrashedFiles());
+
+        List<Long> progress = new ArrayList<>();
+        TrashPurgeService.PurgeResult result = purgeService.purge(user, (done, total) -> {
+            assertEquals(Long.valueOf(files.size()), total);
+            progress.add(done);
+        });
+
+        assertEquals(List.of(300L, 600L, 900L, 1200L), progress);
+        assertEquals(files.size(), result.files());
+        assertEquals(files.size(), result.objectsDeleted());
+        assertEquals(0, result.objectsFailed());
+        assertEquals(2, s3.deleteBatchCount() - batchesBefore);
+        assertEquals(1, s3.objectCount());
+        assertEquals(List.of(kept.getId()), fileRepository.findAll().stream().map(File::getId).toList());
+        StorageUsage usage = usageRepository.findById(user.getId()).orElseThrow();
+        assertEquals(List.of(0L, 0L, 1L, 7L), List.of(usage.getTrashedFiles(), usage.getTrashedBytes(),
+                usage.getActiveFiles(), usage.getActiveBytes()));
+    }
+
+    @Test
+    public void shouldKeepContentStillReferencedElsewhere() throws InterruptedException {
+        File live = upload("report.pdf", "shared content");
+        File copy = upload("report-copy.pdf", "shared content");
+        File other = upload("other.pdf", "only in trash");
+        File otherCopy = upload("other-copy.pdf", "only in trash");
+        share(other, fixtures.user("friend@example.com"));
+        trash(copy, other, otherCopy);
+
+        purge();
+
+        assertTrue(fileRepository.findById(live.getId()).isPresent());
+        assertEquals(1, blobRepository.findByUserAndSha256(user, live.getContentHash()).orElseThrow().getRefCount());
+        assertTrue(blobRepository.findByUserAndSha256(user, other.getContentHash()).isEmpty());
+        assertEquals(0, shareRepository.count());
+        assertEquals(1, s3.objectCount());
+    }
+
+    @Test
+    public void shouldReleaseChunksAndRemoveTrashedFolders() throws InterruptedException {
+        chunk("aaaa", 2);
+        chunk("bbbb", 1);
+        File chunked = chunkedFile("a.bin", "aaaa", "bbbb");
+        chunkedFile("b.bin", "aaaa");
+        trash(chunked);
+
+        Folder parent = folder("Old", null);
+        folder("Older", parent);
+        Folder live = folder("Live", null);
+
+        TrashPurgeService.PurgeResult result = purge();
+
+        // An unreferenced chunk stays released, object and all, until the chunk sweeper removes it
+        assertEquals(0, chunkRepository.findById("bbbb").orElseThrow().getRefCount());
+        assertEquals(1, chunkRepository.findById("aaaa").orElseThrow().getRefCount());
+        assertTrue(storage.exists(ChunkStoreService.KEY_PREFIX + "bbbb"));
+        assertTrue(storage.exists(ChunkStoreService.KEY_PREFIX + "aaaa"));
+        assertEquals(1, fileChunkRepository.count());
+        assertEquals(2, result.folders());
+        assertEquals(List.of(live.getId()), folderRepository.findAll().stream().map(Folder::getId).toList());
+    }
+
+    @Test
+    public void shouldDeleteATrashedFolderForeverWithEverythingInIt() throws InterruptedException {
+        FolderService folderService = new FolderService(folderRepository, fileRepository,
+                new FolderHierarchyService(closureRepository, userRepository), usageService);
+        TrashService trashService = new TrashService(fileRepository, folderRepository, fileService, folderService,
+                null, purgeService);
+        Folder work = folderService.createFolder("Work", user, null);
+        Folder projects = folderService.createFolder("Projects", user, work.getId());
+        Folder kept = folderService.createFolder("Kept", user, null);
+        File inWork = upload("a.txt", "alpha", work);
+        File inProjects = upload("b.txt", "beta", projects);
+        File inKept = upload("c.txt", "gamma", kept);
+        assertThrows(RuntimeException.class, () -> trashService.permanentDeleteFolder(work.getId(), user));
+
+        folderService.deleteFolder(projects.getId(), user);
+        folderService.deleteFolder(work.getId(), user);
+        trashService.permanentDeleteFolder(work.getId(), user);
+
+        assertTrue(fileRepository.findById(inWork.getId()).isEmpty());
+        assertTrue(fileRepository.findById(inProjects.getId()).isEmpty());
+        assertTrue(fileRepository.findById(inKept.getId()).isPresent());
+        assertEquals(List.of(kept.getId()), folderRepository.findAll().stream().map(Folder::getId).toList());
+        assertEquals(1, closureRepository.count());
+        assertEquals(1, s3.objectCount());
+        StorageUsage usage = usageService.getUsage(user);
+        assertEquals(List.of(0L, 0L, 1L, 5L), List.of(usage.getTrashedFiles(), usage.getTrashedBytes(),
+                usage.getActiveFiles(), usage.getActiveBytes()));
+        assertEquals(0, usageService.reconcile());
+    }
+
+    private TrashPurgeService.PurgeResult purge() throws InterruptedException {
+        return purgeService.purge(user, (done, total) -> {
+        });
+    }
+
+    private File upload(String name, String content) {
+        return upload(name, content, null);
+    }
+
+    private File upload(String name, String content, Folder folder) {
+        return fileService.uploadStream(new ByteArrayInputStream(content.getBytes()), name, "application/pdf",
+                null, user, folder == null ? null : folder.getId());
+    }
+
+    private void trash(File... files) {
+        for (File file : files) {
+            file.setIsTrashed(true);
+            fileRepository.save(file);
+        }
+    }
+
+    private void share(File file, User with) {
+        Share share = new Share();
+        share.setFile(file);
+        share.setSharedBy(user);
+        share.setSharedWith(with);
+        share.setPermission(Share.Permission.VIEWER);
+        shareRepository.save(share);
+    }
+
+    private void chunk(String hash, int refCount) {
+        chunkRepository.insertNew(hash, 1);
+        for (int i = 1; i < refCount; i++) {
+            chunkRepository.incrementRefCount(hash);
+        }
+        storage.put(ChunkStoreService.KEY_PREFIX + hash, new ByteArrayInputStream(new byte[1]), 1,
+                "application/octet-stream");
+    }
+
+    private File chunkedFile(String name, String... hashes) {
+        File file = TestFixtures.newFile(name, hashes.length, null, user);
+        file.setFilePath("chunked://" + name);
+        file.setIsChunked(true);
+        file = fileRepository.save(file);
+        for (int i = 0; i < hashes.length; i++) {
+            FileChunk entry = new FileChunk();
+            entry.setFileId(file.getId());
+            entry.setChunkIndex(i);
+            entry.setChunkOffset((long) i);
+            entry.setChunkHash(hashes[i]);
+            entry.setLength(1);
+            fileChunkRepository.save(entry);
+        }
+        return file;
+    }
+
+    private Folder folder(String name, Folder parent) {
+        Folder folder = TestFixtures.newFolder(name, parent, user);
+        folder.setIsTrashed(!name.equals("Live"));
+        return folderRepository.save(folder);
+    }
+}
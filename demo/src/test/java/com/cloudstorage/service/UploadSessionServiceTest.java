@@ -0,0 +1,199 @@
+package com.cloudstorage.service;
+
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.cloudstorage.model.File;
+import com.cloudstorage.model.UploadSession;
+import com.cloudstorage.model.User;
+import com.cloudstorage.repository.BlobRepository;
+import com.cloudstorage.repository.FileRepository;
+import com.cloudstorage.repository.FolderRepository;
+import com.cloudstorage.repository.ShareRepository;
+import com.cloudstorage.repository.StorageUsageRepository;
+import com.cloudstorage.repository.UploadPartRepository;
+import com.cloudstorage.repository.UploadSessionRepository;
+import com.cloudstorage.repository.UserRepository;
+import com.cloudstorage.storage.BufferPool;
+import com.cloudstorage.storage.HotObjectCache;
+import com.cloudstorage.storage.InMemoryS3;
+import com.cloudstorage.storage.MultipartUploadEngine;
+import com.cloudstorage.storage.PresignedUrlCache;
+import com.cloudstorage.storage.S3StorageBackend;
+import com.cloudstorage.storage.StorageBackend;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+public class UploadSessionServiceTest {
+
+    private static final int PART_SIZE = MultipartUploadEngine.MIN_PART_SIZE;
+
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private FileRepository fileRepository;
+    @Autowired
+    private StorageUsageRepository usageRepository;
+    @Autowired
+    private FolderRepository folderRepository;
+    @Autowired
+    private ShareRepository shareRepository;
+    @Autowired
+    private UploadSessionRepository sessionRepository;
+    @Autowired
+    private UploadPartRepository partRepository;
+    @Autowired
+    private BlobRepository blobRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final InMemoryS3 s3 = new InMemoryS3();
+    private final StorageBackend storage = new S3StorageBackend(s3, "bucket");
+    private UploadSessionService uploadSessionService;
+    private User user;
+
+    @BeforeEach
+    public void setup() {
+        StorageUsageService usageService = new StorageUsageService(usageRepository, fileRepository, folderRepository);
+        MultipartUploadEngine engine = new MultipartUploadEngine(storage, PART_SIZE, 2,
+                new BufferPool(PART_SIZE, 3), 2);
+        FileService fileService = new FileService(fileRepository, folderRepository, shareRepository, storage, engine,
+                new BlobService(blobRepository), null,
+                new PresignedUrlCache(storage, 100, Duration.ofMinutes(15), Clock.systemUTC()),
+                new HotObjectCache(Path.of("cache"), 0, List.of(), 0, 1), usageService);
+
+        uploadSessionService = new UploadSessionService(sessionRepository, partRepository, fileService, storage,
+                transactionManager);
+        ReflectionTestUtils.setField(uploadSessionService, "partSizeMb", 5);
+        ReflectionTestUtils.setField(uploadSessionService, "ttlHours", 24L);
+
+        user = new TestFixtures(userRepository, folderRepository, fileRepository).user("uploader@example.com");
+    }
+
+    @Test
+    public void shouldResumeAndAssembleFromLedger() {
+        UploadSession session = uploadSessionService.createSession("movie.mp4", "video/mp4",
+                (long) PART_SIZE * 2 + 10, null, user);
+
+        // Parts arrive out of order, and part 3 is retried after a dropped connection
+        uploadSessionService.uploadPart(session.getId(), 3, new ByteArrayInputStream(new byte[10]), 10, user);
+        uploadSessionService.uploadPart(session.getId(), 1, new ByteArrayInputStream(new byte[PART_SIZE]),
+                PART_SIZE, user);
+        uploadSessionService.uploadPart(session.getId(), 3, new ByteArrayInputStream(new byte[10]), 10, user);
+
+        Map<String, Object> status = uploadSessionService.getStatus(session.getId(), user);
+        assertEquals(List.of(1, 3), status.get("receivedParts"));
+        assertEquals((long) PART_SIZE + 10, status.get("receivedBytes"));
+        assertEquals(2, ((List<?>) status.get("receivedRanges")).size());
+
+        assertThrows(RuntimeException.class, () -> uploadSessionService.completeSession(session.getId(), user));
+
+        uploadSessionService.uploadPart(session.getId(), 2, new ByteArrayInputStream(new byte[PART_SIZE]),
+                PART_SIZE, user);
+        File file = uploadSessionService.completeSession(session.getId(), user);
+
+        assertEquals((long) PART_SIZE * 2 + 10, file.getFileSize());
+        assertEquals(PART_SIZE * 2 + 10, s3.object("bucket", session.getS3Key()).length);
+        assertTrue(partRepository.findBySessionIdOrderByPartNumberAsc(session.getId()).isEmpty());
+    }
+
+    @Test
+    public void shouldCompleteDirectUploadFromS3PartListing() {
+        UploadSession session = uploadSessionService.createSession("disk.img", "application/octet-stream",
+                (long) PART_SIZE * 3, null, UploadSession.Mode.DIRECT, user);
+
+        Map<String, Object> batch = uploadSessionService.generatePartUrls(session.getId(), 1, 2, user);
+        assertEquals(2, ((List<?>) batch.get("parts")).size());
+        Map<String, Object> refill = uploadSessionService.generatePartUrls(session.getId(), 3, 50, user);
+        List<?> refillParts = (List<?>) refill.get("parts");
+        assertEquals(1, refillParts.size(), "refill is capped at the declared size");
+        assertTrue(((Map<?, ?>) refillParts.get(0)).get("url").toString().contains("partNumber=3"));
+
+        // The browser PUTs each part straight to S3
+        for (int partNumber = 1; partNumber <= 3; partNumber++) {
+            s3.uploadPart(new UploadPartRequest().withBucketName("bucket").withKey(session.getS3Key())
+                    .withUploadId(session.getUploadId()).withPartNumber(partNumber).withPartSize(PART_SIZE)
+                    .withInputStream(new ByteArrayInputStream(new byte[PART_SIZE])));
+        }
+        assertThrows(RuntimeException.class, () -> uploadSessionService.uploadPart(session.getId(), 1,
+                new ByteArrayInputStream(new byte[1]), 1, user));
+
+        File file = uploadSessionService.completeSession(session.getId(), user);
+
+        assertEquals((long) PART_SIZE * 3, file.getFileSize());
+        assertEquals(PART_SIZE * 3, s3.object("bucket", session.getS3Key()).length);
+    }
+
+    @Test
+    public void shouldFinishAnInterruptedCompletionOnce() {
+        UploadSession session = uploadSessionService.createSession("notes.txt", "text/plain", 10L, null, user);
+        uploadSessionService.uploadPart(session.getId(), 1, new ByteArrayInputStream(new byte[10]), 10, user);
+
+        // An earlier attempt assembled the object, then failed before the file was registered
+        String etag = partRepository.findBySessionIdAndPartNumber(session.getId(), 1).orElseThrow().getEtag();
+        storage.completeMultipart(session.getS3Key(), session.getUploadId(),
+                List.of(new StorageBackend.StoredPart(1, etag, 10)));
+        UploadSession stuck = sessionRepository.findById(session.getId()).orElseThrow();
+        stuck.setStatus(UploadSession.Status.COMPLETING);
+        sessionRepository.save(stuck);
+        assertThrows(RuntimeException.class, () -> uploadSessionService.uploadPart(session.getId(), 1,
+                new ByteArrayInputStream(new byte[10]), 10, user));
+
+        File file = uploadSessionService.completeSession(session.getId(), user);
+        assertEquals(10L, file.getFileSize());
+        assertEquals(file.getId(), uploadSessionService.completeSession(session.getId(), user).getId());
+        assertEquals(1, fileRepository.findViewsByUser(user).size());
+        assertEquals(UploadSession.Status.COMPLETED, sessionRepository.findById(session.getId()).orElseThrow()
+                .getStatus());
+    }
+
+    @Test
+    public void shouldSweepExpiredSessions() {
+        UploadSession session = uploadSessionService.createSession("big.iso", "application/octet-stream", null,
+                null, user);
+        uploadSessionService.uploadPart(session.getId(), 1, new ByteArrayInputStream(new byte[PART_SIZE]),
+                PART_SIZE, user);
+        session.setExpiresAt(LocalDateTime.now().minusMinutes(1));
+        sessionRepository.save(session);
+
+        uploadSessionService.sweepExpiredSessions();
+
+        assertEquals(UploadSession.Status.EXPIRED, sessionRepository.findById(session.getId()).orElseThrow()
+                .getStatus());
+        assertEquals(0, s3.openUploads());
+        assertTrue(partRepository.findBySessionIdOrderByPartNumberAsc(session.getId()).isEmpty());
+    }
+
+    @Test
+    public void shouldLeaveAnExpiredSessionThatIsCompletingToItsCompletion() {
+        UploadSession session = uploadSessionService.createSession("big.iso", "application/octet-stream", null,
+                null, user);
+        uploadSessionService.uploadPart(session.getId(), 1, new ByteArrayInputStream(new byte[PART_SIZE]),
+                PART_SIZE, user);
+        UploadSession completing = sessionRepository.findById(session.getId()).orElseThrow();
+        completing.setStatus(UploadSession.Status.COMPLETING);
+        completing.setExpiresAt(LocalDateTime.now().minusMinutes(1));
+        sessionRepository.save(completing);
+
+        uploadSessionService.sweepExpiredSessions();
+        assertThrows(RuntimeException.class, () -> uploadSessionService.abortSession(session.getId(), user));
+
+        assertEquals(UploadSession.Status.COMPLETING, sessionRepository.findById(session.getId()).orElseThrow()
+                .getStatus());
+        assertEquals(1, s3.openUploads());
+        assertEquals(1, partRepository.findBySessionIdOrderByPartNumberAsc(session.getId()).size());
+    }
+}
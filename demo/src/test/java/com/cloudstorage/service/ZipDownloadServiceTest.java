@@ -0,0 +1,165 @@
+package com.cloudstorage.service;
+
+import com.cloudstorage.model.File;
+import com.cloudstorage.model.Folder;
+import com.cloudstorage.model.User;
+import com.cloudstorage.repository.BlobRepository;
+import com.cloudstorage.repository.FileRepository;
+import com.cloudstorage.repository.FolderRepository;
+import com.cloudstorage.repository.ShareRepository;
+import com.cloudstorage.repository.StorageUsageRepository;
+import com.cloudstorage.repository.UserRepository;
+import com.cloudstorage.storage.BufferPool;
+import com.cloudstorage.storage.HotObjectCache;
+import com.cloudstorage.storage.InMemoryS3;
+import com.cloudstorage.storage.MultipartUploadEngine;
+import com.cloudstorage.storage.PresignedUrlCache;
+import com.cloudstorage.storage.S3StorageBackend;
+import com.cloudstorage.storage.StorageBackend;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+public class ZipDownloadServiceTest {
+
+    private static final int PART_SIZE = MultipartUploadEngine.MIN_PART_SIZE;
+
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private FileRepository fileRepository;
+    @Autowired
+    private StorageUsageRepository usageRepository;
+    @Autowired
+    private FolderRepository folderRepository;
+    @Autowired
+    private ShareRepository shareRepository;
+    @Autowired
+    private BlobRepository blobRepository;
+
+    private FileService fileService;
+    private ZipDownloadService zipService;
+    private TestFixtures fixtures;
+    private User user;
+
+    @BeforeEach
+    public void setup() {
+        StorageBackend storage = new S3StorageBackend(new InMemoryS3(), "bucket");
+        StorageUsageService usageService = new StorageUsageService(usageRepository, fileRepository, folderRepository);
+        MultipartUploadEngine engine = new MultipartUploadEngine(storage, PART_SIZE, 2,
+                new BufferPool(PART_SIZE, 3), 2);
+        fileService = new FileService(fileRepository, folderRepository, shareRepository, storage, engine,
+                new BlobService(blobRepository), null,
+                new PresignedUrlCache(storage, 100, Duration.ofMinutes(15), Clock.systemUTC()),
+                new HotObjectCache(Path.of("cache"), 0, List.of(), 0, 1), usageService);
+        zipService = new ZipDownloadService(fileRepository, folderRepository, shareRepository, fileService, 2, 2);
+        fixtures = new TestFixtures(userRepository, folderRepository, fileRepository);
+        user = fixtures.user("zip@example.com");
+    }
+
+    @AfterEach
+    public void cleanup() {
+        zipService.shutdown();
+    }
+
+    @Test
+    public void shouldArchiveFolderSubtreeWithUniqueNames() throws IOException {
+        Folder photos = folder("Photos", null);
+        Folder trip = folder("Trip", photos);
+        Folder hidden = folder("Old", photos);
+        hidden.setIsTrashed(true);
+        folderRepository.save(hidden);
+        folder("Elsewhere", null);
+
+        upload("notes.txt", "text/plain", "root notes", photos);
+        upload("Notes.txt", "text/plain", "same name, other case", photos);
+        upload("day1.txt", "text/plain", "beach", trip);
+        upload("ignored.txt", "text/plain", "in trash", hidden);
+
+        ZipDownloadService.ZipPlan plan = zipService.planFolder(photos.getId(), user);
+        Map<String, String> entries = unzip(plan);
+
+        assertEquals("Photos.zip", plan.archiveName());
+        assertEquals(Map.of(
+                "Trip/", "",
+                "Notes.txt", "same name, other case",
+                "notes (1).txt", "root notes",
+                "Trip/day1.txt", "beach"), entries);
+    }
+
+    @Test
+    public void shouldNotRecompressAlreadyCompressedContent() throws IOException {
+        byte[] noise = new byte[200_000];
+        new Random(7).nextBytes(noise);
+        File video = fileService.uploadStream(new ByteArrayInputStream(noise), "clip.mp4", "video/mp4", null,
+                user, null);
+        File text = upload("big.txt", "text/plain", "a".repeat(200_000), null);
+
+        assertTrue(ZipDownloadService.isCompressed(video));
+        assertFalse(ZipDownloadService.isCompressed(text));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        zipService.write(zipService.planFiles(List.of(video.getId(), text.getId()), user).items(), out);
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            assertEquals("clip.mp4", zip.getNextEntry().getName());
+            assertArrayEquals(noise, zip.readAllBytes());
+            assertEquals("big.txt", zip.getNextEntry().getName());
+            assertEquals(200_000, zip.readAllBytes().length);
+        }
+        // Incompressible data stored as-is plus a highly compressible text file
+        assertTrue(out.size() < noise.length + 2_000, "archive was " + out.size() + " bytes");
+    }
+
+    @Test
+    public void shouldRejectFilesOfOtherUsers() {
+        User other = fixtures.user("other@example.com");
+        File mine = upload("mine.txt", "text/plain", "mine", null);
+        File theirs = fileService.uploadStream(new ByteArrayInputStream("theirs".getBytes()), "theirs.txt",
+                "text/plain", null, other, null);
+
+        RuntimeException e = assertThrows(RuntimeException.class,
+                () -> zipService.planFiles(List.of(mine.getId(), theirs.getId()), user));
+        assertEquals("Access denied: " + theirs.getId(), e.getMessage());
+        assertThrows(RuntimeException.class, () -> zipService.planFolder(fixtures.folder("Theirs", null, other).getId(),
+                user));
+    }
+
+    private Map<String, String> unzip(ZipDownloadService.ZipPlan plan) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        zipService.write(plan.items(), out);
+        Map<String, String> entries = new LinkedHashMap<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+                entries.put(entry.getName(), new String(zip.readAllBytes()));
+            }
+        }
+        return entries;
+    }
+
+    private File upload(String name, String type, String content, Folder folder) {
+        return fileService.uploadStream(new ByteArrayInputStream(content.getBytes()), name, type, null, user,
+                folder == null ? null : folder.getId());
+    }
+
+    private Folder folder(String name, Folder parent) {
+        return fixtures.folder(name, parent, user);
+    }
+}
@@ -0,0 +1,71 @@
+package com.cloudstorage.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FastCdcChunkerTest {
+
+    private final FastCdcChunker chunker = new FastCdcChunker(2 * 1024, 8 * 1024, 32 * 1024);
+
+    @Test
+    public void shouldRespectSizeBoundsAndCoverInput() throws IOException {
+        byte[] data = randomBytes(1_000_000, 1);
+        List<byte[]> chunks = split(data);
+
+        int total = 0;
+        for (int i = 0; i < chunks.size(); i++) {
+            int length = chunks.get(i).length;
+            assertTrue(length <= 32 * 1024);
+            if (i < chunks.size() - 1) {
+                assertTrue(length >= 2 * 1024);
+            }
+            assertArrayEquals(Arrays.copyOfRange(data, total, total + length), chunks.get(i));
+            total += length;
+        }
+        assertEquals(data.length, total);
+    }
+
+    @Test
+    public void shouldOnlyChangeChunksAroundAnInsertion() throws IOException {
+        byte[] original = randomBytes(1_000_000, 2);
+        byte[] edited = new byte[original.length + 100];
+        System.arraycopy(original, 0, edited, 0, 500_000);
+        System.arraycopy(original, 500_000, edited, 500_100, 500_000);
+
+        Set<String> before = fingerprints(split(original));
+        List<byte[]> after = split(edited);
+        long changed = after.stream().filter(c -> !before.contains(Arrays.toString(c))).count();
+
+        // A fixed-size splitter would shift every chunk after the insertion point
+        assertTrue(changed <= 3, "changed chunks: " + changed);
+    }
+
+    private List<byte[]> split(byte[] data) throws IOException {
+        List<byte[]> chunks = new ArrayList<>();
+        chunker.split(new ByteArrayInputStream(data),
+                (buffer, offset, length) -> chunks.add(Arrays.copyOfRange(buffer, offset, offset + length)));
+        return chunks;
+    }
+
+    private static Set<String> fingerprints(List<byte[]> chunks) {
+        Set<String> set = new HashSet<>();
+        chunks.forEach(c -> set.add(Arrays.toString(c)));
+        return set;
+    }
+
+    private static byte[] randomBytes(int size, long seed) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
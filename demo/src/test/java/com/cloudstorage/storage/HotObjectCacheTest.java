@@ -0,0 +1,95 @@
+package com.cloudstorage.storage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HotObjectCacheTest {
+
+    @TempDir
+    Path dir;
+
+    private HotObjectCache cache;
+
+    @BeforeEach
+    public void setup() {
+        cache = new HotObjectCache(dir, 2500, List.of("video/", "image/"), 1500, 1);
+    }
+
+    @AfterEach
+    public void cleanup() {
+        cache.shutdown();
+    }
+
+    @Test
+    public void shouldOnlyAdmitConfiguredTypesAndSizes() {
+        assertTrue(cache.accepts("video/mp4", 1000));
+        assertTrue(cache.accepts("IMAGE/PNG", 1500));
+        assertFalse(cache.accepts("application/pdf", 1000));
+        assertFalse(cache.accepts("video/mp4", 1501));
+        assertFalse(cache.accepts(null, 10));
+    }
+
+    @Test
+    public void shouldCacheFullyReadObjectsAndEvictLeastRecentlyUsed() throws IOException {
+        readThrough("a", 1000);
+        readThrough("b", 1000);
+        assertTrue(cache.lookup("a").isPresent()); // a is now more recent than b
+        readThrough("c", 1000);
+
+        assertTrue(cache.lookup("a").isPresent());
+        assertFalse(cache.lookup("b").isPresent());
+        assertArrayEquals(bytes(1000, 'c'), Files.readAllBytes(cache.lookup("c").orElseThrow()));
+        assertEquals(2000, cache.stats().bytes());
+    }
+
+    @Test
+    public void shouldDropPartiallyReadObjects() throws IOException {
+        try (InputStream in = cache.fillWhileReading("a", "video/mp4", new ByteArrayInputStream(bytes(1000, 'a')),
+                1000)) {
+            in.readNBytes(400);
+        }
+
+        assertFalse(cache.lookup("a").isPresent());
+        try (Stream<Path> temp = Files.list(dir.resolve(".tmp"))) {
+            assertEquals(0, temp.count());
+        }
+    }
+
+    @Test
+    public void shouldEvictOnRequest() throws IOException {
+        readThrough("a", 1000);
+        Path path = cache.lookup("a").orElseThrow();
+
+        cache.evict("a");
+
+        assertFalse(cache.lookup("a").isPresent());
+        assertFalse(Files.exists(path));
+        assertEquals(0, cache.stats().bytes());
+    }
+
+    private void readThrough(String key, int size) throws IOException {
+        try (InputStream in = cache.fillWhileReading(key, "video/mp4",
+                new ByteArrayInputStream(bytes(size, key.charAt(0))), size)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+    }
+
+    private static byte[] bytes(int size, char fill) {
+        byte[] data = new byte[size];
+        java.util.Arrays.fill(data, (byte) fill);
+        return data;
+    }
+}
@@ -0,0 +1,334 @@
+package com.cloudstorage.storage;
+
+import com.amazonaws.services.s3.AbstractAmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadResult;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsResult;
+import com.amazonaws.services.s3.model.GeneratePresignedUrlRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.ListPartsRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PartListing;
+import com.amazonaws.services.s3.model.PartSummary;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.amazonaws.services.s3.model.PutObjectResult;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-process S3 stand-in for tests. Keeps objects and in-progress multipart uploads in memory and can
+ * inject per-part latency or failures so that parallelism and abort paths can be exercised.
+ */
+public class InMemoryS3 extends AbstractAmazonS3 {
+
+    private final ConcurrentSkipListMap<String, byte[]> objects = new ConcurrentSkipListMap<>();
+    private final Map<String, Date> modified = new ConcurrentHashMap<>();
+    private final Map<String, ConcurrentSkipListMap<Integer, byte[]>> uploads = new ConcurrentHashMap<>();
+    private final AtomicInteger putCount = new AtomicInteger();
+    private final AtomicInteger partCount = new AtomicInteger();
+    private final AtomicInteger abortCount = new AtomicInteger();
+    private final AtomicInteger deleteBatchCount = new AtomicInteger();
+    private final AtomicInteger listCount = new AtomicInteger();
+    private final AtomicInteger concurrentParts = new AtomicInteger();
+    private final AtomicInteger peakConcurrentParts = new AtomicInteger();
+
+    private volatile long partLatencyMillis;
+    private volatile int failOnPart = -1;
+
+    public void setPartLatencyMillis(long partLatencyMillis) {
+        this.partLatencyMillis = partLatencyMillis;
+    }
+
+    public void setFailOnPart(int failOnPart) {
+        this.failOnPart = failOnPart;
+    }
+
+    public byte[] object(String bucket, String key) {
+        return objects.get(bucket + "/" + key);
+    }
+
+    public int objectCount() {
+        return objects.size();
+    }
+
+    public int openUploads() {
+        return uploads.size();
+    }
+
+    public int putCount() {
+        return putCount.get();
+    }
+
+    public int partCount() {
+        return partCount.get();
+    }
+
+    public int abortCount() {
+        return abortCount.get();
+    }
+
+    public int deleteBatchCount() {
+        return deleteBatchCount.get();
+    }
+
+    public int listCount() {
+        return listCount.get();
+    }
+
+    public int peakConcurrentParts() {
+        return peakConcurrentParts.get();
+    }
+
+    @Override
+    public PutObjectResult putObject(PutObjectRequest request) {
+        putCount.incrementAndGet();
+        objects.put(request.getBucketName() + "/" + request.getKey(), readAll(request.getInputStream()));
+        modified.put(request.getBucketName() + "/" + request.getKey(), new Date());
+        return new PutObjectResult();
+    }
+
+    @Override
+    public InitiateMultipartUploadResult initiateMultipartUpload(InitiateMultipartUploadRequest request) {
+        String uploadId = UUID.randomUUID().toString();
+        uploads.put(uploadId, new ConcurrentSkipListMap<>());
+        InitiateMultipartUploadResult result = new InitiateMultipartUploadResult();
+        result.setBucketName(request.getBucketName());
+        result.setKey(request.getKey());
+        result.setUploadId(uploadId);
+        return result;
+    }
+
+    @Override
+    public UploadPartResult uploadPart(UploadPartRequest request) {
+        peakConcurrentParts.accumulateAndGet(concurrentParts.incrementAndGet(), Math::max);
+        try {
+            if (request.getPartNumber() == failOnPart) {
+                throw new AmazonS3Exception("Injected failure on part " + failOnPart);
+            }
+            if (partLatencyMillis > 0) {
+                Thread.sleep(partLatencyMillis);
+            }
+            Map<Integer, byte[]> parts = uploads.get(request.getUploadId());
+            if (parts == null) {
+                throw new AmazonS3Exception("NoSuchUpload");
+            }
+            byte[] data = readAll(request.getInputStream());
+            parts.put(request.getPartNumber(), data);
+            partCount.incrementAndGet();
+
+            UploadPartResult result = new UploadPartResult();
+            result.setPartNumber(request.getPartNumber());
+            result.setETag(Integer.toHexString(java.util.Arrays.hashCode(data)));
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AmazonS3Exception("Interrupted");
+        } finally {
+            concurrentParts.decrementAndGet();
+        }
+    }
+
+    @Override
+    public CompleteMultipartUploadResult completeMultipartUpload(CompleteMultipartUploadRequest request) {
+        ConcurrentSkipListMap<Integer, byte[]> parts = uploads.remove(request.getUploadId());
+        if (parts == null) {
+            throw new AmazonS3Exception("NoSuchUpload");
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (PartETag etag : request.getPartETags()) {
+            byte[] part = parts.get(etag.getPartNumber());
+            if (part == null) {
+                throw new AmazonS3Exception("InvalidPart " + etag.getPartNumber());
+            }
+            out.writeBytes(part);
+        }
+        objects.put(request.getBucketName() + "/" + request.getKey(), out.toByteArray());
+        modified.put(request.getBucketName() + "/" + request.getKey(), new Date());
+        CompleteMultipartUploadResult result = new CompleteMultipartUploadResult();
+        result.setBucketName(request.getBucketName());
+        result.setKey(request.getKey());
+        return result;
+    }
+
+    @Override
+    public void abortMultipartUpload(AbortMultipartUploadRequest request) {
+        abortCount.incrementAndGet();
+        uploads.remove(request.getUploadId());
+    }
+
+    @Override
+    public PartListing listParts(ListPartsRequest request) {
+        ConcurrentSkipListMap<Integer, byte[]> parts = uploads.get(request.getUploadId());
+        if (parts == null) {
+            throw new AmazonS3Exception("NoSuchUpload");
+        }
+        int marker = request.getPartNumberMarker() != null ? request.getPartNumberMarker() : 0;
+        int maxParts = request.getMaxParts() != null ? request.getMaxParts() : 1000;
+        List<PartSummary> summaries = new ArrayList<>();
+        for (Map.Entry<Integer, byte[]> entry : parts.tailMap(marker, false).entrySet()) {
+            if (summaries.size() == maxParts) {
+                break;
+            }
+            PartSummary summary = new PartSummary();
+            summary.setPartNumber(entry.getKey());
+            summary.setSize(entry.getValue().length);
+            summary.setETag(Integer.toHexString(java.util.Arrays.hashCode(entry.getValue())));
+            summaries.add(summary);
+        }
+        PartListing listing = new PartListing();
+        listing.setParts(summaries);
+        int last = summaries.isEmpty() ? marker : summaries.get(summaries.size() - 1).getPartNumber();
+        listing.setNextPartNumberMarker(last);
+        listing.setTruncated(parts.higherKey(last) != null);
+        return listing;
+    }
+
+    @Override
+    public URL generatePresignedUrl(GeneratePresignedUrlRequest request) {
+        StringBuilder url = new StringBuilder("https://" + request.getBucketName() + ".s3.local/" + request.getKey()
+                + "?X-Amz-Expires=" + request.getExpiration().getTime());
+        request.getRequestParameters().forEach((name, value) -> url.append('&').append(name).append('=').append(value));
+        try {
+            return new URL(url.toString());
+        } catch (MalformedURLException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    @Override
+    public ObjectMetadata getObjectMetadata(String bucket, String key) {
+        byte[] data = objects.get(bucket + "/" + key);
+        if (data == null) {
+            throw new AmazonS3Exception("Not Found");
+        }
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentLength(data.length);
+        return metadata;
+    }
+
+    @Override
+    public S3Object getObject(String bucket, String key) {
+        byte[] data = objects.get(bucket + "/" + key);
+        if (data == null) {
+            throw new AmazonS3Exception("NoSuchKey");
+        }
+        S3Object object = new S3Object();
+        object.setBucketName(bucket);
+        object.setKey(key);
+        object.setObjectContent(new ByteArrayInputStream(data));
+        object.getObjectMetadata().setContentLength(data.length);
+        return object;
+    }
+
+    @Override
+    public S3Object getObject(GetObjectRequest request) {
+        S3Object object = getObject(request.getBucketName(), request.getKey());
+        long[] range = request.getRange();
+        if (range != null) {
+            byte[] data = objects.get(request.getBucketName() + "/" + request.getKey());
+            int from = (int) Math.min(range[0], data.length);
+            int to = (int) Math.min(range[1] + 1, data.length);
+            object.setObjectContent(new ByteArrayInputStream(data, from, to - from));
+            object.getObjectMetadata().setContentLength(to - from);
+        }
+        return object;
+    }
+
+    @Override
+    public boolean doesObjectExist(String bucket, String key) {
+        return objects.containsKey(bucket + "/" + key);
+    }
+
+    @Override
+    public void deleteObject(String bucket, String key) {
+        objects.remove(bucket + "/" + key);
+        modified.remove(bucket + "/" + key);
+    }
+
+    @Override
+    public DeleteObjectsResult deleteObjects(DeleteObjectsRequest request) {
+        deleteBatchCount.incrementAndGet();
+        List<DeleteObjectsResult.DeletedObject> deleted = new ArrayList<>();
+        for (DeleteObjectsRequest.KeyVersion version : request.getKeys()) {
+            objects.remove(request.getBucketName() + "/" + version.getKey());
+            modified.remove(request.getBucketName() + "/" + version.getKey());
+            DeleteObjectsResult.DeletedObject done = new DeleteObjectsResult.DeletedObject();
+            done.setKey(version.getKey());
+            deleted.add(done);
+        }
+        return new DeleteObjectsResult(request.getQuiet() ? List.of() : deleted);
+    }
+
+    // Pages of at most maxKeys in key order; the continuation token is the last key returned
+    @Override
+    public ListObjectsV2Result listObjectsV2(ListObjectsV2Request request) {
+        listCount.incrementAndGet();
+        String bucketPrefix = request.getBucketName() + "/";
+        String from = bucketPrefix + (request.getPrefix() != null ? request.getPrefix() : "");
+        String after = request.getContinuationToken() != null ? bucketPrefix + request.getContinuationToken() : null;
+        int maxKeys = request.getMaxKeys() != null ? request.getMaxKeys() : 1000;
+        ListObjectsV2Result result = new ListObjectsV2Result();
+        for (Map.Entry<String, byte[]> entry : (after != null ? objects.tailMap(after, false)
+                : objects.tailMap(from, true)).entrySet()) {
+            if (!entry.getKey().startsWith(from)) {
+                break;
+            }
+            if (result.getKeyCount() == maxKeys) {
+                result.setTruncated(true);
+                result.setNextContinuationToken(result.getObjectSummaries().get(maxKeys - 1).getKey());
+                break;
+            }
+            S3ObjectSummary summary = new S3ObjectSummary();
+            summary.setBucketName(request.getBucketName());
+            summary.setKey(entry.getKey().substring(bucketPrefix.length()));
+            summary.setSize(entry.getValue().length);
+            summary.setLastModified(modified.getOrDefault(entry.getKey(), new Date()));
+            result.getObjectSummaries().add(summary);
+            result.setKeyCount(result.getKeyCount() + 1);
+        }
+        return result;
+    }
+
+    @Override
+    public URL getUrl(String bucket, String key) {
+        try {
+            return new URL("https://" + bucket + ".s3.local/" + key);
+        } catch (MalformedURLException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private static byte[] readAll(InputStream in) {
+        try (in) {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package com.cloudstorage.storage;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Minimal S3-compatible HTTP server for tests: path-style PUT/GET (with Range)/HEAD/DELETE, ListObjectsV2
+ * and the multipart calls. Signatures are not checked. A fixed per-request latency can be injected to
+ * stand in for the network round trip to a real bucket.
+ */
+public class LocalS3Server implements AutoCloseable {
+
+    private static final Pattern COMPLETED_PART = Pattern.compile(
+            "<PartNumber>(\\d+)</PartNumber>\\s*<ETag>([^<]*)</ETag>|<ETag>([^<]*)</ETag>\\s*<PartNumber>(\\d+)</PartNumber>");
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final ConcurrentSkipListMap<String, byte[]> objects = new ConcurrentSkipListMap<>();
+    private final Map<String, Instant> modified = new ConcurrentHashMap<>();
+    private final Map<String, ConcurrentSkipListMap<Integer, byte[]>> uploads = new ConcurrentHashMap<>();
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private volatile long latencyMillis;
+
+    public LocalS3Server() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 4096);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public URI endpoint() {
+        return URI.create("http://127.0.0.1:" + server.getAddress().getPort());
+    }
+
+    public void setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    public int requestCount() {
+        return requestCount.get();
+    }
+
+    public int objectCount() {
+        return objects.size();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requestCount.incrementAndGet();
+        try (exchange) {
+            if (latencyMillis > 0) {
+                Thread.sleep(latencyMillis);
+            }
+            String path = exchange.getRequestURI().getRawPath();
+            String key = URLDecoder.decode(path.substring(1), StandardCharsets.UTF_8); // bucket/key
+            Map<String, String> query = query(exchange.getRequestURI().getRawQuery());
+            String method = exchange.getRequestMethod();
+
+            if (query.containsKey("uploads") && method.equals("POST")) {
+                String uploadId = UUID.randomUUID().toString();
+                uploads.put(uploadId, new ConcurrentSkipListMap<>());
+                xml(exchange, 200, "<InitiateMultipartUploadResult><Bucket>" + bucket(key) + "</Bucket><Key>"
+                        + objectKey(key) + "</Key><UploadId>" + uploadId + "</UploadId></InitiateMultipartUploadResult>");
+            } else if (query.containsKey("delete") && method.equals("POST")) {
+                // Bulk delete: the path is just the bucket
+                Matcher keys = Pattern.compile("<Key>(.*?)</Key>").matcher(new String(readBody(exchange),
+                        StandardCharsets.UTF_8));
+                while (keys.find()) {
+                    objects.remove(key + "/" + unescape(keys.group(1)));
+                    modified.remove(key + "/" + unescape(keys.group(1)));
+                }
+                xml(exchange, 200, "<DeleteResult></DeleteResult>");
+            } else if ("2".equals(query.get("list-type")) && method.equals("GET")) {
+                list(exchange, bucket(key + "/"), query);
+            } else if (query.containsKey("uploadId")) {
+                handleUpload(exchange, method, key, query);
+            } else if (method.equals("PUT")) {
+                byte[] body = readBody(exchange);
+                objects.put(key, body);
+                modified.put(key, Instant.now());
+                exchange.getResponseHeaders().set("ETag", "\"" + md5(body) + "\"");
+                exchange.sendResponseHeaders(200, -1);
+            } else if (method.equals("GET") || method.equals("HEAD")) {
+                byte[] data = objects.get(key);
+                if (data == null) {
+                    error(exchange, 404, "NoSuchKey", method.equals("HEAD"));
+                    return;
+                }
+                exchange.getResponseHeaders().set("ETag", "\"" + md5(data) + "\"");
+                exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+                exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+                if (method.equals("HEAD")) {
+                    exchange.getResponseHeaders().set("Content-Length", String.valueOf(data.length));
+                    exchange.sendResponseHeaders(200, -1);
+                    return;
+                }
+                int from = 0;
+                int to = data.length - 1;
+                int status = 200;
+                String range = exchange.getRequestHeaders().getFirst("Range");
+                if (range != null && range.startsWith("bytes=")) {
+                    String[] bounds = range.substring(6).split("-", -1);
+                    from = Integer.parseInt(bounds[0]);
+                    to = bounds[1].isEmpty() ? data.length - 1 : Math.min(Integer.parseInt(bounds[1]), data.length - 1);
+                    status = 206;
+                    exchange.getResponseHeaders().set("Content-Range", "bytes " + from + "-" + to + "/" + data.length);
+                }
+                exchange.sendResponseHeaders(status, to - from + 1);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(data, from, to - from + 1);
+                }
+            } else if (method.equals("DELETE")) {
+                objects.remove(key);
+                modified.remove(key);
+                exchange.sendResponseHeaders(204, -1);
+            } else {
+                error(exchange, 405, "MethodNotAllowed", false);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // One page of keys after the continuation token (itself the last key of the previous page)
+    private void list(HttpExchange exchange, String bucket, Map<String, String> query) throws IOException {
+        String from = bucket + "/" + query.getOrDefault("prefix", "");
+        String token = query.get("continuation-token");
+        int maxKeys = Integer.parseInt(query.getOrDefault("max-keys", "1000"));
+        boolean urlEncoded = "url".equals(query.get("encoding-type"));
+        StringBuilder contents = new StringBuilder();
+        int count = 0;
+        String last = null;
+        boolean truncated = false;
+        for (Map.Entry<String, byte[]> entry : (token != null ? objects.tailMap(bucket + "/" + token, false)
+                : objects.tailMap(from, true)).entrySet()) {
+            if (!entry.getKey().startsWith(from)) {
+                break;
+            }
+            if (count == maxKeys) {
+                truncated = true;
+                break;
+            }
+            last = objectKey(entry.getKey());
+            String shown = urlEncoded ? URLEncoder.encode(last, StandardCharsets.UTF_8) : escape(last);
+            contents.append("<Contents><Key>").append(shown).append("</Key><LastModified>")
+                    .append(modified.getOrDefault(entry.getKey(), Instant.now())).append("</LastModified><Size>")
+                    .append(entry.getValue().length).append("</Size></Contents>");
+            count++;
+        }
+        xml(exchange, 200, "<ListBucketResult><Name>" + bucket + "</Name><KeyCount>" + count + "</KeyCount>"
+                + (urlEncoded ? "<EncodingType>url</EncodingType>" : "")
+                + "<IsTruncated>" + truncated + "</IsTruncated>"
+                + (truncated ? "<NextContinuationToken>" + escape(last) + "</NextContinuationToken>" : "")
+                + contents + "</ListBucketResult>");
+    }
+
+    private static String escape(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+
+    private static String unescape(String xml) {
+        return xml.replace("&lt;", "<").replace("&gt;", ">").replace("&quot;", "\"").replace("&apos;", "'")
+                .replace("&amp;", "&");
+    }
+
+    private void handleUpload(HttpExchange exchange, String method, String key, Map<String, String> query)
+            throws IOException {
+        String uploadId = query.get("uploadId");
+        ConcurrentSkipListMap<Integer, byte[]> parts = uploads.get(uploadId);
+        if (parts == null) {
+            error(exchange, 404, "NoSuchUpload", method.equals("HEAD"));
+            return;
+        }
+        switch (method) {
+            case "PUT" -> {
+                byte[] body = readBody(exchange);
+                parts.put(Integer.parseInt(query.get("partNumber")), body);
+                exchange.getResponseHeaders().set("ETag", "\"" + md5(body) + "\"");
+                exchange.sendResponseHeaders(200, -1);
+            }
+            case "GET" -> {
+                StringBuilder xml = new StringBuilder("<ListPartsResult><Bucket>" + bucket(key) + "</Bucket><Key>"
+                        + objectKey(key) + "</Key><UploadId>" + uploadId + "</UploadId><IsTruncated>false</IsTruncated>");
+                parts.forEach((number, data) -> xml.append("<Part><PartNumber>").append(number)
+                        .append("</PartNumber><ETag>\"").append(md5(data)).append("\"</ETag><Size>")
+                        .append(data.length).append("</Size></Part>"));
+                xml(exchange, 200, xml.append("</ListPartsResult>").toString());
+            }
+            case "POST" -> {
+                String body = new String(readBody(exchange), StandardCharsets.UTF_8);
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                Matcher matcher = COMPLETED_PART.matcher(body);
+                while (matcher.find()) {
+                    int number = Integer.parseInt(matcher.group(1) != null ? matcher.group(1) : matcher.group(4));
+                    byte[] part = parts.get(number);
+                    if (part == null) {
+                        error(exchange, 400, "InvalidPart", false);
+                        return;
+                    }
+                    out.writeBytes(part);
+                }
+                byte[] data = out.toByteArray();
+                objects.put(key, data);
+                modified.put(key, Instant.now());
+                uploads.remove(uploadId);
+                xml(exchange, 200, "<CompleteMultipartUploadResult><Bucket>" + bucket(key) + "</Bucket><Key>"
+                        + objectKey(key) + "</Key><ETag>\"" + md5(data) + "-" + parts.size()
+                        + "\"</ETag></CompleteMultipartUploadResult>");
+            }
+            case "DELETE" -> {
+                uploads.remove(uploadId);
+                exchange.sendResponseHeaders(204, -1);
+            }
+            default -> error(exchange, 405, "MethodNotAllowed", false);
+        }
+    }
+
+    // Accepts plain bodies as well as aws-chunked (streaming signature) encoded ones
+    private static byte[] readBody(HttpExchange exchange) throws IOException {
+        byte[] raw;
+        try (InputStream in = exchange.getRequestBody()) {
+            raw = in.readAllBytes();
+        }
+        String sha = exchange.getRequestHeaders().getFirst("x-amz-content-sha256");
+        String encoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+        boolean chunked = (sha != null && sha.startsWith("STREAMING-"))
+                || (encoding != null && encoding.contains("aws-chunked"));
+        if (!chunked) {
+            return raw;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int pos = 0;
+        while (pos < raw.length) {
+            int lineEnd = indexOfCrlf(raw, pos);
+            String header = new String(raw, pos, lineEnd - pos, StandardCharsets.US_ASCII);
+            int size = Integer.parseInt(header.split(";")[0].trim(), 16);
+            pos = lineEnd + 2;
+            if (size == 0) {
+                break;
+            }
+            out.write(raw, pos, size);
+            pos += size + 2;
+        }
+        return out.toByteArray();
+    }
+
+    private static int indexOfCrlf(byte[] data, int from) {
+        for (int i = from; i < data.length - 1; i++) {
+            if (data[i] == '\r' && data[i + 1] == '\n') {
+                return i;
+            }
+        }
+        return data.length;
+    }
+
+    private static void xml(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + body).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/xml");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static void error(HttpExchange exchange, int status, String code, boolean head) throws IOException {
+        if (head) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        xml(exchange, status, "<Error><Code>" + code + "</Code><Message>" + code + "</Message></Error>");
+    }
+
+    private static Map<String, String> query(String raw) {
+        Map<String, String> params = new HashMap<>();
+        if (raw == null || raw.isEmpty()) {
+            return params;
+        }
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            String name = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            params.put(name, value);
+        }
+        return params;
+    }
+
+    private static String bucket(String path) {
+        return path.substring(0, path.indexOf('/'));
+    }
+
+    private static String objectKey(String path) {
+        return path.substring(path.indexOf('/') + 1);
+    }
+
+    private static String md5(byte[] data) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("MD5").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.cloudstorage.storage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MultipartUploadEngineTest {
+
+    private static final int PART_SIZE = MultipartUploadEngine.MIN_PART_SIZE;
+    private static final String BUCKET = "test-bucket";
+
+    private final InMemoryS3 s3 = new InMemoryS3();
+    private MultipartUploadEngine engine;
+
+    @AfterEach
+    public void tearDown() {
+        if (engine != null) {
+            engine.shutdown();
+        }
+    }
+
+    private MultipartUploadEngine engine(int maxInFlight, int poolSize) {
+        return engine(maxInFlight, poolSize, 8);
+    }
+
+    private MultipartUploadEngine engine(int maxInFlight, int poolSize, int threads) {
+        engine = new MultipartUploadEngine(new S3StorageBackend(s3, BUCKET), PART_SIZE, maxInFlight,
+                new BufferPool(PART_SIZE, poolSize), threads);
+        return engine;
+    }
+
+    @Test
+    public void shouldUseSinglePutForSmallObjects() throws Exception {
+        byte[] data = randomBytes(1024);
+
+        MultipartUploadEngine.UploadResult result = engine(2, 3).upload("u/small.bin", "text/plain",
+                new ByteArrayInputStream(data));
+
+        assertEquals(1024, result.size());
+        assertEquals(1, s3.putCount());
+        assertEquals(0, s3.partCount());
+        assertArrayEquals(data, s3.object(BUCKET, "u/small.bin"));
+    }
+
+    @Test
+    public void shouldStreamLargeObjectInParallelWithinBufferBudget() throws Exception {
+        int size = PART_SIZE * 12 + 12345;
+        s3.setPartLatencyMillis(20);
+        MultipartUploadEngine engine = engine(3, 4);
+
+        long start = System.nanoTime();
+        MultipartUploadEngine.UploadResult result = engine.upload("u/large.bin", "video/mp4",
+                new GeneratedInputStream(size, 42));
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        assertEquals(size, result.size());
+        assertEquals(13, result.parts());
+        assertArrayEquals(new GeneratedInputStream(size, 42).readAllBytes(), s3.object(BUCKET, "u/large.bin"));
+
+        // Heap stays bounded by the pool no matter how large the body is
+        assertTrue(engine.getBufferPool().getAllocated() <= 4);
+        assertTrue(s3.peakConcurrentParts() <= 3);
+        assertTrue(s3.peakConcurrentParts() > 1, "parts should upload concurrently");
+        System.out.printf("Streamed %d MB in %.2fs (%.1f MB/s), peak buffers %d (%d MB)%n",
+                size >> 20, seconds, (size / 1048576.0) / seconds,
+                engine.getBufferPool().getPeakInUse(),
+                (engine.getBufferPool().getAllocated() * (long) PART_SIZE) >> 20);
+    }
+
+    @Test
+    public void shouldAbortMultipartUploadWhenPartFails() {
+        s3.setFailOnPart(3);
+        MultipartUploadEngine engine = engine(2, 3);
+
+        assertThrows(IOException.class, () -> engine.upload("u/broken.bin", "application/octet-stream",
+                new GeneratedInputStream(PART_SIZE * 6, 7)));
+
+        assertEquals(1, s3.abortCount());
+        assertEquals(0, s3.openUploads());
+        assertNull(s3.object(BUCKET, "u/broken.bin"));
+    }
+
+    @Test
+    public void shouldReturnBuffersOfPartsThatNeverStarted() throws Exception {
+        // One worker thread, so later parts are still queued when part 2 fails
+        s3.setPartLatencyMillis(200);
+        s3.setFailOnPart(2);
+        MultipartUploadEngine engine = engine(3, 4, 1);
+
+        assertThrows(IOException.class, () -> engine.upload("u/broken.bin", "application/octet-stream",
+                new GeneratedInputStream(PART_SIZE * 8, 7)));
+        assertEquals(0, engine.getBufferPool().getInUse());
+        assertEquals(0, s3.openUploads());
+
+        // The whole pool is available again, so the next upload goes through
+        s3.setFailOnPart(-1);
+        s3.setPartLatencyMillis(0);
+        int size = PART_SIZE * 5;
+        assertEquals(size, engine.upload("u/next.bin", "application/octet-stream",
+                new GeneratedInputStream(size, 8)).size());
+        assertEquals(0, engine.getBufferPool().getInUse());
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] data = new byte[size];
+        new Random(1).nextBytes(data);
+        return data;
+    }
+
+    // Deterministic pseudo-random stream, so large bodies never have to be materialized up front
+    static class GeneratedInputStream extends InputStream {
+        private final long size;
+        private final Random random;
+        private long position;
+
+        GeneratedInputStream(long size, long seed) {
+            this.size = size;
+            this.random = new Random(seed);
+        }
+
+        @Override
+        public int read() {
+            if (position >= size) {
+                return -1;
+            }
+            position++;
+            return random.nextInt(256);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (position >= size) {
+                return -1;
+            }
+            int n = (int) Math.min(len, size - position);
+            for (int i = 0; i < n; i++) {
+                b[off + i] = (byte) random.nextInt(256);
+            }
+            position += n;
+            return n;
+        }
+    }
+}
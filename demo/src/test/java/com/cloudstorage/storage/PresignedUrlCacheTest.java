@@ -0,0 +1,90 @@
+package com.cloudstorage.storage;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PresignedUrlCacheTest {
+
+    private final AtomicInteger signatures = new AtomicInteger();
+    private final MutableClock clock = new MutableClock();
+    private PresignedUrlCache cache;
+
+    @BeforeEach
+    public void setup() {
+        StorageBackend storage = new InMemoryStorageBackend() {
+            @Override
+            public Optional<String> presignGet(String key, Duration expiry) {
+                return Optional.of("https://bucket/" + key + "?sig=" + signatures.incrementAndGet());
+            }
+        };
+        cache = new PresignedUrlCache(storage, 2, Duration.ofMinutes(15), clock);
+    }
+
+    @Test
+    public void shouldReuseUrlUntilSafetyMarginBeforeExpiry() {
+        String first = cache.presignGet("user/a.pdf", Duration.ofHours(2)).orElseThrow();
+
+        clock.advance(Duration.ofMinutes(104));
+        assertEquals(first, cache.presignGet("user/a.pdf", Duration.ofHours(2)).orElseThrow());
+
+        // 15 minutes before expiry a fresh URL is signed
+        clock.advance(Duration.ofMinutes(1));
+        assertNotEquals(first, cache.presignGet("user/a.pdf", Duration.ofHours(2)).orElseThrow());
+
+        PresignedUrlCache.Stats stats = cache.stats();
+        assertEquals(1, stats.hits());
+        assertEquals(2, stats.misses());
+        assertEquals(2, signatures.get());
+    }
+
+    @Test
+    public void shouldEvictDeletedKeysAndLeastRecentlyUsedEntries() {
+        cache.presignGet("user/a.pdf", Duration.ofHours(2));
+        cache.presignGet("user/b.pdf", Duration.ofHours(2));
+        cache.presignGet("user/a.pdf", Duration.ofHours(2));
+        cache.presignGet("user/c.pdf", Duration.ofHours(2)); // pushes out b, the least recently used
+
+        assertEquals(2, cache.stats().size());
+        cache.presignGet("user/a.pdf", Duration.ofHours(2));
+        assertEquals(3, signatures.get());
+
+        cache.evict("user/a.pdf");
+        cache.presignGet("user/a.pdf", Duration.ofHours(2));
+        assertEquals(4, signatures.get());
+        assertEquals(1, cache.stats().evictions());
+        assertEquals(2.0 / 6, cache.stats().hitRate(), 1e-9);
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant now = Instant.parse("2024-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.cloudstorage.storage;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.client.builder.AwsClientBuilder;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Upload throughput of the blocking v1 client against the async client, both talking to the same
+ * local S3 stand-in with a fixed round-trip latency. A 32-thread pool plays the servlet container:
+ * with the blocking client a request thread is held for the whole PUT, with the async one it only
+ * starts the PUT and is released. {@value #CLIENTS} clients each keep one upload outstanding. Both
+ * run in the same JVM, so peak heap is directly comparable.
+ * Run with {@code mvn test -Pbenchmark}.
+ */
+@Tag("benchmark")
+public class S3ClientLoadTest {
+
+    private static final int REQUEST_THREADS = 32;
+    private static final int CLIENTS = 256;
+    private static final int CONNECTIONS = 128;
+    private static final int UPLOADS = 3000;
+    private static final int OBJECT_SIZE = 16 * 1024;
+    private static final long LATENCY_MS = 100;
+
+    private final byte[] payload = new byte[OBJECT_SIZE];
+    private LocalS3Server server;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        new Random(7).nextBytes(payload);
+        server = new LocalS3Server();
+        server.setLatencyMillis(LATENCY_MS);
+    }
+
+    @AfterEach
+    public void cleanup() {
+        server.close();
+    }
+
+    @Test
+    public void blockingVersusAsyncUploads() throws Exception {
+        AmazonS3 v1 = AmazonS3ClientBuilder.standard()
+                .withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration(
+                        server.endpoint().toString(), "us-east-1"))
+                .withPathStyleAccessEnabled(true)
+                .withCredentials(new AWSStaticCredentialsProvider(new BasicAWSCredentials("key", "secret")))
+                .withClientConfiguration(new ClientConfiguration().withMaxConnections(CONNECTIONS))
+                .disableChunkedEncoding()
+                .build();
+        StorageBackend blocking = new S3StorageBackend(v1, "bucket");
+        // Production settings from application.properties, apart from the pool size
+        S3AsyncStorageBackend async = new S3AsyncStorageBackend("bucket", "us-east-1", "key", "secret",
+                server.endpoint(), new S3AsyncStorageBackend.Settings(CONNECTIONS, 1024, Duration.ofSeconds(2),
+                        Duration.ofSeconds(10), Duration.ofSeconds(30), Duration.ofMinutes(5), 16, 32));
+        try {
+            // Warm up connection pools and JIT before measuring
+            run("warm-up", blocking, false, 500);
+            run("warm-up", async, true, 500);
+
+            Result blockingResult = run("blocking v1", blocking, false, UPLOADS);
+            Result asyncResult = run("async v2", async, true, UPLOADS);
+
+            System.out.printf("%nS3 upload load test: %d x %d KB PUTs, %d request threads, %d ms latency%n",
+                    UPLOADS, OBJECT_SIZE / 1024, REQUEST_THREADS, LATENCY_MS);
+            System.out.println(blockingResult);
+            System.out.println(asyncResult);
+            System.out.printf("  speedup: %.1fx%n", asyncResult.rps() / blockingResult.rps());
+
+            assertEquals(0, blockingResult.failures());
+            assertEquals(0, asyncResult.failures());
+            assertTrue(asyncResult.rps() > blockingResult.rps());
+        } finally {
+            async.close();
+            v1.shutdown();
+        }
+    }
+
+    private Result run(String name, StorageBackend storage, boolean async, int uploads) throws Exception {
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        long baseline = runtime.totalMemory() - runtime.freeMemory();
+        AtomicLong peak = new AtomicLong(baseline);
+        AtomicInteger failures = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(uploads);
+        Semaphore clients = new Semaphore(CLIENTS);
+        ExecutorService requestThreads = Executors.newFixedThreadPool(REQUEST_THREADS);
+        Thread sampler = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                peak.accumulateAndGet(runtime.totalMemory() - runtime.freeMemory(), Math::max);
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+        sampler.start();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < uploads; i++) {
+            String key = name.replace(' ', '-') + "/" + i;
+            clients.acquire();
+            requestThreads.execute(() -> {
+                ByteArrayInputStream body = new ByteArrayInputStream(payload);
+                if (async) {
+                    storage.putAsync(key, body, OBJECT_SIZE, "application/octet-stream")
+                            .whenComplete((r, e) -> {
+                                if (e != null) {
+                                    failures.incrementAndGet();
+                                }
+                                clients.release();
+                                done.countDown();
+                            });
+                } else {
+                    try {
+                        storage.put(key, body, OBJECT_SIZE, "application/octet-stream");
+                    } catch (RuntimeException e) {
+                        failures.incrementAndGet();
+                    }
+                    clients.release();
+                    done.countDown();
+                }
+            });
+        }
+        assertTrue(done.await(5, TimeUnit.MINUTES));
+        double seconds = (System.nanoTime() - start) / 1e9;
+        sampler.interrupt();
+        requestThreads.shutdown();
+        return new Result(name, uploads / seconds, (peak.get() - baseline) / (1024 * 1024), failures.get());
+    }
+
+    private record Result(String name, double rps, long peakHeapMb, int failures) {
+        @Override
+        public String toString() {
+            return String.format("  %-12s %8.0f req/s, peak heap +%d MB, %d failures", name, rps, peakHeapMb,
+                    failures);
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.cloudstorage.storage;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// The same contract against every engine, so services behave identically whichever one is configured
+public class StorageBackendTest {
+
+    @TempDir
+    static Path tempDir;
+
+    private static LocalS3Server s3Server;
+    private static final List<S3AsyncStorageBackend> asyncBackends = new ArrayList<>();
+
+    static Stream<StorageBackend> backends() throws IOException {
+        if (s3Server == null) {
+            s3Server = new LocalS3Server();
+        }
+        S3AsyncStorageBackend async = new S3AsyncStorageBackend("bucket", "us-east-1", "key", "secret",
+                s3Server.endpoint(), new S3AsyncStorageBackend.Settings(8, 64, Duration.ofSeconds(2),
+                        Duration.ofSeconds(5), Duration.ofSeconds(10), Duration.ofSeconds(30), 2, 2));
+        asyncBackends.add(async);
+        return Stream.of(
+                new S3StorageBackend(new InMemoryS3(), "bucket"),
+                async,
+                new LocalStorageBackend(Files.createTempDirectory(tempDir, "store")),
+                new InMemoryStorageBackend());
+    }
+
+    @AfterAll
+    static void stopS3() {
+        asyncBackends.forEach(S3AsyncStorageBackend::close);
+        if (s3Server != null) {
+            s3Server.close();
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("backends")
+    public void shouldPutReadAndDeleteObjects(StorageBackend storage) throws IOException {
+        byte[] data = randomBytes(10_000);
+        storage.put("user/report.pdf", new ByteArrayInputStream(data), data.length, "application/pdf");
+
+        assertTrue(storage.exists("user/report.pdf"));
+        assertEquals(data.length, storage.size("user/report.pdf"));
+        assertArrayEquals(data, readAll(storage.get("user/report.pdf")));
+        assertArrayEquals(Arrays.copyOfRange(data, 100, 600),
+                readAll(storage.get("user/report.pdf", 100, 500)));
+        assertTrue(storage.locationOf("user/report.pdf").endsWith("/report.pdf"));
+
+        storage.delete("user/report.pdf");
+        storage.delete("user/report.pdf");
+        assertFalse(storage.exists("user/report.pdf"));
+        assertThrows(RuntimeException.class, () -> storage.size("user/report.pdf"));
+    }
+
+    @ParameterizedTest
+    @MethodSource("backends")
+    public void shouldAssembleMultipartUploads(StorageBackend storage) throws IOException {
+        byte[] first = randomBytes(4096);
+        byte[] second = randomBytes(100);
+        String uploadId = storage.initiateMultipart("user/movie.mp4", "video/mp4");
+
+        // Out of order, with part 1 sent twice
+        storage.uploadPart("user/movie.mp4", uploadId, 2, new ByteArrayInputStream(second), second.length);
+        storage.uploadPart("user/movie.mp4", uploadId, 1, new ByteArrayInputStream(new byte[4096]), 4096);
+        String etag = storage.uploadPart("user/movie.mp4", uploadId, 1, new ByteArrayInputStream(first), 4096);
+
+        List<StorageBackend.StoredPart> parts = storage.listParts("user/movie.mp4", uploadId);
+        assertEquals(List.of(1, 2), parts.stream().map(StorageBackend.StoredPart::partNumber).toList());
+        assertEquals(etag, parts.get(0).etag());
+        assertEquals(4096, parts.get(0).size());
+
+        storage.completeMultipart("user/movie.mp4", uploadId, parts);
+
+        byte[] expected = new byte[first.length + second.length];
+        System.arraycopy(first, 0, expected, 0, first.length);
+        System.arraycopy(second, 0, expected, first.length, second.length);
+        assertArrayEquals(expected, readAll(storage.get("user/movie.mp4")));
+    }
+
+    @ParameterizedTest
+    @MethodSource("backends")
+    public void shouldDiscardAbortedUploads(StorageBackend storage) {
+        String uploadId = storage.initiateMultipart("user/big.iso", "application/octet-stream");
+        storage.uploadPart("user/big.iso", uploadId, 1, new ByteArrayInputStream(new byte[10]), 10);
+
+        storage.abortMultipart("user/big.iso", uploadId);
+
+        assertFalse(storage.exists("user/big.iso"));
+        assertThrows(RuntimeException.class, () -> storage.listParts("user/big.iso", uploadId));
+    }
+
+    @ParameterizedTest
+    @MethodSource("backends")
+    public void asyncCallsShouldCompleteWithTheSameResults(StorageBackend storage) {
+        byte[] data = randomBytes(2048);
+        storage.putAsync("user/notes.txt", new ByteArrayInputStream(data), data.length, "text/plain").join();
+
+        assertEquals(data.length, storage.sizeAsync("user/notes.txt").join());
+
+        storage.deleteAsync("user/notes.txt").join();
+        assertFalse(storage.exists("user/notes.txt"));
+        assertThrows(CompletionException.class, () -> storage.sizeAsync("user/notes.txt").join());
+    }
+
+    @ParameterizedTest
+    @MethodSource("backends")
+    public void shouldDeleteManyObjectsAtOnce(StorageBackend storage) {
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < StorageBackend.MAX_DELETE_BATCH + 5; i++) {
+            keys.add("user/bulk/" + i + " & more.txt");
+            storage.put(keys.get(i), new ByteArrayInputStream(new byte[1]), 1, "text/plain");
+        }
+        storage.put("user/keep.txt", new ByteArrayInputStream(new byte[1]), 1, "text/plain");
+        keys.add("user/never-existed.txt");
+
+        assertEquals(List.of(), storage.deleteAll(keys));
+
+        assertFalse(storage.exists(keys.get(0)));
+        assertFalse(storage.exists(keys.get(StorageBackend.MAX_DELETE_BATCH + 4)));
+        assertTrue(storage.exists("user/keep.txt"));
+    }
+
+    @ParameterizedTest
+    @MethodSource("backends")
+    public void shouldListObjectsUnderPrefixInKeyOrder(StorageBackend storage) {
+        List<String> expected = new ArrayList<>();
+        for (int i = StorageBackend.MAX_DELETE_BATCH + 2; i >= 0; i--) {
+            expected.add(String.format("listing/a/%05d.bin", i));
+            storage.put(expected.get(expected.size() - 1), new ByteArrayInputStream(new byte[i % 7]), i % 7,
+                    "application/octet-stream");
+        }
+        expected.add("listing/a/nested/deep.bin");
+        storage.put("listing/a/nested/deep.bin", new ByteArrayInputStream(new byte[3]), 3, "text/plain");
+        storage.put("listing/ab.bin", new ByteArrayInputStream(new byte[1]), 1, "text/plain");
+        expected.sort(null);
+
+        List<StorageBackend.ObjectInfo> listed;
+        try (Stream<StorageBackend.ObjectInfo> objects = storage.list("listing/a/")) {
+            listed = objects.toList();
+        }
+
+        assertEquals(expected, listed.stream().map(StorageBackend.ObjectInfo::key).toList());
+        assertEquals(5, listed.get(5).size());
+        assertTrue(listed.stream().allMatch(o -> o.lastModified() != null));
+        try (Stream<StorageBackend.ObjectInfo> objects = storage.list("listing/missing/")) {
+            assertEquals(0, objects.count());
+        }
+    }
+
+    @Test
+    public void localBackendShouldRejectKeysOutsideItsRoot() throws IOException {
+        Path root = Files.createTempDirectory(tempDir, "root");
+        LocalStorageBackend storage = new LocalStorageBackend(root);
+
+        assertThrows(RuntimeException.class, () -> storage.put("../escape.txt", new ByteArrayInputStream(new byte[1]),
+                1, "text/plain"));
+        assertThrows(RuntimeException.class, () -> storage.get(".uploads/anything"));
+        assertFalse(Files.exists(root.getParent().resolve("escape.txt")));
+    }
+
+    @Test
+    public void localBackendShouldLeaveNoPartialObjectOnFailedWrite() throws IOException {
+        Path root = Files.createTempDirectory(tempDir, "root");
+        LocalStorageBackend storage = new LocalStorageBackend(root);
+        storage.put("user/a.txt", new ByteArrayInputStream("old".getBytes()), 3, "text/plain");
+
+        // Declared length doesn't match the body: the old object must survive untouched
+        assertThrows(RuntimeException.class, () -> storage.put("user/a.txt",
+                new ByteArrayInputStream("new content".getBytes()), 3, "text/plain"));
+
+        assertArrayEquals("old".getBytes(), readAll(storage.get("user/a.txt")));
+        try (Stream<Path> temp = Files.list(root.resolve(".tmp"))) {
+            assertEquals(0, temp.count());
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        try (in) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+}
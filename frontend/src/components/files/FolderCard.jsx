@@ -3,6 +3,14 @@ import React from 'react';
 import FileContextMenu from './FileContextMenu';
 
 const FolderCard = ({ folder, onClick, onRename, onDelete }) => {
+    const formatSize = (bytes) => {
+        if (!bytes) return '0 B';
+        const k = 1024;
+        const sizes = ['B', 'KB', 'MB', 'GB'];
+        const i = Math.floor(Math.log(bytes) / Math.log(k));
+        return parseFloat((bytes / Math.pow(k, i)).toFixed(1)) + ' ' + sizes[i];
+    };
+
     return (
         <div
             onClick={onClick}
@@ -15,7 +23,11 @@ const FolderCard = ({ folder, onClick, onRename, onDelete }) => {
                 <h3 className="text-sm font-medium text-gray-700 truncate" title={folder.name}>
                     {folder.name}
                 </h3>
-                <p className="text-xs text-gray-400">Folder</p>
+                <p className="text-xs text-gray-400">
+                    {folder.totalFiles != null
+                        ? `${folder.totalFiles} ${folder.totalFiles === 1 ? 'file' : 'files'} • ${formatSize(folder.totalBytes)}`
+                        : 'Folder'}
+                </p>
             </div>
 
             <div className="absolute right-2 top-1/2 -translate-y-1/2 opacity-0 group-hover:opacity-100 transition-opacity" onClick={e => e.stopPropagation()}>
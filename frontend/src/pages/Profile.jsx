@@ -26,13 +26,13 @@ const Profile = () => {
     const fetchData = async () => {
         try {
             setLoading(true);
-            const [usage, list] = await Promise.all([
+            const [usage, summary] = await Promise.all([
                 storageService.getUsage(),
                 storageService.getBreakdown()
             ]);
             setStorage(usage);
-            // Sort by size descending
-            setBreakdown(list.sort((a, b) => b.fileSize - a.fileSize));
+            // Largest first, already sorted by the server
+            setBreakdown(summary.largest);
         } catch (err) {
             console.error("Profile fetch failed:", err);
         } finally {
@@ -140,8 +140,8 @@ const Profile = () => {
                                             </button>
                                         </div>
                                     ))}
-                                    {breakdown.length > 5 && (
-                                        <p className="text-center text-[10px] font-black text-indigo-500 uppercase tracking-widest mt-4">+ {breakdown.length - 5} more assets consuming space</p>
+                                    {storage.fileCount > 5 && (
+                                        <p className="text-center text-[10px] font-black text-indigo-500 uppercase tracking-widest mt-4">+ {storage.fileCount - 5} more assets consuming space</p>
                                     )}
                                 </div>
                             )}
@@ -81,6 +81,13 @@ const fileService = {
         return response.data;
     },
 
+    // One call for a multi-select: action is MOVE, STAR, UNSTAR, DELETE, RESTORE or RENAME; the result has
+    // "OK" or an error per id
+    bulkAction: async (action, { fileIds = [], folderIds = [], targetFolderId = null, names = null } = {}) => {
+        const response = await api.post('/bulk', { action, fileIds, folderIds, targetFolderId, names });
+        return response.data;
+    },
+
     restoreFile: async (id) => {
         const response = await api.post(`/files/${id}/restore`);
         return response.data;
@@ -98,6 +105,15 @@ const fileService = {
         return response.data;
     },
 
+    // filters: name, type, minSize, maxSize, createdFrom, createdTo, folderId, root, starred, shared;
+    // page: sort, direction, limit, cursor. Answers { items, nextCursor }
+    filterFiles: async (filters, page = {}) => {
+        const response = await api.get('/files/filter', {
+            params: { ...filters, ...page }
+        });
+        return response.data;
+    },
+
     generatePublicLink: async (id) => {
         const response = await api.post(`/files/${id}/public-link`);
         return response.data;
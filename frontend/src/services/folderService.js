@@ -6,11 +6,28 @@ const folderService = {
         return response.data;
     },
 
+    // Every folder at once, parents before children; the browser revalidates it with the ETag
+    getTree: async () => {
+        const response = await api.get('/folders/tree');
+        return response.data;
+    },
+
     getSubfolders: async (id) => {
         const response = await api.get(`/folders/${id}/subfolders`);
         return response.data;
     },
 
+    // Root first, ending with the folder itself
+    getBreadcrumbs: async (id) => {
+        const response = await api.get(`/folders/${id}/breadcrumbs`);
+        return response.data;
+    },
+
+    getDescendants: async (id) => {
+        const response = await api.get(`/folders/${id}/descendants`);
+        return response.data;
+    },
+
     getFolder: async (id) => {
         const response = await api.get(`/folders/${id}`);
         return response.data;